@@ -38,7 +38,12 @@ import com.sun.darkstar.example.snowman.common.physics.enumn.EForce;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.EEndState;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.EMOBType;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.darkstar.example.snowman.common.protocol.handlers.ClockSynchronizer;
+import com.sun.darkstar.example.snowman.common.protocol.handlers.SequenceFilter;
 import com.sun.darkstar.example.snowman.common.protocol.messages.ClientMessages;
+import com.sun.darkstar.example.snowman.common.protocol.messages.CompactFormat;
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
+import com.sun.darkstar.example.snowman.common.protocol.messages.OriginalFormat;
 import com.sun.darkstar.example.snowman.common.protocol.processor.IClientProcessor;
 import com.sun.darkstar.example.snowman.common.util.HPConverter;
 import com.sun.darkstar.example.snowman.common.util.SingletonRegistry;
@@ -103,6 +108,19 @@ class SimulatedPlayer implements SimpleClientListener {
     // (approximate) timestamp of the last move sent
     private long lastTimestamp;
     
+    // whether the server agreed to the compact protocol
+    private volatile boolean compact = false;
+    
+    // whether the server agreed to the timestamped protocol
+    private volatile boolean timestamped = false;
+    
+    // whether the server agreed to the synchronized protocol
+    private volatile boolean pinging = false;
+    
+    // round trip time and clock offset measured with the server
+    // Must be synchronized
+    private final ClockSynchronizer clock = new ClockSynchronizer();
+    
     private static class Target {
         final int id;
         final float x;
@@ -181,6 +199,9 @@ class SimulatedPlayer implements SimpleClientListener {
     }
     
     private class ClientProcessor implements IClientProcessor {
+        
+        // latest sequence numbers of the movement received
+        private final SequenceFilter sequences = new SequenceFilter();
 
         @Override
         public void ready() {
@@ -204,6 +225,7 @@ class SimulatedPlayer implements SimpleClientListener {
                 logger.log(Level.FINE, "New game for {0}, id is {1}",
                            new Object[] {name, myID});
                 id = myID;
+                sequences.reset();
             } else
                 logger.log(Level.WARNING, "Received newGame, but {0} is not paused",
                            name);
@@ -332,6 +354,43 @@ class SimulatedPlayer implements SimpleClientListener {
                     logger.log(Level.FINEST, "received chat from {0}: {1}",
                                new Object[] {sourceID, message});
         }
+
+        @Override
+        public void protocol(int version, float mapWidth, float mapHeight) {
+            logger.log(Level.FINE, "Protocol version {0} agreed for {1}",
+                       new Object[] {version, name});
+            CompactFormat.setMapDimensions(mapWidth, mapHeight);
+            compact = version >= Messages.PROTOCOL_COMPACT;
+            timestamped = version >= Messages.PROTOCOL_TIMESTAMPED;
+            pinging = version >= Messages.PROTOCOL_SYNCHRONIZED;
+        }
+
+        @Override
+        public void ping(int time) {
+            try {
+                send(Messages.createPongPkt(time, 
+                                            (int) System.currentTimeMillis()));
+            } catch (IOException ioe) {
+                logger.log(Level.WARNING, "" + name, ioe);
+            }
+        }
+
+        @Override
+        public void pong(int echo, int time) {
+            synchronized (SimulatedPlayer.this) {
+                clock.pong(echo, time, System.currentTimeMillis());
+                if (logger.isLoggable(Level.FINEST))
+                    logger.log(Level.FINEST,
+                               "{0} round trip {1} ms, clock offset {2} ms",
+                               new Object[] {name, clock.getRoundTripTime(),
+                                             clock.getOffset()});
+            }
+        }
+
+        @Override
+        public boolean sequenced(int sourceID, int sequence) {
+            return sequences.accept(sourceID, sequence);
+        }
     }
     
     // set a target player for the next move
@@ -405,8 +464,15 @@ class SimulatedPlayer implements SimpleClientListener {
      * @return the current state
      */
     synchronized PLAYERSTATE move() throws IOException {
-        if (state != PLAYERSTATE.Playing ||
-            (System.currentTimeMillis() - lastTimestamp) < moveDelay)
+        if (state != PLAYERSTATE.Playing)
+            return state;
+        
+        // measure the clock of the server now and then
+        long now = System.currentTimeMillis();
+        if (pinging && clock.isPingDue(now))
+            send(Messages.createPingPkt(clock.ping(now)));
+        
+        if ((now - lastTimestamp) < moveDelay)
             return state;
                 
         setCurrentStart();
@@ -421,7 +487,16 @@ class SimulatedPlayer implements SimpleClientListener {
             if (((dx * dx) + (dy * dy)) < (range * range)) {
                 logger.log(Level.FINER, "{0} attacking {1}",
                            new Object[] {name, target.id});
-                send(ClientMessages.createAttackPkt(target.id, startX, startY));
+                if (timestamped) {
+                    sendWritten(OriginalFormat.writeAttackAt(
+                            Messages.getScratchBuffer(),
+                            target.id, startX, startY, 
+                            (int) System.currentTimeMillis()));
+                } else {
+                    sendWritten(ClientMessages.writeAttackPkt(
+                            Messages.getScratchBuffer(),
+                            target.id, startX, startY, compact));
+                }
             }
             destX = target.x + 10 * (random.nextFloat() - 0.5f);
             destY = target.y + 10 * (random.nextFloat() - 0.5f);
@@ -435,7 +510,7 @@ class SimulatedPlayer implements SimpleClientListener {
                        new Object[] {name, destX, destY});
 
         // There is a slight skew potential here, since the real timestamp
-        // is being set in the createMoveMePkt method. But it should be small.
+        // is being set in the writeMoveMePkt method. But it should be small.
         lastTimestamp = System.currentTimeMillis();
         
         // TEMP - clip to debug map
@@ -447,7 +522,9 @@ class SimulatedPlayer implements SimpleClientListener {
 
         // No collision detection here. We count on the returning moveMOB
         // to reset out end point if necessary.
-        send(ClientMessages.createMoveMePkt(startX, startY, destX, destY));
+        sendWritten(ClientMessages.writeMoveMePkt(
+                Messages.getScratchBuffer(),
+                startX, startY, destX, destY, compact));
         
         return state;
     }
@@ -490,6 +567,14 @@ class SimulatedPlayer implements SimpleClientListener {
         simpleClient.send(buff);
     }
     
+    // Send a packet written from the start of the given buffer.  The
+    // client copies the packet before returning, so the moves of all the
+    // players of a thread can be written into the same scratch buffer.
+    private void sendWritten(ByteBuffer buff) throws IOException {
+        buff.flip();
+        simpleClient.send(buff);
+    }
+    
     /* -- SimpleClientListener -- */
     
     @Override
@@ -499,9 +584,15 @@ class SimulatedPlayer implements SimpleClientListener {
 
     @Override
     public void loggedIn() {
-        if (setState(PLAYERSTATE.Paused))
+        if (setState(PLAYERSTATE.Paused)) {
             logger.log(Level.FINE, "Player {0} logged in", name);
-        else
+            try {
+                send(ClientMessages.createProtocolPkt(
+                        Messages.PROTOCOL_VERSION));
+            } catch (IOException ioe) {
+                logger.log(Level.WARNING, "" + name, ioe);
+            }
+        } else
             logger.log(Level.WARNING, "Player {0} received login after quit",
                        name);
     }
@@ -113,6 +113,42 @@ public class Client extends Component{
 		}
 	}
 	
+	/**
+	 * Check if outgoing messages should use the compact format, which is
+	 * the case once the server has agreed to the compact protocol.
+	 * @return True if the compact format should be used.
+	 */
+	public boolean isCompact() {
+		return this.handler.getProcessor().isCompact();
+	}
+	
+	/**
+	 * Check if attacks and flag grabs should be sent with the time at
+	 * which they were issued, which is the case once the server has agreed
+	 * to the timestamped protocol.
+	 * @return True if the timestamped messages should be used.
+	 */
+	public boolean isTimestamped() {
+		return this.handler.getProcessor().isTimestamped();
+	}
+	
+	/**
+	 * Retrieve the smoothed round trip time to the server, measured with
+	 * PING messages once the synchronized protocol is agreed.
+	 * @return The round trip time in milliseconds, or zero if it has not been measured.
+	 */
+	public float getRoundTripTime() {
+		return this.handler.getProcessor().getRoundTripTime();
+	}
+	
+	/**
+	 * Retrieve the smoothed offset of the server clock.
+	 * @return The offset in milliseconds added to the local time to get the server time.
+	 */
+	public double getClockOffset() {
+		return this.handler.getProcessor().getClockOffset();
+	}
+	
 	/**
 	 * Retrieve the <code>ClientHandler</code> instance.
 	 * @return The <code>ClientHandler</code> instance.
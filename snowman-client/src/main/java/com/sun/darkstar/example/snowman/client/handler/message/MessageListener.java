@@ -37,6 +37,8 @@ import java.net.PasswordAuthentication;
 import java.nio.ByteBuffer;
 
 import com.sun.darkstar.example.snowman.client.handler.ClientHandler;
+import com.sun.darkstar.example.snowman.common.protocol.messages.ClientMessages;
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
 import com.sun.darkstar.example.snowman.common.util.SingletonRegistry;
 import com.sun.darkstar.example.snowman.game.task.enumn.ETask;
 import com.sun.darkstar.example.snowman.game.task.util.TaskManager;
@@ -79,6 +81,7 @@ public class MessageListener implements SimpleClientListener, ClientChannelListe
 
 	@Override
 	public void loggedIn() {
+            this.handler.getGame().getClient().send(ClientMessages.createProtocolPkt(Messages.PROTOCOL_VERSION));
             TaskManager.getInstance().createTask(ETask.LoginSuccess);
         }
 
@@ -100,6 +103,7 @@ public class MessageListener implements SimpleClientListener, ClientChannelListe
 	@Override
 	public void receivedMessage(ByteBuffer message) {
 		SingletonRegistry.getMessageHandler().parseClientPacket(message, this.handler.getProcessor());
+		this.handler.getProcessor().pingIfDue();
 	}
 
 	@Override
@@ -123,5 +127,6 @@ public class MessageListener implements SimpleClientListener, ClientChannelListe
 	@Override
 	public void receivedMessage(ClientChannel channel, ByteBuffer message) {
 		SingletonRegistry.getMessageHandler().parseClientPacket(message, this.handler.getProcessor());
+		this.handler.getProcessor().pingIfDue();
 	}
 }
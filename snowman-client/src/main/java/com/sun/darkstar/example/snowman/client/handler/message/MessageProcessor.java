@@ -37,6 +37,10 @@ import com.sun.darkstar.example.snowman.client.handler.ClientHandler;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.EEndState;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.EMOBType;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.darkstar.example.snowman.common.protocol.handlers.ClockSynchronizer;
+import com.sun.darkstar.example.snowman.common.protocol.handlers.SequenceFilter;
+import com.sun.darkstar.example.snowman.common.protocol.messages.CompactFormat;
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
 import com.sun.darkstar.example.snowman.common.protocol.processor.IClientProcessor;
 import com.sun.darkstar.example.snowman.game.state.enumn.EGameState;
 import com.sun.darkstar.example.snowman.game.state.scene.BattleState;
@@ -67,6 +71,18 @@ public class MessageProcessor implements IClientProcessor {
 	 * The ID number of the local controlled player.
 	 */
 	private int myID;
+	/**
+	 * The protocol version agreed with the server.
+	 */
+	private volatile int protocolVersion = Messages.PROTOCOL_ORIGINAL;
+	/**
+	 * The latest sequence numbers of the movement received from the server.
+	 */
+	private final SequenceFilter sequences = new SequenceFilter();
+	/**
+	 * The round trip time and clock offset measured with the server.
+	 */
+	private final ClockSynchronizer clock = new ClockSynchronizer();
 
 	/**
 	 * Constructor of <code>MessageProcessor</code>.
@@ -84,6 +100,7 @@ public class MessageProcessor implements IClientProcessor {
 	@Override
 	public void newGame(int myID, String mapname) {
 		this.myID = myID;
+		this.sequences.reset();
 		TaskManager.getInstance().createTask(ETask.GameState, EGameState.BattleState);
 	}
 
@@ -141,6 +158,71 @@ public class MessageProcessor implements IClientProcessor {
             }
 	}
 
+	@Override
+	public void protocol(int version, float mapWidth, float mapHeight) {
+		CompactFormat.setMapDimensions(mapWidth, mapHeight);
+		this.protocolVersion = version;
+		this.clock.reset();
+	}
+
+	@Override
+	public void ping(int time) {
+		this.handler.getGame().getClient().send(Messages.createPongPkt(time, (int) System.currentTimeMillis()));
+	}
+
+	@Override
+	public void pong(int echo, int time) {
+		this.clock.pong(echo, time, System.currentTimeMillis());
+	}
+
+	/**
+	 * Send a PING to the server if it agreed to the synchronized protocol
+	 * and the clock was not measured recently.
+	 */
+	public void pingIfDue() {
+		long now = System.currentTimeMillis();
+		if (this.protocolVersion >= Messages.PROTOCOL_SYNCHRONIZED && this.clock.isPingDue(now)) {
+			this.handler.getGame().getClient().send(Messages.createPingPkt(this.clock.ping(now)));
+		}
+	}
+
+	/**
+	 * Retrieve the smoothed round trip time to the server.
+	 * @return The round trip time in milliseconds, or zero if it has not been measured.
+	 */
+	public float getRoundTripTime() {
+		return this.clock.getRoundTripTime();
+	}
+
+	/**
+	 * Retrieve the smoothed offset of the server clock.
+	 * @return The offset in milliseconds added to the local time to get the server time.
+	 */
+	public double getClockOffset() {
+		return this.clock.getOffset();
+	}
+
+	@Override
+	public boolean sequenced(int sourceID, int sequence) {
+		return this.sequences.accept(sourceID, sequence);
+	}
+
+	/**
+	 * Check if the server agreed to the compact protocol.
+	 * @return True if the compact format can be used.
+	 */
+	public boolean isCompact() {
+		return this.protocolVersion >= Messages.PROTOCOL_COMPACT;
+	}
+
+	/**
+	 * Check if the server agreed to the timestamped protocol.
+	 * @return True if attacks and flag grabs can carry their time.
+	 */
+	public boolean isTimestamped() {
+		return this.protocolVersion >= Messages.PROTOCOL_TIMESTAMPED;
+	}
+
 	/**
 	 * Retrieve the ID number of this client. 
 	 * @return The <code>Integer</code> ID number.
@@ -60,6 +60,8 @@ import com.jme.util.TextureManager;
 import com.sun.darkstar.example.snowman.ClientApplication;
 import com.sun.darkstar.example.snowman.common.entity.enumn.ECursorState;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.darkstar.example.snowman.common.util.IndexedCollisionManagerImpl;
+import com.sun.darkstar.example.snowman.common.util.SingletonRegistry;
 import com.sun.darkstar.example.snowman.common.util.enumn.EWorld;
 import com.sun.darkstar.example.snowman.common.world.World;
 import com.sun.darkstar.example.snowman.data.util.DataManager;
@@ -132,6 +134,11 @@ public class BattleState extends GameState {
 		this.world.setModelBound(new BoundingBox());
 		this.world.updateModelBound();
 		this.world.updateWorldBound();
+		// the static root never changes once loaded, so collision queries
+		// against it are answered from an index of its triangles
+		IndexedCollisionManagerImpl collisionManager = IndexedCollisionManagerImpl.getInstance();
+		collisionManager.index(this.world.getStaticRoot());
+		SingletonRegistry.setCollisionManager(collisionManager);
 		
 
 		Callable<Void> exe = new Callable<Void>() {
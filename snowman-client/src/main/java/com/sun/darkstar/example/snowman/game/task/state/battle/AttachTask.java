@@ -100,7 +100,11 @@ public class AttachTask extends RealTimeTask {
         View flagView = (View) ViewManager.getInstance().getView(flag);
 
         if(this.local) {
-            this.game.getClient().send(ClientMessages.createGetFlagPkt(this.flagID, targetView.getLocalTranslation().x, targetView.getLocalTranslation().z));
+            if (this.game.getClient().isTimestamped()) {
+                this.game.getClient().send(ClientMessages.createGetFlagAtPkt(this.flagID, targetView.getLocalTranslation().x, targetView.getLocalTranslation().z, (int) System.currentTimeMillis()));
+            } else {
+                this.game.getClient().send(ClientMessages.createGetFlagPkt(this.flagID, targetView.getLocalTranslation().x, targetView.getLocalTranslation().z, this.game.getClient().isCompact()));
+            }
         }
         else {
             if (target instanceof CharacterEntity) {
@@ -166,7 +166,11 @@ public class AttackTask extends RealTimeTask {
                     attackerEntity.setTarget(targetEntity);
                     // Step 6.
                     if (this.local) {
-                        this.game.getClient().send(ClientMessages.createAttackPkt(this.targetID, attackerPosition.x, attackerPosition.z));
+                        if (this.game.getClient().isTimestamped()) {
+                            this.game.getClient().send(ClientMessages.createAttackAtPkt(this.targetID, attackerPosition.x, attackerPosition.z, (int) System.currentTimeMillis()));
+                        } else {
+                            this.game.getClient().send(ClientMessages.createAttackPkt(this.targetID, attackerPosition.x, attackerPosition.z, this.game.getClient().isCompact()));
+                        }
                     }
                 } 
             } catch (ObjectNotFoundException e) {
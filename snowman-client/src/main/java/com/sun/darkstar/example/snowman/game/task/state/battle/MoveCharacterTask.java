@@ -193,7 +193,7 @@ public class MoveCharacterTask extends RealTimeTask {
 			try {
 				Spatial view = (Spatial)ViewManager.getInstance().getView(this.character);
 				Vector3f local = view.getLocalTranslation().clone();
-				this.game.getClient().send(ClientMessages.createMoveMePkt(local.x, local.z, click.x, click.z));
+				this.game.getClient().send(ClientMessages.createMoveMePkt(local.x, local.z, click.x, click.z, this.game.getClient().isCompact()));
 				return collisionManager.getDestination(local.x, local.z, click.x, click.z, world.getStaticRoot());
 			} catch (ObjectNotFoundException e) {
 				e.printStackTrace();
@@ -95,7 +95,7 @@ public class ScoreTask extends RealTimeTask {
         
         float distanceSqd = (goalX - x)*(goalX - x) + (goalZ - z)*(goalZ - z);
         if(distanceSqd < EStats.GoalRadius.getValue()*EStats.GoalRadius.getValue())
-            this.game.getClient().send(ClientMessages.createScorePkt(x, z));
+            this.game.getClient().send(ClientMessages.createScorePkt(x, z, this.game.getClient().isCompact()));
     }
 
     @Override
@@ -0,0 +1,430 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.protocol.generator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates the encoders and decoders of the original packet format from
+ * the message schema of the protocol.  Two classes are generated:
+ * <ul>
+ * <li>{@code OriginalFormat} in the messages package, which writes each
+ * message and gives its size, and</li>
+ * <li>{@code OriginalDecoders} in the handlers package, which registers a
+ * decoder for each message in the dispatch tables of
+ * {@code MessageHandlerImpl}.</li>
+ * </ul>
+ * The processor interfaces are not generated, since their documentation
+ * is maintained by hand, but the generated decoders call them so that a
+ * message which does not match its processor method fails to compile.
+ * <p>
+ * This is run by the build of snowman-common as
+ * <pre>
+ * java ProtocolGenerator &lt;schema file&gt; &lt;output directory&gt;
+ * </pre>
+ * See the schema file for its syntax.
+ */
+public class ProtocolGenerator
+{
+    private static final String BASE_PACKAGE = 
+            "com.sun.darkstar.example.snowman.common.protocol";
+    
+    /**
+     * A field of a message.
+     */
+    static class Field {
+        final String type;
+        final String enumType;
+        final String name;
+        
+        Field(String type, String enumType, String name) {
+            this.type = type;
+            this.enumType = enumType;
+            this.name = name;
+        }
+        
+        String javaType() {
+            if (type.equals("enum")) {
+                return enumType;
+            } else if (type.equals("string")) {
+                return "String";
+            }
+            return type;
+        }
+    }
+    
+    /**
+     * A message of the schema.
+     */
+    static class Message {
+        final String sender;
+        final String opcode;
+        final String name;
+        final String method;
+        final List<Field> fields = new ArrayList<Field>();
+        
+        Message(String sender, String opcode, String name, String method) {
+            this.sender = sender;
+            this.opcode = opcode;
+            this.name = name;
+            this.method = method;
+        }
+        
+        boolean isFixedSize() {
+            for (Field field : fields) {
+                if (field.type.equals("string")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        int fixedSize() {
+            return 1 + 4 * fields.size();
+        }
+        
+        String sizeConstant() {
+            return name.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase() + 
+                    "_SIZE";
+        }
+        
+        String parameters(boolean strings) {
+            StringBuilder parameters = new StringBuilder();
+            for (Field field : fields) {
+                if (!strings || field.type.equals("string")) {
+                    parameters.append(", ").append(field.javaType())
+                            .append(' ').append(field.name);
+                }
+            }
+            return parameters.toString();
+        }
+        
+        String arguments() {
+            StringBuilder arguments = new StringBuilder();
+            for (Field field : fields) {
+                if (arguments.length() > 0) {
+                    arguments.append(", ");
+                }
+                arguments.append(field.name);
+            }
+            return arguments.toString();
+        }
+        
+        String describe() {
+            String direction = sender.equals("common") ? "sent both ways" :
+                    "sent by the " + sender;
+            return opcode + " packet " + direction;
+        }
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: ProtocolGenerator <schema file> " +
+                               "<output directory>");
+            System.exit(1);
+        }
+        List<Message> messages = parse(new File(args[0]));
+        File output = new File(args[1]);
+        write(output, "messages", "OriginalFormat", 
+              generateFormat(messages));
+        write(output, "handlers", "OriginalDecoders",
+              generateDecoders(messages));
+    }
+    
+    /**
+     * Parse the messages of a schema file.
+     */
+    static List<Message> parse(File schema) throws IOException {
+        List<Message> messages = new ArrayList<Message>();
+        Set<String> names = new LinkedHashSet<String>();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(schema), "UTF-8"));
+        try {
+            Message message = null;
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+                String[] tokens = line.trim().split("\\s+");
+                if (!Character.isWhitespace(line.charAt(0))) {
+                    if (tokens.length != 4 || 
+                            !tokens[0].matches("server|client|common")) {
+                        throw error(schema, number, "expected <sender> " +
+                                    "<OPCODE> <Name> <processor method>");
+                    }
+                    if (!names.add(tokens[2])) {
+                        throw error(schema, number, 
+                                    "duplicate message " + tokens[2]);
+                    }
+                    message = new Message(tokens[0], tokens[1], tokens[2],
+                                          tokens[3]);
+                    messages.add(message);
+                } else if (message == null) {
+                    throw error(schema, number, "field outside of a message");
+                } else if (tokens.length == 2 && 
+                           tokens[0].matches("int|float|string")) {
+                    message.fields.add(new Field(tokens[0], null, tokens[1]));
+                } else if (tokens.length == 3 && tokens[0].equals("enum")) {
+                    message.fields.add(new Field(tokens[0], tokens[1],
+                                                 tokens[2]));
+                } else {
+                    throw error(schema, number, "expected <type> <name>");
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return messages;
+    }
+    
+    private static IllegalArgumentException error(File schema, int line, 
+                                                  String message) {
+        return new IllegalArgumentException(schema + ":" + line + ": " +
+                                            message);
+    }
+    
+    private static void write(File output, String subpackage, String name,
+                              String source) throws IOException {
+        File directory = new File(output, (BASE_PACKAGE + "." + subpackage)
+                                  .replace('.', File.separatorChar));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        Writer writer = new OutputStreamWriter(
+                new FileOutputStream(new File(directory, name + ".java")),
+                "UTF-8");
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+    }
+    
+    private static Set<String> enumTypes(List<Message> messages) {
+        Set<String> types = new LinkedHashSet<String>();
+        for (Message message : messages) {
+            for (Field field : message.fields) {
+                if (field.enumType != null) {
+                    types.add(field.enumType);
+                }
+            }
+        }
+        return types;
+    }
+    
+    private static void header(StringBuilder out, String subpackage, 
+                               List<Message> messages) {
+        out.append("/*\n")
+           .append(" * Generated from the protocol schema by ProtocolGenerator.\n")
+           .append(" * Do not edit, edit src/main/protocol/snowman.protocol instead.\n")
+           .append(" */\n\n")
+           .append("package ").append(BASE_PACKAGE).append('.')
+           .append(subpackage).append(";\n\n")
+           .append("import java.nio.ByteBuffer;\n");
+        for (String type : enumTypes(messages)) {
+            out.append("import ").append(BASE_PACKAGE).append(".enumn.")
+               .append(type).append(";\n");
+        }
+        out.append("import ").append(BASE_PACKAGE)
+           .append(".enumn.EOPCODE;\n");
+    }
+    
+    /**
+     * Generate the encoders of the messages.
+     */
+    static String generateFormat(List<Message> messages) {
+        StringBuilder out = new StringBuilder();
+        header(out, "messages", messages);
+        out.append("\n/**\n")
+           .append(" * <code>OriginalFormat</code> writes the packets of the original format.\n")
+           .append(" * Each packet is written at the current position of the given buffer.\n")
+           .append(" * @see CompactFormat\n")
+           .append(" */\n")
+           .append("public final class OriginalFormat\n{\n")
+           .append("    private OriginalFormat() {}\n");
+        for (Message message : messages) {
+            out.append("    \n");
+            if (message.isFixedSize()) {
+                out.append("    /**\n")
+                   .append("     * The size of the ").append(message.describe())
+                   .append(".\n")
+                   .append("     */\n")
+                   .append("    public static final int ")
+                   .append(message.sizeConstant()).append(" = ")
+                   .append(message.fixedSize()).append(";\n");
+            } else {
+                out.append("    /**\n")
+                   .append("     * Compute the size of the ")
+                   .append(message.describe()).append(".\n")
+                   .append("     */\n")
+                   .append("    public static int sizeOf").append(message.name)
+                   .append('(').append(message.parameters(true).substring(2))
+                   .append(") {\n")
+                   .append("        return ").append(message.fixedSize());
+                for (Field field : message.fields) {
+                    if (field.type.equals("string")) {
+                        out.append(" + Messages.getUTF8Length(")
+                           .append(field.name).append(')');
+                    }
+                }
+                out.append(";\n    }\n");
+            }
+            out.append("    \n")
+               .append("    /**\n")
+               .append("     * Write the ").append(message.describe())
+               .append(".\n")
+               .append("     */\n")
+               .append("    public static ByteBuffer write").append(message.name)
+               .append("(ByteBuffer buffer").append(message.parameters(false))
+               .append(") {\n")
+               .append("        buffer.put((byte) EOPCODE.")
+               .append(message.opcode).append(".ordinal());\n");
+            for (Field field : message.fields) {
+                if (field.type.equals("int")) {
+                    out.append("        buffer.putInt(").append(field.name)
+                       .append(");\n");
+                } else if (field.type.equals("float")) {
+                    out.append("        buffer.putFloat(").append(field.name)
+                       .append(");\n");
+                } else if (field.type.equals("enum")) {
+                    out.append("        buffer.putInt(").append(field.name)
+                       .append(".ordinal());\n");
+                } else {
+                    out.append("        buffer.putInt(Messages.getUTF8Length(")
+                       .append(field.name).append("));\n")
+                       .append("        Messages.putUTF8(buffer, ")
+                       .append(field.name).append(");\n");
+                }
+            }
+            out.append("        return buffer;\n    }\n");
+        }
+        out.append("}\n");
+        return out.toString();
+    }
+    
+    /**
+     * Generate the decoders of the messages.
+     */
+    static String generateDecoders(List<Message> messages) {
+        StringBuilder out = new StringBuilder();
+        header(out, "handlers", messages);
+        out.append("import ").append(BASE_PACKAGE)
+           .append(".messages.Messages;\n")
+           .append("import ").append(BASE_PACKAGE)
+           .append(".processor.IClientProcessor;\n")
+           .append("import ").append(BASE_PACKAGE)
+           .append(".processor.IServerProcessor;\n")
+           .append("\n/**\n")
+           .append(" * Decoders of the packets of the original format.\n")
+           .append(" */\n")
+           .append("final class OriginalDecoders\n{\n");
+        for (String type : enumTypes(messages)) {
+            out.append("    private static final ").append(type)
+               .append("[] ").append(type).append("_VALUES = ")
+               .append(type).append(".values();\n");
+        }
+        out.append("    \n")
+           .append("    private OriginalDecoders() {}\n")
+           .append("    \n")
+           .append("    /**\n")
+           .append("     * Register the decoders of the packets received by clients\n")
+           .append("     * and by the server in the given tables, indexed by opcode.\n")
+           .append("     */\n")
+           .append("    static void register(PacketDecoder<IClientProcessor>[] client,\n")
+           .append("                         PacketDecoder<IServerProcessor>[] server) {\n");
+        for (Message message : messages) {
+            if (!message.sender.equals("client")) {
+                decoder(out, message, "client", "IClientProcessor");
+            }
+            if (!message.sender.equals("server")) {
+                decoder(out, message, "server", "IServerProcessor");
+            }
+        }
+        out.append("    }\n}\n");
+        return out.toString();
+    }
+    
+    private static void decoder(StringBuilder out, Message message, 
+                                String table, String processor) {
+        out.append("        ").append(table).append("[EOPCODE.")
+           .append(message.opcode).append(".ordinal()] = new PacketDecoder<")
+           .append(processor).append(">(EOPCODE.").append(message.opcode)
+           .append(", false) {\n")
+           .append("            void decode(MessageHandlerImpl handler, ByteBuffer packet, ")
+           .append(processor).append(" unit) {\n");
+        for (Field field : message.fields) {
+            out.append("                ").append(field.javaType()).append(' ')
+               .append(field.name).append(" = ");
+            if (field.type.equals("int")) {
+                out.append("packet.getInt()");
+            } else if (field.type.equals("float")) {
+                out.append("packet.getFloat()");
+            } else if (field.type.equals("enum")) {
+                out.append(field.enumType).append("_VALUES[packet.getInt()]");
+            } else {
+                out.append("Messages.getUTF8(packet, packet.getInt())");
+            }
+            out.append(";\n");
+        }
+        String arguments = message.arguments();
+        out.append("                if (handler.tracing()) {\n")
+           .append("                    handler.trace(this")
+           .append(arguments.length() > 0 ? ", " + arguments : "")
+           .append(");\n")
+           .append("                }\n")
+           .append("                unit.").append(message.method).append('(')
+           .append(arguments).append(");\n")
+           .append("            }\n")
+           .append("        };\n");
+    }
+}
@@ -41,7 +41,7 @@ package com.sun.darkstar.example.snowman.common.protocol.enumn;
  * @author Jeffrey Kesselman
  * @author Owen Kellett
  * @version Creation date: 05-29-08 12:15 EST
- * @version Modified date: 11-19-08 10:40 EST
+ * @version Modified date: 10-18-2026 23:00 EST
  */
 public enum EOPCODE {
     /**
@@ -55,5 +55,29 @@ public enum EOPCODE {
     /**
      * Common opcodes.
      */
-    READY, CHAT
+    READY, CHAT,
+    /**
+     * Server to client opcodes added after the original protocol.
+     */
+    GAMESTATE,
+    /**
+     * Common opcodes added after the original protocol.
+     */
+    PROTOCOL,
+    /**
+     * Server to client opcodes added with the envelope protocol.
+     */
+    ENVELOPE,
+    /**
+     * Server to client opcodes added with the sequenced protocol.
+     */
+    SEQUENCED,
+    /**
+     * Client to server opcodes added with the timestamped protocol.
+     */
+    ATTACKAT, GETFLAGAT,
+    /**
+     * Opcodes sent both ways added with the synchronized protocol.
+     */
+    PING, PONG
 }
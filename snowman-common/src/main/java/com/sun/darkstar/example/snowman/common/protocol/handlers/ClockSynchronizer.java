@@ -0,0 +1,246 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.protocol.handlers;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * <code>ClockSynchronizer</code> estimates the round trip time to the
+ * other side of a connection and the offset of its clock from PING and
+ * PONG exchanges, in the manner of NTP.
+ * <p>
+ * A PING carries the local time at which it was sent, and the PONG
+ * answering it echoes that time along with the remote time at which it
+ * was answered.  The round trip time is the time between sending the PING
+ * and receiving the PONG, and the remote clock is assumed to have been
+ * read halfway through it.  Both estimates are smoothed over the samples
+ * so that a single delayed packet does not throw them off.
+ * <p>
+ * Times are exchanged as the low 32 bits of the millisecond clocks and
+ * compared with int arithmetic, so that they may wrap around.  A
+ * <code>ClockSynchronizer</code> is not thread safe.
+ * 
+ * @version Creation date: 10-18-2026 23:00 EST
+ */
+public class ClockSynchronizer implements Serializable {
+    /**
+     * The version of the serialized form.
+     */
+    public static final long serialVersionUID = 1L;
+    /**
+     * The default time in milliseconds between two PING packets.
+     */
+    public static final long PING_INTERVAL = 5000;
+    /**
+     * The weight of a new sample in the smoothed estimates.
+     */
+    private static final float GAIN = 0.125f;
+    /**
+     * The weight of the offset of a sample measured over a round trip
+     * faster than the smoothed one, which is more accurate.
+     */
+    private static final float FAST_GAIN = 0.5f;
+    
+    /**
+     * The time in milliseconds between two PING packets.
+     */
+    private final long interval;
+    /**
+     * The local time at which the last PING was sent, if any.
+     */
+    private long lastPing;
+    /**
+     * Whether a PING was sent since the last reset.
+     */
+    private boolean pinged;
+    /**
+     * The number of PONG packets sampled since the last reset.
+     */
+    private int samples;
+    /**
+     * The smoothed round trip time in milliseconds.
+     */
+    private float roundTripTime;
+    /**
+     * The smoothed offset in milliseconds of the remote clock from the
+     * local clock.  Clocks started at different times are billions of
+     * milliseconds apart, which a float cannot hold to the millisecond.
+     */
+    private double offset;
+    
+    /**
+     * Constructor of <code>ClockSynchronizer</code> sending a PING every
+     * {@link #PING_INTERVAL} milliseconds.
+     */
+    public ClockSynchronizer() {
+        this(PING_INTERVAL);
+    }
+    
+    /**
+     * Constructor of <code>ClockSynchronizer</code>.
+     * @param interval The time in milliseconds between two PING packets.
+     */
+    public ClockSynchronizer(long interval) {
+        this.interval = interval;
+    }
+    
+    /**
+     * Check whether a PING should be sent, which is the case if none was
+     * sent yet or if the last one is older than the interval.
+     * @param now The current local time.
+     * @return True if a PING should be sent.
+     */
+    public boolean isPingDue(long now) {
+        return !this.pinged || now - this.lastPing >= this.interval;
+    }
+    
+    /**
+     * Record that a PING is sent.
+     * @param now The current local time.
+     * @return The time to send in the PING packet.
+     */
+    public int ping(long now) {
+        this.pinged = true;
+        this.lastPing = now;
+        return (int) now;
+    }
+    
+    /**
+     * Update the estimates with the PONG answering one of the PING packets.
+     * A PONG echoing a time later than the current time is ignored.
+     * @param echo The time echoed by the PONG packet.
+     * @param time The remote time carried by the PONG packet.
+     * @param now The current local time.
+     */
+    public void pong(int echo, int time, long now) {
+        int rtt = (int) now - echo;
+        if (rtt < 0) {
+            return;
+        }
+        double sampleOffset = (time - echo) - rtt / 2.0;
+        if (this.samples == 0) {
+            this.roundTripTime = rtt;
+            this.offset = sampleOffset;
+        } else {
+            float gain = rtt < this.roundTripTime ? FAST_GAIN : GAIN;
+            this.offset += gain * (sampleOffset - this.offset);
+            this.roundTripTime += GAIN * (rtt - this.roundTripTime);
+        }
+        if (this.samples < Integer.MAX_VALUE) {
+            this.samples++;
+        }
+    }
+    
+    /**
+     * Check whether the estimates are available, which is the case once
+     * a PONG has been sampled.
+     * @return True if at least one PONG has been sampled.
+     */
+    public boolean isSynchronized() {
+        return this.samples > 0;
+    }
+    
+    /**
+     * Retrieve the smoothed round trip time.
+     * @return The round trip time in milliseconds, or zero if no PONG has
+     * been sampled.
+     */
+    public float getRoundTripTime() {
+        return this.roundTripTime;
+    }
+    
+    /**
+     * Retrieve the smoothed offset of the remote clock, which is added to
+     * a local time to get the corresponding remote time.
+     * @return The offset in milliseconds, or zero if no PONG has been
+     * sampled.
+     */
+    public double getOffset() {
+        return this.offset;
+    }
+    
+    /**
+     * Convert a time of the remote clock to the local clock.
+     * @param remoteTime The remote time, truncated to an int.
+     * @param now The current local time, which must be within about 24
+     * days of the converted time.
+     * @return The corresponding local time.
+     */
+    public long toLocalTime(int remoteTime, long now) {
+        return now + (remoteTime - (int) Math.round(this.offset) - (int) now);
+    }
+    
+    /**
+     * Forget all of the samples, which is done when a new session is
+     * established.
+     */
+    public void reset() {
+        this.pinged = false;
+        this.samples = 0;
+        this.roundTripTime = 0;
+        this.offset = 0;
+    }
+    
+    /**
+     * Write the measurements in a compact form, for the owner of the
+     * <code>ClockSynchronizer</code> to include in its own serialized
+     * form.  The PING interval is not written.
+     * @param out The <code>DataOutput</code> to write to.
+     * @throws IOException If the measurements cannot be written.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(this.lastPing);
+        out.writeBoolean(this.pinged);
+        out.writeInt(this.samples);
+        out.writeFloat(this.roundTripTime);
+        out.writeDouble(this.offset);
+    }
+    
+    /**
+     * Read back the measurements written by {@link #writeTo(DataOutput)}.
+     * @param in The <code>DataInput</code> to read from.
+     * @throws IOException If the measurements cannot be read.
+     */
+    public void readFrom(DataInput in) throws IOException {
+        this.lastPing = in.readLong();
+        this.pinged = in.readBoolean();
+        this.samples = in.readInt();
+        this.roundTripTime = in.readFloat();
+        this.offset = in.readDouble();
+    }
+}
@@ -31,7 +31,6 @@
  * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  *
  */
-
 package com.sun.darkstar.example.snowman.common.protocol.handlers;
 
 import java.nio.ByteBuffer;
@@ -41,12 +40,24 @@ import com.sun.darkstar.example.snowman.common.protocol.enumn.EMOBType;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.EEndState;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.EOPCODE;
+import com.sun.darkstar.example.snowman.common.protocol.messages.CompactFormat;
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
 import com.sun.darkstar.example.snowman.common.protocol.processor.IProtocolProcessor;
 import com.sun.darkstar.example.snowman.common.protocol.processor.IClientProcessor;
 import com.sun.darkstar.example.snowman.common.protocol.processor.IServerProcessor;
 
 /**
  * Default implementation of the <code>MessageHandler</code> interface.
+ * <p>
+ * Packets are dispatched through tables, indexed by opcode, of decoders
+ * which each read the payload of one kind of packet and invoke the
+ * corresponding processor method.  There is a table for each direction
+ * and packet format.  Decoding does not allocate beyond the strings of
+ * the packets, unless the packets are traced at <code>FINEST</code> level.
+ * <p>
+ * The decoders of the original format are generated from the protocol
+ * schema into <code>OriginalDecoders</code>; the compact, game state,
+ * envelope and sequenced decoders are written here.
  * 
  * @author Yi Wang (Neakor)
  * @author Jeffrey Kesselman
@@ -68,16 +79,44 @@ public class MessageHandlerImpl implements MessageHandler
      */
     protected final Logger logger = Logger.getLogger(MessageHandlerImpl.class.toString());
     
+    /**
+     * The opcodes, enumerations and decoder tables, indexed by ordinal.
+     */
+    private static final EOPCODE[] OPCODES = EOPCODE.values();
+    private static final EEndState[] END_STATES = EEndState.values();
+    private static final EMOBType[] MOB_TYPES = EMOBType.values();
+    private static final ETeamColor[] TEAM_COLORS = ETeamColor.values();
+    private static final PacketDecoder<IClientProcessor>[] CLIENT_DECODERS = table();
+    private static final PacketDecoder<IServerProcessor>[] SERVER_DECODERS = table();
+    private static final PacketDecoder<IClientProcessor>[] COMPACT_CLIENT_DECODERS = table();
+    private static final PacketDecoder<IServerProcessor>[] COMPACT_SERVER_DECODERS = table();
+    
     /* {@inheritDoc} */
     public void parseClientPacket(ByteBuffer packet, IClientProcessor processor) {
-        EOPCODE code = this.getOpCode(packet);
-        this.parseClientPacket(code, packet, processor);
+        byte opbyte = packet.get();
+        EOPCODE code = this.getOpCode(opbyte);
+        if (code == null) {
+            return;
+        }
+        if (this.isCompact(opbyte)) {
+            this.parseCompactClientPacket(code, packet, processor);
+        } else {
+            this.parseClientPacket(code, packet, processor);
+        }
     }
     
     /* {@inheritDoc} */
     public void parseServerPacket(ByteBuffer packet, IServerProcessor processor) {
-        EOPCODE code = this.getOpCode(packet);
-        this.parseServerPacket(code, packet, processor);
+        byte opbyte = packet.get();
+        EOPCODE code = this.getOpCode(opbyte);
+        if (code == null) {
+            return;
+        }
+        if (this.isCompact(opbyte)) {
+            this.parseCompactServerPacket(code, packet, processor);
+        } else {
+            this.parseServerPacket(code, packet, processor);
+        }
     }
     
     /**
@@ -90,113 +129,7 @@ public class MessageHandlerImpl implements MessageHandler
      * @param unit processing unit to receive and process the data
      */
     protected void parseClientPacket(EOPCODE code, ByteBuffer packet, IClientProcessor unit) {
-        switch (code) {
-            case NEWGAME:
-                int myID = packet.getInt();
-                byte[] mapname = new byte[packet.getInt()];
-                packet.get(mapname);
-                String mapString = new String(mapname);
-                logger.log(Level.FINEST, "Processing {0} packet : {1}, {2}", new Object[]{code, myID, mapString});
-                unit.newGame(myID, mapString);
-                break;
-            case STARTGAME:
-                unit.startGame();
-                logger.log(Level.FINEST, "Processing {0} packet ", code);
-                break;
-            case ENDGAME:
-                EEndState endState = EEndState.values()[packet.getInt()];
-                logger.log(Level.FINEST, "Processing {0} packet : {1}", new Object[]{code, endState});
-                unit.endGame(endState);
-                break;
-            case ADDMOB:
-                int addId = packet.getInt();
-                float addX = packet.getFloat();
-                float addY = packet.getFloat();
-                EMOBType addType = EMOBType.values()[packet.getInt()];
-                ETeamColor addColor = ETeamColor.values()[packet.getInt()];
-                byte[] mobNameBytes = new byte[packet.getInt()];
-                packet.get(mobNameBytes);
-                String mobName = new String(mobNameBytes);
-                logger.log(Level.FINEST, "Processing {0} packet : {1}, {2}, {3}, {4}, {5}, {6}", 
-                           new Object[]{code, addId, addX, addY, addType, addColor, mobNameBytes});
-                unit.addMOB(addId,
-                            addX,
-                            addY,
-                            addType,
-                            addColor,
-                            mobName);
-                break;
-            case REMOVEMOB:
-                int removeId = packet.getInt();
-                logger.log(Level.FINEST, "Processing {0} packet : {1}", new Object[]{code, removeId});
-                unit.removeMOB(removeId);
-                break;
-            case MOVEMOB:
-                int moveId = packet.getInt();
-                float moveStartX = packet.getFloat();
-                float moveStartY = packet.getFloat();
-                float moveEndX = packet.getFloat();
-                float moveEndY = packet.getFloat();
-                logger.log(Level.FINEST, "Processing {0} packet : {1}, {2}, {3}, {4}, {5}",
-                           new Object[]{code, moveId, moveStartX, moveStartY, moveEndX, moveEndY});
-                unit.moveMOB(moveId,
-                             moveStartX,
-                             moveStartY,
-                             moveEndX,
-                             moveEndY);
-                break;
-            case STOPMOB:
-                int stopId = packet.getInt();
-                float stopX = packet.getFloat();
-                float stopY = packet.getFloat();
-                logger.log(Level.FINEST, "Processing {0} packet : {1}, {2}, {3}",
-                           new Object[]{code, stopId, stopX, stopY});
-                unit.stopMOB(stopId,
-                             stopX,
-                             stopY);
-                break;
-            case ATTACHOBJ:
-                int attachId1 = packet.getInt();
-                int attachId2 = packet.getInt();
-                logger.log(Level.FINEST, "Processing {0} packet : {1}, {2}",
-                           new Object[]{code, attachId1, attachId2});
-                unit.attachObject(attachId1,
-                                  attachId2);
-                break;
-            case ATTACKED:
-                int attackId = packet.getInt();
-                int attackTarget = packet.getInt();
-                int attackHp = packet.getInt();
-                logger.log(Level.FINEST, "Processing {0} packet : {1}, {2}, {3}",
-                           new Object[]{code, attackId, attackTarget, attackHp});
-                unit.attacked(attackId,
-                              attackTarget,
-                              attackHp);
-                break;
-            case RESPAWN:
-                int respawnId = packet.getInt();
-                float respawnX = packet.getFloat();
-                float respawnY = packet.getFloat();
-                logger.log(Level.FINEST, "Processing {0} packet : {1}, {2}, {3}",
-                           new Object[]{code, respawnId, respawnX, respawnY});
-                unit.respawn(respawnId,
-                             respawnX,
-                             respawnY);
-                break;
-            case CHAT:
-                int sourceID = packet.getInt();
-                byte[] messageBytes = new byte[packet.getInt()];
-                packet.get(messageBytes);
-                String message = new String(messageBytes);
-                logger.log(Level.FINEST, "Processing {0} packet : {1}, {2}",
-                           new Object[]{code, sourceID, message});
-                unit.chatMessage(sourceID,
-                                 message);
-            	break;
-            default:
-                //divert to common parser
-                this.parseCommonPacket(code, packet, unit);
-        }
+        this.decode(CLIENT_DECODERS, code, packet, unit);
     }
     
     /**
@@ -209,94 +142,294 @@ public class MessageHandlerImpl implements MessageHandler
      * @param unit processing unit to receive and process the data
      */
     protected void parseServerPacket(EOPCODE code, ByteBuffer packet, IServerProcessor unit) {
-        switch (code) {
-            case MOVEME:
-                float moveStartX = packet.getFloat();
-                float moveStartY = packet.getFloat();
-                float moveEndX = packet.getFloat();
-                float moveEndY = packet.getFloat();
-                logger.log(Level.FINEST, "Processing {0} packet : {1}, {2}, {3}, {4}",
-                           new Object[]{code, moveStartX, moveStartY, moveEndX, moveEndY});
-                unit.moveMe(moveStartX,
-                            moveStartY,
-                            moveEndX,
-                            moveEndY);
-                break;
-            case ATTACK:
-                int attackId = packet.getInt();
-                float attackX = packet.getFloat();
-                float attackY = packet.getFloat();
-                logger.log(Level.FINEST, "Processing {0} packet : {1}, {2}, {3}",
-                           new Object[]{code, attackId, attackX, attackY});
-                unit.attack(attackId,
-                            attackX,
-                            attackY);
-                break;
-            case GETFLAG:
-                int getflagId = packet.getInt();
-                float getflagX = packet.getFloat();
-                float getflagY = packet.getFloat();
-                logger.log(Level.FINEST, "Processing {0} packet : {1}, {2}, {3}",
-                           new Object[]{code, getflagId, getflagX, getflagY});
-                unit.getFlag(getflagId,
-                             getflagX,
-                             getflagY);
-                break;
-            case SCORE:
-                float scoreX = packet.getFloat();
-                float scoreY = packet.getFloat();
-                logger.log(Level.FINEST, "Processing {0} packet : {1}, {2}",
-                           new Object[]{code, scoreX, scoreY});
-                unit.score(scoreX,
-                           scoreY);
-                break;
-            case CHAT:
-                byte[] messageBytes = new byte[packet.getInt()];
-                packet.get(messageBytes);
-                String message = new String(messageBytes);
-                logger.log(Level.FINEST, "Processing {0} packet : {1}",
-                           new Object[]{code, message});
-                unit.chatMessage(message);
-            	break;
-            default:
-                //divert to common parser
-                this.parseCommonPacket(code, packet, unit);
-        }
+        this.decode(SERVER_DECODERS, code, packet, unit);
     }
     
+    /**
+     * Parses the given compact packet with the given opcode and hands off
+     * the data to the appropriate IClientProcessor method.
+     * 
+     * @param code opcode of the packet
+     * @param packet data packet with the read head at the start of the payload
+     * @param unit processing unit to receive and process the data
+     * @see CompactFormat
+     */
+    protected void parseCompactClientPacket(EOPCODE code, ByteBuffer packet, IClientProcessor unit) {
+        this.decode(COMPACT_CLIENT_DECODERS, code, packet, unit);
+    }
     
     /**
-     * Parse the given <code>ByteBuffer</code> packet then invoke the corresponding
-     * method in given <code>ProtocolProcessor</code>.
-     * @param packet The <code>ByteBuffer</code> packet to be parsed.
-     * @param processor The <code>ProtocolProcessor</code> to be invoked.
+     * Parses the given compact packet with the given opcode and hands off
+     * the data to the appropriate IServerProcessor method.
+     * 
+     * @param code opcode of the packet
+     * @param packet data packet with the read head at the start of the payload
+     * @param unit processing unit to receive and process the data
+     * @see CompactFormat
      */
-    private void parseCommonPacket(EOPCODE code, ByteBuffer packet, IProtocolProcessor processor) {
-        // Parse common code.
-        switch (code) {
-            case READY:
-                logger.log(Level.FINEST, "Processing {0} packet", code);
-                processor.ready();
-                break;
-            default:
+    protected void parseCompactServerPacket(EOPCODE code, ByteBuffer packet, IServerProcessor unit) {
+        this.decode(COMPACT_SERVER_DECODERS, code, packet, unit);
+    }
+    
+    /**
+     * Decode a packet with the decoder of its opcode from the given table.
+     */
+    private <P extends IProtocolProcessor> void decode(PacketDecoder<P>[] decoders, EOPCODE code, ByteBuffer packet, P unit) {
+        PacketDecoder<P> decoder = decoders[code.ordinal()];
+        if (decoder == null) {
+            if (decoders == COMPACT_CLIENT_DECODERS || decoders == COMPACT_SERVER_DECODERS) {
+                this.logger.warning("Unsupported compact OPCODE: " + code.toString());
+            } else {
                 this.logger.warning("Unsupported OPCODE: " + code.toString());
+            }
+            return;
         }
+        decoder.decode(this, packet, unit);
     }
     
     /**
-     * Get the OPCODE from the packet
-     * @param packet
-     * @return
+     * Whether the given opcode byte is the opcode of a compact packet
+     * @param opbyte the first byte of the packet
+     * @return true if the packet uses the compact format
      */
-    private EOPCODE getOpCode(ByteBuffer packet) 
+    private boolean isCompact(byte opbyte) {
+        return (opbyte & CompactFormat.FLAG) != 0;
+    }
+    
+    /**
+     * Get the OPCODE from the opcode byte of a packet
+     * @param opbyte the first byte of the packet
+     * @return the opcode, or null if the byte is not a known opcode
+     */
+    private EOPCODE getOpCode(byte opbyte) 
     {
-        byte opbyte = packet.get();
-        if ((opbyte < 0) || (opbyte > EOPCODE.values().length - 1)) {
+        int op = opbyte & 0xff & ~CompactFormat.FLAG;
+        if (op >= OPCODES.length) {
             this.logger.severe("Unknown op value: " + opbyte);
             return null;
         }
-        EOPCODE code = EOPCODE.values()[opbyte];
+        return OPCODES[op];
+    }
+    
+    /**
+     * Whether decoded packets are traced.  Callers check this before
+     * building the trace parameters.
+     */
+    boolean tracing() {
+        return this.logger.isLoggable(Level.FINEST);
+    }
+    
+    /**
+     * Trace a decoded packet and its values.
+     */
+    void trace(PacketDecoder<?> decoder, Object... values) {
+        StringBuilder message = new StringBuilder("Processing ");
+        if (decoder.compact) {
+            message.append("compact ");
+        }
+        message.append(decoder.code).append(" packet");
+        for (int i = 0; i < values.length; i++) {
+            message.append(i == 0 ? " : " : ", ").append(values[i]);
+        }
+        this.logger.log(Level.FINEST, message.toString());
+    }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <P extends IProtocolProcessor> PacketDecoder<P>[] table() {
+        return new PacketDecoder[EOPCODE.values().length];
+    }
+    
+    static {
+        OriginalDecoders.register(CLIENT_DECODERS, SERVER_DECODERS);
+        
+        CLIENT_DECODERS[EOPCODE.GAMESTATE.ordinal()] = new PacketDecoder<IClientProcessor>(EOPCODE.GAMESTATE, false) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IClientProcessor unit) {
+                int updates = packet.getInt();
+                if (handler.tracing()) {
+                    handler.trace(this, updates);
+                }
+                for (int i = 0; i < updates; i++) {
+                    byte opbyte = packet.get();
+                    EOPCODE update = handler.getOpCode(opbyte);
+                    if (update != EOPCODE.MOVEMOB && update != EOPCODE.STOPMOB) {
+                        handler.logger.warning("Unsupported game state OPCODE: " + update);
+                        break;
+                    }
+                    if (handler.isCompact(opbyte)) {
+                        handler.parseCompactClientPacket(update, packet, unit);
+                    } else {
+                        handler.parseClientPacket(update, packet, unit);
+                    }
+                }
+            }
+        };
+        CLIENT_DECODERS[EOPCODE.SEQUENCED.ordinal()] = new PacketDecoder<IClientProcessor>(EOPCODE.SEQUENCED, false) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IClientProcessor unit) {
+                int sourceID = packet.getInt();
+                int sequence = packet.getInt();
+                if (handler.tracing()) {
+                    handler.trace(this, sourceID, sequence);
+                }
+                if (unit.sequenced(sourceID, sequence)) {
+                    handler.parseClientPacket(packet, unit);
+                }
+            }
+        };
+        CLIENT_DECODERS[EOPCODE.ENVELOPE.ordinal()] = new PacketDecoder<IClientProcessor>(EOPCODE.ENVELOPE, false) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IClientProcessor unit) {
+                int messages = packet.getInt();
+                if (handler.tracing()) {
+                    handler.trace(this, messages);
+                }
+                int limit = packet.limit();
+                for (int i = 0; i < messages; i++) {
+                    int length = CompactFormat.getVarInt(packet);
+                    int end = packet.position() + length;
+                    packet.limit(end);
+                    try {
+                        handler.parseClientPacket(packet, unit);
+                    } finally {
+                        packet.limit(limit);
+                    }
+                    packet.position(end);
+                }
+            }
+        };
+        
+        COMPACT_CLIENT_DECODERS[EOPCODE.ENDGAME.ordinal()] = new PacketDecoder<IClientProcessor>(EOPCODE.ENDGAME, true) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IClientProcessor unit) {
+                EEndState endState = END_STATES[packet.get()];
+                if (handler.tracing()) {
+                    handler.trace(this, endState);
+                }
+                unit.endGame(endState);
+            }
+        };
+        COMPACT_CLIENT_DECODERS[EOPCODE.ADDMOB.ordinal()] = new PacketDecoder<IClientProcessor>(EOPCODE.ADDMOB, true) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IClientProcessor unit) {
+                int id = CompactFormat.getVarInt(packet);
+                float x = CompactFormat.getX(packet);
+                float y = CompactFormat.getY(packet);
+                int types = packet.get();
+                EMOBType type = MOB_TYPES[(types >> 4) & 0x0f];
+                ETeamColor color = TEAM_COLORS[types & 0x0f];
+                String name = Messages.getUTF8(packet, CompactFormat.getVarInt(packet));
+                if (handler.tracing()) {
+                    handler.trace(this, id, x, y, type, color, name);
+                }
+                unit.addMOB(id, x, y, type, color, name);
+            }
+        };
+        COMPACT_CLIENT_DECODERS[EOPCODE.REMOVEMOB.ordinal()] = new PacketDecoder<IClientProcessor>(EOPCODE.REMOVEMOB, true) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IClientProcessor unit) {
+                int id = CompactFormat.getVarInt(packet);
+                if (handler.tracing()) {
+                    handler.trace(this, id);
+                }
+                unit.removeMOB(id);
+            }
+        };
+        COMPACT_CLIENT_DECODERS[EOPCODE.MOVEMOB.ordinal()] = new PacketDecoder<IClientProcessor>(EOPCODE.MOVEMOB, true) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IClientProcessor unit) {
+                int id = CompactFormat.getVarInt(packet);
+                float startX = CompactFormat.getX(packet);
+                float startY = CompactFormat.getY(packet);
+                float endX = CompactFormat.getX(packet);
+                float endY = CompactFormat.getY(packet);
+                if (handler.tracing()) {
+                    handler.trace(this, id, startX, startY, endX, endY);
+                }
+                unit.moveMOB(id, startX, startY, endX, endY);
+            }
+        };
+        COMPACT_CLIENT_DECODERS[EOPCODE.STOPMOB.ordinal()] = new PacketDecoder<IClientProcessor>(EOPCODE.STOPMOB, true) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IClientProcessor unit) {
+                int id = CompactFormat.getVarInt(packet);
+                float x = CompactFormat.getX(packet);
+                float y = CompactFormat.getY(packet);
+                if (handler.tracing()) {
+                    handler.trace(this, id, x, y);
+                }
+                unit.stopMOB(id, x, y);
+            }
+        };
+        COMPACT_CLIENT_DECODERS[EOPCODE.ATTACHOBJ.ordinal()] = new PacketDecoder<IClientProcessor>(EOPCODE.ATTACHOBJ, true) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IClientProcessor unit) {
+                int sourceID = CompactFormat.getVarInt(packet);
+                int targetID = CompactFormat.getVarInt(packet);
+                if (handler.tracing()) {
+                    handler.trace(this, sourceID, targetID);
+                }
+                unit.attachObject(sourceID, targetID);
+            }
+        };
+        COMPACT_CLIENT_DECODERS[EOPCODE.ATTACKED.ordinal()] = new PacketDecoder<IClientProcessor>(EOPCODE.ATTACKED, true) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IClientProcessor unit) {
+                int sourceID = CompactFormat.getVarInt(packet);
+                int targetID = CompactFormat.getVarInt(packet);
+                int hp = CompactFormat.getVarInt(packet);
+                if (handler.tracing()) {
+                    handler.trace(this, sourceID, targetID, hp);
+                }
+                unit.attacked(sourceID, targetID, hp);
+            }
+        };
+        COMPACT_CLIENT_DECODERS[EOPCODE.RESPAWN.ordinal()] = new PacketDecoder<IClientProcessor>(EOPCODE.RESPAWN, true) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IClientProcessor unit) {
+                int id = CompactFormat.getVarInt(packet);
+                float x = CompactFormat.getX(packet);
+                float y = CompactFormat.getY(packet);
+                if (handler.tracing()) {
+                    handler.trace(this, id, x, y);
+                }
+                unit.respawn(id, x, y);
+            }
+        };
+        
         
-        return code;
+        COMPACT_SERVER_DECODERS[EOPCODE.MOVEME.ordinal()] = new PacketDecoder<IServerProcessor>(EOPCODE.MOVEME, true) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IServerProcessor unit) {
+                float startX = CompactFormat.getX(packet);
+                float startY = CompactFormat.getY(packet);
+                float endX = CompactFormat.getX(packet);
+                float endY = CompactFormat.getY(packet);
+                if (handler.tracing()) {
+                    handler.trace(this, startX, startY, endX, endY);
+                }
+                unit.moveMe(startX, startY, endX, endY);
+            }
+        };
+        COMPACT_SERVER_DECODERS[EOPCODE.ATTACK.ordinal()] = new PacketDecoder<IServerProcessor>(EOPCODE.ATTACK, true) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IServerProcessor unit) {
+                int targetID = CompactFormat.getVarInt(packet);
+                float x = CompactFormat.getX(packet);
+                float y = CompactFormat.getY(packet);
+                if (handler.tracing()) {
+                    handler.trace(this, targetID, x, y);
+                }
+                unit.attack(targetID, x, y);
+            }
+        };
+        COMPACT_SERVER_DECODERS[EOPCODE.GETFLAG.ordinal()] = new PacketDecoder<IServerProcessor>(EOPCODE.GETFLAG, true) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IServerProcessor unit) {
+                int flagID = CompactFormat.getVarInt(packet);
+                float x = CompactFormat.getX(packet);
+                float y = CompactFormat.getY(packet);
+                if (handler.tracing()) {
+                    handler.trace(this, flagID, x, y);
+                }
+                unit.getFlag(flagID, x, y);
+            }
+        };
+        COMPACT_SERVER_DECODERS[EOPCODE.SCORE.ordinal()] = new PacketDecoder<IServerProcessor>(EOPCODE.SCORE, true) {
+            void decode(MessageHandlerImpl handler, ByteBuffer packet, IServerProcessor unit) {
+                float x = CompactFormat.getX(packet);
+                float y = CompactFormat.getY(packet);
+                if (handler.tracing()) {
+                    handler.trace(this, x, y);
+                }
+                unit.score(x, y);
+            }
+        };
     }
 }
@@ -0,0 +1,71 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.protocol.handlers;
+
+import java.nio.ByteBuffer;
+import com.sun.darkstar.example.snowman.common.protocol.enumn.EOPCODE;
+import com.sun.darkstar.example.snowman.common.protocol.processor.IProtocolProcessor;
+
+/**
+ * Decodes the payload of one kind of packet and invokes the corresponding
+ * processor method.  <code>MessageHandlerImpl</code> dispatches packets to
+ * tables of decoders indexed by opcode.
+ * 
+ * @param <P> the type of processor receiving the decoded values
+ */
+abstract class PacketDecoder<P extends IProtocolProcessor>
+{
+    /**
+     * The opcode of the decoded packets.
+     */
+    final EOPCODE code;
+    /**
+     * Whether the decoded packets use the compact format.
+     */
+    final boolean compact;
+    
+    PacketDecoder(EOPCODE code, boolean compact) {
+        this.code = code;
+        this.compact = compact;
+    }
+    
+    /**
+     * Decode the packet and hand off its values to the processor.
+     * @param handler the handler, used for tracing and nested packets
+     * @param packet data packet with the read head at the start of the payload
+     * @param unit processing unit to receive and process the data
+     */
+    abstract void decode(MessageHandlerImpl handler, ByteBuffer packet, P unit);
+}
@@ -0,0 +1,82 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.protocol.handlers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <code>SequenceFilter</code> keeps track of the latest sequence number
+ * received from each source of SEQUENCED packets, so that a client can
+ * drop movement messages which arrive after a later message from the
+ * same source.
+ * <p>
+ * Sequence numbers are compared with serial number arithmetic, so that
+ * they may wrap around.  A <code>SequenceFilter</code> is not thread
+ * safe.
+ * 
+ * @version Creation date: 10-18-2026 21:05 EST
+ */
+public class SequenceFilter {
+    /**
+     * The latest sequence number accepted from each source.
+     */
+    private final Map<Integer, Integer> latest = new HashMap<Integer, Integer>();
+    
+    /**
+     * Check whether a message with the given sequence number from the given
+     * source is newer than every message accepted from that source, and
+     * record it as the latest if it is.
+     * @param sourceID The ID number of the source.
+     * @param sequence The sequence number of the message.
+     * @return True if the message should be processed.
+     */
+    public boolean accept(int sourceID, int sequence) {
+        Integer last = this.latest.get(sourceID);
+        if (last != null && sequence - last.intValue() <= 0) {
+            return false;
+        }
+        this.latest.put(sourceID, sequence);
+        return true;
+    }
+    
+    /**
+     * Forget the sequence numbers of all sources, which is done when a
+     * new game starts.
+     */
+    public void reset() {
+        this.latest.clear();
+    }
+}
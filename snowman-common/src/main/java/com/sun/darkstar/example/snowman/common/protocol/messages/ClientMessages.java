@@ -57,16 +57,7 @@ public class ClientMessages extends Messages
      * @return The <code>ByteBuffer</code> "move me" packet.
      */
     public static ByteBuffer createMoveMePkt(float x, float y, float endx, float endy) {
-        byte[] bytes = new byte[1 + 16];
-        ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.MOVEME.ordinal());
-        buffer.putFloat(x);
-        buffer.putFloat(y);
-        buffer.putFloat(endx);
-        buffer.putFloat(endy);
-        
-        buffer.flip();
-        return buffer;
+        return createMoveMePkt(x, y, endx, endy, false);
     }
 
     /**
@@ -78,18 +69,30 @@ public class ClientMessages extends Messages
      * @return The <code>ByteBuffer</code> "attack" packet.
      */
     public static ByteBuffer createAttackPkt(int targetID, float x, float y) {
-        byte[] bytes = new byte[1 + 12];
+        return createAttackPkt(targetID, x, y, false);
+    }
+
+    /**
+     * Create an "attack at" packet which notifies the server that the sending
+     * client attacked the object with given ID from the given location at
+     * the given time of the client's clock, so that the server can check
+     * the attack against the positions at that time.
+     * @param targetID The ID number of the target.
+     * @param x The x coordinate of the position of the attacker
+     * @param y The y coordinate of the position of the attacker
+     * @param time The time of the attack in milliseconds of the client's
+     * clock, truncated to an int.
+     * @return The <code>ByteBuffer</code> "attack at" packet.
+     */
+    public static ByteBuffer createAttackAtPkt(int targetID, float x, float y, int time) {
+        byte[] bytes = new byte[OriginalFormat.ATTACK_AT_SIZE];
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.ATTACK.ordinal());
-        buffer.putInt(targetID);
-        buffer.putFloat(x);
-        buffer.putFloat(y);
+        OriginalFormat.writeAttackAt(buffer, targetID, x, y, time);
         
         buffer.flip();
         return buffer;
     }
 
-
     /**
      * Create a "get flag" packet which notifies the server that this client is
      * trying to pick up the flag with given ID.
@@ -99,12 +102,29 @@ public class ClientMessages extends Messages
      * @return The <code>ByteBuffer</code> "get flag" packet.
      */
     public static ByteBuffer createGetFlagPkt(int flagID, float x, float y) {
-        byte[] bytes = new byte[1 + 12];
+        byte[] bytes = new byte[OriginalFormat.GET_FLAG_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        OriginalFormat.writeGetFlag(buffer, flagID, x, y);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create a "get flag at" packet which notifies the server that this
+     * client tried to pick up the flag with given ID at the given time of
+     * the client's clock.
+     * @param flagID The ID number of the flag the client is picking up.
+     * @param x The x coordinate of the client's position
+     * @param y The y coordinate of the client's position
+     * @param time The time of the attempt in milliseconds of the client's
+     * clock, truncated to an int.
+     * @return The <code>ByteBuffer</code> "get flag at" packet.
+     */
+    public static ByteBuffer createGetFlagAtPkt(int flagID, float x, float y, int time) {
+        byte[] bytes = new byte[OriginalFormat.GET_FLAG_AT_SIZE];
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.GETFLAG.ordinal());
-        buffer.putInt(flagID);
-        buffer.putFloat(x);
-        buffer.putFloat(y);
+        OriginalFormat.writeGetFlagAt(buffer, flagID, x, y, time);
         
         buffer.flip();
         return buffer;
@@ -119,11 +139,9 @@ public class ClientMessages extends Messages
      * @return The <code>ByteBuffer</code> "place flag" packet
      */
     public static ByteBuffer createScorePkt(float x, float y) {
-        byte[] bytes = new byte[1 + 8];
+        byte[] bytes = new byte[OriginalFormat.SCORE_SIZE];
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.SCORE.ordinal());
-        buffer.putFloat(x);
-        buffer.putFloat(y);
+        OriginalFormat.writeScore(buffer, x, y);
         
         buffer.flip();
         return buffer;
@@ -135,13 +153,171 @@ public class ClientMessages extends Messages
      * @return The <code>ByteBUffer</code> 'chat message' packet.
      */
     public static ByteBuffer createChatPkt(String message) {
-    	byte[] bytes = new byte[1 + 4 + message.length()];
-    	ByteBuffer buffer = ByteBuffer.wrap(bytes);
-    	buffer.put((byte) EOPCODE.CHAT.ordinal());
-    	buffer.putInt(message.length());
-    	buffer.put(message.getBytes());
+        byte[] bytes = new byte[OriginalFormat.sizeOfClientChat(message)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        writeChatPkt(buffer, message);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create a "protocol" packet which tells the server the latest protocol
+     * version that this client supports.  The server answers with the
+     * version that both sides will use.
+     * @param version The latest protocol version supported by the client.
+     * @return The <code>ByteBuffer</code> "protocol" packet.
+     */
+    public static ByteBuffer createProtocolPkt(int version) {
+        byte[] bytes = new byte[OriginalFormat.CLIENT_PROTOCOL_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        OriginalFormat.writeClientProtocol(buffer, version);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create a "move me" packet in the original or the compact format.
+     * @param x The x coordinate of the start point.
+     * @param y The y coordinate of the start point.
+     * @param endx The x coordinate of the clicked position.
+     * @param endy The y coordinate of the clicked position.
+     * @param compact Whether to use the compact format.
+     * @return The <code>ByteBuffer</code> "move me" packet.
+     * @see #createMoveMePkt(float, float, float, float)
+     */
+    public static ByteBuffer createMoveMePkt(float x, float y, float endx, float endy, boolean compact) {
+        byte[] bytes = new byte[compact ? 1 + 8 : OriginalFormat.MOVE_ME_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        writeMoveMePkt(buffer, x, y, endx, endy, compact);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create an "attack" packet in the original or the compact format.
+     * @param targetID The ID number of the target.
+     * @param x The x coordinate of the position of the attacker
+     * @param y The y coordinate of the position of the attacker
+     * @param compact Whether to use the compact format.
+     * @return The <code>ByteBuffer</code> "attack" packet.
+     * @see #createAttackPkt(int, float, float)
+     */
+    public static ByteBuffer createAttackPkt(int targetID, float x, float y, boolean compact) {
+        byte[] bytes = new byte[compact ? 1 + CompactFormat.getVarIntSize(targetID) + 4
+                                        : OriginalFormat.ATTACK_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        writeAttackPkt(buffer, targetID, x, y, compact);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create a "get flag" packet in the original or the compact format.
+     * @param flagID The ID number of the flag the client is picking up.
+     * @param x The x coordinate of the client's position
+     * @param y The y coordinate of the client's position
+     * @param compact Whether to use the compact format.
+     * @return The <code>ByteBuffer</code> "get flag" packet.
+     * @see #createGetFlagPkt(int, float, float)
+     */
+    public static ByteBuffer createGetFlagPkt(int flagID, float x, float y, boolean compact) {
+        if (!compact) {
+            return createGetFlagPkt(flagID, x, y);
+        }
+        byte[] bytes = new byte[1 + CompactFormat.getVarIntSize(flagID) + 4];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CompactFormat.putOpCode(buffer, EOPCODE.GETFLAG);
+        CompactFormat.putVarInt(buffer, flagID);
+        CompactFormat.putX(buffer, x);
+        CompactFormat.putY(buffer, y);
         
         buffer.flip();
-    	return buffer;
+        return buffer;
+    }
+    
+    /**
+     * Create a "score" packet in the original or the compact format.
+     * @param x The x coordinate of the client's position
+     * @param y The y coordinate of the client's position
+     * @param compact Whether to use the compact format.
+     * @return The <code>ByteBuffer</code> "score" packet
+     * @see #createScorePkt(float, float)
+     */
+    public static ByteBuffer createScorePkt(float x, float y, boolean compact) {
+        if (!compact) {
+            return createScorePkt(x, y);
+        }
+        byte[] bytes = new byte[1 + 4];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CompactFormat.putOpCode(buffer, EOPCODE.SCORE);
+        CompactFormat.putX(buffer, x);
+        CompactFormat.putY(buffer, y);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Write a "move me" packet in the original or the compact format at
+     * the current position of the given buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param x The x coordinate of the start point.
+     * @param y The y coordinate of the start point.
+     * @param endx The x coordinate of the clicked position.
+     * @param endy The y coordinate of the clicked position.
+     * @param compact Whether to use the compact format.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createMoveMePkt(float, float, float, float, boolean)
+     */
+    public static ByteBuffer writeMoveMePkt(ByteBuffer buffer, float x, float y, float endx, float endy, boolean compact) {
+        if (compact) {
+            CompactFormat.putOpCode(buffer, EOPCODE.MOVEME);
+            CompactFormat.putX(buffer, x);
+            CompactFormat.putY(buffer, y);
+            CompactFormat.putX(buffer, endx);
+            CompactFormat.putY(buffer, endy);
+        } else {
+            OriginalFormat.writeMoveMe(buffer, x, y, endx, endy);
+        }
+        return buffer;
+    }
+    
+    /**
+     * Write an "attack" packet in the original or the compact format at
+     * the current position of the given buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param targetID The ID number of the target.
+     * @param x The x coordinate of the position of the attacker
+     * @param y The y coordinate of the position of the attacker
+     * @param compact Whether to use the compact format.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createAttackPkt(int, float, float, boolean)
+     */
+    public static ByteBuffer writeAttackPkt(ByteBuffer buffer, int targetID, float x, float y, boolean compact) {
+        if (compact) {
+            CompactFormat.putOpCode(buffer, EOPCODE.ATTACK);
+            CompactFormat.putVarInt(buffer, targetID);
+            CompactFormat.putX(buffer, x);
+            CompactFormat.putY(buffer, y);
+        } else {
+            OriginalFormat.writeAttack(buffer, targetID, x, y);
+        }
+        return buffer;
+    }
+    
+    /**
+     * Write a chat message packet at the current position of the given
+     * buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param message The <code>String</code> message to be displayed.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createChatPkt(String)
+     */
+    public static ByteBuffer writeChatPkt(ByteBuffer buffer, String message) {
+        return OriginalFormat.writeClientChat(buffer, message);
     }
 }
@@ -0,0 +1,219 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.protocol.messages;
+
+import java.nio.ByteBuffer;
+import com.sun.darkstar.example.snowman.common.protocol.enumn.EOPCODE;
+
+/**
+ * <code>CompactFormat</code> provides the encoding primitives of the compact
+ * protocol, which clients and servers agree to use with a PROTOCOL message
+ * after login.
+ * <p>
+ * Compact packets set the {@link #FLAG} bit of their opcode byte so that
+ * they can be told apart from packets in the original format.  Integers are
+ * written as zigzag encoded variable length integers, coordinates as 16 bit
+ * fixed point values scaled to the dimensions of the map, and enumerations
+ * in a single byte.
+ * <p>
+ * The map dimensions are shared by all connections of the virtual machine
+ * since a server only hosts a single map.
+ */
+public class CompactFormat 
+{
+    /**
+     * Bit set in the opcode byte of compact packets.
+     */
+    public static final int FLAG = 0x80;
+    /**
+     * Largest fixed point coordinate value.
+     */
+    private static final int MAXCOORDINATE = 0xffff;
+    
+    private static volatile float mapWidth = 96.0f;
+    private static volatile float mapHeight = 96.0f;
+    
+    private CompactFormat() {}
+    
+    /**
+     * Set the dimensions of the map that coordinates are scaled to.
+     * @param width The width of the map along the x axis.
+     * @param height The height of the map along the y axis.
+     */
+    public static void setMapDimensions(float width, float height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("map dimensions must be > 0");
+        }
+        mapWidth = width;
+        mapHeight = height;
+    }
+    
+    /**
+     * Retrieve the width of the map that x coordinates are scaled to.
+     * @return The map width.
+     */
+    public static float getMapWidth() {
+        return mapWidth;
+    }
+    
+    /**
+     * Retrieve the height of the map that y coordinates are scaled to.
+     * @return The map height.
+     */
+    public static float getMapHeight() {
+        return mapHeight;
+    }
+    
+    /**
+     * Write the opcode byte of a compact packet.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param code The opcode of the packet.
+     */
+    static void putOpCode(ByteBuffer buffer, EOPCODE code) {
+        buffer.put((byte) (code.ordinal() | FLAG));
+    }
+    
+    /**
+     * Write a variable length zigzag encoded integer, using one byte for
+     * values between -64 and 63.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param value The value to write.
+     */
+    public static void putVarInt(ByteBuffer buffer, int value) {
+        int bits = (value << 1) ^ (value >> 31);
+        while ((bits & ~0x7f) != 0) {
+            buffer.put((byte) ((bits & 0x7f) | 0x80));
+            bits >>>= 7;
+        }
+        buffer.put((byte) bits);
+    }
+    
+    /**
+     * Read a variable length zigzag encoded integer.
+     * @param buffer The <code>ByteBuffer</code> to read from.
+     * @return The value read.
+     */
+    public static int getVarInt(ByteBuffer buffer) {
+        int bits = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 28) {
+                throw new IllegalArgumentException("malformed varint");
+            }
+            b = buffer.get();
+            bits |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (bits >>> 1) ^ -(bits & 1);
+    }
+    
+    /**
+     * Retrieve the number of bytes used to write the given value with
+     * {@link #putVarInt(ByteBuffer, int)}.
+     * @param value The value to write.
+     * @return The number of bytes.
+     */
+    public static int getVarIntSize(int value) {
+        int bits = (value << 1) ^ (value >> 31);
+        int size = 1;
+        while ((bits & ~0x7f) != 0) {
+            bits >>>= 7;
+            size++;
+        }
+        return size;
+    }
+    
+    /**
+     * Write an x coordinate as a 16 bit fixed point value.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param x The x coordinate, clamped to the map.
+     */
+    public static void putX(ByteBuffer buffer, float x) {
+        putCoordinate(buffer, x, mapWidth);
+    }
+    
+    /**
+     * Write a y coordinate as a 16 bit fixed point value.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param y The y coordinate, clamped to the map.
+     */
+    public static void putY(ByteBuffer buffer, float y) {
+        putCoordinate(buffer, y, mapHeight);
+    }
+    
+    /**
+     * Read an x coordinate written by {@link #putX(ByteBuffer, float)}.
+     * @param buffer The <code>ByteBuffer</code> to read from.
+     * @return The x coordinate.
+     */
+    public static float getX(ByteBuffer buffer) {
+        return getCoordinate(buffer, mapWidth);
+    }
+    
+    /**
+     * Read a y coordinate written by {@link #putY(ByteBuffer, float)}.
+     * @param buffer The <code>ByteBuffer</code> to read from.
+     * @return The y coordinate.
+     */
+    public static float getY(ByteBuffer buffer) {
+        return getCoordinate(buffer, mapHeight);
+    }
+    
+    /**
+     * Pack two enumeration values with at most 16 constants into one byte.
+     * @param high The enumeration value stored in the high bits.
+     * @param low The enumeration value stored in the low bits.
+     * @return The packed byte.
+     */
+    public static byte packEnums(Enum<?> high, Enum<?> low) {
+        return (byte) ((high.ordinal() << 4) | low.ordinal());
+    }
+    
+    private static void putCoordinate(ByteBuffer buffer, float value, 
+                                      float extent) {
+        int fixed = Math.round(value / extent * MAXCOORDINATE);
+        if (fixed < 0) {
+            fixed = 0;
+        } else if (fixed > MAXCOORDINATE) {
+            fixed = MAXCOORDINATE;
+        }
+        buffer.putShort((short) fixed);
+    }
+    
+    private static float getCoordinate(ByteBuffer buffer, float extent) {
+        return (buffer.getShort() & MAXCOORDINATE) * extent / MAXCOORDINATE;
+    }
+}
@@ -35,7 +35,7 @@
 package com.sun.darkstar.example.snowman.common.protocol.messages;
 
 import java.nio.ByteBuffer;
-import com.sun.darkstar.example.snowman.common.protocol.enumn.EOPCODE;
+import java.nio.charset.Charset;
 
 /**
  * <code>Messages</code> provides static packet generation methods
@@ -47,17 +47,229 @@ import com.sun.darkstar.example.snowman.common.protocol.enumn.EOPCODE;
  */
 public abstract class Messages 
 {
+    /**
+     * Version of the original protocol, used by clients which do not
+     * send a PROTOCOL message.
+     */
+    public static final int PROTOCOL_ORIGINAL = 0;
+    /**
+     * Version of the protocol which adds the compact packet format.  The
+     * GAMESTATE packet predates version negotiation, so it is also only
+     * sent to clients announcing this version or a later one.
+     * @see CompactFormat
+     */
+    public static final int PROTOCOL_COMPACT = 1;
+    /**
+     * Version of the protocol which adds ENVELOPE packets carrying several
+     * messages at once.
+     */
+    public static final int PROTOCOL_ENVELOPE = 2;
+    /**
+     * Version of the protocol which sends movement as SEQUENCED packets
+     * on a separate unreliable channel.
+     */
+    public static final int PROTOCOL_SEQUENCED = 3;
+    /**
+     * Version of the protocol which adds the ATTACKAT and GETFLAGAT
+     * packets carrying the time at which the client issued the command.
+     */
+    public static final int PROTOCOL_TIMESTAMPED = 4;
+    /**
+     * Version of the protocol which adds the PING and PONG packets used to
+     * measure the round trip time and the clock offset of each side.
+     * @see com.sun.darkstar.example.snowman.common.protocol.handlers.ClockSynchronizer
+     */
+    public static final int PROTOCOL_SYNCHRONIZED = 5;
+    /**
+     * The latest protocol version supported by this implementation.
+     */
+    public static final int PROTOCOL_VERSION = PROTOCOL_SYNCHRONIZED;
+    /**
+     * The largest packet that can be sent, which is the default maximum
+     * message length of a session.
+     */
+    public static final int MAX_PACKET_SIZE = 65535;
+    
+    /**
+     * The character set of the strings of all packets.
+     */
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    /**
+     * Reusable buffers that packets can be written into by the thread
+     * encoding them.
+     */
+    private static final ThreadLocal<ByteBuffer> scratchBuffers = 
+            new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(MAX_PACKET_SIZE);
+        }
+    };
+    
     /**
      * Create a READY message packet.  There is no payload associated with
      * a READY message.
      * @return A <code>ByteBuffer</code> "ready" packet
      */
     public static ByteBuffer createReadyPkt() {
-        byte[] bytes = new byte[1];
+        byte[] bytes = new byte[OriginalFormat.READY_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        OriginalFormat.writeReady(buffer);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create a PING message packet, which the receiver answers with a
+     * PONG packet echoing the given time.
+     * @param time The time of the sender's clock, truncated to an int.
+     * @return A <code>ByteBuffer</code> "ping" packet
+     */
+    public static ByteBuffer createPingPkt(int time) {
+        byte[] bytes = new byte[OriginalFormat.PING_SIZE];
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte)EOPCODE.READY.ordinal());
+        OriginalFormat.writePing(buffer, time);
         
         buffer.flip();
         return buffer;
     }
+    
+    /**
+     * Create a PONG message packet answering a PING packet.
+     * @param echo The time carried by the PING packet.
+     * @param time The time of the sender's clock when answering, truncated
+     * to an int.
+     * @return A <code>ByteBuffer</code> "pong" packet
+     */
+    public static ByteBuffer createPongPkt(int echo, int time) {
+        byte[] bytes = new byte[OriginalFormat.PONG_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        OriginalFormat.writePong(buffer, echo, time);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Write a PING message packet at the current position of the given
+     * buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param time The time of the sender's clock, truncated to an int.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createPingPkt(int)
+     */
+    public static ByteBuffer writePingPkt(ByteBuffer buffer, int time) {
+        return OriginalFormat.writePing(buffer, time);
+    }
+    
+    /**
+     * Write a PONG message packet at the current position of the given
+     * buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param echo The time carried by the PING packet.
+     * @param time The time of the sender's clock when answering, truncated
+     * to an int.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createPongPkt(int, int)
+     */
+    public static ByteBuffer writePongPkt(ByteBuffer buffer, int echo, int time) {
+        return OriginalFormat.writePong(buffer, echo, time);
+    }
+    
+    /**
+     * Retrieve the cleared scratch buffer of the calling thread, which
+     * holds up to {@link #MAX_PACKET_SIZE} bytes.  Writing packets into it
+     * with the <code>write</code> methods avoids allocating a new buffer
+     * for each packet.  The buffer is reused by the next call on the same
+     * thread, so its content must be sent or copied before then, and must
+     * not be kept by the receiver.
+     * @return The scratch <code>ByteBuffer</code> of the thread.
+     */
+    public static ByteBuffer getScratchBuffer() {
+        ByteBuffer buffer = scratchBuffers.get();
+        buffer.clear();
+        return buffer;
+    }
+    
+    /**
+     * Compute the number of bytes of the UTF-8 encoding of a string
+     * without encoding it.
+     * @param string The <code>String</code> to measure.
+     * @return The length of the encoded string in bytes.
+     */
+    public static int getUTF8Length(String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length() &&
+                       Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+    
+    /**
+     * Write the UTF-8 encoding of a string, which takes
+     * {@link #getUTF8Length(String)} bytes, without an intermediate array.
+     * Unpaired surrogates are encoded as is.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param string The <code>String</code> to write.
+     */
+    public static void putUTF8(ByteBuffer buffer, String string) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length() &&
+                       Character.isLowSurrogate(string.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer.put((byte) (0xf0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else {
+                buffer.put((byte) (0xe0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+    
+    /**
+     * Read a UTF-8 encoded string of the given length in bytes.  The
+     * string is decoded in place if the buffer is backed by an array.
+     * @param buffer The <code>ByteBuffer</code> to read from.
+     * @param length The length of the encoded string in bytes.
+     * @return The decoded <code>String</code>.
+     */
+    public static String getUTF8(ByteBuffer buffer, int length) {
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("string longer than packet");
+        }
+        String string;
+        if (buffer.hasArray()) {
+            string = new String(buffer.array(), 
+                                buffer.arrayOffset() + buffer.position(),
+                                length, UTF8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            string = new String(bytes, UTF8);
+        }
+        return string;
+    }
 }
@@ -35,6 +35,7 @@
 package com.sun.darkstar.example.snowman.common.protocol.messages;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 
 import com.sun.darkstar.example.snowman.common.protocol.enumn.EEndState;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.EMOBType;
@@ -60,12 +61,9 @@ public class ServerMessages extends Messages
      * @return The <code>ByteBuffer</code> "new game" packet.
      */
     public static ByteBuffer createNewGamePkt(int myID, String mapname) {
-        byte[] bytes = new byte[1 + 4 + 4 + mapname.length()];
+        byte[] bytes = new byte[OriginalFormat.sizeOfNewGame(mapname)];
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.NEWGAME.ordinal());
-        buffer.putInt(myID);
-        buffer.putInt(mapname.length());
-        buffer.put(mapname.getBytes());
+        writeNewGamePkt(buffer, myID, mapname);
         
         buffer.flip();
         return buffer;
@@ -76,9 +74,9 @@ public class ServerMessages extends Messages
      * @return The <code>ByteBuffer</code> "start game" packet.
      */
     public static ByteBuffer createStartGamePkt() {
-        byte[] bytes = new byte[1];
+        byte[] bytes = new byte[OriginalFormat.START_GAME_SIZE];
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.STARTGAME.ordinal());
+        OriginalFormat.writeStartGame(buffer);
         
         buffer.flip();
         return buffer;
@@ -91,10 +89,9 @@ public class ServerMessages extends Messages
      * @return The <code>ByteBuffer</code> "end game" packet.
      */
     public static ByteBuffer createEndGamePkt(EEndState state) {
-        byte[] bytes = new byte[1 + 4];
+        byte[] bytes = new byte[OriginalFormat.END_GAME_SIZE];
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.ENDGAME.ordinal());
-        buffer.putInt(state.ordinal());
+        OriginalFormat.writeEndGame(buffer, state);
         
         buffer.flip();
         return buffer;
@@ -112,19 +109,7 @@ public class ServerMessages extends Messages
      * @return The <code>ByteBuffer</code> "add MOB" packet.
      */
     public static ByteBuffer createAddMOBPkt(int targetID, float x, float y, EMOBType mobType, ETeamColor team, String mobName) {
-        byte[] bytes = new byte[1 + 20 + 4 + mobName.length()];
-        ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.ADDMOB.ordinal());
-        buffer.putInt(targetID);
-        buffer.putFloat(x);
-        buffer.putFloat(y);
-        buffer.putInt(mobType.ordinal());
-        buffer.putInt(team.ordinal());
-        buffer.putInt(mobName.length());
-        buffer.put(mobName.getBytes());
-        
-        buffer.flip();
-        return buffer;
+        return createAddMOBPkt(targetID, x, y, mobType, team, mobName, false);
     }
     
     /**
@@ -134,10 +119,9 @@ public class ServerMessages extends Messages
      * @return The <code>ByteBuffer</code> "remove MOB" packet.
      */
     public static ByteBuffer createRemoveMOBPkt(int targetID) {
-        byte[] bytes = new byte[1 + 4];
+        byte[] bytes = new byte[OriginalFormat.REMOVE_MOB_SIZE];
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.REMOVEMOB.ordinal());
-        buffer.putInt(targetID);
+        OriginalFormat.writeRemoveMOB(buffer, targetID);
         
         buffer.flip();
         return buffer;
@@ -154,17 +138,7 @@ public class ServerMessages extends Messages
      * @return The <code>ByteBuffer</code> "move MOB" packet.
      */
     public static ByteBuffer createMoveMOBPkt(int targetID, float startx, float starty, float endx, float endy) {
-        byte[] bytes = new byte[1 + 20];
-        ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.MOVEMOB.ordinal());
-        buffer.putInt(targetID);
-        buffer.putFloat(startx);
-        buffer.putFloat(starty);
-        buffer.putFloat(endx);
-        buffer.putFloat(endy);
-        
-        buffer.flip();
-        return buffer;
+        return createMoveMOBPkt(targetID, startx, starty, endx, endy, false);
     }
     
     /**
@@ -176,15 +150,7 @@ public class ServerMessages extends Messages
      * @return The <code>ByteBuffer</code> "move MOB" packet.
      */
     public static ByteBuffer createStopMOBPkt(int targetID, float x, float y) {
-        byte[] bytes = new byte[1 + 12];
-        ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.STOPMOB.ordinal());
-        buffer.putInt(targetID);
-        buffer.putFloat(x);
-        buffer.putFloat(y);
-        
-        buffer.flip();
-        return buffer;
+        return createStopMOBPkt(targetID, x, y, false);
     }
 
     /**
@@ -195,11 +161,9 @@ public class ServerMessages extends Messages
      * @return The <code>ByteBuffer</code> "attach object" packet.
      */
     public static ByteBuffer createAttachObjPkt(int sourceID, int targetID) {
-        byte[] bytes = new byte[1 + 8];
+        byte[] bytes = new byte[OriginalFormat.ATTACH_OBJ_SIZE];
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.ATTACHOBJ.ordinal());
-        buffer.putInt(sourceID);
-        buffer.putInt(targetID);
+        OriginalFormat.writeAttachObj(buffer, sourceID, targetID);
         
         buffer.flip();
         return buffer;
@@ -214,15 +178,7 @@ public class ServerMessages extends Messages
      * @return The <code>ByteBuffer</code> "attacked" packet.
      */
     public static ByteBuffer createAttackedPkt(int sourceID, int targetID, int hp) {
-        byte[] bytes = new byte[1 + 12];
-        ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.ATTACKED.ordinal());
-        buffer.putInt(sourceID);
-        buffer.putInt(targetID);
-        buffer.putInt(hp);
-        
-        buffer.flip();
-        return buffer;
+        return createAttackedPkt(sourceID, targetID, hp, false);
     }
 
     /**
@@ -234,12 +190,28 @@ public class ServerMessages extends Messages
      * @return The <code>ByteBuffer</code> "respawn" packet.
      */
     public static ByteBuffer createRespawnPkt(int objectID, float x, float y) {
-        byte[] bytes = new byte[1 + 12];
+        return createRespawnPkt(objectID, x, y, false);
+    }
+    
+    /**
+     * Create a "game state" packet which combines the given "move MOB" and
+     * "stop MOB" packets into a single packet, so that all movement of a
+     * game simulation step can be sent at once.
+     * @param updates The "move MOB" and "stop MOB" packets to combine.
+     * @return The <code>ByteBuffer</code> "game state" packet.
+     */
+    public static ByteBuffer createGameStatePkt(List<ByteBuffer> updates) {
+        int length = 1 + 4;
+        for (ByteBuffer update : updates) {
+            length += update.remaining();
+        }
+        byte[] bytes = new byte[length];
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.put((byte) EOPCODE.RESPAWN.ordinal());
-        buffer.putInt(objectID);
-        buffer.putFloat(x);
-        buffer.putFloat(y);
+        buffer.put((byte) EOPCODE.GAMESTATE.ordinal());
+        buffer.putInt(updates.size());
+        for (ByteBuffer update : updates) {
+            buffer.put(update.duplicate());
+        }
         
         buffer.flip();
         return buffer;
@@ -252,14 +224,494 @@ public class ServerMessages extends Messages
      * @return The <code>ByteBuffer</code> 'chat message' packet.
      */
     public static ByteBuffer createChatPkt(int sourceID, String message) {
-    	byte[] bytes = new byte[1 + 4 + 4 + message.length()];
-    	ByteBuffer buffer = ByteBuffer.wrap(bytes);
-    	buffer.put((byte) EOPCODE.CHAT.ordinal());
+        byte[] bytes = new byte[OriginalFormat.sizeOfServerChat(message)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        writeChatPkt(buffer, sourceID, message);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create an "envelope" packet which carries a sequence of messages,
+     * each prefixed by its length, so that they can be delivered with a
+     * single send.  The messages are unpacked in order by the receiver.
+     * @param messages The packets to combine.
+     * @return The <code>ByteBuffer</code> "envelope" packet.
+     */
+    public static ByteBuffer createEnvelopePkt(List<ByteBuffer> messages) {
+        byte[] bytes = new byte[getEnvelopeSize(messages)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.put((byte) EOPCODE.ENVELOPE.ordinal());
+        buffer.putInt(messages.size());
+        for (ByteBuffer message : messages) {
+            CompactFormat.putVarInt(buffer, message.remaining());
+            buffer.put(message.duplicate());
+        }
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Return the size of the "envelope" packet carrying the given messages.
+     * @param messages The packets to combine.
+     * @return The size of the "envelope" packet in bytes.
+     */
+    public static int getEnvelopeSize(List<ByteBuffer> messages) {
+        int length = 1 + 4;
+        for (ByteBuffer message : messages) {
+            length += getEnvelopeEntrySize(message);
+        }
+        return length;
+    }
+    
+    /**
+     * Return the number of bytes that a message adds to an "envelope"
+     * packet.
+     * @param message The packet to add.
+     * @return The size of the message and its length prefix in bytes.
+     */
+    public static int getEnvelopeEntrySize(ByteBuffer message) {
+        return CompactFormat.getVarIntSize(message.remaining()) +
+                message.remaining();
+    }
+    
+    /**
+     * Create a "sequenced" packet which carries a message sent on an
+     * unreliable channel, numbered so that the receiver can drop it if a
+     * later message from the same source has already arrived.
+     * @param sourceID The ID number of the object the message is about,
+     *        or 0 for messages about the whole game.
+     * @param sequence The sequence number of the message for its source.
+     * @param message The packet to carry.
+     * @return The <code>ByteBuffer</code> "sequenced" packet.
+     */
+    public static ByteBuffer createSequencedPkt(int sourceID, int sequence, ByteBuffer message) {
+        byte[] bytes = new byte[1 + 8 + message.remaining()];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.put((byte) EOPCODE.SEQUENCED.ordinal());
         buffer.putInt(sourceID);
-    	buffer.putInt(message.length());
-    	buffer.put(message.getBytes());
+        buffer.putInt(sequence);
+        buffer.put(message.duplicate());
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create a "protocol" packet which answers the PROTOCOL message of a
+     * client with the protocol version that the server will use, and the
+     * dimensions of the map that compact coordinates are scaled to.
+     * @param version The agreed protocol version.
+     * @param mapWidth The width of the map.
+     * @param mapHeight The height of the map.
+     * @return The <code>ByteBuffer</code> "protocol" packet.
+     */
+    public static ByteBuffer createProtocolPkt(int version, float mapWidth, float mapHeight) {
+        byte[] bytes = new byte[OriginalFormat.SERVER_PROTOCOL_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        OriginalFormat.writeServerProtocol(buffer, version, mapWidth, mapHeight);
         
         buffer.flip();
-    	return buffer;
+        return buffer;
+    }
+    
+    /**
+     * Create a "end game" packet in the original or the compact format.
+     * @param state The <code>EndState</code> of the battle.
+     * @param compact Whether to use the compact format.
+     * @return The <code>ByteBuffer</code> "end game" packet.
+     * @see #createEndGamePkt(EEndState)
+     */
+    public static ByteBuffer createEndGamePkt(EEndState state, boolean compact) {
+        if (!compact) {
+            return createEndGamePkt(state);
+        }
+        byte[] bytes = new byte[1 + 1];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        writeEndGamePkt(buffer, state, compact);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create an "add MOB" packet in the original or the compact format.
+     * The compact format packs the type and team into a single byte.
+     * @param targetID The ID number of the new map object.
+     * @param x The X coordinate of the object.
+     * @param y The Y coordinate of the object.
+     * @param mobType The <code>MOBType</code> of object.
+     * @param team The <code>TeamColor</code> of object.
+     * @param mobName The name of the object.
+     * @param compact Whether to use the compact format.
+     * @return The <code>ByteBuffer</code> "add MOB" packet.
+     * @see #createAddMOBPkt(int, float, float, EMOBType, ETeamColor, String)
+     */
+    public static ByteBuffer createAddMOBPkt(int targetID, float x, float y, EMOBType mobType, ETeamColor team, String mobName, boolean compact) {
+        int nameLength = getUTF8Length(mobName);
+        int length = compact ? 1 + CompactFormat.getVarIntSize(targetID) + 4 + 1 +
+                               CompactFormat.getVarIntSize(nameLength) + nameLength
+                             : OriginalFormat.sizeOfAddMOB(mobName);
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        writeAddMOBPkt(buffer, targetID, x, y, mobType, team, mobName, compact);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create a "remove MOB" packet in the original or the compact format.
+     * @param targetID The ID number of the MOB to be removed.
+     * @param compact Whether to use the compact format.
+     * @return The <code>ByteBuffer</code> "remove MOB" packet.
+     * @see #createRemoveMOBPkt(int)
+     */
+    public static ByteBuffer createRemoveMOBPkt(int targetID, boolean compact) {
+        if (!compact) {
+            return createRemoveMOBPkt(targetID);
+        }
+        byte[] bytes = new byte[1 + CompactFormat.getVarIntSize(targetID)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        writeRemoveMOBPkt(buffer, targetID, compact);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create a "move MOB" packet in the original or the compact format.
+     * @param targetID The ID number of the MOB to be moved.
+     * @param startx The x coordinate of the starting position.
+     * @param starty The y coordinate of the starting position.
+     * @param endx The x coordinate of the ending position.
+     * @param endy The y coordinate of the ending position.
+     * @param compact Whether to use the compact format.
+     * @return The <code>ByteBuffer</code> "move MOB" packet.
+     * @see #createMoveMOBPkt(int, float, float, float, float)
+     */
+    public static ByteBuffer createMoveMOBPkt(int targetID, float startx, float starty, float endx, float endy, boolean compact) {
+        byte[] bytes = new byte[compact ? 1 + CompactFormat.getVarIntSize(targetID) + 8
+                                        : OriginalFormat.MOVE_MOB_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        writeMoveMOBPkt(buffer, targetID, startx, starty, endx, endy, compact);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create a "stop MOB" packet in the original or the compact format.
+     * @param targetID The ID number of the MOB to be stopped.
+     * @param x The x coordinate of the stop position.
+     * @param y The y coordinate of the stop position.
+     * @param compact Whether to use the compact format.
+     * @return The <code>ByteBuffer</code> "stop MOB" packet.
+     * @see #createStopMOBPkt(int, float, float)
+     */
+    public static ByteBuffer createStopMOBPkt(int targetID, float x, float y, boolean compact) {
+        byte[] bytes = new byte[compact ? 1 + CompactFormat.getVarIntSize(targetID) + 4
+                                        : OriginalFormat.STOP_MOB_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        writeStopMOBPkt(buffer, targetID, x, y, compact);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create an "attach object" packet in the original or the compact format.
+     * @param sourceID The ID number of the object to be re-attached.
+     * @param targetID the ID number of the object to attach it to.
+     * @param compact Whether to use the compact format.
+     * @return The <code>ByteBuffer</code> "attach object" packet.
+     * @see #createAttachObjPkt(int, int)
+     */
+    public static ByteBuffer createAttachObjPkt(int sourceID, int targetID, boolean compact) {
+        if (!compact) {
+            return createAttachObjPkt(sourceID, targetID);
+        }
+        byte[] bytes = new byte[1 + CompactFormat.getVarIntSize(sourceID) + 
+                                CompactFormat.getVarIntSize(targetID)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        writeAttachObjPkt(buffer, sourceID, targetID, compact);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create an "attacked" packet in the original or the compact format.
+     * @param sourceID The ID number of the attacker.
+     * @param targetID The ID number of the target.
+     * @param hp The hit point of the target (-1 if a miss)
+     * @param compact Whether to use the compact format.
+     * @return The <code>ByteBuffer</code> "attacked" packet.
+     * @see #createAttackedPkt(int, int, int)
+     */
+    public static ByteBuffer createAttackedPkt(int sourceID, int targetID, int hp, boolean compact) {
+        byte[] bytes = new byte[compact ? 1 + CompactFormat.getVarIntSize(sourceID) + 
+                                          CompactFormat.getVarIntSize(targetID) + 
+                                          CompactFormat.getVarIntSize(hp)
+                                        : OriginalFormat.ATTACKED_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        writeAttackedPkt(buffer, sourceID, targetID, hp, compact);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Create a "respawn" packet in the original or the compact format.
+     * @param objectID The ID number of the object to be respawn.
+     * @param x The x coordinate of the respawn position.
+     * @param y The y coordinate of the respawn position.
+     * @param compact Whether to use the compact format.
+     * @return The <code>ByteBuffer</code> "respawn" packet.
+     * @see #createRespawnPkt(int, float, float)
+     */
+    public static ByteBuffer createRespawnPkt(int objectID, float x, float y, boolean compact) {
+        byte[] bytes = new byte[compact ? 1 + CompactFormat.getVarIntSize(objectID) + 4
+                                        : OriginalFormat.RESPAWN_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        writeRespawnPkt(buffer, objectID, x, y, compact);
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    /**
+     * Write a "new game" packet at the current position of the given buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param myID The ID number assigned to the client.
+     * @param mapname The name of the map to play on.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createNewGamePkt(int, String)
+     */
+    public static ByteBuffer writeNewGamePkt(ByteBuffer buffer, int myID, String mapname) {
+        return OriginalFormat.writeNewGame(buffer, myID, mapname);
+    }
+    
+    /**
+     * Write a "start game" packet at the current position of the given
+     * buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createStartGamePkt()
+     */
+    public static ByteBuffer writeStartGamePkt(ByteBuffer buffer) {
+        return OriginalFormat.writeStartGame(buffer);
+    }
+    
+    /**
+     * Write a "end game" packet in the original or the compact format at
+     * the current position of the given buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param state The <code>EndState</code> of the battle.
+     * @param compact Whether to use the compact format.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createEndGamePkt(EEndState, boolean)
+     */
+    public static ByteBuffer writeEndGamePkt(ByteBuffer buffer, EEndState state, boolean compact) {
+        if (compact) {
+            CompactFormat.putOpCode(buffer, EOPCODE.ENDGAME);
+            buffer.put((byte) state.ordinal());
+        } else {
+            OriginalFormat.writeEndGame(buffer, state);
+        }
+        return buffer;
+    }
+    
+    /**
+     * Write a "remove MOB" packet in the original or the compact format at
+     * the current position of the given buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param targetID The ID number of the MOB to be removed.
+     * @param compact Whether to use the compact format.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createRemoveMOBPkt(int, boolean)
+     */
+    public static ByteBuffer writeRemoveMOBPkt(ByteBuffer buffer, int targetID, boolean compact) {
+        if (compact) {
+            CompactFormat.putOpCode(buffer, EOPCODE.REMOVEMOB);
+            CompactFormat.putVarInt(buffer, targetID);
+        } else {
+            OriginalFormat.writeRemoveMOB(buffer, targetID);
+        }
+        return buffer;
+    }
+    
+    /**
+     * Write an "attach object" packet in the original or the compact format
+     * at the current position of the given buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param sourceID The ID number of the object to be re-attached.
+     * @param targetID the ID number of the object to attach it to.
+     * @param compact Whether to use the compact format.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createAttachObjPkt(int, int, boolean)
+     */
+    public static ByteBuffer writeAttachObjPkt(ByteBuffer buffer, int sourceID, int targetID, boolean compact) {
+        if (compact) {
+            CompactFormat.putOpCode(buffer, EOPCODE.ATTACHOBJ);
+            CompactFormat.putVarInt(buffer, sourceID);
+            CompactFormat.putVarInt(buffer, targetID);
+        } else {
+            OriginalFormat.writeAttachObj(buffer, sourceID, targetID);
+        }
+        return buffer;
+    }
+    
+    /**
+     * Write a "protocol" packet at the current position of the given buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param version The agreed protocol version.
+     * @param mapWidth The width of the map.
+     * @param mapHeight The height of the map.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createProtocolPkt(int, float, float)
+     */
+    public static ByteBuffer writeProtocolPkt(ByteBuffer buffer, int version, float mapWidth, float mapHeight) {
+        return OriginalFormat.writeServerProtocol(buffer, version, mapWidth, mapHeight);
+    }
+    
+    /**
+     * Write an "add MOB" packet in the original or the compact format at
+     * the current position of the given buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param targetID The ID number of the new map object.
+     * @param x The X coordinate of the object.
+     * @param y The Y coordinate of the object.
+     * @param mobType The <code>MOBType</code> of object.
+     * @param team The <code>TeamColor</code> of object.
+     * @param mobName The name of the object.
+     * @param compact Whether to use the compact format.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createAddMOBPkt(int, float, float, EMOBType, ETeamColor, String, boolean)
+     */
+    public static ByteBuffer writeAddMOBPkt(ByteBuffer buffer, int targetID, float x, float y, EMOBType mobType, ETeamColor team, String mobName, boolean compact) {
+        if (compact) {
+            CompactFormat.putOpCode(buffer, EOPCODE.ADDMOB);
+            CompactFormat.putVarInt(buffer, targetID);
+            CompactFormat.putX(buffer, x);
+            CompactFormat.putY(buffer, y);
+            buffer.put(CompactFormat.packEnums(mobType, team));
+            CompactFormat.putVarInt(buffer, getUTF8Length(mobName));
+            putUTF8(buffer, mobName);
+        } else {
+            OriginalFormat.writeAddMOB(buffer, targetID, x, y, mobType, team, mobName);
+        }
+        return buffer;
+    }
+    
+    /**
+     * Write a "move MOB" packet in the original or the compact format at
+     * the current position of the given buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param targetID The ID number of the MOB to be moved.
+     * @param startx The x coordinate of the starting position.
+     * @param starty The y coordinate of the starting position.
+     * @param endx The x coordinate of the ending position.
+     * @param endy The y coordinate of the ending position.
+     * @param compact Whether to use the compact format.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createMoveMOBPkt(int, float, float, float, float, boolean)
+     */
+    public static ByteBuffer writeMoveMOBPkt(ByteBuffer buffer, int targetID, float startx, float starty, float endx, float endy, boolean compact) {
+        if (compact) {
+            CompactFormat.putOpCode(buffer, EOPCODE.MOVEMOB);
+            CompactFormat.putVarInt(buffer, targetID);
+            CompactFormat.putX(buffer, startx);
+            CompactFormat.putY(buffer, starty);
+            CompactFormat.putX(buffer, endx);
+            CompactFormat.putY(buffer, endy);
+        } else {
+            OriginalFormat.writeMoveMOB(buffer, targetID, startx, starty, endx, endy);
+        }
+        return buffer;
+    }
+    
+    /**
+     * Write a "stop MOB" packet in the original or the compact format at
+     * the current position of the given buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param targetID The ID number of the MOB to be stopped.
+     * @param x The x coordinate of the stop position.
+     * @param y The y coordinate of the stop position.
+     * @param compact Whether to use the compact format.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createStopMOBPkt(int, float, float, boolean)
+     */
+    public static ByteBuffer writeStopMOBPkt(ByteBuffer buffer, int targetID, float x, float y, boolean compact) {
+        if (compact) {
+            CompactFormat.putOpCode(buffer, EOPCODE.STOPMOB);
+            CompactFormat.putVarInt(buffer, targetID);
+            CompactFormat.putX(buffer, x);
+            CompactFormat.putY(buffer, y);
+        } else {
+            OriginalFormat.writeStopMOB(buffer, targetID, x, y);
+        }
+        return buffer;
+    }
+    
+    /**
+     * Write an "attacked" packet in the original or the compact format at
+     * the current position of the given buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param sourceID The ID number of the attacker.
+     * @param targetID The ID number of the target.
+     * @param hp The hit point of the target (-1 if a miss)
+     * @param compact Whether to use the compact format.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createAttackedPkt(int, int, int, boolean)
+     */
+    public static ByteBuffer writeAttackedPkt(ByteBuffer buffer, int sourceID, int targetID, int hp, boolean compact) {
+        if (compact) {
+            CompactFormat.putOpCode(buffer, EOPCODE.ATTACKED);
+            CompactFormat.putVarInt(buffer, sourceID);
+            CompactFormat.putVarInt(buffer, targetID);
+            CompactFormat.putVarInt(buffer, hp);
+        } else {
+            OriginalFormat.writeAttacked(buffer, sourceID, targetID, hp);
+        }
+        return buffer;
+    }
+    
+    /**
+     * Write a "respawn" packet in the original or the compact format at
+     * the current position of the given buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param objectID The ID number of the object to be respawn.
+     * @param x The x coordinate of the respawn position.
+     * @param y The y coordinate of the respawn position.
+     * @param compact Whether to use the compact format.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createRespawnPkt(int, float, float, boolean)
+     */
+    public static ByteBuffer writeRespawnPkt(ByteBuffer buffer, int objectID, float x, float y, boolean compact) {
+        if (compact) {
+            CompactFormat.putOpCode(buffer, EOPCODE.RESPAWN);
+            CompactFormat.putVarInt(buffer, objectID);
+            CompactFormat.putX(buffer, x);
+            CompactFormat.putY(buffer, y);
+        } else {
+            OriginalFormat.writeRespawn(buffer, objectID, x, y);
+        }
+        return buffer;
+    }
+    
+    /**
+     * Write a chat message packet at the current position of the given
+     * buffer.
+     * @param buffer The <code>ByteBuffer</code> to write to.
+     * @param sourceID The <code>Integer</code> source ID.
+     * @param message The <code>String</code> message to be displayed.
+     * @return The given <code>ByteBuffer</code>.
+     * @see #createChatPkt(int, String)
+     */
+    public static ByteBuffer writeChatPkt(ByteBuffer buffer, int sourceID, String message) {
+        return OriginalFormat.writeServerChat(buffer, sourceID, message);
     }
 }
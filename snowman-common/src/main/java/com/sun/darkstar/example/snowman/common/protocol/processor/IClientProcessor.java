@@ -49,7 +49,7 @@ import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
  * @author Jeffrey Kesselman
  * @author Owen Kellett
  * @version Creation date: 05-29-08 11:23 EST
- * @version Modified date: 11-26-08 21:08 EST
+ * @version Modified date: 10-18-2026 21:05 EST
  */
 public interface IClientProcessor extends IProtocolProcessor {
 	
@@ -137,4 +137,27 @@ public interface IClientProcessor extends IProtocolProcessor {
      * @param message The <code>String</code> actual message.
      */
     public void chatMessage(int sourceID, String message);
+    
+    /**
+     * Record the protocol version that the server agreed to use in answer
+     * to the PROTOCOL message of the client.  Compact packets sent from now
+     * on have their coordinates scaled to the given map dimensions.
+     * @param version The agreed protocol version.
+     * @param mapWidth The width of the map.
+     * @param mapHeight The height of the map.
+     */
+    public void protocol(int version, float mapWidth, float mapHeight);
+    
+    /**
+     * Check the sequence number of a SEQUENCED packet, which carries a
+     * movement message sent on an unreliable channel.  The carried message
+     * is only processed if this returns true, so that a message arriving
+     * after a later one from the same source is dropped.
+     * @param sourceID The ID number of the object the message is about,
+     * or 0 for messages about the whole game.
+     * @param sequence The sequence number of the message for its source.
+     * @return True if the carried message should be processed.
+     * @see com.sun.darkstar.example.snowman.common.protocol.handlers.SequenceFilter
+     */
+    public boolean sequenced(int sourceID, int sequence);
 }
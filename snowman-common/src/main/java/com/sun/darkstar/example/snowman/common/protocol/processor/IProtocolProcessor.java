@@ -42,7 +42,7 @@ package com.sun.darkstar.example.snowman.common.protocol.processor;
  * @author Jeffrey Kesselman
  * @author Owen Kellett
  * @version Creation date: 05-29-08 12:05 EST
- * @version Modified date: 11-26-08 21:06 EST
+ * @version Modified date: 10-18-2026 23:00 EST
  */
 public interface IProtocolProcessor {
     
@@ -66,4 +66,32 @@ public interface IProtocolProcessor {
      * </p>
      */
     public void ready();
+    
+    /**
+     * <p>
+     * Respond to a ping message.
+     * </p>
+     * <p>
+     * When either side receives a PING message, it should immediately send
+     * back a PONG message carrying the given time and the current time of
+     * its own clock.
+     * </p>
+     * @param time The time of the sender's clock when the PING was sent.
+     */
+    public void ping(int time);
+    
+    /**
+     * <p>
+     * Respond to a pong message.
+     * </p>
+     * <p>
+     * When either side receives a PONG message answering one of its PING
+     * messages, it should update its estimate of the round trip time and
+     * of the offset of the other side's clock.
+     * </p>
+     * @param echo The time carried by the PING message being answered.
+     * @param time The time of the other side's clock when it answered.
+     * @see com.sun.darkstar.example.snowman.common.protocol.handlers.ClockSynchronizer
+     */
+    public void pong(int echo, int time);
 }
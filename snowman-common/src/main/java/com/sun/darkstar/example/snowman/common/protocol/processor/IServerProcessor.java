@@ -46,7 +46,7 @@ package com.sun.darkstar.example.snowman.common.protocol.processor;
  * @author Jeffrey Kesselman
  * @author Owen Kellett
  * @version Creation date: 05-29-08 11:44 EST
- * @version Modified date: 11-26-08 21:14 EST
+ * @version Modified date: 10-18-2026 22:10 EST
  */
 public interface IServerProcessor extends IProtocolProcessor {
 
@@ -110,6 +110,27 @@ public interface IServerProcessor extends IProtocolProcessor {
      */
     public void attack(int targetID, float x, float y);
 
+    /**
+     * <p>
+     * Attack the object with given ID number from the given location at
+     * the given time of the client's clock.
+     * </p>
+     * <p>
+     * When the server receives an ATTACKAT message from the client, this
+     * method will be called and it should do the same as for an ATTACK
+     * message, except that the positions of the attacker and the target
+     * are checked at the server time estimated for the given client time
+     * instead of at the time the message is received.
+     * </p>
+     * @param targetID The ID number of the target.
+     * @param x The x coordinate of the attacker.
+     * @param y The y coordinate of the attacker.
+     * @param time The time of the attack in milliseconds of the client's
+     * clock, truncated to an int.
+     * @see #attack(int, float, float)
+     */
+    public void attackAt(int targetID, float x, float y, int time);
+
     /**
      * <p>
      * Attach the flag with given ID number to the sending client.
@@ -132,6 +153,26 @@ public interface IServerProcessor extends IProtocolProcessor {
      * @param y The y coordinate of the client position
      */
     public void getFlag(int flagID, float x, float y);
+
+    /**
+     * <p>
+     * Attach the flag with given ID number to the sending client, which
+     * tried to pick it up at the given time of its clock.
+     * </p>
+     * <p>
+     * When the server receives a GETFLAGAT message from the client, this
+     * method will be called and it should do the same as for a GETFLAG
+     * message, except that the position of the client is checked at the
+     * server time estimated for the given client time.
+     * </p>
+     * @param flagID The ID number of the flag.
+     * @param x The x coordinate of the client position
+     * @param y The y coordinate of the client position
+     * @param time The time of the attempt in milliseconds of the client's
+     * clock, truncated to an int.
+     * @see #getFlag(int, float, float)
+     */
+    public void getFlagAt(int flagID, float x, float y, int time);
     
     /**
      * <p>
@@ -159,4 +200,20 @@ public interface IServerProcessor extends IProtocolProcessor {
      * @param message The <code>String</code> actual chat message.
      */
     public void chatMessage(String message);
+    
+    /**
+     * <p>
+     * Negotiate the protocol version used with the sending client.
+     * </p>
+     * <p>
+     * When the server receives a PROTOCOL message from the client, this
+     * method will be called and it should record the highest version
+     * supported by both the client and the server, then answer with a
+     * PROTOCOL message containing that version and the map dimensions.
+     * Clients which never send a PROTOCOL message use the original
+     * protocol.
+     * </p>
+     * @param version The latest protocol version supported by the client.
+     */
+    public void protocol(int version);
 }
@@ -0,0 +1,614 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jme.math.Vector3f;
+import com.jme.scene.Node;
+import com.jme.scene.Spatial;
+import com.jme.scene.TriMesh;
+import com.sun.darkstar.example.snowman.common.util.enumn.EStats;
+
+/**
+ * <code>CollisionGeometry</code> is an immutable snapshot of the triangles
+ * of a static scene graph, flattened into primitive arrays and expressed in
+ * the local coordinate system of the scene graph's root.
+ * <p>
+ * The triangles are indexed by a bounding volume hierarchy which is also
+ * stored in flat arrays. Nodes are laid out in depth first order so the left
+ * child of an interior node always directly follows its parent, and the
+ * triangles of each leaf are stored contiguously.
+ * <p>
+ * Unlike the jME picking code used by <code>CollisionManagerImpl</code>, a
+ * <code>CollisionGeometry</code> keeps no mutable state once it has been
+ * built, so any number of threads may query it concurrently without any
+ * locking. The {@link #getDestination} and {@link #validate} methods follow
+ * the same rules as their <code>CollisionManager</code> counterparts.
+ * 
+ * @version Creation date: 10-18-2026 14:05 EST
+ * @version Modified date: 10-18-2026 16:20 EST
+ */
+public class CollisionGeometry {
+    /**
+     * The value returned by {@link #intersect} when the ray hits nothing.
+     */
+    public static final float NO_HIT = Float.POSITIVE_INFINITY;
+    /**
+     * Determinant threshold below which a ray is considered parallel to a
+     * triangle.
+     */
+    private static final float EPSILON = 1e-7f;
+    /**
+     * The maximum number of triangles stored in a leaf node.
+     */
+    private static final int LEAF_SIZE = 4;
+    /**
+     * The size of the traversal stack. The median split keeps the depth of
+     * the hierarchy logarithmic in the number of triangles so this is never
+     * reached.
+     */
+    private static final int STACK_SIZE = 64;
+    /**
+     * The per-thread traversal stack, so that queries do not allocate.
+     */
+    private static final ThreadLocal<int[]> stack = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[STACK_SIZE];
+        }
+    };
+    /**
+     * The triangle vertices in leaf order, nine floats per triangle.
+     */
+    private final float[] vertices;
+    /**
+     * The axis aligned bounds of each node, six floats per node in the order
+     * min x, min y, min z, max x, max y, max z.
+     */
+    private final float[] nodeBounds;
+    /**
+     * Two ints per node. For a leaf these are the index of its first triangle
+     * and its triangle count. For an interior node these are the index of its
+     * right child and zero.
+     */
+    private final int[] nodes;
+
+    /**
+     * Constructor of <code>CollisionGeometry</code>.
+     * @param vertices The flattened triangle vertices in leaf order.
+     * @param nodeBounds The bounds of each node.
+     * @param nodes The child and triangle data of each node.
+     */
+    private CollisionGeometry(float[] vertices, float[] nodeBounds, int[] nodes) {
+        this.vertices = vertices;
+        this.nodeBounds = nodeBounds;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Build the <code>CollisionGeometry</code> of all the collidable meshes
+     * under the given root <code>Spatial</code>. The root's own transform is
+     * not applied, so all queries are in the root's local coordinate system.
+     * @param root The root <code>Spatial</code> of the static geometry.
+     * @return The built <code>CollisionGeometry</code>.
+     */
+    public static CollisionGeometry build(Spatial root) {
+        List<TriMesh> meshes = new ArrayList<TriMesh>();
+        CollisionGeometry.collectMeshes(root, meshes);
+        int total = 0;
+        for (TriMesh mesh : meshes) {
+            total += mesh.getTriangleCount();
+        }
+        float[] triangles = new float[total * 9];
+        Vector3f[] triangle = new Vector3f[3];
+        int offset = 0;
+        for (TriMesh mesh : meshes) {
+            for (int i = 0; i < mesh.getTriangleCount(); i++) {
+                mesh.getTriangle(i, triangle);
+                for (int k = 0; k < 3; k++) {
+                    CollisionGeometry.toRootLocal(mesh, root, triangle[k]);
+                    triangles[offset++] = triangle[k].x;
+                    triangles[offset++] = triangle[k].y;
+                    triangles[offset++] = triangle[k].z;
+                }
+            }
+        }
+        return new Builder(triangles).build();
+    }
+
+    /**
+     * Recursively collect the collidable meshes under the given spatial.
+     * @param spatial The <code>Spatial</code> to collect from.
+     * @param store The <code>List</code> to add the meshes to.
+     */
+    private static void collectMeshes(Spatial spatial, List<TriMesh> store) {
+        if (spatial == null || !spatial.isCollidable()) {
+            return;
+        }
+        if (spatial instanceof TriMesh) {
+            store.add((TriMesh) spatial);
+        } else if (spatial instanceof Node) {
+            List<Spatial> children = ((Node) spatial).getChildren();
+            if (children != null) {
+                for (Spatial child : children) {
+                    CollisionGeometry.collectMeshes(child, store);
+                }
+            }
+        }
+    }
+
+    /**
+     * Transform the given point from the local coordinate system of the
+     * given spatial into the local coordinate system of the given root.
+     * Only the local transforms are used so the result does not depend on
+     * the world transforms having been updated.
+     * @param spatial The <code>Spatial</code> the point is local to.
+     * @param root The root <code>Spatial</code>.
+     * @param point The <code>Vector3f</code> point to transform in place.
+     */
+    private static void toRootLocal(Spatial spatial, Spatial root, Vector3f point) {
+        for (Spatial s = spatial; s != null && s != root; s = s.getParent()) {
+            point.multLocal(s.getLocalScale());
+            s.getLocalRotation().multLocal(point);
+            point.addLocal(s.getLocalTranslation());
+        }
+    }
+
+    /**
+     * Retrieve the number of triangles in this geometry.
+     * @return The number of triangles.
+     */
+    public int getTriangleCount() {
+        return this.vertices.length / 9;
+    }
+
+    /**
+     * Retrieve the triangle vertices, nine floats per triangle. The returned
+     * array is shared and must not be modified.
+     * @return The triangle vertices.
+     */
+    float[] getVertices() {
+        return this.vertices;
+    }
+
+    /**
+     * Retrieve the number of nodes in the bounding volume hierarchy.
+     * @return The number of nodes.
+     */
+    public int getNodeCount() {
+        return this.nodes.length / 2;
+    }
+
+    /**
+     * Retrieve the minimum x coordinate of this geometry.
+     * @return The minimum x coordinate.
+     */
+    public float getMinX() {
+        return this.nodes.length == 0 ? 0 : this.nodeBounds[0];
+    }
+
+    /**
+     * Retrieve the minimum z coordinate of this geometry.
+     * @return The minimum z coordinate.
+     */
+    public float getMinZ() {
+        return this.nodes.length == 0 ? 0 : this.nodeBounds[2];
+    }
+
+    /**
+     * Retrieve the maximum x coordinate of this geometry.
+     * @return The maximum x coordinate.
+     */
+    public float getMaxX() {
+        return this.nodes.length == 0 ? 0 : this.nodeBounds[3];
+    }
+
+    /**
+     * Retrieve the maximum z coordinate of this geometry.
+     * @return The maximum z coordinate.
+     */
+    public float getMaxZ() {
+        return this.nodes.length == 0 ? 0 : this.nodeBounds[5];
+    }
+
+    /**
+     * Cast a ray against the geometry and retrieve the distance to the
+     * closest triangle it hits. Triangles are hit from either side.
+     * @param ox The x coordinate of the ray origin.
+     * @param oy The y coordinate of the ray origin.
+     * @param oz The z coordinate of the ray origin.
+     * @param dx The x component of the normalized ray direction.
+     * @param dy The y component of the normalized ray direction.
+     * @param dz The z component of the normalized ray direction.
+     * @return The distance to the closest hit or {@link #NO_HIT}.
+     */
+    public float intersect(float ox, float oy, float oz, float dx, float dy, float dz) {
+        return this.intersect(ox, oy, oz, dx, dy, dz, NO_HIT);
+    }
+
+    /**
+     * Cast a ray against the geometry and retrieve the distance to the
+     * closest triangle it hits within the given range. Nodes that the ray
+     * enters beyond the range or beyond the closest hit found so far are
+     * never visited, and the nearer child of each node is visited first.
+     * @param ox The x coordinate of the ray origin.
+     * @param oy The y coordinate of the ray origin.
+     * @param oz The z coordinate of the ray origin.
+     * @param dx The x component of the normalized ray direction.
+     * @param dy The y component of the normalized ray direction.
+     * @param dz The z component of the normalized ray direction.
+     * @param range The maximum distance of interest.
+     * @return The distance to the closest hit within range or {@link #NO_HIT}.
+     */
+    public float intersect(float ox, float oy, float oz, float dx, float dy, float dz, float range) {
+        if (this.nodes.length == 0 ||
+                CollisionGeometry.enterBox(this.nodeBounds, 0, ox, oy, oz, dx, dy, dz, range) == NO_HIT) {
+            return NO_HIT;
+        }
+        float closest = NO_HIT;
+        float limit = range;
+        int[] pending = CollisionGeometry.stack.get();
+        int top = 0;
+        pending[top++] = 0;
+        while (top > 0) {
+            int node = pending[--top];
+            int count = this.nodes[node * 2 + 1];
+            if (count > 0) {
+                int first = this.nodes[node * 2];
+                for (int i = first; i < first + count; i++) {
+                    float t = this.intersectTriangle(i, ox, oy, oz, dx, dy, dz);
+                    if (t < closest && t <= range) {
+                        closest = t;
+                        limit = t;
+                    }
+                }
+            } else {
+                int left = node + 1;
+                int right = this.nodes[node * 2];
+                float tl = CollisionGeometry.enterBox(this.nodeBounds, left * 6, ox, oy, oz, dx, dy, dz, limit);
+                float tr = CollisionGeometry.enterBox(this.nodeBounds, right * 6, ox, oy, oz, dx, dy, dz, limit);
+                // push the farther child first so that the nearer one is popped first
+                if (tl <= tr) {
+                    if (tr != NO_HIT) pending[top++] = right;
+                    if (tl != NO_HIT) pending[top++] = left;
+                } else {
+                    if (tl != NO_HIT) pending[top++] = left;
+                    pending[top++] = right;
+                }
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Retrieve the distance at which a ray enters the given axis aligned box,
+     * if it does so within the given maximum distance.
+     * @param b The array holding the box bounds.
+     * @param offset The offset of the box bounds in the array.
+     * @param ox The x coordinate of the ray origin.
+     * @param oy The y coordinate of the ray origin.
+     * @param oz The z coordinate of the ray origin.
+     * @param dx The x component of the ray direction.
+     * @param dy The y component of the ray direction.
+     * @param dz The z component of the ray direction.
+     * @param max The maximum distance of interest.
+     * @return The entry distance, zero if the origin is inside the box, or
+     * {@link #NO_HIT} if the box is missed or out of range.
+     */
+    private static float enterBox(float[] b, int offset, float ox, float oy, float oz,
+            float dx, float dy, float dz, float max) {
+        float near = 0;
+        float far = max;
+        for (int axis = 0; axis < 3; axis++) {
+            float o = axis == 0 ? ox : (axis == 1 ? oy : oz);
+            float d = axis == 0 ? dx : (axis == 1 ? dy : dz);
+            float min = b[offset + axis];
+            float maxBound = b[offset + axis + 3];
+            if (d == 0) {
+                if (o < min || o > maxBound) return NO_HIT;
+            } else {
+                float t1 = (min - o) / d;
+                float t2 = (maxBound - o) / d;
+                if (t1 > t2) {
+                    float swap = t1;
+                    t1 = t2;
+                    t2 = swap;
+                }
+                if (t1 > near) near = t1;
+                if (t2 < far) far = t2;
+                if (near > far) return NO_HIT;
+            }
+        }
+        return near;
+    }
+
+    /**
+     * Intersect a ray with a single triangle using the Moller-Trumbore test.
+     * @param triangle The index of the triangle.
+     * @param ox The x coordinate of the ray origin.
+     * @param oy The y coordinate of the ray origin.
+     * @param oz The z coordinate of the ray origin.
+     * @param dx The x component of the ray direction.
+     * @param dy The y component of the ray direction.
+     * @param dz The z component of the ray direction.
+     * @return The distance to the hit or {@link #NO_HIT}.
+     */
+    private float intersectTriangle(int triangle, float ox, float oy, float oz, float dx, float dy, float dz) {
+        final float[] v = this.vertices;
+        final int i = triangle * 9;
+        float e1x = v[i + 3] - v[i], e1y = v[i + 4] - v[i + 1], e1z = v[i + 5] - v[i + 2];
+        float e2x = v[i + 6] - v[i], e2y = v[i + 7] - v[i + 1], e2z = v[i + 8] - v[i + 2];
+        float px = dy * e2z - dz * e2y;
+        float py = dz * e2x - dx * e2z;
+        float pz = dx * e2y - dy * e2x;
+        float det = e1x * px + e1y * py + e1z * pz;
+        if (det > -EPSILON && det < EPSILON) return NO_HIT;
+        float inv = 1.0f / det;
+        float sx = ox - v[i], sy = oy - v[i + 1], sz = oz - v[i + 2];
+        float u = (sx * px + sy * py + sz * pz) * inv;
+        if (u < 0 || u > 1) return NO_HIT;
+        float qx = sy * e1z - sz * e1y;
+        float qy = sz * e1x - sx * e1z;
+        float qz = sx * e1y - sy * e1x;
+        float w = (dx * qx + dy * qy + dz * qz) * inv;
+        if (w < 0 || u + w > 1) return NO_HIT;
+        float t = (e2x * qx + e2y * qy + e2z * qz) * inv;
+        return t >= 0 ? t : NO_HIT;
+    }
+
+    /**
+     * Retrieve the distance a snowman may travel from the given starting
+     * position towards the given destination before it has to stop. The
+     * returned distance is negative when the snowman is already closer to
+     * an obstacle than the backoff distance.
+     * @param x1 The x coordinate of the starting position.
+     * @param z1 The z coordinate of the starting position.
+     * @param x2 The x coordinate of the destination.
+     * @param z2 The z coordinate of the destination.
+     * @return The distance that can be travelled along the path.
+     */
+    public float getTravelDistance(float x1, float z1, float x2, float z2) {
+        float dx = x2 - x1;
+        float dz = z2 - z1;
+        float distance = (float) Math.sqrt(dx * dx + dz * dz);
+        if (distance == 0) return 0;
+        float hit = this.intersect(x1, EStats.SnowmanHeight.getValue() / 2.0f, z1,
+                dx / distance, 0, dz / distance,
+                distance + EStats.BackoffDistance.getValue());
+        float stop = hit - EStats.BackoffDistance.getValue();
+        return distance > stop ? stop : distance;
+    }
+
+    /**
+     * Retrieve the valid destination point based on the given coordinate
+     * values, following the rules of
+     * {@link CollisionManager#getDestination(float, float, float, float, Spatial)}.
+     * @param x1 The x coordinate of the starting position.
+     * @param z1 The z coordinate of the starting position.
+     * @param x2 The x coordinate of the clicking position.
+     * @param z2 The z coordinate of the clicking position.
+     * @param store The <code>Vector3f</code> to store the result in, may be null.
+     * @return The valid <code>Vector3f</code> destination.
+     */
+    public Vector3f getDestination(float x1, float z1, float x2, float z2, Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        float dx = x2 - x1;
+        float dz = z2 - z1;
+        float distance = (float) Math.sqrt(dx * dx + dz * dz);
+        float travel = this.getTravelDistance(x1, z1, x2, z2);
+        if (travel >= distance) {
+            store.set(x2, EStats.SnowmanHeight.getValue() / 2.0f, z2);
+        } else {
+            store.set(x1 + dx / distance * travel,
+                    EStats.SnowmanHeight.getValue() / 2.0f,
+                    z1 + dz / distance * travel);
+        }
+        return store;
+    }
+
+    /**
+     * Validate if there is any static objects between the given points,
+     * following the rules of
+     * {@link CollisionManager#validate(float, float, float, float, Spatial)}.
+     * @param x1 The x coordinate of the starting position.
+     * @param z1 The z coordinate of the starting position.
+     * @param x2 The x coordinate of the target position.
+     * @param z2 The z coordinate of the target position.
+     * @return True if there is no occlusion objects. False otherwise.
+     */
+    public boolean validate(float x1, float z1, float x2, float z2) {
+        float dx = x2 - x1;
+        float dz = z2 - z1;
+        float distance = (float) Math.sqrt(dx * dx + dz * dz);
+        if (distance == 0) return true;
+        float hit = this.intersect(x1, EStats.SnowballHeight.getValue(), z1,
+                dx / distance, 0, dz / distance, distance);
+        return distance <= hit;
+    }
+
+    /**
+     * <code>Builder</code> builds the bounding volume hierarchy by recursively
+     * splitting the triangles at the median of their centroids along the
+     * longest axis of the centroid bounds.
+     */
+    private static class Builder {
+        /**
+         * The triangle vertices in their original order.
+         */
+        private final float[] triangles;
+        /**
+         * The triangle centroids, three floats per triangle.
+         */
+        private final float[] centroids;
+        /**
+         * The triangle indices in leaf order.
+         */
+        private final int[] order;
+        /**
+         * The node bounds being built.
+         */
+        private final float[] nodeBounds;
+        /**
+         * The node data being built.
+         */
+        private final int[] nodes;
+        /**
+         * The number of nodes built so far.
+         */
+        private int nodeCount;
+
+        /**
+         * Constructor of <code>Builder</code>.
+         * @param triangles The triangle vertices in their original order.
+         */
+        private Builder(float[] triangles) {
+            int count = triangles.length / 9;
+            this.triangles = triangles;
+            this.centroids = new float[count * 3];
+            this.order = new int[count];
+            for (int i = 0; i < count; i++) {
+                this.order[i] = i;
+                for (int axis = 0; axis < 3; axis++) {
+                    this.centroids[i * 3 + axis] = (triangles[i * 9 + axis] +
+                            triangles[i * 9 + 3 + axis] + triangles[i * 9 + 6 + axis]) / 3.0f;
+                }
+            }
+            int maxNodes = Math.max(0, 2 * count - 1);
+            this.nodeBounds = new float[maxNodes * 6];
+            this.nodes = new int[maxNodes * 2];
+        }
+
+        /**
+         * Build the <code>CollisionGeometry</code>.
+         * @return The built <code>CollisionGeometry</code>.
+         */
+        private CollisionGeometry build() {
+            if (this.order.length > 0) {
+                this.buildNode(0, this.order.length);
+            }
+            float[] vertices = new float[this.triangles.length];
+            for (int i = 0; i < this.order.length; i++) {
+                System.arraycopy(this.triangles, this.order[i] * 9, vertices, i * 9, 9);
+            }
+            float[] bounds = new float[this.nodeCount * 6];
+            int[] data = new int[this.nodeCount * 2];
+            System.arraycopy(this.nodeBounds, 0, bounds, 0, bounds.length);
+            System.arraycopy(this.nodes, 0, data, 0, data.length);
+            return new CollisionGeometry(vertices, bounds, data);
+        }
+
+        /**
+         * Build the node covering the given range of the triangle order.
+         * @param from The first index in the triangle order, inclusive.
+         * @param to The last index in the triangle order, exclusive.
+         * @return The index of the built node.
+         */
+        private int buildNode(int from, int to) {
+            int node = this.nodeCount++;
+            int b = node * 6;
+            float[] c = new float[6];
+            for (int axis = 0; axis < 3; axis++) {
+                this.nodeBounds[b + axis] = c[axis] = Float.POSITIVE_INFINITY;
+                this.nodeBounds[b + axis + 3] = c[axis + 3] = Float.NEGATIVE_INFINITY;
+            }
+            for (int i = from; i < to; i++) {
+                int t = this.order[i];
+                for (int axis = 0; axis < 3; axis++) {
+                    for (int k = 0; k < 3; k++) {
+                        float v = this.triangles[t * 9 + k * 3 + axis];
+                        this.nodeBounds[b + axis] = Math.min(this.nodeBounds[b + axis], v);
+                        this.nodeBounds[b + axis + 3] = Math.max(this.nodeBounds[b + axis + 3], v);
+                    }
+                    c[axis] = Math.min(c[axis], this.centroids[t * 3 + axis]);
+                    c[axis + 3] = Math.max(c[axis + 3], this.centroids[t * 3 + axis]);
+                }
+            }
+            if (to - from <= LEAF_SIZE) {
+                this.nodes[node * 2] = from;
+                this.nodes[node * 2 + 1] = to - from;
+                return node;
+            }
+            int axis = 0;
+            for (int i = 1; i < 3; i++) {
+                if (c[i + 3] - c[i] > c[axis + 3] - c[axis]) axis = i;
+            }
+            int middle = (from + to) >>> 1;
+            this.select(from, to - 1, middle, axis);
+            this.buildNode(from, middle);
+            this.nodes[node * 2] = this.buildNode(middle, to);
+            this.nodes[node * 2 + 1] = 0;
+            return node;
+        }
+
+        /**
+         * Partially sort the given range of the triangle order so that the
+         * triangles before index k have centroids no greater than those from
+         * index k onwards along the given axis.
+         * @param left The first index of the range, inclusive.
+         * @param right The last index of the range, inclusive.
+         * @param k The index to select.
+         * @param axis The axis to compare centroids along.
+         */
+        private void select(int left, int right, int k, int axis) {
+            while (right > left) {
+                float pivot = this.centroids[this.order[(left + right) >>> 1] * 3 + axis];
+                int i = left;
+                int j = right;
+                while (i <= j) {
+                    while (this.centroids[this.order[i] * 3 + axis] < pivot) i++;
+                    while (this.centroids[this.order[j] * 3 + axis] > pivot) j--;
+                    if (i <= j) {
+                        int swap = this.order[i];
+                        this.order[i] = this.order[j];
+                        this.order[j] = swap;
+                        i++;
+                        j--;
+                    }
+                }
+                if (k <= j) {
+                    right = j;
+                } else if (k >= i) {
+                    left = i;
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.util;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.jme.math.Ray;
+import com.jme.math.Vector3f;
+import com.jme.scene.Node;
+import com.jme.scene.Spatial;
+
+/**
+ * <code>IndexedCollisionManagerImpl</code> is a <code>CollisionManager</code>
+ * that answers ray queries against the <code>Spatial</code> registered with
+ * {@link #index(Spatial)} from a <code>CollisionGeometry</code>, instead of
+ * picking through the scene graph on every call.
+ * <p>
+ * The geometry is a snapshot, so only static geometry such as the static
+ * root of a <code>World</code> should be indexed. If an indexed
+ * <code>Spatial</code> is modified afterwards, {@link #invalidate(Spatial)}
+ * has to be invoked to rebuild its geometry. Queries against any other
+ * <code>Spatial</code> and object picking still rely on the scene graph and
+ * are delegated to <code>CollisionManagerImpl</code>.
+ * <p>
+ * Queries may come from several threads, such as the task and the render
+ * threads of the client, so the geometries are guarded by a lock.
+ * 
+ * @version Creation date: 10-18-2026 16:40 EST
+ */
+public class IndexedCollisionManagerImpl implements CollisionManager
+{
+    /**
+     * The <code>IndexedCollisionManagerImpl</code> instance.
+     */
+    private static IndexedCollisionManagerImpl instance;
+    /**
+     * The <code>CollisionGeometry</code> of each indexed spatial, null until
+     * it is first queried. Guarded by itself.
+     */
+    private final Map<Spatial, CollisionGeometry> geometries;
+
+    /**
+     * Constructor of <code>IndexedCollisionManagerImpl</code>.
+     */
+    protected IndexedCollisionManagerImpl() {
+        this.geometries = new WeakHashMap<Spatial, CollisionGeometry>();
+    }
+
+    /**
+     * Retrieve the <code>IndexedCollisionManagerImpl</code> instance.
+     * @return The <code>IndexedCollisionManagerImpl</code> instance.
+     */
+    public static synchronized IndexedCollisionManagerImpl getInstance() {
+        if (IndexedCollisionManagerImpl.instance == null) {
+            IndexedCollisionManagerImpl.instance = new IndexedCollisionManagerImpl();
+        }
+        return IndexedCollisionManagerImpl.instance;
+    }
+
+    /**
+     * Answer the ray queries against the given static spatial from its
+     * <code>CollisionGeometry</code>, built on the first query.
+     * @param spatial The static <code>Spatial</code> to index.
+     */
+    public void index(Spatial spatial) {
+        synchronized (this.geometries) {
+            if (!this.geometries.containsKey(spatial)) {
+                this.geometries.put(spatial, null);
+            }
+        }
+    }
+
+    /**
+     * Retrieve the <code>CollisionGeometry</code> of the given spatial,
+     * building it if this is the first query against it.
+     * @param spatial The <code>Spatial</code> to retrieve the geometry of.
+     * @return The <code>CollisionGeometry</code> of the spatial, or null if
+     * the spatial is not indexed.
+     */
+    public CollisionGeometry getGeometry(Spatial spatial) {
+        synchronized (this.geometries) {
+            if (!this.geometries.containsKey(spatial)) {
+                return null;
+            }
+            CollisionGeometry geometry = this.geometries.get(spatial);
+            if (geometry == null) {
+                geometry = CollisionGeometry.build(spatial);
+                this.geometries.put(spatial, geometry);
+            }
+            return geometry;
+        }
+    }
+
+    /**
+     * Discard the <code>CollisionGeometry</code> of the given spatial so that
+     * it is rebuilt on the next query.
+     * @param spatial The indexed <code>Spatial</code> that has been modified.
+     */
+    public void invalidate(Spatial spatial) {
+        synchronized (this.geometries) {
+            if (this.geometries.containsKey(spatial)) {
+                this.geometries.put(spatial, null);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public Spatial getIntersectObject(Ray ray, Node root, Class<? extends Spatial> reference, boolean iterate) {
+        return CollisionManagerImpl.getInstance().getIntersectObject(ray, root, reference, iterate);
+    }
+
+    /** {@inheritDoc} */
+    public Vector3f getIntersection(Ray ray, Spatial parent, Vector3f store, boolean local) {
+        CollisionGeometry geometry = this.getGeometry(parent);
+        if (geometry == null) {
+            return CollisionManagerImpl.getInstance().getIntersection(ray, parent, store, local);
+        }
+        //convert the ray into the local coordinate system of the parent
+        Vector3f origin = parent.worldToLocal(ray.getOrigin(), new Vector3f());
+        Vector3f direction = parent.worldToLocal(ray.getOrigin().add(ray.getDirection()), new Vector3f());
+        direction.subtractLocal(origin).normalizeLocal();
+
+        float distance = geometry.intersect(origin.x, origin.y, origin.z,
+                direction.x, direction.y, direction.z);
+        if (distance == CollisionGeometry.NO_HIT) {
+            return null;
+        }
+
+        if (store == null) {
+            store = new Vector3f();
+        }
+        store.set(origin.x + direction.x * distance,
+                  origin.y + direction.y * distance,
+                  origin.z + direction.z * distance);
+        if (!local) {
+            parent.localToWorld(store, store);
+        }
+        return store;
+    }
+
+    /** {@inheritDoc} */
+    public Vector3f getDestination(float x1, float z1, float x2, float z2, Spatial spatial) {
+        CollisionGeometry geometry = this.getGeometry(spatial);
+        if (geometry == null) {
+            return CollisionManagerImpl.getInstance().getDestination(x1, z1, x2, z2, spatial);
+        }
+        return geometry.getDestination(x1, z1, x2, z2, null);
+    }
+
+    /** {@inheritDoc} */
+    public boolean validate(float x1, float z1, float x2, float z2, Spatial spatial) {
+        CollisionGeometry geometry = this.getGeometry(spatial);
+        if (geometry == null) {
+            return CollisionManagerImpl.getInstance().validate(x1, z1, x2, z2, spatial);
+        }
+        return geometry.validate(x1, z1, x2, z2);
+    }
+}
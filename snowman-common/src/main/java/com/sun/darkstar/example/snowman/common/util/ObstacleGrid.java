@@ -0,0 +1,678 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.util;
+
+import com.jme.math.Vector3f;
+import java.util.Arrays;
+import com.sun.darkstar.example.snowman.common.util.enumn.EStats;
+
+/**
+ * <code>ObstacleGrid</code> is an immutable planar obstacle map of a
+ * <code>CollisionGeometry</code> sliced by a horizontal plane at a fixed
+ * height.
+ * <p>
+ * Every triangle crossing the plane leaves an obstacle segment on it. The
+ * segments are binned into a uniform grid of square cells stored in flat
+ * arrays, and queries walk the cells along the ray with a DDA traversal,
+ * testing only the segments of the visited cells. Since a horizontal ray at
+ * the slicing height hits a triangle exactly where it hits the triangle's
+ * segment, the results match those of the full geometry at that height.
+ * <p>
+ * Like <code>CollisionGeometry</code>, a grid keeps no mutable state once
+ * built so it may be queried from any number of threads concurrently.
+ * 
+ * @version Creation date: 10-18-2026 17:30 EST
+ */
+public class ObstacleGrid {
+    /**
+     * Threshold below which a ray is considered parallel to a segment.
+     */
+    private static final float EPSILON = 1e-7f;
+    /**
+     * The height of the slicing plane.
+     */
+    private final float height;
+    /**
+     * The x coordinate of the grid's minimum corner.
+     */
+    private final float originX;
+    /**
+     * The z coordinate of the grid's minimum corner.
+     */
+    private final float originZ;
+    /**
+     * The edge length of a cell.
+     */
+    private final float cellSize;
+    /**
+     * The number of cells along the x axis.
+     */
+    private final int columns;
+    /**
+     * The number of cells along the z axis.
+     */
+    private final int rows;
+    /**
+     * The obstacle segments, four floats per segment in the order
+     * x1, z1, x2, z2.
+     */
+    private final float[] segments;
+    /**
+     * The index in {@link #cellSegments} of the first segment of each cell,
+     * in row major order, with one extra trailing entry.
+     */
+    private final int[] cellStart;
+    /**
+     * The segment indices of all the cells.
+     */
+    private final int[] cellSegments;
+
+    /**
+     * Constructor of <code>ObstacleGrid</code>.
+     * @param height The height of the slicing plane.
+     * @param originX The x coordinate of the grid's minimum corner.
+     * @param originZ The z coordinate of the grid's minimum corner.
+     * @param cellSize The edge length of a cell.
+     * @param columns The number of cells along the x axis.
+     * @param rows The number of cells along the z axis.
+     * @param segments The obstacle segments.
+     */
+    private ObstacleGrid(float height, float originX, float originZ, float cellSize,
+            int columns, int rows, float[] segments) {
+        this.height = height;
+        this.originX = originX;
+        this.originZ = originZ;
+        this.cellSize = cellSize;
+        this.columns = columns;
+        this.rows = rows;
+        this.segments = segments;
+        this.cellStart = new int[columns * rows + 1];
+        int segmentCount = segments.length / 4;
+        //first pass counts the segments of each cell, second pass fills them in
+        for (int i = 0; i < segmentCount; i++) {
+            this.rasterize(i, null, null);
+        }
+        int total = 0;
+        for (int cell = 0; cell < columns * rows; cell++) {
+            int count = this.cellStart[cell];
+            this.cellStart[cell] = total;
+            total += count;
+        }
+        this.cellStart[columns * rows] = total;
+        this.cellSegments = new int[total];
+        int[] fill = new int[columns * rows];
+        for (int i = 0; i < segmentCount; i++) {
+            this.rasterize(i, this.cellSegments, fill);
+        }
+    }
+
+    /**
+     * Build the <code>ObstacleGrid</code> of the given geometry sliced at
+     * the given height.
+     * @param geometry The <code>CollisionGeometry</code> to slice.
+     * @param height The height of the slicing plane.
+     * @param cellSize The edge length of a cell.
+     * @return The built <code>ObstacleGrid</code>.
+     */
+    public static ObstacleGrid build(CollisionGeometry geometry, float height, float cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        float[] v = geometry.getVertices();
+        int triangleCount = v.length / 9;
+        float[] segments = new float[triangleCount * 4];
+        float[] points = new float[6];
+        int count = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            int found = 0;
+            for (int k = 0; k < 3 && found < 2; k++) {
+                int a = t * 9 + k * 3;
+                int b = t * 9 + ((k + 1) % 3) * 3;
+                float da = v[a + 1] - height;
+                float db = v[b + 1] - height;
+                if (da == 0) {
+                    if (db == 0 && v[t * 9 + ((k + 2) % 3) * 3 + 1] == height) {
+                        //the triangle lies in the plane
+                        break;
+                    }
+                    points[found * 2] = v[a];
+                    points[found * 2 + 1] = v[a + 2];
+                    found++;
+                } else if ((da < 0 && db > 0) || (da > 0 && db < 0)) {
+                    float s = da / (da - db);
+                    points[found * 2] = v[a] + (v[b] - v[a]) * s;
+                    points[found * 2 + 1] = v[a + 2] + (v[b + 2] - v[a + 2]) * s;
+                    found++;
+                }
+            }
+            if (found == 2 && (points[0] != points[2] || points[1] != points[3])) {
+                System.arraycopy(points, 0, segments, count * 4, 4);
+                count++;
+            }
+        }
+        float[] trimmed = new float[count * 4];
+        System.arraycopy(segments, 0, trimmed, 0, trimmed.length);
+
+        float minX = geometry.getMinX();
+        float minZ = geometry.getMinZ();
+        int columns = Math.max(1, (int) Math.ceil((geometry.getMaxX() - minX) / cellSize));
+        int rows = Math.max(1, (int) Math.ceil((geometry.getMaxZ() - minZ) / cellSize));
+        return new ObstacleGrid(height, minX, minZ, cellSize, columns, rows, trimmed);
+    }
+
+    /**
+     * Add the given segment to every cell it passes through. When the store
+     * is null, the segment is only counted in {@link #cellStart}.
+     * @param segment The index of the segment.
+     * @param store The array of cell segment indices to fill, or null.
+     * @param fill The number of segments already stored for each cell.
+     */
+    private void rasterize(int segment, int[] store, int[] fill) {
+        float x1 = this.segments[segment * 4];
+        float z1 = this.segments[segment * 4 + 1];
+        float dx = this.segments[segment * 4 + 2] - x1;
+        float dz = this.segments[segment * 4 + 3] - z1;
+        float length = (float) Math.sqrt(dx * dx + dz * dz);
+        int column = this.clampColumn(x1);
+        int row = this.clampRow(z1);
+        int endColumn = this.clampColumn(x1 + dx);
+        int endRow = this.clampRow(z1 + dz);
+        dx /= length;
+        dz /= length;
+        int stepX = dx > 0 ? 1 : -1;
+        int stepZ = dz > 0 ? 1 : -1;
+        float nextX = dx == 0 ? Float.POSITIVE_INFINITY :
+                (this.originX + (column + (dx > 0 ? 1 : 0)) * this.cellSize - x1) / dx;
+        float nextZ = dz == 0 ? Float.POSITIVE_INFINITY :
+                (this.originZ + (row + (dz > 0 ? 1 : 0)) * this.cellSize - z1) / dz;
+        float deltaX = dx == 0 ? Float.POSITIVE_INFINITY : this.cellSize / Math.abs(dx);
+        float deltaZ = dz == 0 ? Float.POSITIVE_INFINITY : this.cellSize / Math.abs(dz);
+        while (true) {
+            int cell = row * this.columns + column;
+            if (store == null) {
+                this.cellStart[cell]++;
+            } else {
+                store[this.cellStart[cell] + fill[cell]++] = segment;
+            }
+            if (column == endColumn && row == endRow) {
+                return;
+            }
+            if (nextX < nextZ) {
+                column += stepX;
+                nextX += deltaX;
+            } else {
+                row += stepZ;
+                nextZ += deltaZ;
+            }
+            if (column < 0 || column >= this.columns || row < 0 || row >= this.rows) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Retrieve the column of the given x coordinate, clamped to the grid.
+     * @param x The x coordinate.
+     * @return The column index.
+     */
+    private int clampColumn(float x) {
+        int column = (int) Math.floor((x - this.originX) / this.cellSize);
+        return Math.max(0, Math.min(this.columns - 1, column));
+    }
+
+    /**
+     * Retrieve the row of the given z coordinate, clamped to the grid.
+     * @param z The z coordinate.
+     * @return The row index.
+     */
+    private int clampRow(float z) {
+        int row = (int) Math.floor((z - this.originZ) / this.cellSize);
+        return Math.max(0, Math.min(this.rows - 1, row));
+    }
+
+    /**
+     * Retrieve the height of the slicing plane.
+     * @return The height of the slicing plane.
+     */
+    public float getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Retrieve the number of obstacle segments in this grid.
+     * @return The number of segments.
+     */
+    public int getSegmentCount() {
+        return this.segments.length / 4;
+    }
+
+    /**
+     * Retrieve the number of cells in this grid.
+     * @return The number of cells.
+     */
+    public int getCellCount() {
+        return this.columns * this.rows;
+    }
+
+    /**
+     * Cast a planar ray across the grid and retrieve the distance to the
+     * closest obstacle it hits within the given range.
+     * @param x The x coordinate of the ray origin.
+     * @param z The z coordinate of the ray origin.
+     * @param dx The x component of the normalized ray direction.
+     * @param dz The z component of the normalized ray direction.
+     * @param range The maximum distance of interest.
+     * @return The distance to the closest hit within range or
+     * {@link CollisionGeometry#NO_HIT}.
+     */
+    public float intersect(float x, float z, float dx, float dz, float range) {
+        Traversal walk = new Traversal();
+        if (!walk.start(x, z, dx, dz, range)) return CollisionGeometry.NO_HIT;
+        float closest = CollisionGeometry.NO_HIT;
+        do {
+            int cell = walk.cell();
+            for (int i = this.cellStart[cell]; i < this.cellStart[cell + 1]; i++) {
+                float t = this.intersectSegment(this.cellSegments[i], x, z, dx, dz);
+                if (t < closest && t <= range) {
+                    closest = t;
+                }
+            }
+            //hits in the remaining cells are all further than this cell's exit
+            if (closest <= walk.leave()) {
+                return closest;
+            }
+        } while (walk.advance());
+        return closest;
+    }
+
+    /**
+     * Cast a batch of planar rays across the grid and retrieve the distance
+     * to the closest obstacle each of them hits within its range.
+     * <p>
+     * Instead of walking the rays one after the other, the cells crossed by
+     * every ray are collected and sorted, so that each cell crossed by the
+     * batch is visited once and each of its segments is tested against all
+     * of the rays crossing it in turn. Rays close to each other, such as the
+     * paths of the snowmen of a game, share most of their cells. The
+     * distances are the ones {@link #intersect(float, float, float, float, float)}
+     * returns for each ray.
+     * @param rays The rays, five floats per ray in the order x, z, dx, dz,
+     * range. A ray with a range of zero is not cast.
+     * @param count The number of rays.
+     * @param store The array to store the distances in.
+     */
+    private void intersect(float[] rays, int count, float[] store) {
+        //pack the crossed cells with the ray index, so that sorting them
+        //groups the rays by cell
+        long[] crossings = new long[count * 4];
+        int size = 0;
+        Traversal walk = new Traversal();
+        for (int ray = 0; ray < count; ray++) {
+            store[ray] = CollisionGeometry.NO_HIT;
+            int i = ray * 5;
+            if (rays[i + 4] == 0 || !walk.start(rays[i], rays[i + 1], rays[i + 2], rays[i + 3], rays[i + 4])) {
+                continue;
+            }
+            do {
+                if (size == crossings.length) {
+                    long[] grown = new long[size * 2];
+                    System.arraycopy(crossings, 0, grown, 0, size);
+                    crossings = grown;
+                }
+                crossings[size++] = ((long) walk.cell() << 32) | ray;
+            } while (walk.advance());
+        }
+        Arrays.sort(crossings, 0, size);
+
+        for (int first = 0; first < size;) {
+            int cell = (int) (crossings[first] >>> 32);
+            int end = first + 1;
+            while (end < size && (int) (crossings[end] >>> 32) == cell) {
+                end++;
+            }
+            for (int i = this.cellStart[cell]; i < this.cellStart[cell + 1]; i++) {
+                int segment = this.cellSegments[i];
+                for (int k = first; k < end; k++) {
+                    int ray = (int) crossings[k];
+                    int r = ray * 5;
+                    float t = this.intersectSegment(segment, rays[r], rays[r + 1], rays[r + 2], rays[r + 3]);
+                    if (t < store[ray] && t <= rays[r + 4]) {
+                        store[ray] = t;
+                    }
+                }
+            }
+            first = end;
+        }
+    }
+
+    /**
+     * Intersect a planar ray with a single obstacle segment.
+     * @param segment The index of the segment.
+     * @param x The x coordinate of the ray origin.
+     * @param z The z coordinate of the ray origin.
+     * @param dx The x component of the ray direction.
+     * @param dz The z component of the ray direction.
+     * @return The distance to the hit or {@link CollisionGeometry#NO_HIT}.
+     */
+    private float intersectSegment(int segment, float x, float z, float dx, float dz) {
+        final int i = segment * 4;
+        float ex = this.segments[i + 2] - this.segments[i];
+        float ez = this.segments[i + 3] - this.segments[i + 1];
+        float denom = dx * ez - dz * ex;
+        if (denom > -EPSILON && denom < EPSILON) return CollisionGeometry.NO_HIT;
+        float wx = this.segments[i] - x;
+        float wz = this.segments[i + 1] - z;
+        float s = (wx * dz - wz * dx) / denom;
+        if (s < 0 || s > 1) return CollisionGeometry.NO_HIT;
+        float t = (wx * ez - wz * ex) / denom;
+        return t >= 0 ? t : CollisionGeometry.NO_HIT;
+    }
+
+    /**
+     * Retrieve the distance a snowman may travel from the given starting
+     * position towards the given destination before it has to stop,
+     * following the rules of {@link CollisionGeometry#getTravelDistance}.
+     * The grid is expected to be sliced at half the snowman height.
+     * @param x1 The x coordinate of the starting position.
+     * @param z1 The z coordinate of the starting position.
+     * @param x2 The x coordinate of the destination.
+     * @param z2 The z coordinate of the destination.
+     * @return The distance that can be travelled along the path.
+     */
+    public float getTravelDistance(float x1, float z1, float x2, float z2) {
+        float dx = x2 - x1;
+        float dz = z2 - z1;
+        float distance = (float) Math.sqrt(dx * dx + dz * dz);
+        if (distance == 0) return 0;
+        float hit = this.intersect(x1, z1, dx / distance, dz / distance,
+                distance + EStats.BackoffDistance.getValue());
+        return getTravelDistance(distance, hit);
+    }
+
+    /**
+     * Retrieve the distance that can be travelled along a path given the
+     * distance to the first obstacle along it.
+     * @param distance The length of the path.
+     * @param hit The distance to the first obstacle.
+     * @return The distance that can be travelled along the path.
+     */
+    private static float getTravelDistance(float distance, float hit) {
+        float stop = hit - EStats.BackoffDistance.getValue();
+        return distance > stop ? stop : distance;
+    }
+
+    /**
+     * Retrieve the coordinate reached after travelling the given distance
+     * along a path.
+     * @param from The coordinate of the starting position.
+     * @param to The coordinate of the destination.
+     * @param distance The length of the path.
+     * @param travel The distance travelled along the path.
+     * @return The reached coordinate.
+     */
+    private static float travel(float from, float to, float distance, float travel) {
+        return travel >= distance ? to : from + (to - from) / distance * travel;
+    }
+
+    /**
+     * Retrieve the valid destination point based on the given coordinate
+     * values, following the rules of {@link CollisionGeometry#getDestination}.
+     * @param x1 The x coordinate of the starting position.
+     * @param z1 The z coordinate of the starting position.
+     * @param x2 The x coordinate of the clicking position.
+     * @param z2 The z coordinate of the clicking position.
+     * @param store The <code>Vector3f</code> to store the result in, may be null.
+     * @return The valid <code>Vector3f</code> destination.
+     */
+    public Vector3f getDestination(float x1, float z1, float x2, float z2, Vector3f store) {
+        if (store == null) {
+            store = new Vector3f();
+        }
+        float dx = x2 - x1;
+        float dz = z2 - z1;
+        float distance = (float) Math.sqrt(dx * dx + dz * dz);
+        float travel = this.getTravelDistance(x1, z1, x2, z2);
+        store.set(travel(x1, x2, distance, travel), this.height, travel(z1, z2, distance, travel));
+        return store;
+    }
+
+    /**
+     * Retrieve the valid destination points of a batch of paths, which are
+     * the ones {@link #getDestination} returns for each path. The paths are
+     * cast together so that the grid cells they share are only visited once.
+     * Each path is given as four consecutive floats x1, z1, x2, z2 and its
+     * destination is stored as two consecutive floats x, z.
+     * @param paths The packed paths.
+     * @param store The array to store the destinations in, may be null.
+     * @return The packed destinations.
+     */
+    public float[] getDestinations(float[] paths, float[] store) {
+        if (paths.length % 4 != 0) {
+            throw new IllegalArgumentException("Paths must be packed in groups of 4: " + paths.length);
+        }
+        int count = paths.length / 4;
+        if (store == null) {
+            store = new float[count * 2];
+        }
+        float[] rays = this.toRays(paths, count, EStats.BackoffDistance.getValue());
+        float[] hits = new float[count];
+        this.intersect(rays, count, hits);
+        for (int i = 0; i < count; i++) {
+            float x1 = paths[i * 4];
+            float z1 = paths[i * 4 + 1];
+            float x2 = paths[i * 4 + 2];
+            float z2 = paths[i * 4 + 3];
+            float dx = x2 - x1;
+            float dz = z2 - z1;
+            float distance = (float) Math.sqrt(dx * dx + dz * dz);
+            float travel = distance == 0 ? 0 : getTravelDistance(distance, hits[i]);
+            store[i * 2] = travel(x1, x2, distance, travel);
+            store[i * 2 + 1] = travel(z1, z2, distance, travel);
+        }
+        return store;
+    }
+
+    /**
+     * Validate if there is any obstacle between the given points, following
+     * the rules of {@link CollisionGeometry#validate}. The grid is expected
+     * to be sliced at the snowball height.
+     * @param x1 The x coordinate of the starting position.
+     * @param z1 The z coordinate of the starting position.
+     * @param x2 The x coordinate of the target position.
+     * @param z2 The z coordinate of the target position.
+     * @return True if there is no obstacle. False otherwise.
+     */
+    public boolean validate(float x1, float z1, float x2, float z2) {
+        float dx = x2 - x1;
+        float dz = z2 - z1;
+        float distance = (float) Math.sqrt(dx * dx + dz * dz);
+        if (distance == 0) return true;
+        return distance <= this.intersect(x1, z1, dx / distance, dz / distance, distance);
+    }
+
+    /**
+     * Validate a batch of segments, with the results {@link #validate}
+     * returns for each segment. The segments are cast together so that the
+     * grid cells they share are only visited once. Each segment is given as
+     * four consecutive floats x1, z1, x2, z2.
+     * @param segments The packed segments.
+     * @param store The array to store the results in, may be null.
+     * @return For each segment, true if there is no obstacle along it.
+     */
+    public boolean[] validate(float[] segments, boolean[] store) {
+        if (segments.length % 4 != 0) {
+            throw new IllegalArgumentException("Segments must be packed in groups of 4: " + segments.length);
+        }
+        int count = segments.length / 4;
+        if (store == null) {
+            store = new boolean[count];
+        }
+        float[] rays = this.toRays(segments, count, 0);
+        float[] hits = new float[count];
+        this.intersect(rays, count, hits);
+        for (int i = 0; i < count; i++) {
+            float distance = rays[i * 5 + 4];
+            store[i] = distance == 0 || distance <= hits[i];
+        }
+        return store;
+    }
+
+    /**
+     * Convert packed segments to the rays cast along them. The range of a
+     * ray is the length of its segment plus the given margin, or zero if
+     * the segment has no length.
+     * @param segments The packed segments, x1, z1, x2, z2 for each.
+     * @param count The number of segments.
+     * @param margin The distance added to the range of the rays.
+     * @return The rays, x, z, dx, dz, range for each.
+     */
+    private float[] toRays(float[] segments, int count, float margin) {
+        float[] rays = new float[count * 5];
+        for (int i = 0; i < count; i++) {
+            float x1 = segments[i * 4];
+            float z1 = segments[i * 4 + 1];
+            float dx = segments[i * 4 + 2] - x1;
+            float dz = segments[i * 4 + 3] - z1;
+            float distance = (float) Math.sqrt(dx * dx + dz * dz);
+            rays[i * 5] = x1;
+            rays[i * 5 + 1] = z1;
+            if (distance > 0) {
+                rays[i * 5 + 2] = dx / distance;
+                rays[i * 5 + 3] = dz / distance;
+                rays[i * 5 + 4] = distance + margin;
+            }
+        }
+        return rays;
+    }
+
+    /**
+     * <code>Traversal</code> walks the cells crossed by a planar ray in
+     * order with a DDA traversal, clipped to the grid and to the range of
+     * the ray. A traversal may be restarted for any number of rays, but
+     * must not be shared between threads.
+     */
+    private final class Traversal {
+        private int column;
+        private int row;
+        private int stepX;
+        private int stepZ;
+        /** The distances at which the ray crosses the next column and row. */
+        private float nextX;
+        private float nextZ;
+        /** The distances between two column and two row crossings. */
+        private float deltaX;
+        private float deltaZ;
+        /** The distance at which the ray leaves the grid or its range. */
+        private float exit;
+
+        /**
+         * Start walking a ray from the first cell it crosses.
+         * @param x The x coordinate of the ray origin.
+         * @param z The z coordinate of the ray origin.
+         * @param dx The x component of the normalized ray direction.
+         * @param dz The z component of the normalized ray direction.
+         * @param range The maximum distance of interest.
+         * @return False if the ray does not cross the grid within range.
+         */
+        boolean start(float x, float z, float dx, float dz, float range) {
+            //clip the ray to the grid bounds
+            float enter = 0;
+            this.exit = range;
+            float maxX = originX + columns * cellSize;
+            float maxZ = originZ + rows * cellSize;
+            for (int axis = 0; axis < 2; axis++) {
+                float o = axis == 0 ? x : z;
+                float d = axis == 0 ? dx : dz;
+                float min = axis == 0 ? originX : originZ;
+                float max = axis == 0 ? maxX : maxZ;
+                if (d == 0) {
+                    if (o < min || o > max) return false;
+                } else {
+                    float t1 = (min - o) / d;
+                    float t2 = (max - o) / d;
+                    enter = Math.max(enter, Math.min(t1, t2));
+                    this.exit = Math.min(this.exit, Math.max(t1, t2));
+                }
+            }
+            if (enter > this.exit) return false;
+
+            this.column = clampColumn(x + dx * enter);
+            this.row = clampRow(z + dz * enter);
+            this.stepX = dx > 0 ? 1 : -1;
+            this.stepZ = dz > 0 ? 1 : -1;
+            this.nextX = dx == 0 ? Float.POSITIVE_INFINITY :
+                    (originX + (this.column + (dx > 0 ? 1 : 0)) * cellSize - x) / dx;
+            this.nextZ = dz == 0 ? Float.POSITIVE_INFINITY :
+                    (originZ + (this.row + (dz > 0 ? 1 : 0)) * cellSize - z) / dz;
+            this.deltaX = dx == 0 ? Float.POSITIVE_INFINITY : cellSize / Math.abs(dx);
+            this.deltaZ = dz == 0 ? Float.POSITIVE_INFINITY : cellSize / Math.abs(dz);
+            return true;
+        }
+
+        /**
+         * Retrieve the current cell.
+         * @return The index of the cell in row major order.
+         */
+        int cell() {
+            return this.row * columns + this.column;
+        }
+
+        /**
+         * Retrieve the distance at which the ray leaves the current cell.
+         * @return The distance along the ray.
+         */
+        float leave() {
+            return Math.min(this.nextX, this.nextZ);
+        }
+
+        /**
+         * Move on to the next cell crossed by the ray.
+         * @return False if the ray leaves the grid or its range first.
+         */
+        boolean advance() {
+            if (this.leave() > this.exit) {
+                return false;
+            }
+            if (this.nextX < this.nextZ) {
+                this.column += this.stepX;
+                this.nextX += this.deltaX;
+            } else {
+                this.row += this.stepZ;
+                this.nextZ += this.deltaZ;
+            }
+            return this.column >= 0 && this.column < columns && this.row >= 0 && this.row < rows;
+        }
+    }
+}
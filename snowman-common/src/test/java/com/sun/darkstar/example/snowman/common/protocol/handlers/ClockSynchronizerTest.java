@@ -0,0 +1,114 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.protocol.handlers;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+/**
+ * Test the ClockSynchronizer class
+ */
+public class ClockSynchronizerTest
+{
+    @Test
+    public void testPingDue() {
+        ClockSynchronizer clock = new ClockSynchronizer(1000);
+        Assert.assertTrue(clock.isPingDue(5000));
+        Assert.assertEquals(5000, clock.ping(5000));
+        Assert.assertFalse(clock.isPingDue(5999));
+        Assert.assertTrue(clock.isPingDue(6000));
+        
+        clock.reset();
+        Assert.assertTrue(clock.isPingDue(5001));
+    }
+    
+    @Test
+    public void testFirstSample() {
+        ClockSynchronizer clock = new ClockSynchronizer();
+        Assert.assertFalse(clock.isSynchronized());
+        
+        //remote clock 300ms ahead, 40ms each way
+        int echo = clock.ping(1000);
+        clock.pong(echo, 1340, 1080);
+        Assert.assertTrue(clock.isSynchronized());
+        Assert.assertEquals(80.0f, clock.getRoundTripTime(), 0.0f);
+        Assert.assertEquals(300.0f, clock.getOffset(), 0.0);
+        Assert.assertEquals(1040, clock.toLocalTime(1340, 1080));
+    }
+    
+    @Test
+    public void testSmoothing() {
+        ClockSynchronizer clock = new ClockSynchronizer();
+        clock.pong(1000, 1340, 1080);
+        
+        //a delayed answer moves the estimates only slightly
+        clock.pong(2000, 2340, 2880);
+        Assert.assertEquals(80.0f + (880.0f - 80.0f) / 8, 
+                            clock.getRoundTripTime(), 0.001f);
+        Assert.assertEquals(300.0f + (-100.0f - 300.0f) / 8, 
+                            clock.getOffset(), 0.001);
+        
+        //answers from the future are ignored
+        clock.pong(5000, 5340, 4000);
+        Assert.assertEquals(250.0f, clock.getOffset(), 0.001);
+    }
+    
+    @Test
+    public void testWrapAround() {
+        ClockSynchronizer clock = new ClockSynchronizer();
+        long now = 0xFFFFFFF0L;
+        int echo = clock.ping(now);
+        clock.pong(echo, echo + 50, now + 40);
+        Assert.assertEquals(40.0f, clock.getRoundTripTime(), 0.0f);
+        Assert.assertEquals(30.0f, clock.getOffset(), 0.0);
+        Assert.assertEquals(now + 20, clock.toLocalTime(echo + 50, now + 40));
+    }
+    
+    @Test
+    public void testLargeOffset() {
+        ClockSynchronizer clock = new ClockSynchronizer();
+        //remote clock started about 24 days before the local one, which
+        //is beyond the millisecond precision of a float
+        long offset = (1L << 31) - 1100;
+        long now = 5000;
+        for (int i = 0; i < 10; i++) {
+            int echo = clock.ping(now);
+            clock.pong(echo, (int) (now + 20 + offset), now + 40);
+            now += 5000;
+        }
+        Assert.assertEquals(offset, clock.getOffset(), 0.0);
+        Assert.assertEquals(now, clock.toLocalTime((int) (now + offset), now));
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.protocol.handlers;
+
+import com.sun.darkstar.example.snowman.common.protocol.enumn.EEndState;
+import com.sun.darkstar.example.snowman.common.protocol.enumn.EMOBType;
+import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.darkstar.example.snowman.common.protocol.processor.IClientProcessor;
+import com.sun.darkstar.example.snowman.common.protocol.processor.IServerProcessor;
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
+import com.sun.darkstar.example.snowman.common.protocol.messages.ServerMessages;
+import com.sun.darkstar.example.snowman.common.protocol.messages.ClientMessages;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the decoding throughput of the MessageHandlerImpl for each
+ * packet, in the original and in the compact format.  This is not run as
+ * part of the tests.  Run it with the test classpath:
+ * <pre>
+ * java -cp ... com.sun.darkstar.example.snowman.common.protocol.handlers.MessageHandlerBenchmark [millis]
+ * </pre>
+ * Each packet is decoded for a warm up period, then for the measurement
+ * period given in milliseconds (1000 by default), into a processor that
+ * only accumulates the values it receives.
+ * <p>
+ * To compare against an older revision, check it out in a separate git
+ * worktree and run this same class against its sources, alternating the
+ * runs of both trees.  Results of single runs vary a lot from run to run,
+ * so compare the median of several.
+ */
+public class MessageHandlerBenchmark
+{
+    public static void main(String[] args) {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        
+        Map<String, ByteBuffer> client = new LinkedHashMap<String, ByteBuffer>();
+        client.put("NEWGAME", ServerMessages.createNewGamePkt(1, "default_map"));
+        client.put("STARTGAME", ServerMessages.createStartGamePkt());
+        client.put("ENDGAME", ServerMessages.createEndGamePkt(EEndState.RedWin));
+        client.put("ENDGAME compact", ServerMessages.createEndGamePkt(EEndState.RedWin, true));
+        client.put("ADDMOB", ServerMessages.createAddMOBPkt(1, 10.0f, 20.0f, EMOBType.SNOWMAN, ETeamColor.Red, "player"));
+        client.put("ADDMOB compact", ServerMessages.createAddMOBPkt(1, 10.0f, 20.0f, EMOBType.SNOWMAN, ETeamColor.Red, "player", true));
+        client.put("REMOVEMOB", ServerMessages.createRemoveMOBPkt(1));
+        client.put("REMOVEMOB compact", ServerMessages.createRemoveMOBPkt(1, true));
+        client.put("MOVEMOB", ServerMessages.createMoveMOBPkt(1, 10.0f, 20.0f, 30.0f, 40.0f));
+        client.put("MOVEMOB compact", ServerMessages.createMoveMOBPkt(1, 10.0f, 20.0f, 30.0f, 40.0f, true));
+        client.put("STOPMOB", ServerMessages.createStopMOBPkt(1, 10.0f, 20.0f));
+        client.put("STOPMOB compact", ServerMessages.createStopMOBPkt(1, 10.0f, 20.0f, true));
+        client.put("ATTACHOBJ", ServerMessages.createAttachObjPkt(1, 2));
+        client.put("ATTACHOBJ compact", ServerMessages.createAttachObjPkt(1, 2, true));
+        client.put("ATTACKED", ServerMessages.createAttackedPkt(1, 2, 50));
+        client.put("ATTACKED compact", ServerMessages.createAttackedPkt(1, 2, 50, true));
+        client.put("RESPAWN", ServerMessages.createRespawnPkt(1, 10.0f, 20.0f));
+        client.put("RESPAWN compact", ServerMessages.createRespawnPkt(1, 10.0f, 20.0f, true));
+        client.put("CHAT", ServerMessages.createChatPkt(1, "a chat message"));
+        client.put("READY", Messages.createReadyPkt());
+        client.put("PROTOCOL", ServerMessages.createProtocolPkt(Messages.PROTOCOL_VERSION, 96.0f, 96.0f));
+        List<ByteBuffer> updates = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < 8; i++) {
+            updates.add(ServerMessages.createMoveMOBPkt(i, 10.0f, 20.0f, 30.0f, 40.0f, true));
+        }
+        client.put("GAMESTATE 8 compact", ServerMessages.createGameStatePkt(updates));
+        client.put("ENVELOPE 8 compact", ServerMessages.createEnvelopePkt(updates));
+        
+        Map<String, ByteBuffer> server = new LinkedHashMap<String, ByteBuffer>();
+        server.put("MOVEME", ClientMessages.createMoveMePkt(10.0f, 20.0f, 30.0f, 40.0f));
+        server.put("MOVEME compact", ClientMessages.createMoveMePkt(10.0f, 20.0f, 30.0f, 40.0f, true));
+        server.put("ATTACK", ClientMessages.createAttackPkt(2, 10.0f, 20.0f));
+        server.put("ATTACK compact", ClientMessages.createAttackPkt(2, 10.0f, 20.0f, true));
+        server.put("ATTACKAT", ClientMessages.createAttackAtPkt(2, 10.0f, 20.0f, 12345));
+        server.put("GETFLAG", ClientMessages.createGetFlagPkt(2, 10.0f, 20.0f));
+        server.put("GETFLAG compact", ClientMessages.createGetFlagPkt(2, 10.0f, 20.0f, true));
+        server.put("SCORE", ClientMessages.createScorePkt(10.0f, 20.0f));
+        server.put("SCORE compact", ClientMessages.createScorePkt(10.0f, 20.0f, true));
+        server.put("CHAT", ClientMessages.createChatPkt("a chat message"));
+        server.put("READY", Messages.createReadyPkt());
+        server.put("PROTOCOL", ClientMessages.createProtocolPkt(Messages.PROTOCOL_VERSION));
+        
+        MessageHandler handler = MessageHandlerImpl.getInstance();
+        NullProcessor processor = new NullProcessor();
+        System.out.println("client packets (decodes per second)");
+        for (Map.Entry<String, ByteBuffer> entry : client.entrySet()) {
+            run(millis / 2, handler, entry.getValue(), processor, true);
+            System.out.printf("  %-22s %,14.0f%n", entry.getKey(),
+                              run(millis, handler, entry.getValue(), processor, true));
+        }
+        System.out.println("server packets (decodes per second)");
+        for (Map.Entry<String, ByteBuffer> entry : server.entrySet()) {
+            run(millis / 2, handler, entry.getValue(), processor, false);
+            System.out.printf("  %-22s %,14.0f%n", entry.getKey(),
+                              run(millis, handler, entry.getValue(), processor, false));
+        }
+        System.out.println("(checksum " + processor.sum + ")");
+    }
+    
+    // Decode the packet repeatedly for the given time and return the
+    // number of packets decoded per second
+    private static double run(long millis, MessageHandler handler, 
+                              ByteBuffer packet, NullProcessor processor,
+                              boolean client) {
+        long count = 0;
+        long start = System.nanoTime();
+        long end = start + millis * 1000000L;
+        long now;
+        do {
+            for (int i = 0; i < 1000; i++) {
+                ByteBuffer buffer = packet.duplicate();
+                if (client) {
+                    handler.parseClientPacket(buffer, processor);
+                } else {
+                    handler.parseServerPacket(buffer, processor);
+                }
+            }
+            count += 1000;
+            now = System.nanoTime();
+        } while (now < end);
+        return count * 1e9 / (now - start);
+    }
+    
+    /**
+     * Processor which accumulates the values it receives so that the
+     * decoding cannot be optimized away.
+     */
+    private static class NullProcessor implements IClientProcessor, IServerProcessor {
+        long sum;
+        
+        public void newGame(int myID, String mapname) { sum += myID + mapname.length(); }
+        public void startGame() { sum++; }
+        public void endGame(EEndState endState) { sum += endState.ordinal(); }
+        public void addMOB(int objectID, float x, float y, EMOBType objType, ETeamColor team, String mobName) {
+            sum += objectID + (int) x + (int) y + objType.ordinal() + team.ordinal() + mobName.length();
+        }
+        public void moveMOB(int objectID, float startx, float starty, float endx, float endy) {
+            sum += objectID + (int) (startx + starty + endx + endy);
+        }
+        public void removeMOB(int objectID) { sum += objectID; }
+        public void stopMOB(int objectID, float x, float y) { sum += objectID + (int) (x + y); }
+        public void attachObject(int sourceID, int targetID) { sum += sourceID + targetID; }
+        public void attacked(int sourceID, int targetID, int hp) { sum += sourceID + targetID + hp; }
+        public void respawn(int objectID, float x, float y) { sum += objectID + (int) (x + y); }
+        public void chatMessage(int sourceID, String message) { sum += sourceID + message.length(); }
+        public void protocol(int version, float mapWidth, float mapHeight) { sum += version + (int) (mapWidth + mapHeight); }
+        public boolean sequenced(int sourceID, int sequence) { sum += sourceID + sequence; return true; }
+        public void attackAt(int targetID, float x, float y, int time) { sum += targetID + time + (int) (x + y); }
+        public void getFlagAt(int flagID, float x, float y, int time) { sum += flagID + time + (int) (x + y); }
+        public void ready() { sum++; }
+        public void ping(int time) { sum += time; }
+        public void pong(int echo, int time) { sum += echo + time; }
+        public void moveMe(float x, float y, float endx, float endy) { sum += (int) (x + y + endx + endy); }
+        public void attack(int targetID, float x, float y) { sum += targetID + (int) (x + y); }
+        public void getFlag(int flagID, float x, float y) { sum += flagID + (int) (x + y); }
+        public void score(float x, float y) { sum += (int) (x + y); }
+        public void chatMessage(String message) { sum += message.length(); }
+        public void protocol(int version) { sum += version; }
+    }
+}
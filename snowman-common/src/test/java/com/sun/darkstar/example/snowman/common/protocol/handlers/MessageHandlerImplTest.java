@@ -43,6 +43,9 @@ import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
 import com.sun.darkstar.example.snowman.common.protocol.messages.ServerMessages;
 import com.sun.darkstar.example.snowman.common.protocol.messages.ClientMessages;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
 import org.junit.Test;
 import org.junit.Assert;
 import org.easymock.EasyMock;
@@ -92,6 +95,44 @@ public class MessageHandlerImplTest
         Assert.assertFalse(readyPacket.hasRemaining());
     }
     
+    @Test
+    public void parseServerPingPkt() {
+        MessageHandlerImpl parser = new MessageHandlerImpl();
+        
+        ByteBuffer pingPacket = Messages.createPingPkt(-1234);
+        
+        IServerProcessor mockProcessor = EasyMock.createMock(IServerProcessor.class);
+        //record expected processor calls
+        mockProcessor.ping(-1234);
+        EasyMock.replay(mockProcessor);
+        
+        parser.parseServerPacket(pingPacket, mockProcessor);
+        
+        EasyMock.verify(mockProcessor);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(pingPacket.hasRemaining());
+    }
+    
+    @Test
+    public void parseClientPongPkt() {
+        MessageHandlerImpl parser = new MessageHandlerImpl();
+        
+        ByteBuffer pongPacket = Messages.createPongPkt(1000, 2345);
+        
+        IClientProcessor mockProcessor = EasyMock.createMock(IClientProcessor.class);
+        //record expected processor calls
+        mockProcessor.pong(1000, 2345);
+        EasyMock.replay(mockProcessor);
+        
+        parser.parseClientPacket(pongPacket, mockProcessor);
+        
+        EasyMock.verify(mockProcessor);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(pongPacket.hasRemaining());
+    }
+    
     
     /**
      * Test that the proper processor methods are called when
@@ -375,6 +416,32 @@ public class MessageHandlerImplTest
         Assert.assertFalse(packet.hasRemaining());
     }
     
+    /**
+     * Test that the proper processor methods are called when
+     * packets are sent to the ClientProtocol
+     */
+    @Test
+    public void parseAttackAt() {
+        MessageHandlerImpl parser = new MessageHandlerImpl();
+        IServerProcessor mockProcessor = EasyMock.createMock(IServerProcessor.class);
+
+        // generate packet
+        ByteBuffer packet = ClientMessages.createAttackAtPkt(10, 1.0f, 2.0f, 12345);
+        // record expected processor calls
+        mockProcessor.attackAt(EasyMock.eq(10),
+                               EasyMock.eq(1.0f),
+                               EasyMock.eq(2.0f),
+                               EasyMock.eq(12345));
+        EasyMock.replay(mockProcessor);        
+        // send it to the parser
+        parser.parseServerPacket(packet, mockProcessor);
+        //verify
+        EasyMock.verify(mockProcessor);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(packet.hasRemaining());
+    }
+    
     /**
      * Test that the proper processor methods are called when
      * packets are sent to the ClientProtocol
@@ -468,6 +535,237 @@ public class MessageHandlerImplTest
         //ensure we are at the end of the buffer
         Assert.assertFalse(packet.hasRemaining());
     }
+    
+    /**
+     * Test that each update combined into a game state packet is
+     * dispatched to the ClientProtocol in order
+     */
+    @Test
+    public void parseGameState() {
+        MessageHandlerImpl parser = new MessageHandlerImpl();
+        IClientProcessor mockProcessor = EasyMock.createStrictMock(IClientProcessor.class);
+
+        // generate packet
+        List<ByteBuffer> updates = new ArrayList<ByteBuffer>();
+        updates.add(ServerMessages.createMoveMOBPkt(10, 1.0f, 2.0f, 3.0f, 4.0f));
+        updates.add(ServerMessages.createStopMOBPkt(11, 5.0f, 6.0f));
+        ByteBuffer packet = ServerMessages.createGameStatePkt(updates);
+        // record expected processor calls
+        mockProcessor.moveMOB(10, 1.0f, 2.0f, 3.0f, 4.0f);
+        mockProcessor.stopMOB(11, 5.0f, 6.0f);
+        EasyMock.replay(mockProcessor);
+        // send it to the parser
+        parser.parseClientPacket(packet, mockProcessor);
+        //verify
+        EasyMock.verify(mockProcessor);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(packet.hasRemaining());
+    }
+    
+    /**
+     * Test that the protocol negotiation packets are dispatched to
+     * the ClientProtocol and ServerProtocol
+     */
+    @Test
+    public void parseProtocol() {
+        MessageHandlerImpl parser = new MessageHandlerImpl();
+        IClientProcessor mockClient = EasyMock.createMock(IClientProcessor.class);
+        IServerProcessor mockServer = EasyMock.createMock(IServerProcessor.class);
+
+        // generate packets
+        ByteBuffer reply = ServerMessages.createProtocolPkt(1, 96.0f, 64.0f);
+        ByteBuffer request = ClientMessages.createProtocolPkt(1);
+        // record expected processor calls
+        mockClient.protocol(1, 96.0f, 64.0f);
+        mockServer.protocol(1);
+        EasyMock.replay(mockClient, mockServer);
+        // send them to the parser
+        parser.parseClientPacket(reply, mockClient);
+        parser.parseServerPacket(request, mockServer);
+        //verify
+        EasyMock.verify(mockClient, mockServer);
+        
+        //ensure we are at the end of the buffers
+        Assert.assertFalse(reply.hasRemaining());
+        Assert.assertFalse(request.hasRemaining());
+    }
+    
+    /**
+     * Test that compact packets are decoded to the same processor calls
+     * as the original packets, within the precision of the coordinates
+     */
+    @Test
+    public void parseCompactClientPackets() {
+        MessageHandlerImpl parser = new MessageHandlerImpl();
+        IClientProcessor mockProcessor = EasyMock.createStrictMock(IClientProcessor.class);
+
+        // generate packets
+        ByteBuffer add = ServerMessages.createAddMOBPkt(300, 1.0f, 2.0f, EMOBType.SNOWMAN, ETeamColor.Red, "name", true);
+        ByteBuffer move = ServerMessages.createMoveMOBPkt(10, 1.0f, 2.0f, 3.0f, 4.0f, true);
+        ByteBuffer end = ServerMessages.createEndGamePkt(EEndState.RedWin, true);
+        // record expected processor calls
+        mockProcessor.addMOB(EasyMock.eq(300), EasyMock.eq(1.0f, 0.01f), EasyMock.eq(2.0f, 0.01f),
+                             EasyMock.eq(EMOBType.SNOWMAN), EasyMock.eq(ETeamColor.Red), EasyMock.eq("name"));
+        mockProcessor.moveMOB(EasyMock.eq(10), EasyMock.eq(1.0f, 0.01f), EasyMock.eq(2.0f, 0.01f),
+                              EasyMock.eq(3.0f, 0.01f), EasyMock.eq(4.0f, 0.01f));
+        mockProcessor.endGame(EEndState.RedWin);
+        EasyMock.replay(mockProcessor);
+        // send them to the parser
+        parser.parseClientPacket(add, mockProcessor);
+        parser.parseClientPacket(move, mockProcessor);
+        parser.parseClientPacket(end, mockProcessor);
+        //verify
+        EasyMock.verify(mockProcessor);
+        
+        //ensure we are at the end of the buffers
+        Assert.assertFalse(add.hasRemaining());
+        Assert.assertFalse(move.hasRemaining());
+        Assert.assertFalse(end.hasRemaining());
+    }
+    
+    /**
+     * Test that compact packets are decoded by the ServerProtocol
+     */
+    @Test
+    public void parseCompactServerPackets() {
+        MessageHandlerImpl parser = new MessageHandlerImpl();
+        IServerProcessor mockProcessor = EasyMock.createStrictMock(IServerProcessor.class);
+
+        // generate packets
+        ByteBuffer move = ClientMessages.createMoveMePkt(1.0f, 2.0f, 3.0f, 4.0f, true);
+        ByteBuffer attack = ClientMessages.createAttackPkt(70000, 5.0f, 6.0f, true);
+        // record expected processor calls
+        mockProcessor.moveMe(EasyMock.eq(1.0f, 0.01f), EasyMock.eq(2.0f, 0.01f),
+                             EasyMock.eq(3.0f, 0.01f), EasyMock.eq(4.0f, 0.01f));
+        mockProcessor.attack(EasyMock.eq(70000), EasyMock.eq(5.0f, 0.01f), EasyMock.eq(6.0f, 0.01f));
+        EasyMock.replay(mockProcessor);
+        // send them to the parser
+        parser.parseServerPacket(move, mockProcessor);
+        parser.parseServerPacket(attack, mockProcessor);
+        //verify
+        EasyMock.verify(mockProcessor);
+        
+        //ensure we are at the end of the buffers
+        Assert.assertFalse(move.hasRemaining());
+        Assert.assertFalse(attack.hasRemaining());
+    }
+    
+    /**
+     * Test that compact updates combined into a game state packet are
+     * dispatched to the ClientProtocol in order
+     */
+    @Test
+    public void parseCompactGameState() {
+        MessageHandlerImpl parser = new MessageHandlerImpl();
+        IClientProcessor mockProcessor = EasyMock.createStrictMock(IClientProcessor.class);
+
+        // generate packet
+        List<ByteBuffer> updates = new ArrayList<ByteBuffer>();
+        updates.add(ServerMessages.createMoveMOBPkt(10, 1.0f, 2.0f, 3.0f, 4.0f, true));
+        updates.add(ServerMessages.createStopMOBPkt(11, 5.0f, 6.0f));
+        ByteBuffer packet = ServerMessages.createGameStatePkt(updates);
+        // record expected processor calls
+        mockProcessor.moveMOB(EasyMock.eq(10), EasyMock.eq(1.0f, 0.01f), EasyMock.eq(2.0f, 0.01f),
+                              EasyMock.eq(3.0f, 0.01f), EasyMock.eq(4.0f, 0.01f));
+        mockProcessor.stopMOB(11, 5.0f, 6.0f);
+        EasyMock.replay(mockProcessor);
+        // send it to the parser
+        parser.parseClientPacket(packet, mockProcessor);
+        //verify
+        EasyMock.verify(mockProcessor);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(packet.hasRemaining());
+    }
+    
+    /**
+     * Test that each message carried by an envelope packet is
+     * dispatched to the ClientProtocol in order
+     */
+    @Test
+    public void parseEnvelope() {
+        MessageHandlerImpl parser = new MessageHandlerImpl();
+        IClientProcessor mockProcessor = EasyMock.createStrictMock(IClientProcessor.class);
 
+        // generate packet
+        List<ByteBuffer> messages = new ArrayList<ByteBuffer>();
+        messages.add(ServerMessages.createNewGamePkt(10, "map"));
+        messages.add(ServerMessages.createAddMOBPkt(10, 1.0f, 2.0f, EMOBType.SNOWMAN, ETeamColor.Red, "name"));
+        messages.add(ServerMessages.createEndGamePkt(EEndState.RedWin, true));
+        messages.add(Messages.createReadyPkt());
+        ByteBuffer packet = ServerMessages.createEnvelopePkt(messages);
+        // record expected processor calls
+        mockProcessor.newGame(10, "map");
+        mockProcessor.addMOB(10, 1.0f, 2.0f, EMOBType.SNOWMAN, ETeamColor.Red, "name");
+        mockProcessor.endGame(EEndState.RedWin);
+        mockProcessor.ready();
+        EasyMock.replay(mockProcessor);
+        // send it to the parser
+        parser.parseClientPacket(packet, mockProcessor);
+        //verify
+        EasyMock.verify(mockProcessor);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(packet.hasRemaining());
+    }
     
+    /**
+     * Test that the message of a SEQUENCED packet is only dispatched if
+     * the processor accepts its sequence number
+     */
+    @Test
+    public void parseSequenced() {
+        MessageHandlerImpl parser = new MessageHandlerImpl();
+        IClientProcessor mockProcessor = EasyMock.createStrictMock(IClientProcessor.class);
+
+        // generate packets
+        ByteBuffer accepted = ServerMessages.createSequencedPkt(10, 2,
+                ServerMessages.createMoveMOBPkt(10, 1.0f, 2.0f, 3.0f, 4.0f));
+        ByteBuffer dropped = ServerMessages.createSequencedPkt(10, 1,
+                ServerMessages.createStopMOBPkt(10, 1.0f, 2.0f));
+        // record expected processor calls
+        EasyMock.expect(mockProcessor.sequenced(10, 2)).andReturn(true);
+        mockProcessor.moveMOB(10, 1.0f, 2.0f, 3.0f, 4.0f);
+        EasyMock.expect(mockProcessor.sequenced(10, 1)).andReturn(false);
+        EasyMock.replay(mockProcessor);
+        // send them to the parser
+        parser.parseClientPacket(accepted, mockProcessor);
+        parser.parseClientPacket(dropped, mockProcessor);
+        //verify
+        EasyMock.verify(mockProcessor);
+        
+        //ensure we are at the end of the accepted buffer
+        Assert.assertFalse(accepted.hasRemaining());
+    }
+    
+    /**
+     * Test that packets are still dispatched when they are traced, and
+     * that unknown opcodes are ignored
+     */
+    @Test
+    public void parseTraced() {
+        MessageHandlerImpl parser = new MessageHandlerImpl();
+        IClientProcessor mockProcessor = EasyMock.createStrictMock(IClientProcessor.class);
+        parser.logger.setLevel(Level.FINEST);
+
+        // generate packets
+        ByteBuffer packet = ServerMessages.createAddMOBPkt(10, 1.0f, 2.0f, EMOBType.SNOWMAN, ETeamColor.Red, "name");
+        ByteBuffer unknown = ByteBuffer.wrap(new byte[] {(byte) 0x7f});
+        // record expected processor calls
+        mockProcessor.addMOB(10, 1.0f, 2.0f, EMOBType.SNOWMAN, ETeamColor.Red, "name");
+        EasyMock.replay(mockProcessor);
+        // send them to the parser
+        try {
+            parser.parseClientPacket(packet, mockProcessor);
+            parser.parseClientPacket(unknown, mockProcessor);
+        } finally {
+            parser.logger.setLevel(null);
+        }
+        //verify
+        EasyMock.verify(mockProcessor);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(packet.hasRemaining());
+    }
 }
@@ -0,0 +1,73 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.protocol.handlers;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+/**
+ * Test the SequenceFilter class
+ */
+public class SequenceFilterTest
+{
+    @Test
+    public void testAccept() {
+        SequenceFilter filter = new SequenceFilter();
+        Assert.assertTrue(filter.accept(1, 5));
+        Assert.assertTrue(filter.accept(1, 7));
+        Assert.assertFalse(filter.accept(1, 6));
+        Assert.assertFalse(filter.accept(1, 7));
+        
+        //sources are independent
+        Assert.assertTrue(filter.accept(2, 1));
+        Assert.assertTrue(filter.accept(1, 8));
+    }
+    
+    @Test
+    public void testWrapAround() {
+        SequenceFilter filter = new SequenceFilter();
+        Assert.assertTrue(filter.accept(1, Integer.MAX_VALUE));
+        Assert.assertTrue(filter.accept(1, Integer.MIN_VALUE));
+        Assert.assertFalse(filter.accept(1, Integer.MAX_VALUE));
+    }
+    
+    @Test
+    public void testReset() {
+        SequenceFilter filter = new SequenceFilter();
+        Assert.assertTrue(filter.accept(1, 5));
+        filter.reset();
+        Assert.assertTrue(filter.accept(1, 1));
+    }
+}
@@ -73,4 +73,15 @@ public class AbstractTestMessages
         EOPCODE code = EOPCODE.values()[opbyte];
         Assert.assertTrue(code == opcode);
     }
+    
+    /**
+     * Verify the header of a compact packet.
+     * @param packet packet to check
+     * @param opcode opcode to verify against
+     */
+    protected void checkCompactOpcode(ByteBuffer packet, EOPCODE opcode) {
+        byte opbyte = packet.get();
+        Assert.assertTrue((opbyte & CompactFormat.FLAG) != 0);
+        Assert.assertEquals(opcode.ordinal(), opbyte & ~CompactFormat.FLAG & 0xff);
+    }
 }
@@ -83,6 +83,25 @@ public class ClientMessagesTest extends AbstractTestMessages
         Assert.assertFalse(attackPacket.hasRemaining());
     }
     
+    @Test
+    public void testCreateAttackAtPkt() {
+        ByteBuffer attackPacket = ClientMessages.createAttackAtPkt(5, 1.0f, 2.0f, -7);
+        checkOpcode(attackPacket, EOPCODE.ATTACKAT);
+        
+        int id = attackPacket.getInt();
+        float x = attackPacket.getFloat();
+        float y = attackPacket.getFloat();
+        int time = attackPacket.getInt();
+        
+        Assert.assertEquals(5, id);
+        Assert.assertEquals(1.0f, x, 0);
+        Assert.assertEquals(2.0f, y, 0);
+        Assert.assertEquals(-7, time);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(attackPacket.hasRemaining());
+    }
+    
     @Test
     public void testCreateGetFlagPkg() {
         ByteBuffer getFlagPacket = ClientMessages.createGetFlagPkt(10, 1.0f, 2.0f);
@@ -131,4 +150,43 @@ public class ClientMessagesTest extends AbstractTestMessages
         //ensure we are at the end of the buffer
         Assert.assertFalse(packet.hasRemaining());
     }
+    
+    @Test
+    public void testCreateProtocolPkt() {
+        ByteBuffer packet = ClientMessages.createProtocolPkt(Messages.PROTOCOL_VERSION);
+        checkOpcode(packet, EOPCODE.PROTOCOL);
+        
+        Assert.assertEquals(packet.getInt(), Messages.PROTOCOL_VERSION);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(packet.hasRemaining());
+    }
+    
+    @Test
+    public void testCreateCompactMoveMePkt() {
+        ByteBuffer movePacket = ClientMessages.createMoveMePkt(1.0f, 2.0f, 3.0f, 4.0f, true);
+        checkCompactOpcode(movePacket, EOPCODE.MOVEME);
+        
+        Assert.assertEquals(1.0f, CompactFormat.getX(movePacket), 0.01f);
+        Assert.assertEquals(2.0f, CompactFormat.getY(movePacket), 0.01f);
+        Assert.assertEquals(3.0f, CompactFormat.getX(movePacket), 0.01f);
+        Assert.assertEquals(4.0f, CompactFormat.getY(movePacket), 0.01f);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(movePacket.hasRemaining());
+    }
+    
+    @Test
+    public void testWriteMoveMePkt() {
+        ByteBuffer buffer = Messages.getScratchBuffer();
+        ClientMessages.writeMoveMePkt(buffer, 1.0f, 2.0f, 3.0f, 4.0f, true);
+        buffer.flip();
+        
+        Assert.assertEquals(ClientMessages.createMoveMePkt(1.0f, 2.0f, 3.0f, 4.0f, true), buffer);
+        
+        //the scratch buffer is reused and cleared
+        Assert.assertSame(buffer, Messages.getScratchBuffer());
+        Assert.assertEquals(0, buffer.position());
+        Assert.assertEquals(Messages.MAX_PACKET_SIZE, buffer.remaining());
+    }
 }
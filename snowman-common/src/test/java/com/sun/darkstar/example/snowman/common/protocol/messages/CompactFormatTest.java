@@ -0,0 +1,106 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.protocol.messages;
+
+import java.nio.ByteBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Assert;
+
+/**
+ * Test the CompactFormat class
+ */
+public class CompactFormatTest
+{
+    @After
+    public void resetDimensions() {
+        CompactFormat.setMapDimensions(96.0f, 96.0f);
+    }
+    
+    @Test
+    public void testVarInt() {
+        int[] values = {0, 1, -1, 63, -64, 64, 300, -300, 
+                        Integer.MAX_VALUE, Integer.MIN_VALUE};
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        for (int value : values) {
+            buffer.clear();
+            CompactFormat.putVarInt(buffer, value);
+            Assert.assertEquals(CompactFormat.getVarIntSize(value), buffer.position());
+            buffer.flip();
+            Assert.assertEquals(value, CompactFormat.getVarInt(buffer));
+            Assert.assertFalse(buffer.hasRemaining());
+        }
+        Assert.assertEquals(1, CompactFormat.getVarIntSize(63));
+        Assert.assertEquals(2, CompactFormat.getVarIntSize(64));
+        Assert.assertEquals(5, CompactFormat.getVarIntSize(Integer.MIN_VALUE));
+    }
+    
+    @Test
+    public void testCoordinates() {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        for (float x = 0.0f; x <= 96.0f; x += 0.37f) {
+            buffer.clear();
+            CompactFormat.putX(buffer, x);
+            buffer.flip();
+            Assert.assertEquals(x, CompactFormat.getX(buffer), 96.0f / 65535);
+        }
+    }
+    
+    @Test
+    public void testCoordinatesClamped() {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        CompactFormat.putX(buffer, -5.0f);
+        CompactFormat.putY(buffer, 200.0f);
+        buffer.flip();
+        Assert.assertEquals(0.0f, CompactFormat.getX(buffer), 0);
+        Assert.assertEquals(96.0f, CompactFormat.getY(buffer), 0);
+    }
+    
+    @Test
+    public void testMapDimensions() {
+        CompactFormat.setMapDimensions(200.0f, 50.0f);
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        CompactFormat.putX(buffer, 150.0f);
+        CompactFormat.putY(buffer, 40.0f);
+        buffer.flip();
+        Assert.assertEquals(150.0f, CompactFormat.getX(buffer), 0.01f);
+        Assert.assertEquals(40.0f, CompactFormat.getY(buffer), 0.01f);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidMapDimensions() {
+        CompactFormat.setMapDimensions(0.0f, 50.0f);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.protocol.messages;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.Assert;
+
+/**
+ * Test the string encoding of the Messages class
+ */
+public class MessagesTest
+{
+    private static final String[] STRINGS = {
+        "", "name", "caf\u00e9", "\u2603 snow", "\ud83d\ude00"
+    };
+    
+    @Test
+    public void testUTF8Length() throws Exception {
+        for (String string : STRINGS) {
+            Assert.assertEquals(string, string.getBytes("UTF-8").length,
+                                Messages.getUTF8Length(string));
+        }
+    }
+    
+    @Test
+    public void testPutUTF8() throws Exception {
+        for (String string : STRINGS) {
+            ByteBuffer buffer = ByteBuffer.allocate(Messages.getUTF8Length(string));
+            Messages.putUTF8(buffer, string);
+            Assert.assertFalse(buffer.hasRemaining());
+            Assert.assertArrayEquals(string.getBytes("UTF-8"), buffer.array());
+        }
+    }
+    
+    @Test
+    public void testGetUTF8() throws Exception {
+        for (String string : STRINGS) {
+            byte[] bytes = string.getBytes("UTF-8");
+            ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 2);
+            buffer.put((byte) 1).put(bytes).put((byte) 2).flip();
+            buffer.get();
+            
+            // decoded in place, and through a copy without an array
+            ByteBuffer readOnly = buffer.asReadOnlyBuffer();
+            Assert.assertEquals(string, Messages.getUTF8(buffer, bytes.length));
+            Assert.assertEquals(string, Messages.getUTF8(readOnly, bytes.length));
+            Assert.assertEquals(2, buffer.get());
+            Assert.assertEquals(2, readOnly.get());
+        }
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testGetUTF8TooLong() {
+        Messages.getUTF8(ByteBuffer.allocate(4), 5);
+    }
+}
@@ -39,6 +39,8 @@ import com.sun.darkstar.example.snowman.common.protocol.enumn.EEndState;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.EMOBType;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 import org.junit.Assert;
 
@@ -237,4 +239,178 @@ public class ServerMessagesTest extends AbstractTestMessages
         Assert.assertFalse(packet.hasRemaining());
     }
     
+    @Test
+    public void testCreateGameStatePkt() {
+        List<ByteBuffer> updates = new ArrayList<ByteBuffer>();
+        updates.add(ServerMessages.createMoveMOBPkt(10, 1.0f, 2.0f, 3.0f, 4.0f));
+        updates.add(ServerMessages.createStopMOBPkt(11, 5.0f, 6.0f));
+        ByteBuffer packet = ServerMessages.createGameStatePkt(updates);
+        checkOpcode(packet, EOPCODE.GAMESTATE);
+        
+        Assert.assertEquals(packet.getInt(), 2);
+        checkOpcode(packet, EOPCODE.MOVEMOB);
+        Assert.assertEquals(packet.getInt(), 10);
+        Assert.assertEquals(packet.getFloat(), 1.0f, 0);
+        Assert.assertEquals(packet.getFloat(), 2.0f, 0);
+        Assert.assertEquals(packet.getFloat(), 3.0f, 0);
+        Assert.assertEquals(packet.getFloat(), 4.0f, 0);
+        checkOpcode(packet, EOPCODE.STOPMOB);
+        Assert.assertEquals(packet.getInt(), 11);
+        Assert.assertEquals(packet.getFloat(), 5.0f, 0);
+        Assert.assertEquals(packet.getFloat(), 6.0f, 0);
+        
+        //the combined packets are left untouched
+        Assert.assertEquals(updates.get(0).position(), 0);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(packet.hasRemaining());
+    }
+    
+    @Test
+    public void testCreateProtocolPkt() {
+        ByteBuffer packet = ServerMessages.createProtocolPkt(1, 96.0f, 64.0f);
+        checkOpcode(packet, EOPCODE.PROTOCOL);
+        
+        Assert.assertEquals(packet.getInt(), 1);
+        Assert.assertEquals(packet.getFloat(), 96.0f, 0);
+        Assert.assertEquals(packet.getFloat(), 64.0f, 0);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(packet.hasRemaining());
+    }
+    
+    @Test
+    public void testCreateCompactMoveMOBPkt() {
+        ByteBuffer packet = ServerMessages.createMoveMOBPkt(10, 1.0f, 2.0f, 3.0f, 4.0f, true);
+        
+        //less than half of the original packet
+        Assert.assertEquals(10, packet.remaining());
+        checkCompactOpcode(packet, EOPCODE.MOVEMOB);
+        
+        Assert.assertEquals(CompactFormat.getVarInt(packet), 10);
+        Assert.assertEquals(CompactFormat.getX(packet), 1.0f, 0.01f);
+        Assert.assertEquals(CompactFormat.getY(packet), 2.0f, 0.01f);
+        Assert.assertEquals(CompactFormat.getX(packet), 3.0f, 0.01f);
+        Assert.assertEquals(CompactFormat.getY(packet), 4.0f, 0.01f);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(packet.hasRemaining());
+    }
+    
+    @Test
+    public void testCreateCompactAddMOBPkt() {
+        ByteBuffer packet = ServerMessages.createAddMOBPkt(10, 1.0f, 2.0f, EMOBType.FLAG, ETeamColor.Blue, "name", true);
+        checkCompactOpcode(packet, EOPCODE.ADDMOB);
+        
+        Assert.assertEquals(CompactFormat.getVarInt(packet), 10);
+        Assert.assertEquals(CompactFormat.getX(packet), 1.0f, 0.01f);
+        Assert.assertEquals(CompactFormat.getY(packet), 2.0f, 0.01f);
+        Assert.assertEquals(packet.get(), (EMOBType.FLAG.ordinal() << 4) | ETeamColor.Blue.ordinal());
+        byte[] mobName = new byte[CompactFormat.getVarInt(packet)];
+        packet.get(mobName);
+        Assert.assertEquals(new String(mobName), "name");
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(packet.hasRemaining());
+    }
+    
+    @Test
+    public void testCreateOriginalPktWhenNotCompact() {
+        Assert.assertEquals(ServerMessages.createStopMOBPkt(11, 5.0f, 6.0f),
+                            ServerMessages.createStopMOBPkt(11, 5.0f, 6.0f, false));
+    }
+    
+    @Test
+    public void testCreateEnvelopePkt() {
+        List<ByteBuffer> messages = new ArrayList<ByteBuffer>();
+        messages.add(ServerMessages.createStartGamePkt());
+        messages.add(ServerMessages.createRemoveMOBPkt(10));
+        ByteBuffer packet = ServerMessages.createEnvelopePkt(messages);
+        Assert.assertEquals(ServerMessages.getEnvelopeSize(messages), packet.remaining());
+        checkOpcode(packet, EOPCODE.ENVELOPE);
+        
+        Assert.assertEquals(packet.getInt(), 2);
+        Assert.assertEquals(CompactFormat.getVarInt(packet), 1);
+        checkOpcode(packet, EOPCODE.STARTGAME);
+        Assert.assertEquals(CompactFormat.getVarInt(packet), 5);
+        checkOpcode(packet, EOPCODE.REMOVEMOB);
+        Assert.assertEquals(packet.getInt(), 10);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(packet.hasRemaining());
+    }
+    
+    @Test
+    public void testCreateSequencedPkt() {
+        ByteBuffer message = ServerMessages.createStopMOBPkt(10, 1.0f, 2.0f);
+        ByteBuffer packet = ServerMessages.createSequencedPkt(10, 7, message);
+        checkOpcode(packet, EOPCODE.SEQUENCED);
+        
+        Assert.assertEquals(packet.getInt(), 10);
+        Assert.assertEquals(packet.getInt(), 7);
+        Assert.assertEquals(packet, message);
+        
+        //ensure the message was not consumed
+        Assert.assertEquals(message.remaining(), 1 + 12);
+    }
+    
+    @Test
+    public void testCreateNonAsciiChatPkt() throws Exception {
+        String message = "caf\u00e9 \u2603 \ud83d\ude00";
+        ByteBuffer packet = ServerMessages.createChatPkt(10, message);
+        checkOpcode(packet, EOPCODE.CHAT);
+        
+        Assert.assertEquals(packet.getInt(), 10);
+        int length = packet.getInt();
+        byte[] messageBytes = new byte[length];
+        packet.get(messageBytes);
+        Assert.assertEquals(length, message.getBytes("UTF-8").length);
+        Assert.assertEquals(new String(messageBytes, "UTF-8"), message);
+        
+        //ensure we are at the end of the buffer
+        Assert.assertFalse(packet.hasRemaining());
+    }
+    
+    @Test
+    public void testWritePkts() {
+        ByteBuffer buffer = Messages.getScratchBuffer();
+        ServerMessages.writeMoveMOBPkt(buffer, 10, 1.0f, 2.0f, 3.0f, 4.0f, false);
+        ServerMessages.writeAddMOBPkt(buffer, 11, 1.0f, 2.0f, EMOBType.FLAG, ETeamColor.Blue, "name", true);
+        buffer.flip();
+        
+        ByteBuffer move = ServerMessages.createMoveMOBPkt(10, 1.0f, 2.0f, 3.0f, 4.0f);
+        ByteBuffer add = ServerMessages.createAddMOBPkt(11, 1.0f, 2.0f, EMOBType.FLAG, ETeamColor.Blue, "name", true);
+        Assert.assertEquals(move.remaining() + add.remaining(), buffer.remaining());
+        
+        ByteBuffer written = buffer.slice();
+        written.limit(move.remaining());
+        Assert.assertEquals(move, written);
+        buffer.position(move.remaining());
+        Assert.assertEquals(add, buffer);
+    }
+    
+    @Test
+    public void testWriteMatchesCreate() {
+        for (boolean compact : new boolean[] {false, true}) {
+            Assert.assertEquals(ServerMessages.createEndGamePkt(EEndState.RedWin, compact),
+                    flip(ServerMessages.writeEndGamePkt(Messages.getScratchBuffer(), EEndState.RedWin, compact)));
+            Assert.assertEquals(ServerMessages.createRemoveMOBPkt(300, compact),
+                    flip(ServerMessages.writeRemoveMOBPkt(Messages.getScratchBuffer(), 300, compact)));
+            Assert.assertEquals(ServerMessages.createAttachObjPkt(1, 200, compact),
+                    flip(ServerMessages.writeAttachObjPkt(Messages.getScratchBuffer(), 1, 200, compact)));
+        }
+        Assert.assertEquals(ServerMessages.createStartGamePkt(),
+                flip(ServerMessages.writeStartGamePkt(Messages.getScratchBuffer())));
+        Assert.assertEquals(ServerMessages.createProtocolPkt(5, 96.0f, 64.0f),
+                flip(ServerMessages.writeProtocolPkt(Messages.getScratchBuffer(), 5, 96.0f, 64.0f)));
+        Assert.assertEquals(Messages.createPingPkt(1234),
+                flip(Messages.writePingPkt(Messages.getScratchBuffer(), 1234)));
+        Assert.assertEquals(Messages.createPongPkt(1234, -5),
+                flip(Messages.writePongPkt(Messages.getScratchBuffer(), 1234, -5)));
+    }
+    
+    private static ByteBuffer flip(ByteBuffer buffer) {
+        buffer.flip();
+        return buffer;
+    }
 }
@@ -0,0 +1,278 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.util;
+
+import com.sun.darkstar.example.snowman.common.util.enumn.EStats;
+import com.jme.scene.Node;
+import com.jme.scene.shape.Box;
+import com.jme.scene.shape.Sphere;
+import com.jme.scene.shape.Pyramid;
+import com.jme.bounding.BoundingBox;
+import com.jme.bounding.BoundingSphere;
+import com.jme.math.Vector3f;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.After;
+
+/**
+ * Verify that the <code>CollisionGeometry</code> answers the same
+ * queries as the <code>CollisionManagerTest</code> with the same results.
+ */
+public class CollisionGeometryTest {
+    
+    /** Acceptable delta for float comparisons */
+    private static float DELTA = 0.01f;
+    
+    /** Test world of objects */
+    private Node testWorld;
+    private Box box;
+    
+    /**
+     * The test world is the same as the one used by the
+     * CollisionManagerTest: a Box, a Sphere and a Pyramid lined
+     * up along the z axis
+     */
+    @Before
+    public void createTestWorld() {
+        box = new Box("TestBox", new Vector3f(0f,0f,0f), new Vector3f(10f,10f,10f));
+        box.setLocalTranslation(new Vector3f(-5f, -5f, 15f));
+        box.setModelBound(new BoundingBox());
+        box.updateModelBound();
+        
+        Sphere sphere = new Sphere("TestSphere", new Vector3f(0f,0f,40f), 10, 10, 5f);
+        sphere.setModelBound(new BoundingSphere());
+        sphere.updateModelBound();
+        
+        Pyramid pyramid = new Pyramid("TestPyramid", 10f, 10f);
+        pyramid.setLocalTranslation(new Vector3f(0f, -5f, 55f));
+        pyramid.setModelBound(new BoundingBox());
+        pyramid.updateModelBound();
+        
+        testWorld = new Node("TestWorld");
+        testWorld.attachChild(box);
+        testWorld.attachChild(sphere);
+        testWorld.attachChild(pyramid);
+    }
+    
+    /**
+     * Move the box up by the given height and build the geometry
+     */
+    private CollisionGeometry buildGeometry(float height) {
+        Vector3f c = box.getLocalTranslation();
+        box.setLocalTranslation(c.getX(), height + c.getY(), c.getZ());
+        return CollisionGeometry.build(testWorld);
+    }
+    
+    private void assertDestination(CollisionGeometry geometry,
+                                   float startx, float startz,
+                                   float endx, float endz,
+                                   float expectedx, float expectedz) {
+        Vector3f result = geometry.getDestination(startx, startz, endx, endz, null);
+        Assert.assertEquals(expectedx, result.getX(), DELTA);
+        Assert.assertEquals(EStats.SnowmanHeight.getValue()/2.0f, result.getY(), DELTA);
+        Assert.assertEquals(expectedz, result.getZ(), DELTA);
+    }
+    
+    @Test
+    public void testIntersect() {
+        CollisionGeometry geometry = CollisionGeometry.build(testWorld);
+        Assert.assertEquals(15.0f, geometry.intersect(0f, 0f, 0f, 0f, 0f, 1f), DELTA);
+        Assert.assertEquals(CollisionGeometry.NO_HIT, geometry.intersect(0f, 0f, 0f, 0f, 0f, -1f), 0);
+    }
+    
+    @Test
+    public void testGetDestinationCollision() {
+        CollisionGeometry geometry = buildGeometry(EStats.SnowmanHeight.getValue()/2.0f);
+        assertDestination(geometry, 
+                          0.0f, 0.0f - EStats.BackoffDistance.getValue(), 0.0f, 50.0f,
+                          0.0f, 15.0f - EStats.BackoffDistance.getValue());
+    }
+    
+    @Test
+    public void testGetDestinationMiss() {
+        CollisionGeometry geometry = buildGeometry(EStats.SnowmanHeight.getValue()/2.0f);
+        assertDestination(geometry, 0.0f, 0.0f, 0.0f, -50.0f, 0.0f, -50.0f);
+    }
+    
+    @Test
+    public void testGetDestinationNearMiss() {
+        CollisionGeometry geometry = buildGeometry(EStats.SnowmanHeight.getValue()/2.0f);
+        assertDestination(geometry, 
+                          0.0f, 0.0f - EStats.BackoffDistance.getValue(), 
+                          0.0f, 15.0f - EStats.BackoffDistance.getValue()/2.0f,
+                          0.0f, 15.0f - EStats.BackoffDistance.getValue());
+    }
+    
+    @Test
+    public void testGetDestinationNoMovement() {
+        CollisionGeometry geometry = buildGeometry(EStats.SnowmanHeight.getValue()/2.0f);
+        assertDestination(geometry, 1.0f, 2.0f, 1.0f, 2.0f, 1.0f, 2.0f);
+    }
+    
+    @Test
+    public void testGetDestinationMovedWorld() {
+        CollisionGeometry geometry = buildGeometry(EStats.SnowmanHeight.getValue()/2.0f);
+        testWorld.setLocalTranslation(new Vector3f(50f, 50f, 50f));
+        testWorld.updateGeometricState(0.0f, true);
+        assertDestination(CollisionGeometry.build(testWorld), 
+                          0.0f, 0.0f - EStats.BackoffDistance.getValue(), 0.0f, 50.0f,
+                          0.0f, 15.0f - EStats.BackoffDistance.getValue());
+    }
+    
+    @Test
+    public void testValidateBasicHit() {
+        CollisionGeometry geometry = buildGeometry(EStats.SnowballHeight.getValue());
+        Assert.assertFalse(geometry.validate(0.0f, 0.0f, 0.0f, 100.0f));
+    }
+    
+    @Test
+    public void testValidateMiss() {
+        CollisionGeometry geometry = buildGeometry(EStats.SnowballHeight.getValue());
+        Assert.assertTrue(geometry.validate(0.0f, 0.0f, 0.0f, -100.0f));
+    }
+    
+    @Test
+    public void testValidateComplexHit() {
+        CollisionGeometry geometry = buildGeometry(EStats.SnowballHeight.getValue());
+        Assert.assertFalse(geometry.validate(-5.0f, -5.0f, 0.0f, 25.0f));
+    }
+    
+    @Test
+    public void testValidateBehindNoHit() {
+        CollisionGeometry geometry = buildGeometry(EStats.SnowballHeight.getValue());
+        Assert.assertTrue(geometry.validate(0.0f, 0.0f, 0.0f, 10.0f));
+    }
+    
+    /**
+     * Verify that rays cast against a field of randomly placed boxes
+     * hit the nearest box, comparing against an analytic ray/box test
+     */
+    @Test
+    public void testIntersectRandomBoxes() {
+        Random random = new Random(42);
+        Node field = new Node("BoxField");
+        float[][] boxes = new float[200][];
+        for (int i = 0; i < boxes.length; i++) {
+            float x = random.nextFloat() * 100f;
+            float y = random.nextFloat() * 4f - 2f;
+            float z = random.nextFloat() * 100f;
+            float size = 0.5f + random.nextFloat() * 2f;
+            boxes[i] = new float[] {x, y, z, x + size, y + size, z + size};
+            field.attachChild(new Box("Box" + i,
+                                      new Vector3f(x, y, z),
+                                      new Vector3f(x + size, y + size, z + size)));
+        }
+        CollisionGeometry geometry = CollisionGeometry.build(field);
+        Assert.assertEquals(boxes.length * 12, geometry.getTriangleCount());
+        
+        for (int i = 0; i < 500; i++) {
+            float ox = random.nextFloat() * 100f;
+            float oz = random.nextFloat() * 100f;
+            double angle = random.nextDouble() * Math.PI * 2;
+            float dx = (float) Math.cos(angle);
+            float dz = (float) Math.sin(angle);
+            
+            float expected = CollisionGeometry.NO_HIT;
+            boolean inside = false;
+            for (float[] b : boxes) {
+                if (ox >= b[0] && ox <= b[3] && oz >= b[2] && oz <= b[5] && b[1] <= 0 && b[4] >= 0) {
+                    inside = true;
+                }
+                float near = 0;
+                float far = Float.POSITIVE_INFINITY;
+                if (b[1] > 0 || b[4] < 0) continue;
+                float[] o = {ox, oz};
+                float[] d = {dx, dz};
+                float[] min = {b[0], b[2]};
+                float[] max = {b[3], b[5]};
+                for (int axis = 0; axis < 2; axis++) {
+                    float t1 = (min[axis] - o[axis]) / d[axis];
+                    float t2 = (max[axis] - o[axis]) / d[axis];
+                    near = Math.max(near, Math.min(t1, t2));
+                    far = Math.min(far, Math.max(t1, t2));
+                }
+                if (near <= far) {
+                    expected = Math.min(expected, near);
+                }
+            }
+            if (inside) continue;
+            
+            float actual = geometry.intersect(ox, 0f, oz, dx, 0f, dz);
+            if (expected == CollisionGeometry.NO_HIT) {
+                Assert.assertEquals(CollisionGeometry.NO_HIT, actual, 0);
+            } else {
+                Assert.assertEquals(expected, actual, DELTA);
+            }
+        }
+    }
+    
+    /**
+     * Verify that concurrent queries against a shared geometry
+     * all produce the same results as a single threaded query
+     */
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        final CollisionGeometry geometry = buildGeometry(EStats.SnowmanHeight.getValue()/2.0f);
+        final float expected = geometry.getTravelDistance(0.0f, 0.0f, 0.0f, 50.0f);
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        if (geometry.getTravelDistance(0.0f, 0.0f, 0.0f, 50.0f) != expected ||
+                                geometry.validate(0.0f, 0.0f, 0.0f, 100.0f)) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, failures.get());
+    }
+    
+    @After
+    public void cleanupTestWorld() {
+        box = null;
+        testWorld = null;
+    }
+}
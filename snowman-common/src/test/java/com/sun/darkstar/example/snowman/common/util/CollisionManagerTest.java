@@ -59,7 +59,7 @@ public class CollisionManagerTest {
     private static float DELTA = 0.01f;
     
     /** Test world of objects */
-    private Node testWorld;
+    protected Node testWorld;
     private Box box;
     private Sphere sphere;
     private Pyramid pyramid;
@@ -0,0 +1,281 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.common.util;
+
+import com.sun.darkstar.example.snowman.common.util.enumn.EStats;
+import com.jme.scene.Node;
+import com.jme.scene.shape.Box;
+import com.jme.scene.shape.Sphere;
+import com.jme.scene.shape.Pyramid;
+import com.jme.bounding.BoundingBox;
+import com.jme.bounding.BoundingSphere;
+import com.jme.math.Vector3f;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.After;
+
+/**
+ * Verify that the <code>ObstacleGrid</code> answers the same
+ * queries as the <code>CollisionGeometry</code> it is sliced from.
+ */
+public class ObstacleGridTest {
+    
+    /** Acceptable delta for float comparisons */
+    private static float DELTA = 0.01f;
+    
+    /** Test world of objects */
+    private Node testWorld;
+    private Box box;
+    
+    /**
+     * The test world is the same as the one used by the
+     * CollisionManagerTest: a Box, a Sphere and a Pyramid lined
+     * up along the z axis
+     */
+    @Before
+    public void createTestWorld() {
+        box = new Box("TestBox", new Vector3f(0f,0f,0f), new Vector3f(10f,10f,10f));
+        box.setLocalTranslation(new Vector3f(-5f, -5f, 15f));
+        box.setModelBound(new BoundingBox());
+        box.updateModelBound();
+        
+        Sphere sphere = new Sphere("TestSphere", new Vector3f(0f,0f,40f), 10, 10, 5f);
+        sphere.setModelBound(new BoundingSphere());
+        sphere.updateModelBound();
+        
+        Pyramid pyramid = new Pyramid("TestPyramid", 10f, 10f);
+        pyramid.setLocalTranslation(new Vector3f(0f, -5f, 55f));
+        pyramid.setModelBound(new BoundingBox());
+        pyramid.updateModelBound();
+        
+        testWorld = new Node("TestWorld");
+        testWorld.attachChild(box);
+        testWorld.attachChild(sphere);
+        testWorld.attachChild(pyramid);
+    }
+    
+    /**
+     * Build the grid of the test world sliced at the given height
+     */
+    private ObstacleGrid buildGrid(float height) {
+        return ObstacleGrid.build(CollisionGeometry.build(testWorld), height, 1.0f);
+    }
+    
+    private void assertDestination(ObstacleGrid grid,
+                                   float startx, float startz,
+                                   float endx, float endz,
+                                   float expectedx, float expectedz) {
+        Vector3f result = grid.getDestination(startx, startz, endx, endz, null);
+        Assert.assertEquals(expectedx, result.getX(), DELTA);
+        Assert.assertEquals(grid.getHeight(), result.getY(), DELTA);
+        Assert.assertEquals(expectedz, result.getZ(), DELTA);
+    }
+    
+    @Test
+    public void testSlice() {
+        ObstacleGrid grid = buildGrid(0f);
+        //each side of the box is two triangles, each leaving a segment
+        Assert.assertTrue(grid.getSegmentCount() >= 4);
+        Assert.assertEquals(0, buildGrid(100f).getSegmentCount());
+    }
+    
+    @Test
+    public void testIntersect() {
+        ObstacleGrid grid = buildGrid(0f);
+        Assert.assertEquals(15.0f, grid.intersect(0f, 0f, 0f, 1f, 100f), DELTA);
+        Assert.assertEquals(CollisionGeometry.NO_HIT, grid.intersect(0f, 0f, 0f, -1f, 100f), 0);
+        Assert.assertEquals(CollisionGeometry.NO_HIT, grid.intersect(0f, 0f, 0f, 1f, 10f), 0);
+    }
+    
+    @Test
+    public void testIntersectFromOutside() {
+        ObstacleGrid grid = buildGrid(0f);
+        Assert.assertEquals(25.0f, grid.intersect(-30f, 20f, 1f, 0f, 100f), DELTA);
+        Assert.assertEquals(CollisionGeometry.NO_HIT, grid.intersect(-30f, 40f, 1f, 0f, 100f), 0);
+    }
+    
+    @Test
+    public void testGetDestinationCollision() {
+        ObstacleGrid grid = buildGrid(0f);
+        assertDestination(grid, 
+                          0.0f, 0.0f - EStats.BackoffDistance.getValue(), 0.0f, 50.0f,
+                          0.0f, 15.0f - EStats.BackoffDistance.getValue());
+    }
+    
+    @Test
+    public void testGetDestinationMiss() {
+        ObstacleGrid grid = buildGrid(0f);
+        assertDestination(grid, 0.0f, 0.0f, 0.0f, -50.0f, 0.0f, -50.0f);
+    }
+    
+    @Test
+    public void testGetDestinationNearMiss() {
+        ObstacleGrid grid = buildGrid(0f);
+        assertDestination(grid, 
+                          0.0f, 0.0f - EStats.BackoffDistance.getValue(), 
+                          0.0f, 15.0f - EStats.BackoffDistance.getValue()/2.0f,
+                          0.0f, 15.0f - EStats.BackoffDistance.getValue());
+    }
+    
+    @Test
+    public void testGetDestinationNoMovement() {
+        ObstacleGrid grid = buildGrid(0f);
+        assertDestination(grid, 1.0f, 2.0f, 1.0f, 2.0f, 1.0f, 2.0f);
+    }
+    
+    @Test
+    public void testValidateBasicHit() {
+        Assert.assertFalse(buildGrid(0f).validate(0.0f, 0.0f, 0.0f, 100.0f));
+    }
+    
+    @Test
+    public void testValidateMiss() {
+        Assert.assertTrue(buildGrid(0f).validate(0.0f, 0.0f, 0.0f, -100.0f));
+    }
+    
+    @Test
+    public void testValidateComplexHit() {
+        Assert.assertFalse(buildGrid(0f).validate(-5.0f, -5.0f, 0.0f, 25.0f));
+    }
+    
+    @Test
+    public void testValidateBehindNoHit() {
+        Assert.assertTrue(buildGrid(0f).validate(0.0f, 0.0f, 0.0f, 10.0f));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidCellSize() {
+        ObstacleGrid.build(CollisionGeometry.build(testWorld), 0f, 0f);
+    }
+    
+    /**
+     * Verify that horizontal rays cast against a field of randomly placed
+     * boxes agree with the full geometry for several cell sizes
+     */
+    @Test
+    public void testIntersectRandomBoxes() {
+        Random random = new Random(42);
+        CollisionGeometry geometry = CollisionGeometry.build(buildBoxField(random));
+        float[] cellSizes = {0.5f, 1.0f, 4.0f, 200.0f};
+        for (float cellSize : cellSizes) {
+            ObstacleGrid grid = ObstacleGrid.build(geometry, 0.25f, cellSize);
+            for (int i = 0; i < 500; i++) {
+                float ox = random.nextFloat() * 120f - 10f;
+                float oz = random.nextFloat() * 120f - 10f;
+                double angle = random.nextDouble() * Math.PI * 2;
+                float dx = (float) Math.cos(angle);
+                float dz = (float) Math.sin(angle);
+                float range = random.nextFloat() * 50f;
+                
+                float expected = geometry.intersect(ox, 0.25f, oz, dx, 0f, dz, range);
+                float actual = grid.intersect(ox, oz, dx, dz, range);
+                if (expected == CollisionGeometry.NO_HIT) {
+                    Assert.assertEquals(CollisionGeometry.NO_HIT, actual, 0);
+                } else {
+                    Assert.assertEquals(expected, actual, DELTA);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Verify that batched paths and segments get the same destinations and
+     * results as when they are queried one by one, including paths sharing
+     * most of their cells and paths without any length
+     */
+    @Test
+    public void testBatchMatchesSingle() {
+        Random random = new Random(7);
+        CollisionGeometry geometry = CollisionGeometry.build(buildBoxField(random));
+        float[] cellSizes = {0.5f, 1.0f, 4.0f, 200.0f};
+        for (float cellSize : cellSizes) {
+            ObstacleGrid grid = ObstacleGrid.build(geometry, 0.25f, cellSize);
+            float[] paths = new float[400 * 4];
+            for (int i = 0; i < paths.length; i += 4) {
+                if (i % 40 == 0) {
+                    paths[i] = paths[i + 2] = random.nextFloat() * 100f;
+                    paths[i + 1] = paths[i + 3] = random.nextFloat() * 100f;
+                } else {
+                    paths[i] = 40f + random.nextFloat() * 5f;
+                    paths[i + 1] = 40f + random.nextFloat() * 5f;
+                    paths[i + 2] = random.nextFloat() * 120f - 10f;
+                    paths[i + 3] = random.nextFloat() * 120f - 10f;
+                }
+            }
+            float[] destinations = grid.getDestinations(paths, null);
+            boolean[] valid = grid.validate(paths, null);
+            Vector3f destination = new Vector3f();
+            for (int i = 0; i < paths.length / 4; i++) {
+                grid.getDestination(paths[i * 4], paths[i * 4 + 1],
+                                    paths[i * 4 + 2], paths[i * 4 + 3], destination);
+                Assert.assertEquals(destination.x, destinations[i * 2], 0);
+                Assert.assertEquals(destination.z, destinations[i * 2 + 1], 0);
+                Assert.assertEquals(grid.validate(paths[i * 4], paths[i * 4 + 1],
+                                                  paths[i * 4 + 2], paths[i * 4 + 3]),
+                                    valid[i]);
+            }
+        }
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testValidateBatchLength() {
+        buildGrid(0f).validate(new float[] {0f, 0f, 1f}, null);
+    }
+    
+    /**
+     * Build a field of randomly placed boxes
+     */
+    private Node buildBoxField(Random random) {
+        Node field = new Node("BoxField");
+        for (int i = 0; i < 200; i++) {
+            float x = random.nextFloat() * 100f;
+            float y = random.nextFloat() * 4f - 2f;
+            float z = random.nextFloat() * 100f;
+            float size = 0.5f + random.nextFloat() * 2f;
+            field.attachChild(new Box("Box" + i,
+                                      new Vector3f(x, y, z),
+                                      new Vector3f(x + size, y + size, z + size)));
+        }
+        return field;
+    }
+    
+    @After
+    public void cleanupTestWorld() {
+        box = null;
+        testWorld = null;
+    }
+}
@@ -37,6 +37,7 @@ import com.sun.darkstar.example.snowman.server.interfaces.GameFactory;
 import com.sun.darkstar.example.snowman.server.interfaces.EntityFactory;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanPlayer;
 import com.sun.darkstar.example.snowman.server.impl.EntityFactoryImpl;
+import com.sun.darkstar.example.snowman.server.impl.GamePoolImpl;
 import com.sun.darkstar.example.snowman.server.impl.GameFactoryImpl;
 import com.sun.darkstar.example.snowman.server.tasks.MatchmakerTask;
 import com.sun.sgs.app.AppContext;
@@ -69,9 +70,47 @@ public class SnowmanServer implements ManagedObject, Serializable, AppListener {
             Logger.getLogger(SnowmanServer.class.getName());
     
     /**
-     * Number of queues to use for the matchmaking system
+     * Name of the property used to define the number of queues to use
+     * for the matchmaking system
      */
-    private static final int NUMDEQUES = 10;
+    private static final String WAITING_DEQUES_PROP = "numWaitingDeques";
+    /**
+     * Default number of queues to use for the matchmaking system
+     */
+    private static final int DEFAULT_WAITING_DEQUES = 10;
+    /**
+     * Name of the property used to define the number of matchmaker shards
+     */
+    private static final String MATCHMAKERS_PROP = "numMatchmakers";
+    /**
+     * Default number of matchmaker shards
+     */
+    private static final int DEFAULT_MATCHMAKERS = 1;
+    /**
+     * Name of the property used to define the number of ready games kept
+     * by each matchmaker shard
+     */
+    private static final String GAME_POOL_SIZE_PROP = "gamePoolSize";
+    /**
+     * Default number of ready games kept by each matchmaker shard
+     */
+    private static final int DEFAULT_GAME_POOL_SIZE = 2;
+    /**
+     * Name of the property used to define the tick interval of games
+     */
+    private static final String GAME_TICK_PROP = "gameTickMs";
+    /**
+     * Default tick interval of games, 0 to apply commands immediately
+     */
+    private static final int DEFAULT_GAME_TICK = 0;
+    /**
+     * Name of the property used to define the area of interest radius
+     */
+    private static final String INTEREST_RADIUS_PROP = "interestRadius";
+    /**
+     * Default area of interest radius, 0 to send movement to every player
+     */
+    private static final int DEFAULT_INTEREST_RADIUS = 0;
     /**
      * Name of the property used to define number of players per game
      */
@@ -100,9 +139,15 @@ public class SnowmanServer implements ManagedObject, Serializable, AppListener {
     private int numPlayersPerGame;
     private int numRobotsPerGame;
     private int robotDelay;
+    private int numWaitingDeques;
+    private int numMatchmakers;
+    private int gamePoolSize;
+    private int gameTick;
+    private int interestRadius;
     
     private ManagedReference<Deque<ManagedReference<SnowmanPlayer>>>[] 
             waitingDeques;
+    private ManagedReference<MatchmakerTask>[] matchmakerRefs;
     private GameFactory gameFactory;
     private EntityFactory entityFactory;
 
@@ -111,37 +156,86 @@ public class SnowmanServer implements ManagedObject, Serializable, AppListener {
      * <ol>
      * <li>Initializing a list of queues that connecting players are placed
      * into upon connecting to wait to be matched into a game.</li>
-     * <li>Initializing the self-rescheduling {@code link MatchmakerTask} which
-     * is responsible for pulling players off of the waiting queues and
-     * matching them into games.</li>
+     * <li>Initializing the event driven {@link MatchmakerTask} shards which
+     * are responsible for pulling players off of the waiting queues and
+     * matching them into games.  Each shard owns every queue whose index
+     * modulo the number of shards equals the index of the shard.</li>
+     * <li>Initializing a pool of ready games for each shard, which the
+     * shard fills up while no players are waiting, so that games do not
+     * have to be created when players are matched.</li>
      * </ol>
      * Configuration parameters such as number of players in a game, number
-     * of robots in a game, and robot move delay are also parsed and 
-     * established from the given set of properties.
+     * of robots in a game, robot move delay, and the number of queues and
+     * matchmaker shards are also parsed and established from the given set
+     * of properties.
      * 
      * @param props a set of {@code Properties} used to configure the 
      *        runtime state of the game
      */
-    @SuppressWarnings("unchecked")
     public void initialize(Properties props) {
         this.gameFactory = new GameFactoryImpl();
         this.entityFactory = new EntityFactoryImpl();
-        this.waitingDeques = new ManagedReference[NUMDEQUES];
+        this.config(props);
+        
+        this.waitingDeques = newReferences(numWaitingDeques);
         for (int i = 0; i < waitingDeques.length; i++) {
             Deque<ManagedReference<SnowmanPlayer>> deque = 
                     new ScalableDeque<ManagedReference<SnowmanPlayer>>();
             waitingDeques[i] = 
                     AppContext.getDataManager().createReference(deque);
         }
-
-        this.config(props);
-        AppContext.getTaskManager().scheduleTask(
-                new MatchmakerTask(numPlayersPerGame,
-                                   numRobotsPerGame,
-                                   robotDelay,
-                                   gameFactory,
-                                   entityFactory,
-                                   waitingDeques));
+        
+        //the first shard owns an extra overflow deque that the other
+        //shards hand their leftover players to
+        Deque<ManagedReference<SnowmanPlayer>> overflow = null;
+        if (numMatchmakers > 1) {
+            overflow = new ScalableDeque<ManagedReference<SnowmanPlayer>>();
+        }
+        
+        this.matchmakerRefs = newReferences(numMatchmakers);
+        MatchmakerTask[] matchmakers = new MatchmakerTask[numMatchmakers];
+        for (int shard = 0; shard < numMatchmakers; shard++) {
+            int owned = (numWaitingDeques - shard + numMatchmakers - 1) / 
+                    numMatchmakers;
+            int offset = 0;
+            if (shard == 0 && overflow != null) {
+                owned++;
+                offset = 1;
+            }
+            ManagedReference<Deque<ManagedReference<SnowmanPlayer>>>[] 
+                    shardDeques = newReferences(owned);
+            if (offset == 1) {
+                shardDeques[0] = 
+                        AppContext.getDataManager().createReference(overflow);
+            }
+            for (int i = offset; i < owned; i++) {
+                shardDeques[i] = 
+                        waitingDeques[(i - offset) * numMatchmakers + shard];
+            }
+            matchmakers[shard] = new MatchmakerTask(shard,
+                                                    numMatchmakers,
+                                                    numPlayersPerGame,
+                                                    numRobotsPerGame,
+                                                    robotDelay,
+                                                    gameFactory,
+                                                    entityFactory,
+                                                    shardDeques);
+            matchmakerRefs[shard] = 
+                    AppContext.getDataManager().createReference(
+                    matchmakers[shard]);
+        }
+        for (int shard = 0; shard < numMatchmakers; shard++) {
+            if (shard > 0) {
+                matchmakers[shard].setOverflow(overflow, matchmakers[0]);
+            }
+            matchmakers[shard].setGameTickInterval(gameTick);
+            matchmakers[shard].setGameInterestRadius(interestRadius);
+            if (gamePoolSize > 0) {
+                matchmakers[shard].setGamePool(
+                        new GamePoolImpl(gamePoolSize));
+            }
+            AppContext.getTaskManager().scheduleTask(matchmakers[shard]);
+        }
     }
 
     private void config(Properties props) {
@@ -175,12 +269,67 @@ public class SnowmanServer implements ManagedObject, Serializable, AppListener {
                    "Number of robots per game: {0}, " +
                    "with delay of {1} milliseconds",
                    new Object[]{numRobotsPerGame, robotDelay});
+        
+        numWaitingDeques = getPropertyAsInteger(props,
+                                                WAITING_DEQUES_PROP,
+                                                DEFAULT_WAITING_DEQUES);
+        if (numWaitingDeques <= 0) {
+            throw new IllegalArgumentException(WAITING_DEQUES_PROP + 
+                                               " must be > 0");
+        }
+        
+        numMatchmakers = getPropertyAsInteger(props,
+                                              MATCHMAKERS_PROP,
+                                              DEFAULT_MATCHMAKERS);
+        if (numMatchmakers <= 0 || numMatchmakers > numWaitingDeques) {
+            throw new IllegalArgumentException(MATCHMAKERS_PROP + 
+                                               " must be > 0 and <= " +
+                                               WAITING_DEQUES_PROP);
+        }
+        logger.log(Level.CONFIG,
+                   "Number of waiting queues: {0}, " +
+                   "shared by {1} matchmakers",
+                   new Object[]{numWaitingDeques, numMatchmakers});
+        
+        gamePoolSize = getPropertyAsInteger(props,
+                                            GAME_POOL_SIZE_PROP,
+                                            DEFAULT_GAME_POOL_SIZE);
+        if (gamePoolSize < 0) {
+            throw new IllegalArgumentException(GAME_POOL_SIZE_PROP + 
+                                               " must be >= 0");
+        }
+        logger.log(Level.CONFIG,
+                   "Number of pooled games per matchmaker set to {0}",
+                   gamePoolSize);
+        
+        gameTick = getPropertyAsInteger(props,
+                                        GAME_TICK_PROP,
+                                        DEFAULT_GAME_TICK);
+        if (gameTick < 0) {
+            throw new IllegalArgumentException(GAME_TICK_PROP + 
+                                               " must be >= 0");
+        }
+        logger.log(Level.CONFIG,
+                   "Game tick interval set to {0} milliseconds",
+                   gameTick);
+        
+        interestRadius = getPropertyAsInteger(props,
+                                              INTEREST_RADIUS_PROP,
+                                              DEFAULT_INTEREST_RADIUS);
+        if (interestRadius < 0) {
+            throw new IllegalArgumentException(INTEREST_RADIUS_PROP + 
+                                               " must be >= 0");
+        }
+        logger.log(Level.CONFIG,
+                   "Area of interest radius set to {0}",
+                   interestRadius);
     }
 
     /**
      * When a player logs in, it is randomly added to one of the waiting
-     * deques.  The {@link MatchmakerTask} is responsible for pulling players
-     * off of these deques and matching them into games.
+     * deques.  The {@link MatchmakerTask} shard owning the deque is
+     * responsible for pulling players off of it and matching them into
+     * games, and is woken up whenever a player is added to an empty deque.
      * 
      * @param session the {@code ClientSession} of the connecting player
      * @return a {@link SnowmanPlayerListener} associated with the connected
@@ -194,9 +343,16 @@ public class SnowmanServer implements ManagedObject, Serializable, AppListener {
                 new SnowmanPlayerListener(
                 entityFactory.createSnowmanPlayer(session));
         BigInteger id = player.getSnowmanPlayerRef().getId();
-        BigInteger index = id.mod(BigInteger.valueOf((long) NUMDEQUES));
+        int index = id.mod(BigInteger.valueOf((long) numWaitingDeques))
+                .intValue();
 
-        waitingDeques[index.intValue()].get().add(player.getSnowmanPlayerRef());
+        Deque<ManagedReference<SnowmanPlayer>> deque =
+                waitingDeques[index].get();
+        boolean wasEmpty = deque.isEmpty();
+        deque.add(player.getSnowmanPlayerRef());
+        if (wasEmpty) {
+            matchmakerRefs[index % numMatchmakers].get().wake();
+        }
         return player;
     }
     
@@ -222,4 +378,16 @@ public class SnowmanServer implements ManagedObject, Serializable, AppListener {
             return defaultValue;
         }
     }
+    
+    /**
+     * Creates an array of managed references, which can only be created
+     * without their type parameter.
+     * 
+     * @param size the length of the array
+     * @return the new array
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> ManagedReference<T>[] newReferences(int size) {
+        return new ManagedReference[size];
+    }
 }
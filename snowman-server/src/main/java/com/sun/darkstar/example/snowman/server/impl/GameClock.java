@@ -0,0 +1,83 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.server.service.GameClockManager;
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.ManagerNotFoundException;
+import com.sun.sgs.app.Task;
+
+/**
+ * Access to the {@link GameClockManager} for the game objects.  When no
+ * game clock is configured, such as in unit tests, the system clock is
+ * used instead.
+ */
+public final class GameClock {
+    
+    private GameClock() {
+    }
+    
+    /**
+     * Returns the current time of the game clock.
+     * 
+     * @return the current game time in milliseconds
+     */
+    public static long currentTimeMillis() {
+        GameClockManager clock = getManager();
+        return clock == null ? 
+                System.currentTimeMillis() : clock.currentTimeMillis();
+    }
+    
+    /**
+     * Schedules a task to run after a delay measured by the game clock.
+     * 
+     * @param task the task to run
+     * @param delay the delay in game milliseconds
+     */
+    static void scheduleTask(Task task, long delay) {
+        GameClockManager clock = getManager();
+        AppContext.getTaskManager().scheduleTask(
+                task, clock == null ? delay : clock.toRealDelay(delay));
+    }
+    
+    // Returns the game clock, or null if there is none
+    private static GameClockManager getManager() {
+        try {
+            return AppContext.getManager(GameClockManager.class);
+        } catch (ManagerNotFoundException noClock) {
+            return null;
+        }
+    }
+}
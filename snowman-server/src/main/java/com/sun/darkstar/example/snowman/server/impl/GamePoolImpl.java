@@ -0,0 +1,108 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.server.interfaces.GamePool;
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanGame;
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.ObjectNotFoundException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Default implementation of a {@code GamePool}.  The pool is expected to
+ * stay small, so the references to the pooled games are kept directly
+ * in the pool object.
+ * 
+ * @see GamePool
+ */
+public class GamePoolImpl implements GamePool, Serializable {
+
+    /** The version of the serialized form. */
+    public static final long serialVersionUID = 1L;
+    
+    private final int capacity;
+    private final List<ManagedReference<SnowmanGame>> games;
+    
+    /**
+     * Creates an empty pool holding up to the given number of games.
+     * 
+     * @param capacity the maximum number of pooled games
+     */
+    public GamePoolImpl(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        this.capacity = capacity;
+        this.games = new ArrayList<ManagedReference<SnowmanGame>>(capacity);
+    }
+
+    /** {@inheritDoc} */
+    public SnowmanGame checkOut() {
+        if (games.isEmpty()) {
+            return null;
+        }
+        AppContext.getDataManager().markForUpdate(this);
+        while (!games.isEmpty()) {
+            try {
+                return games.remove(games.size() - 1).get();
+            } catch (ObjectNotFoundException removed) {
+            }
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    public boolean checkIn(SnowmanGame game) {
+        if (games.size() >= capacity) {
+            return false;
+        }
+        AppContext.getDataManager().markForUpdate(this);
+        games.add(AppContext.getDataManager().createReference(game));
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public int getAvailable() {
+        return games.size();
+    }
+
+    /** {@inheritDoc} */
+    public int getCapacity() {
+        return capacity;
+    }
+}
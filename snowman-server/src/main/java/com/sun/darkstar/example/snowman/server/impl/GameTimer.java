@@ -0,0 +1,367 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.ManagedObject;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Timer of the pending events of a single game, such as respawns and flag
+ * returns.  Rather than scheduling one durable task per event, the game
+ * keeps its events in this timer and runs a single task at a time which
+ * drains the events that are due.
+ * <p>
+ * The events are kept in a binary heap ordered by time, stored in
+ * primitive arrays, and only the pending events are written when the
+ * timer is serialized.
+ * Each event is identified by a handle so that it can be cancelled.  The
+ * timer also keeps track of the drain task which is pending, so that a
+ * task which has been superseded by an earlier one stops when it runs.
+ */
+class GameTimer implements ManagedObject, Externalizable {
+
+    /** The version of the serialized form. */
+    public static final long serialVersionUID = 1L;
+    private static final byte VERSION = 1;
+    
+    /**
+     * Events due within this many milliseconds of each other are run by
+     * the same drain task
+     */
+    static final long RESOLUTIONMS = 100;
+    private static final int INITIALCAPACITY = 8;
+    
+    private long[] times = new long[INITIALCAPACITY];
+    private int[] handles = new int[INITIALCAPACITY];
+    private byte[] events = new byte[INITIALCAPACITY];
+    private int[] targets = new int[INITIALCAPACITY];
+    /**
+     * Number of pending events
+     */
+    private int size = 0;
+    /**
+     * The last handle given to an event
+     */
+    private int lastHandle = 0;
+    /**
+     * Number of the pending drain task, or 0 if there is none
+     */
+    private int task = 0;
+    /**
+     * The last number given to a drain task
+     */
+    private int lastTask = 0;
+    /**
+     * The time at which the pending drain task runs
+     */
+    private long taskTime;
+
+    /**
+     * Creates an empty timer.  Also used for deserialization.
+     */
+    public GameTimer() {
+    }
+
+    /**
+     * Adds an event.
+     * 
+     * @param time the time at which the event is due
+     * @param event the kind of the event
+     * @param target the id of the target of the event
+     * @return the handle of the event, which is never 0
+     */
+    int add(long time, int event, int target) {
+        AppContext.getDataManager().markForUpdate(this);
+        if (size == times.length) {
+            grow();
+        }
+        do {
+            lastHandle++;
+        } while (lastHandle == 0);
+        times[size] = time;
+        handles[size] = lastHandle;
+        events[size] = (byte) event;
+        targets[size] = target;
+        siftUp(size++);
+        return lastHandle;
+    }
+
+    /**
+     * Removes the event with the given handle, if it is still pending.
+     * 
+     * @param handle the handle of the event
+     * @return whether the event was pending
+     */
+    boolean cancel(int handle) {
+        for (int i = 0; i < size; i++) {
+            if (handles[i] == handle) {
+                AppContext.getDataManager().markForUpdate(this);
+                removeAt(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the next event is due at the given time.
+     * 
+     * @param now the current time
+     * @return whether there is an event due at or before the given time
+     */
+    boolean isDue(long now) {
+        return size > 0 && times[0] <= now;
+    }
+
+    /**
+     * Returns the time of the next event.
+     * 
+     * @return the time of the next event, or {@code Long.MAX_VALUE} if
+     *         there is none
+     */
+    long getNextTime() {
+        return size == 0 ? Long.MAX_VALUE : times[0];
+    }
+
+    /**
+     * Returns the kind of the next event.  There must be one.
+     * 
+     * @return the kind of the next event
+     */
+    int getNextEvent() {
+        assert size > 0;
+        return events[0];
+    }
+
+    /**
+     * Returns the id of the target of the next event.  There must be one.
+     * 
+     * @return the id of the target of the next event
+     */
+    int getNextTarget() {
+        assert size > 0;
+        return targets[0];
+    }
+
+    /**
+     * Removes the next event.  There must be one.
+     */
+    void removeNext() {
+        assert size > 0;
+        AppContext.getDataManager().markForUpdate(this);
+        removeAt(0);
+    }
+
+    /**
+     * Returns the number of pending events.
+     * 
+     * @return the number of pending events
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes all of the events and forgets the pending drain task.
+     */
+    void clear() {
+        AppContext.getDataManager().markForUpdate(this);
+        size = 0;
+        task = 0;
+    }
+
+    /**
+     * Checks whether a drain task has to be scheduled for the next event,
+     * which is the case if there is no pending task or if it runs too late
+     * for the next event.  If so, the new task becomes the pending one.
+     * 
+     * @param now the current time
+     * @return the number of the task to schedule, or 0 if none is needed
+     */
+    int startTask(long now) {
+        if (size == 0) {
+            return 0;
+        }
+        long time = Math.max(times[0], now);
+        if (task != 0 && taskTime <= time + RESOLUTIONMS) {
+            return 0;
+        }
+        AppContext.getDataManager().markForUpdate(this);
+        do {
+            lastTask++;
+        } while (lastTask == 0);
+        task = lastTask;
+        taskTime = time;
+        return task;
+    }
+
+    /**
+     * Checks whether the drain task with the given number is the pending
+     * one, and if so forgets it as it is now running.
+     * 
+     * @param number the number of the running task
+     * @return whether the task should drain the timer
+     */
+    boolean runTask(int number) {
+        if (number != task) {
+            return false;
+        }
+        AppContext.getDataManager().markForUpdate(this);
+        task = 0;
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(times[i]);
+            out.writeInt(handles[i]);
+            out.writeByte(events[i]);
+            out.writeInt(targets[i]);
+        }
+        out.writeInt(lastHandle);
+        out.writeInt(task);
+        out.writeInt(lastTask);
+        out.writeLong(taskTime);
+    }
+
+    /** {@inheritDoc} */
+    public void readExternal(ObjectInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new InvalidObjectException(
+                    "unsupported version " + version);
+        }
+        size = 0;
+        int count = in.readInt();
+        while (times.length < count) {
+            grow();
+        }
+        // the events were written in heap order
+        for (int i = 0; i < count; i++) {
+            times[i] = in.readLong();
+            handles[i] = in.readInt();
+            events[i] = in.readByte();
+            targets[i] = in.readInt();
+        }
+        size = count;
+        lastHandle = in.readInt();
+        task = in.readInt();
+        lastTask = in.readInt();
+        taskTime = in.readLong();
+    }
+
+    // Double the capacity of the heap
+    private void grow() {
+        int capacity = times.length * 2;
+        long[] newTimes = new long[capacity];
+        int[] newHandles = new int[capacity];
+        byte[] newEvents = new byte[capacity];
+        int[] newTargets = new int[capacity];
+        System.arraycopy(times, 0, newTimes, 0, size);
+        System.arraycopy(handles, 0, newHandles, 0, size);
+        System.arraycopy(events, 0, newEvents, 0, size);
+        System.arraycopy(targets, 0, newTargets, 0, size);
+        times = newTimes;
+        handles = newHandles;
+        events = newEvents;
+        targets = newTargets;
+    }
+
+    // Remove the event at the given index by moving the last one into it
+    private void removeAt(int i) {
+        size--;
+        if (i == size) {
+            return;
+        }
+        move(size, i);
+        siftDown(i);
+        siftUp(i);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (times[parent] <= times[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && times[child + 1] < times[child]) {
+                child++;
+            }
+            if (times[i] <= times[child]) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void move(int from, int to) {
+        times[to] = times[from];
+        handles[to] = handles[from];
+        events[to] = events[from];
+        targets[to] = targets[from];
+    }
+
+    private void swap(int i, int j) {
+        long time = times[i];
+        int handle = handles[i];
+        byte event = events[i];
+        int target = targets[i];
+        move(j, i);
+        times[j] = time;
+        handles[j] = handle;
+        events[j] = event;
+        targets[j] = target;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.ManagedObject;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spatial grid of the players of a single game, used to send movement
+ * updates only to the players near the mover instead of to the whole
+ * game.  The players interested in a mover are the players in the cells
+ * surrounding the mover's cell, including the mover itself.
+ * <p>
+ * A player keeps its cell until it moves further than a margin outside
+ * of it.  This hysteresis stops players on a cell border from flipping
+ * between cells, and means the grid is only written to when a player
+ * really changes cell, so that moves in the same game seldom conflict.
+ * Cells are sized so that every player within the interest radius of a
+ * mover is always in a surrounding cell.
+ * <p>
+ * Players are tracked at the position of their last reported movement.
+ * For a moving player this is its destination.
+ */
+class InterestGrid implements ManagedObject, Serializable {
+
+    /** The version of the serialized form. */
+    public static final long serialVersionUID = 1L;
+
+    private final float cellSize;
+    private final float margin;
+    /**
+     * Map of player IDs to the key of their cell
+     */
+    private final Map<Integer, Long> cells = new HashMap<Integer, Long>();
+    /**
+     * Map of cell keys to the IDs of the players in that cell
+     */
+    private final Map<Long, Set<Integer>> members = 
+            new HashMap<Long, Set<Integer>>();
+
+    /**
+     * Creates an empty grid.
+     * 
+     * @param radius distance within which players always receive the
+     *        movement of each other
+     */
+    InterestGrid(float radius) {
+        if (radius <= 0) {
+            throw new IllegalArgumentException("radius must be > 0");
+        }
+        //two players in neighbouring cells can each be up to a margin
+        //outside of their cell
+        this.margin = radius / 4.0f;
+        this.cellSize = radius + 2.0f * margin;
+    }
+
+    /**
+     * Updates the position of a player, adding it to the grid if needed.
+     * 
+     * @param id the id of the player
+     * @param x x coordinate of the player
+     * @param y y coordinate of the player
+     * @return true if the player changed cell
+     */
+    boolean update(int id, float x, float y) {
+        Integer playerId = Integer.valueOf(id);
+        Long current = cells.get(playerId);
+        if (current != null && contains(current.longValue(), x, y)) {
+            return false;
+        }
+        AppContext.getDataManager().markForUpdate(this);
+        if (current != null) {
+            removeMember(current, playerId);
+        }
+        Long key = Long.valueOf(getKey(cell(x), cell(y)));
+        cells.put(playerId, key);
+        Set<Integer> cell = members.get(key);
+        if (cell == null) {
+            cell = new HashSet<Integer>();
+            members.put(key, cell);
+        }
+        cell.add(playerId);
+        return true;
+    }
+
+    /**
+     * Moves a player and returns the players interested in the move.
+     * These are the players around both the previous and the new cell of
+     * the player, so that players near the start and the end of a move
+     * both receive it.
+     * <p>
+     * When the player changes cell, the players around the new cell which
+     * were not around the previous one are added to <code>entered</code>.
+     * Interest is symmetric, so these are both the players that the mover
+     * starts seeing and the players that start seeing the mover.  They
+     * have not received the movement of each other while apart, so the
+     * caller has to catch them up.
+     *
+     * @param id the id of the moving player
+     * @param x x coordinate the player is moving to
+     * @param y y coordinate the player is moving to
+     * @param entered set to add the ids of the players newly in the
+     *        interest area of the mover to, not including the mover
+     * @return the ids of the interested players, including the mover
+     */
+    Set<Integer> move(int id, float x, float y, Set<Integer> entered) {
+        Integer playerId = Integer.valueOf(id);
+        Set<Integer> interested = new HashSet<Integer>();
+        Long previous = cells.get(playerId);
+        if (!update(id, x, y)) {
+            addNeighbours(previous.longValue(), interested);
+            return interested;
+        }
+        if (previous != null) {
+            addNeighbours(previous.longValue(), interested);
+        }
+        Set<Integer> around = new HashSet<Integer>();
+        addNeighbours(cells.get(playerId).longValue(), around);
+        for (Integer other : around) {
+            if (interested.add(other) && !other.equals(playerId)) {
+                entered.add(other);
+            }
+        }
+        return interested;
+    }
+
+    /**
+     * Removes a player from the grid.
+     * 
+     * @param id the id of the player
+     */
+    void remove(int id) {
+        Integer playerId = Integer.valueOf(id);
+        Long current = cells.get(playerId);
+        if (current != null) {
+            AppContext.getDataManager().markForUpdate(this);
+            cells.remove(playerId);
+            removeMember(current, playerId);
+        }
+    }
+
+    /**
+     * Removes all of the players from the grid.
+     */
+    void clear() {
+        if (!cells.isEmpty()) {
+            AppContext.getDataManager().markForUpdate(this);
+            cells.clear();
+            members.clear();
+        }
+    }
+
+    /**
+     * Returns the key of the cell that a player is in.
+     * 
+     * @param id the id of the player
+     * @return the key of the cell, or null if the player is not in the grid
+     */
+    Long getCell(int id) {
+        return cells.get(Integer.valueOf(id));
+    }
+
+    /**
+     * Returns the width of the cells of the grid.
+     * 
+     * @return the cell size
+     */
+    float getCellSize() {
+        return cellSize;
+    }
+
+    private void removeMember(Long key, Integer playerId) {
+        Set<Integer> cell = members.get(key);
+        cell.remove(playerId);
+        if (cell.isEmpty()) {
+            members.remove(key);
+        }
+    }
+
+    private void addNeighbours(long key, Set<Integer> store) {
+        int cx = getX(key);
+        int cy = getY(key);
+        for (int i = cx - 1; i <= cx + 1; i++) {
+            for (int j = cy - 1; j <= cy + 1; j++) {
+                Set<Integer> cell = members.get(Long.valueOf(getKey(i, j)));
+                if (cell != null) {
+                    store.addAll(cell);
+                }
+            }
+        }
+    }
+
+    // Whether the position is within the cell extended by the margin
+    private boolean contains(long key, float x, float y) {
+        float minX = getX(key) * cellSize - margin;
+        float minY = getY(key) * cellSize - margin;
+        return x >= minX && x < minX + cellSize + 2.0f * margin &&
+                y >= minY && y < minY + cellSize + 2.0f * margin;
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    static long getKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private static int getX(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int getY(long key) {
+        return (int) key;
+    }
+}
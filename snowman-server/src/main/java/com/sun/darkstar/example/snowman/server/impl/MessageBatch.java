@@ -0,0 +1,132 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
+import com.sun.darkstar.example.snowman.common.protocol.messages.ServerMessages;
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanPlayer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates the messages sent to players during a task so that each
+ * player receives them in a single ENVELOPE packet when the batch is
+ * flushed, instead of one session send per message.  Messages keep the
+ * order in which they were added for each player.
+ * <p>
+ * Players which did not negotiate the envelope protocol are sent their
+ * messages one by one when the batch is flushed.  A batch is only meant
+ * to live for the duration of a single task and is not a managed object.
+ */
+class MessageBatch {
+
+    /**
+     * The largest envelope sent at once, which is the default maximum
+     * message length of a client session.  Larger batches are split into
+     * several envelopes.
+     */
+    static final int MAX_ENVELOPE_SIZE = Messages.MAX_PACKET_SIZE;
+
+    private final Map<SnowmanPlayer, List<ByteBuffer>> messages =
+            new LinkedHashMap<SnowmanPlayer, List<ByteBuffer>>();
+
+    /**
+     * Queue a message for a player.
+     *
+     * @param player the player to send the message to
+     * @param buff the message
+     */
+    void add(SnowmanPlayer player, ByteBuffer buff) {
+        List<ByteBuffer> playerMessages = messages.get(player);
+        if (playerMessages == null) {
+            playerMessages = new ArrayList<ByteBuffer>();
+            messages.put(player, playerMessages);
+        }
+        playerMessages.add(buff.asReadOnlyBuffer());
+    }
+
+    /**
+     * Queue a message for several players.
+     *
+     * @param players the players to send the message to
+     * @param buff the message
+     */
+    void addAll(Iterable<SnowmanPlayer> players, ByteBuffer buff) {
+        for (SnowmanPlayer player : players) {
+            add(player, buff);
+        }
+    }
+
+    /**
+     * Send the queued messages to each player and empty the batch.
+     */
+    void flush() {
+        for (Map.Entry<SnowmanPlayer, List<ByteBuffer>> entry :
+                 messages.entrySet()) {
+            SnowmanPlayer player = entry.getKey();
+            List<ByteBuffer> playerMessages = entry.getValue();
+            if (playerMessages.size() == 1 || player.getProtocolVersion() <
+                    Messages.PROTOCOL_ENVELOPE) {
+                for (ByteBuffer buff : playerMessages) {
+                    player.send(buff);
+                }
+            } else {
+                sendEnvelopes(player, playerMessages);
+            }
+        }
+        messages.clear();
+    }
+
+    // Send the messages in as few envelopes as the maximum size allows
+    private static void sendEnvelopes(SnowmanPlayer player,
+                                      List<ByteBuffer> playerMessages) {
+        List<ByteBuffer> envelope = new ArrayList<ByteBuffer>();
+        int size = ServerMessages.getEnvelopeSize(envelope);
+        for (ByteBuffer buff : playerMessages) {
+            int entrySize = ServerMessages.getEnvelopeEntrySize(buff);
+            if (!envelope.isEmpty() && size + entrySize > MAX_ENVELOPE_SIZE) {
+                player.send(ServerMessages.createEnvelopePkt(envelope));
+                envelope.clear();
+                size = ServerMessages.getEnvelopeSize(envelope);
+            }
+            envelope.add(buff);
+            size += entrySize;
+        }
+        player.send(ServerMessages.createEnvelopePkt(envelope));
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.common.util.Coordinate;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Fixed size history of the recent movement of a single player, used to
+ * find where the player was at a time in the past, such as the time at
+ * which a client issued an attack.
+ * <p>
+ * The history is a ring of movement segments, each starting at a time
+ * and moving from a start position towards a destination at a constant
+ * rate until the next segment starts.  A stopped player has a segment
+ * whose start and destination are equal.  The segments are kept in
+ * primitive arrays so that the history serializes with the player in a
+ * few compact arrays.
+ * <p>
+ * Only the positions up to a maximum age before the start of the latest
+ * segment are ever looked up, so the segments which ended before that are
+ * dropped as new ones are recorded.  Since the history is written with
+ * the player on every move, this keeps its serialized form to the moves
+ * of the last maximum age, however large the capacity.
+ */
+class MovementHistory implements Serializable {
+
+    /** The version of the serialized form. */
+    public static final long serialVersionUID = 1L;
+    
+    private final long[] times;
+    private final float[] startXs;
+    private final float[] startYs;
+    private final float[] destXs;
+    private final float[] destYs;
+    private final float[] rates;
+    /**
+     * Time before the start of the latest segment after which positions
+     * are looked up
+     */
+    private final long maxAge;
+    /**
+     * Index of the latest segment
+     */
+    private int latest = -1;
+    /**
+     * Number of segments recorded, up to the capacity
+     */
+    private int size = 0;
+
+    /**
+     * Creates an empty history holding up to the given number of segments.
+     * 
+     * @param capacity the maximum number of segments kept
+     * @param maxAge the time before the start of the latest segment up
+     *        to which positions are kept
+     */
+    MovementHistory(int capacity, long maxAge) {
+        this.maxAge = maxAge;
+        times = new long[capacity];
+        startXs = new float[capacity];
+        startYs = new float[capacity];
+        destXs = new float[capacity];
+        destYs = new float[capacity];
+        rates = new float[capacity];
+    }
+
+    /**
+     * Records a new segment, replacing the oldest one if the history is
+     * full, and drops the segments which ended more than the maximum age
+     * before it.  A segment starting before the latest one is recorded as
+     * starting at the same time as the latest one.
+     * 
+     * @param time time at which the segment starts
+     * @param startX x coordinate of the start position
+     * @param startY y coordinate of the start position
+     * @param destX x coordinate of the destination
+     * @param destY y coordinate of the destination
+     * @param ratePerMs the distance moved per millisecond
+     */
+    void record(long time, float startX, float startY,
+                float destX, float destY, float ratePerMs) {
+        if (size > 0 && time < times[latest]) {
+            time = times[latest];
+        }
+        latest = (latest + 1) % times.length;
+        if (size < times.length) {
+            size++;
+        }
+        times[latest] = time;
+        startXs[latest] = startX;
+        startYs[latest] = startY;
+        destXs[latest] = destX;
+        destYs[latest] = destY;
+        rates[latest] = ratePerMs;
+        
+        //the oldest segment is no longer needed once the next one starts
+        //before the maximum age
+        long cutoff = time - maxAge;
+        while (size > 1 && 
+                times[(latest - size + 2 + times.length) % times.length] <= 
+                cutoff) {
+            size--;
+        }
+    }
+
+    /**
+     * Writes the segments of the history from the oldest to the latest,
+     * for the owner of the history to include in its own serialized form.
+     * 
+     * @param out the output to write to
+     * @throws IOException if the segments cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeShort(size);
+        int index = (latest - size + 1 + times.length) % times.length;
+        for (int i = 0; i < size; i++) {
+            out.writeLong(times[index]);
+            out.writeFloat(startXs[index]);
+            out.writeFloat(startYs[index]);
+            out.writeFloat(destXs[index]);
+            out.writeFloat(destYs[index]);
+            out.writeFloat(rates[index]);
+            index = (index + 1) % times.length;
+        }
+    }
+
+    /**
+     * Replaces the segments of the history with those written by
+     * {@link #writeTo}.  Only the latest segments are kept if there are
+     * more than the capacity of the history.
+     * 
+     * @param in the input to read from
+     * @throws IOException if the segments cannot be read
+     */
+    void readFrom(DataInput in) throws IOException {
+        clear();
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            record(in.readLong(), in.readFloat(), in.readFloat(),
+                   in.readFloat(), in.readFloat(), in.readFloat());
+        }
+    }
+
+    /**
+     * Returns the position at a time before the start of the latest
+     * segment.  A time older than the whole history gives the start
+     * position of the oldest segment.
+     * 
+     * @param time the time to calculate the position at
+     * @return the position at the given time, or null if the history is
+     *         empty or the time is not before the start of the latest
+     *         segment
+     */
+    Coordinate getPositionBefore(long time) {
+        if (size == 0 || time >= times[latest]) {
+            return null;
+        }
+        int index = latest;
+        for (int i = 1; i < size; i++) {
+            index = (index + times.length - 1) % times.length;
+            if (times[index] <= time) {
+                return getPosition(startXs[index], startYs[index],
+                                   destXs[index], destYs[index],
+                                   rates[index], time - times[index]);
+            }
+        }
+        return new Coordinate(startXs[index], startYs[index]);
+    }
+
+    /**
+     * Forgets all of the recorded segments.
+     */
+    void clear() {
+        latest = -1;
+        size = 0;
+    }
+
+    /**
+     * Calculates the position reached after moving for the given time
+     * from a start position towards a destination at the given rate.
+     * The destination is never passed.
+     * 
+     * @param startX x coordinate of the start position
+     * @param startY y coordinate of the start position
+     * @param destX x coordinate of the destination
+     * @param destY y coordinate of the destination
+     * @param ratePerMs the distance moved per millisecond
+     * @param dt the time moved in milliseconds
+     * @return the position reached
+     */
+    static Coordinate getPosition(float startX, float startY,
+                                  float destX, float destY,
+                                  float ratePerMs, long dt) {
+        float distanceTraveled = ratePerMs * dt;
+
+        //calculate the actual distance traveled based on the speed
+        float dx = destX - startX;
+        float dy = destY - startY;
+        float targetDistance = (float) Math.sqrt((dx * dx) + (dy * dy));
+
+        //if we've travelled beyond target, target is the position
+        if (targetDistance <= distanceTraveled) {
+            return new Coordinate(destX, destY);
+        }
+        
+        //otherwise, we need to calculate the new position based on
+        //a system of equations 
+        //(looking for realDX and realDY as variables):
+        //  dx/dy = realDX/realDY
+        //  realDX^2 + realDY^2 = distanceTraveled^2
+        float realDX = dx == 0.0f ? 0.0f : (float) Math.sqrt(
+                (distanceTraveled * distanceTraveled) /
+                ((dy * dy) / (dx * dx) + 1));
+        float realDY = dy == 0.0f ? 0.0f : (float) Math.sqrt(
+                (distanceTraveled * distanceTraveled) /
+                ((dx * dx) / (dy * dy) + 1));
+
+        //ensure that the signs match for the deltas
+        if (dx < 0) {
+            realDX *= -1;
+        }
+        if (dy < 0) {
+            realDY *= -1;
+        }
+        return new Coordinate(startX + realDX, startY + realDY);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.common.protocol.enumn.EOPCODE;
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.ManagedObject;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Queue of the commands received from a single player of a tick based
+ * game, waiting to be applied by the next game tick.  Each player has its
+ * own queue so that receiving a command only writes to the queue of the
+ * sender and never conflicts with commands from other players.
+ */
+class PlayerInputQueue implements ManagedObject, Serializable {
+
+    /** The version of the serialized form. */
+    public static final long serialVersionUID = 1L;
+    private static final Logger logger = 
+            Logger.getLogger(PlayerInputQueue.class.getName());
+    
+    /**
+     * Maximum number of commands queued between two ticks.  Further
+     * commands are dropped.
+     */
+    static final int MAXINPUTS = 16;
+    
+    private final List<Input> inputs = new ArrayList<Input>();
+    
+    /**
+     * Queues a command received at the given time.
+     * 
+     * @param command the opcode of the command
+     * @param time time at which the command was received
+     * @param fireTime time at which the command was issued by the client
+     * @param target the id of the target of the command, if any
+     * @param args the coordinates of the command
+     */
+    void add(EOPCODE command, long time, long fireTime, 
+             int target, float... args) {
+        if (inputs.size() >= MAXINPUTS) {
+            logger.log(Level.FINE, "dropping {0} command", command);
+            return;
+        }
+        AppContext.getDataManager().markForUpdate(this);
+        inputs.add(new Input(command, time, fireTime, target, args));
+    }
+    
+    /**
+     * Removes and returns all of the queued commands.
+     * 
+     * @return the queued commands in the order they were received, or
+     *         an empty list if there are none
+     */
+    List<Input> drain() {
+        if (inputs.isEmpty()) {
+            return inputs;
+        }
+        AppContext.getDataManager().markForUpdate(this);
+        List<Input> drained = new ArrayList<Input>(inputs);
+        inputs.clear();
+        return drained;
+    }
+    
+    /**
+     * A single queued command.
+     */
+    static class Input implements Serializable {
+        /** The version of the serialized form. */
+        public static final long serialVersionUID = 1L;
+        
+        final EOPCODE command;
+        final long time;
+        final long fireTime;
+        final int target;
+        final float[] args;
+        
+        Input(EOPCODE command, long time, long fireTime, 
+              int target, float[] args) {
+            this.command = command;
+            this.time = time;
+            this.fireTime = fireTime;
+            this.target = target;
+            this.args = args;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.common.protocol.handlers.ClockSynchronizer;
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanFlag;
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.ManagedReference;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * The frequently written state of a single player: its movement, hit
+ * points and held flag, along with the movement history and client clock
+ * measurements updated by its commands.  It is kept apart from the
+ * {@link SnowmanPlayerImpl} so that moving, attacking or being hit only
+ * writes this small object, and reading the name, team or game of a
+ * player never conflicts with these writes.
+ * <p>
+ * The fields are read and written by the player, which takes care of
+ * getting the status for update before changing it.  Since the status is
+ * written on nearly every transaction of the player, it has a compact
+ * hand written serialized form, starting with a version number.
+ */
+class PlayerStatus implements ManagedObject, Externalizable {
+
+    /** The version of the serialized form. */
+    public static final long serialVersionUID = 1L;
+    private static final byte VERSION = 1;
+    
+    /**
+     * State that the player is in in the game.
+     */
+    SnowmanPlayerImpl.PlayerState state = SnowmanPlayerImpl.PlayerState.NONE;
+    /**
+     * Current health value of the player.
+     */
+    int hitPoints = SnowmanPlayerImpl.RESPAWNHP;
+    float startX;
+    float startY;
+    float destX;
+    float destY;
+    long timestamp;
+    /**
+     * Reference to a flag if the player is holding one.
+     */
+    ManagedReference<SnowmanFlag> holdingFlagRef = null;
+    /**
+     * Recent movement of the player, used to check timestamped commands
+     */
+    final MovementHistory history = 
+            new MovementHistory(SnowmanPlayerImpl.HISTORYSIZE,
+                                SnowmanPlayerImpl.MAXLAGMS);
+    /**
+     * Round trip time and clock offset of the client, measured with PING
+     * packets once the synchronized protocol is agreed
+     */
+    final ClockSynchronizer clock = new ClockSynchronizer();
+    /**
+     * Whether a timestamped command has been received from the client
+     */
+    boolean clockSampled = false;
+    /**
+     * Smallest difference seen between the server time at which a
+     * timestamped command was received and its client time
+     */
+    int minClockDelta;
+    /**
+     * Sequence number of the last sequenced movement update of the player.
+     */
+    int sequence = 0;
+    /**
+     * Seed of the random generator of the next move of a robot, which is
+     * kept here since moving a robot writes its status anyway
+     */
+    long seed;
+
+    /**
+     * Creates the status of a player which is not in a game.  Also used
+     * for deserialization.
+     */
+    public PlayerStatus() {
+    }
+
+    /** {@inheritDoc} */
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeByte(state.ordinal());
+        out.writeInt(hitPoints);
+        out.writeFloat(startX);
+        out.writeFloat(startY);
+        out.writeFloat(destX);
+        out.writeFloat(destY);
+        out.writeLong(timestamp);
+        out.writeObject(holdingFlagRef);
+        history.writeTo(out);
+        clock.writeTo(out);
+        out.writeBoolean(clockSampled);
+        out.writeInt(minClockDelta);
+        out.writeInt(sequence);
+        out.writeLong(seed);
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    public void readExternal(ObjectInput in)
+            throws IOException, ClassNotFoundException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new InvalidObjectException(
+                    "unsupported version " + version);
+        }
+        state = SnowmanPlayerImpl.PlayerState.values()[in.readByte()];
+        hitPoints = in.readInt();
+        startX = in.readFloat();
+        startY = in.readFloat();
+        destX = in.readFloat();
+        destY = in.readFloat();
+        timestamp = in.readLong();
+        holdingFlagRef = (ManagedReference<SnowmanFlag>) in.readObject();
+        history.readFrom(in);
+        clock.readFrom(in);
+        clockSampled = in.readBoolean();
+        minClockDelta = in.readInt();
+        sequence = in.readInt();
+        seed = in.readLong();
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.util.ScalableHashMap;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Table of references to managed objects keyed by their id, kept inline
+ * in the object that owns it.
+ * <p>
+ * Up to {@link #INLINELIMIT} entries are held in two small arrays which
+ * are serialized with the owner, so that looking up an entry costs no
+ * object load beyond the owner itself.  Above the limit the entries move
+ * to a {@link ScalableHashMap}, which is kept from then on.  The owner
+ * is responsible for marking itself for update before modifying the
+ * table, and for calling {@link #removeMap} when it is removed.
+ */
+class ReferenceTable<T> implements Serializable {
+
+    /** The version of the serialized form. */
+    public static final long serialVersionUID = 1L;
+    
+    /**
+     * The number of entries held inline before moving to a scalable map
+     */
+    static final int INLINELIMIT = 16;
+    
+    private int[] ids = new int[0];
+    private ManagedReference<?>[] refs = new ManagedReference<?>[0];
+    private int size = 0;
+    /**
+     * The map holding the entries above the inline limit, or null while
+     * they are held inline
+     */
+    private ManagedReference<Map<Integer, ManagedReference<T>>> mapRef = null;
+
+    /**
+     * Returns the reference stored under an id.
+     * 
+     * @param id the id of the object
+     * @return the reference to the object, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    ManagedReference<T> get(int id) {
+        if (mapRef != null) {
+            return mapRef.get().get(Integer.valueOf(id));
+        }
+        int index = indexOf(id);
+        return index < 0 ? null : (ManagedReference<T>) refs[index];
+    }
+
+    /**
+     * Stores a reference under an id, replacing any previous one.
+     * 
+     * @param id the id of the object
+     * @param ref the reference to the object
+     */
+    @SuppressWarnings("unchecked")
+    void put(int id, ManagedReference<T> ref) {
+        if (mapRef != null) {
+            mapRef.get().put(Integer.valueOf(id), ref);
+            return;
+        }
+        int index = indexOf(id);
+        if (index >= 0) {
+            refs[index] = ref;
+        } else if (size == INLINELIMIT) {
+            Map<Integer, ManagedReference<T>> map =
+                    new ScalableHashMap<Integer, ManagedReference<T>>();
+            for (int i = 0; i < size; i++) {
+                map.put(Integer.valueOf(ids[i]), 
+                        (ManagedReference<T>) refs[i]);
+            }
+            map.put(Integer.valueOf(id), ref);
+            mapRef = AppContext.getDataManager().createReference(map);
+            ids = new int[0];
+            refs = new ManagedReference<?>[0];
+            size = 0;
+        } else {
+            if (size == ids.length) {
+                int capacity = Math.min(Math.max(2 * size, 4), INLINELIMIT);
+                int[] newIds = new int[capacity];
+                ManagedReference<?>[] newRefs = 
+                        new ManagedReference<?>[capacity];
+                System.arraycopy(ids, 0, newIds, 0, size);
+                System.arraycopy(refs, 0, newRefs, 0, size);
+                ids = newIds;
+                refs = newRefs;
+            }
+            ids[size] = id;
+            refs[size] = ref;
+            size++;
+        }
+    }
+
+    /**
+     * Removes the reference stored under an id.
+     * 
+     * @param id the id of the object
+     * @return the removed reference, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    ManagedReference<T> remove(int id) {
+        if (mapRef != null) {
+            return mapRef.get().remove(Integer.valueOf(id));
+        }
+        int index = indexOf(id);
+        if (index < 0) {
+            return null;
+        }
+        ManagedReference<T> ref = (ManagedReference<T>) refs[index];
+        size--;
+        System.arraycopy(ids, index + 1, ids, index, size - index);
+        System.arraycopy(refs, index + 1, refs, index, size - index);
+        refs[size] = null;
+        return ref;
+    }
+
+    /**
+     * Returns the number of entries in the table.
+     * 
+     * @return the number of entries
+     */
+    int size() {
+        return mapRef != null ? mapRef.get().size() : size;
+    }
+
+    /**
+     * Returns a copy of the ids in the table, in the order they were
+     * added while the table is inline.
+     * 
+     * @return the ids of the entries
+     */
+    Set<Integer> ids() {
+        if (mapRef != null) {
+            return new LinkedHashSet<Integer>(mapRef.get().keySet());
+        }
+        Set<Integer> set = new LinkedHashSet<Integer>();
+        for (int i = 0; i < size; i++) {
+            set.add(Integer.valueOf(ids[i]));
+        }
+        return set;
+    }
+
+    /**
+     * Returns the references in the table.  The table must not be
+     * modified while iterating over the returned collection.
+     * 
+     * @return the references of the entries
+     */
+    @SuppressWarnings("unchecked")
+    Collection<ManagedReference<T>> values() {
+        if (mapRef != null) {
+            return mapRef.get().values();
+        }
+        List<ManagedReference<T>> list = 
+                new ArrayList<ManagedReference<T>>(size);
+        for (int i = 0; i < size; i++) {
+            list.add((ManagedReference<T>) refs[i]);
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Removes all of the entries of the table.
+     */
+    void clear() {
+        if (mapRef != null) {
+            mapRef.get().clear();
+        }
+        for (int i = 0; i < size; i++) {
+            refs[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * Removes the scalable map of the table from the data store, if the
+     * table has moved to one.
+     */
+    void removeMap() {
+        if (mapRef != null) {
+            AppContext.getDataManager().removeObject(mapRef.get());
+            mapRef = null;
+        }
+    }
+
+    /**
+     * Writes the entries of the table, or the reference to its scalable
+     * map, for the owner of the table to include in its own serialized
+     * form.
+     * 
+     * @param out the output to write to
+     * @throws IOException if the entries cannot be written
+     */
+    void writeTo(ObjectOutput out) throws IOException {
+        out.writeObject(mapRef);
+        out.writeByte(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(ids[i]);
+            out.writeObject(refs[i]);
+        }
+    }
+
+    /**
+     * Replaces the entries of the table with those written by
+     * {@link #writeTo}.
+     * 
+     * @param in the input to read from
+     * @throws IOException if the entries cannot be read
+     * @throws ClassNotFoundException if the class of a reference cannot
+     *         be found
+     */
+    @SuppressWarnings("unchecked")
+    void readFrom(ObjectInput in) throws IOException, ClassNotFoundException {
+        mapRef = (ManagedReference<Map<Integer, ManagedReference<T>>>)
+                in.readObject();
+        size = in.readUnsignedByte();
+        ids = new int[size];
+        refs = new ManagedReference<?>[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = in.readInt();
+            refs[i] = (ManagedReference<?>) in.readObject();
+        }
+    }
+
+    // Returns the index of an id in the inline arrays, or -1
+    private int indexOf(int id) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.darkstar.example.snowman.common.util.Coordinate;
+import com.sun.darkstar.example.snowman.common.util.HPConverter;
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanFlag;
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanPlayer;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * Decides the actions of the robots of a game.  The strategy keeps no state
+ * of its own: everything it needs comes from the robot, including its
+ * random generator, and from a {@link Snapshot} of the game shared by all of
+ * the robots moved at the same time.
+ * <p>
+ * Flag captures and scores are applied to the robot right away.  Movement
+ * and attacks are only decided, so that the paths and the throws of all of
+ * the robots can each be checked by collision detection in a single batch.
+ */
+class RobotStrategy {
+    
+    /** The robot does nothing. */
+    static final int IDLE = 0;
+    /** The robot moves along the path packed by {@link #act}. */
+    static final int MOVE = 1;
+    /** The robot attacks along the throw packed by {@link #act}. */
+    static final int ATTACK = 2;
+    
+    /**
+     * Positions of the players and state of the flags of a game at a given
+     * time, collected once for all of the robots of the game.
+     */
+    static class Snapshot {
+        final long time;
+        final int[] playerIds;
+        final ETeamColor[] playerColors;
+        final float[] playerX;
+        final float[] playerY;
+        final int[] flagIds;
+        final ETeamColor[] flagColors;
+        final boolean[] flagHeld;
+        final float[] flagX;
+        final float[] flagY;
+        final float[] goalX;
+        final float[] goalY;
+        
+        /**
+         * Collects the state of the given players and flags.
+         * 
+         * @param now the time of the snapshot
+         * @param players the players of the game
+         * @param flags the flags of the game
+         */
+        Snapshot(long now, Collection<SnowmanPlayer> players,
+                 Collection<SnowmanFlag> flags) {
+            time = now;
+            playerIds = new int[players.size()];
+            playerColors = new ETeamColor[players.size()];
+            playerX = new float[players.size()];
+            playerY = new float[players.size()];
+            int i = 0;
+            for (SnowmanPlayer player : players) {
+                Coordinate position = player.getExpectedPositionAtTime(now);
+                playerIds[i] = player.getID();
+                playerColors[i] = player.getTeamColor();
+                playerX[i] = position.getX();
+                playerY[i] = position.getY();
+                i++;
+            }
+            flagIds = new int[flags.size()];
+            flagColors = new ETeamColor[flags.size()];
+            flagHeld = new boolean[flags.size()];
+            flagX = new float[flags.size()];
+            flagY = new float[flags.size()];
+            goalX = new float[flags.size()];
+            goalY = new float[flags.size()];
+            i = 0;
+            for (SnowmanFlag flag : flags) {
+                flagIds[i] = flag.getID();
+                flagColors[i] = flag.getTeamColor();
+                flagHeld[i] = flag.isHeld();
+                if (!flagHeld[i]) {
+                    flagX[i] = flag.getX();
+                    flagY[i] = flag.getY();
+                }
+                goalX[i] = flag.getGoalX();
+                goalY[i] = flag.getGoalY();
+                i++;
+            }
+        }
+        
+        /**
+         * Returns the index of the first flag which does not belong to the
+         * given team, which is the flag the robots of the team go after.
+         * 
+         * @param color the team of the robot
+         * @return the index of the flag, or -1 if there is none
+         */
+        int getTargetFlag(ETeamColor color) {
+            for (int i = 0; i < flagIds.length; i++) {
+                if (flagColors[i] != color) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        
+        /**
+         * Returns the number of players which do not belong to the given
+         * team.
+         * 
+         * @param color the team of the robot
+         * @return the number of opponents
+         */
+        int countOpponents(ETeamColor color) {
+            int count = 0;
+            for (ETeamColor playerColor : playerColors) {
+                if (playerColor != color) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        
+        /**
+         * Returns the index of the nth player which does not belong to the
+         * given team.
+         * 
+         * @param color the team of the robot
+         * @param n the number of the opponent, less than
+         *          {@link #countOpponents}
+         * @return the index of the opponent
+         */
+        int getOpponent(ETeamColor color, int n) {
+            for (int i = 0; i < playerColors.length; i++) {
+                if (playerColors[i] != color && n-- == 0) {
+                    return i;
+                }
+            }
+            throw new IndexOutOfBoundsException("no opponent " + n);
+        }
+    }
+    
+    /**
+     * Decides the next action of a robot.  If the robot decides to move, the
+     * start and destination coordinates of its path are packed at the given
+     * index of the lines array, as expected by 
+     * {@link com.sun.darkstar.example.snowman.server.service.GameWorldManager#trimPaths}.
+     * If it decides to attack, the coordinates of the robot and of its
+     * target in the snapshot are packed instead, as expected by
+     * {@link com.sun.darkstar.example.snowman.server.service.GameWorldManager#validThrows},
+     * and the id of the target is stored at the index of the targets array.
+     * 
+     * @param robot the robot to move
+     * @param snapshot the state of the game
+     * @param lines the array to pack the path or throw of the robot into,
+     *        four values per robot
+     * @param targets the array to store the target of the robot into
+     * @param index the index of the robot in the arrays
+     * @return the action of the robot, {@link #IDLE}, {@link #MOVE} or
+     *         {@link #ATTACK}
+     */
+    int act(RobotImpl robot, Snapshot snapshot,
+            float[] lines, int[] targets, int index) {
+        
+        // game has not started or robot is respawning
+        PlayerStatus status = robot.getStatus();
+        if (status.state == SnowmanPlayerImpl.PlayerState.NONE || 
+                status.state == SnowmanPlayerImpl.PlayerState.DEAD) {
+            return IDLE;
+        }
+        int offset = 4 * index;
+        
+        Random random = robot.getRandom();
+        long now = snapshot.time;
+        ETeamColor color = robot.getTeamColor();
+        Coordinate currentPos = robot.getExpectedPositionAtTime(now);
+        float x = currentPos.getX();
+        float y = currentPos.getY();
+        int flag = snapshot.getTargetFlag(color);
+        float destX;
+        float destY;
+        
+        // If holding the flag, move towards the goal and try to score
+        if (status.holdingFlagRef != null) {
+            if (robot.score(now, x, y)) {
+                return IDLE; // game over
+            }
+            
+            // usually move towards the flag goal location
+            // every once in a while, move randomly so that we don't
+            // get stuck behind an object
+            if (random.nextBoolean() || random.nextBoolean()) {
+                destX = snapshot.goalX[flag] + 5 * (random.nextFloat() - 0.5f);
+                destY = snapshot.goalY[flag] + 5 * (random.nextFloat() - 0.5f);
+            } else {
+                destX = x + 10 * (random.nextFloat() - 0.5f);
+                destY = y + 10 * (random.nextFloat() - 0.5f);
+            }
+            
+        // randomly go after the flag
+        } else if (flag >= 0 && random.nextBoolean() && 
+                !snapshot.flagHeld[flag]) {
+            robot.getFlag(now, snapshot.flagIds[flag], x, y);
+            
+            // if we got it, wait for the next move to carry it
+            if (status.holdingFlagRef != null) {
+                return IDLE;
+            }
+            destX = snapshot.flagX[flag] + 5 * (random.nextFloat() - 0.5f);
+            destY = snapshot.flagY[flag] + 5 * (random.nextFloat() - 0.5f);
+            
+        // else just move towards a target snowman, or randomly if there
+        // is none
+        } else {
+            int opponents = snapshot.countOpponents(color);
+            if (opponents == 0) {
+                destX = x + 10 * (random.nextFloat() - 0.5f);
+                destY = y + 10 * (random.nextFloat() - 0.5f);
+            } else {
+                int target = snapshot.getOpponent(color,
+                                                  random.nextInt(opponents));
+                float targetX = snapshot.playerX[target];
+                float targetY = snapshot.playerY[target];
+                
+                // Attack if it's within range, else move towards it
+                float dx = x - targetX;
+                float dy = y - targetY;
+                float range = HPConverter.getInstance().convertRange(
+                        status.hitPoints);
+                if (((dx * dx) + (dy * dy)) < (range * range) &&
+                        random.nextBoolean()) {
+                    lines[offset] = x;
+                    lines[offset + 1] = y;
+                    lines[offset + 2] = targetX;
+                    lines[offset + 3] = targetY;
+                    targets[index] = snapshot.playerIds[target];
+                    return ATTACK;
+                }
+                destX = targetX + 10 * (random.nextFloat() - 0.5f);
+                destY = targetY + 10 * (random.nextFloat() - 0.5f);
+            }
+        }
+        
+        lines[offset] = x;
+        lines[offset + 1] = y;
+        lines[offset + 2] = destX;
+        lines[offset + 3] = destY;
+        return MOVE;
+    }
+}
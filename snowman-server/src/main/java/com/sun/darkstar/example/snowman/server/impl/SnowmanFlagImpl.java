@@ -37,25 +37,31 @@ package com.sun.darkstar.example.snowman.server.impl;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanFlag;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanPlayer;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
 import com.sun.darkstar.example.snowman.common.protocol.messages.ServerMessages;
 import com.sun.darkstar.example.snowman.common.util.Coordinate;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanGame;
 import com.sun.sgs.app.AppContext;
 import com.sun.sgs.app.ManagedReference;
-import com.sun.sgs.app.ObjectNotFoundException;
-import com.sun.sgs.app.Task;
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
 /**
  * This class represents a team's flag.  It can be on the map or be held by
- * a snowman
+ * a snowman.  Flags have a compact hand written serialized form, starting
+ * with a version number.
  * @author Jeffrey Kesselman
  * @author Owen Kellett
  */
-public class SnowmanFlagImpl implements SnowmanFlag, Serializable {
+public class SnowmanFlagImpl implements SnowmanFlag, Externalizable {
 
     /** The version of the serialized form. */
     public static final long serialVersionUID = 1L;
+    private static final byte VERSION = 1;
     
      /**
       * This is a base number for the flag IDs to keep them
@@ -72,19 +78,19 @@ public class SnowmanFlagImpl implements SnowmanFlag, Serializable {
      */
     private float y;
     
-    private final float homeX;
-    private final float homeY;
+    private float homeX;
+    private float homeY;
     
     /**
      * The X location of the centroid of the goal circle this flag must be
      * carried into to win the game
      */
-    private final float goalX;
+    private float goalX;
      /**
      * The Y location of the centroid of the goal circle this flag must be
      * carried into to win the game
      */
-    private final float goalY;
+    private float goalY;
     /**
      * This is either a reference to a SnowmanPlayer who is currently holding
      * th flsg or null if it is currently on the board
@@ -93,15 +99,26 @@ public class SnowmanFlagImpl implements SnowmanFlag, Serializable {
     /**
      * The team color of this particular flag
      */
-    private final ETeamColor flagColor;
+    private ETeamColor flagColor;
     
     /**
      * The id of the flag.
      */
-    private final int id;
+    private int id;
     private static final long FLAG_RETURN_DELAY = 40 * 1000;
 
-    private final ManagedReference<SnowmanGame> gameRef;
+    private ManagedReference<SnowmanGame> gameRef;
+    
+    /**
+     * Handle of the pending return of the flag on the game timer, or 0
+     */
+    private int returnHandle = 0;
+    
+    /**
+     * Only used for deserialization.
+     */
+    public SnowmanFlagImpl() {
+    }
     
     /**
      * The constructor for a flag.
@@ -181,6 +198,10 @@ public class SnowmanFlagImpl implements SnowmanFlag, Serializable {
         
         AppContext.getDataManager().markForUpdate(this);
         heldByRef = AppContext.getDataManager().createReference(player);
+        if (returnHandle != 0) {
+            gameRef.get().cancel(returnHandle);
+            returnHandle = 0;
+        }
     }
     
     // Drop the flag. Must be currently held.
@@ -190,43 +211,32 @@ public class SnowmanFlagImpl implements SnowmanFlag, Serializable {
         
         setLocation(x, y);
         heldByRef = null;
-        AppContext.getTaskManager().scheduleTask(
-                        new FlagReturnTask(AppContext.getDataManager().
-                                   createReference((SnowmanFlag) this)),
-                        FLAG_RETURN_DELAY);
-    }
-    
-    /**
-     * Asynchronously returns the flag back to its starting position.
-     */
-    private static class FlagReturnTask implements Task, Serializable {
-        /** The version of the serialized form. */
-        public static final long serialVersionUID = 1L;
-        
-        private final ManagedReference<SnowmanFlag> flagRef;
-        
-        FlagReturnTask(ManagedReference<SnowmanFlag> flagRef) {
-            this.flagRef = flagRef;
-        }
-        
-        /** {@inheritDoc} */
-        public void run() throws Exception {
-            try {
-                flagRef.get().returnFlag();
-            } catch (ObjectNotFoundException ex) {
-                return;
-            }
-        }
+        returnHandle = gameRef.get().schedule(
+                SnowmanGame.TimedEvent.FLAGRETURN, id, FLAG_RETURN_DELAY);
     }
     
     /** {@inheritDoc} */
     public void returnFlag() {
         if (!isHeld()) {
             setLocation(homeX, homeY);
-            gameRef.get().send(ServerMessages.createRespawnPkt(id, x, y));
+            returnHandle = 0;
+            SnowmanGame game = gameRef.get();
+            ByteBuffer buff = ServerMessages.writeRespawnPkt(
+                    Messages.getScratchBuffer(), id, x, y, game.isCompact());
+            buff.flip();
+            game.send(buff);
         }
     }
     
+    /** {@inheritDoc} */
+    public void reset() {
+        AppContext.getDataManager().markForUpdate(this);
+        heldByRef = null;
+        x = homeX;
+        y = homeY;
+        returnHandle = 0;
+    }
+    
     /** {@inheritDoc} */
     public void setID(int i) {
         assert false;
@@ -246,6 +256,43 @@ public class SnowmanFlagImpl implements SnowmanFlag, Serializable {
         return heldByRef != null;
     }
 
+    /** {@inheritDoc} */
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeByte(flagColor.ordinal());
+        out.writeFloat(x);
+        out.writeFloat(y);
+        out.writeFloat(homeX);
+        out.writeFloat(homeY);
+        out.writeFloat(goalX);
+        out.writeFloat(goalY);
+        out.writeObject(heldByRef);
+        out.writeObject(gameRef);
+        out.writeInt(returnHandle);
+    }
+    
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    public void readExternal(ObjectInput in)
+            throws IOException, ClassNotFoundException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new InvalidObjectException(
+                    "unsupported version " + version);
+        }
+        flagColor = ETeamColor.values()[in.readByte()];
+        id = FLAGBASEID + flagColor.ordinal();
+        x = in.readFloat();
+        y = in.readFloat();
+        homeX = in.readFloat();
+        homeY = in.readFloat();
+        goalX = in.readFloat();
+        goalY = in.readFloat();
+        heldByRef = (ManagedReference<SnowmanPlayer>) in.readObject();
+        gameRef = (ManagedReference<SnowmanGame>) in.readObject();
+        returnHandle = in.readInt();
+    }
+
     /** {@inheritDoc} */
     public float getGoalX() {
         return goalX;
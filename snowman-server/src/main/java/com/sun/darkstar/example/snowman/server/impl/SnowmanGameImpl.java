@@ -36,37 +36,57 @@ package com.sun.darkstar.example.snowman.server.impl;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.EEndState;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.EMOBType;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
 import com.sun.darkstar.example.snowman.common.protocol.messages.ServerMessages;
 import com.sun.darkstar.example.snowman.common.util.Coordinate;
 import com.sun.darkstar.example.snowman.server.exceptions.SnowmanFullException;
 import com.sun.darkstar.example.snowman.server.interfaces.EntityFactory;
+import com.sun.darkstar.example.snowman.server.interfaces.GamePool;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanFlag;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanGame;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanPlayer;
+import com.sun.darkstar.example.snowman.server.service.GameWorldManager;
 import com.sun.sgs.app.AppContext;
 import com.sun.sgs.app.Channel;
+import com.sun.sgs.app.ClientSession;
 import com.sun.sgs.app.Delivery;
 import com.sun.sgs.app.ManagedReference;
 import com.sun.sgs.app.Task;
 import com.sun.sgs.app.ObjectNotFoundException;
-import com.sun.sgs.app.util.ScalableHashMap;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
 /**
  * This object represents an actual running game session of Project Snowman.
+ * Games have a compact hand written serialized form, starting with a
+ * version number.
  * 
  * @author Jeffrey Kesselman
  * @author Owen Kellett
  * @author Yi Wang (Neakor)
  */
-public class SnowmanGameImpl implements SnowmanGame, Serializable {
+public class SnowmanGameImpl implements SnowmanGame, Externalizable {
 
     /** The version of the serialized form. */
     public static final long serialVersionUID = 1L;
+    private static final byte VERSION = 1;
+    private static final int ENDING = 1;
+    private static final int COMPACT = 2;
+    private static final int SEQUENCED = 4;
+    private static final int TICKING = 8;
     private static final Logger logger = 
             Logger.getLogger(SnowmanGameImpl.class.getName());
     
@@ -75,14 +95,29 @@ public class SnowmanGameImpl implements SnowmanGame, Serializable {
      * all game channels.
      */
     public static final String CHANPREFIX = "_GAMECHAN_";
+    /**
+     * A prefix that is appended to the darkstar bound name for
+     * all game movement channels.
+     */
+    public static final String MOVECHANPREFIX = "_MOVECHAN_";
     private static final int PLAYERIDSTART = 1;
     private static final int CLEANUPDELAYMS = 5 * 1000;
+    private static final long ROBOTSTARTMS = 10 * 1000;
+    /**
+     * The strategy deciding the actions of the robots of all games
+     */
+    private static final RobotStrategy robotStrategy = new RobotStrategy();
     
     /**
      * A reference to a channel that is used to send game packets to
      * all the players in this game session
      */
-    private final ManagedReference<Channel> channelRef;
+    private ManagedReference<Channel> channelRef;
+    /**
+     * A reference to an unreliable channel that is used to send movement
+     * updates to all the players when the game is sequenced
+     */
+    private ManagedReference<Channel> movementChannelRef;
     private int numPlayers;
     private int realPlayers = 0;
     private int readyPlayers = 0;
@@ -90,16 +125,70 @@ public class SnowmanGameImpl implements SnowmanGame, Serializable {
     private String gameName;
     private boolean ending = false;
     /**
-     * List of flags in the game
+     * Whether every client in the game agreed to the compact protocol
+     */
+    private boolean compact = false;
+    /**
+     * Whether every client in the game agreed to the sequenced protocol
+     */
+    private boolean sequenced = false;
+    /**
+     * Sequence number of the last game state sent by a game tick
+     */
+    private int tickSequence = 0;
+    /**
+     * Table of flag IDs to the flags in the game
+     */
+    private ReferenceTable<SnowmanFlag> flagRefs =
+            new ReferenceTable<SnowmanFlag>();
+    /**
+     * Table of player IDs to players that are part of this game
+     */
+    private ReferenceTable<SnowmanPlayer> playerRefs =
+            new ReferenceTable<SnowmanPlayer>();
+    private EntityFactory entityFactory;
+    /**
+     * The pool that this game is returned to once ended, or null
+     */
+    private ManagedReference<GamePool> poolRef = null;
+    /**
+     * Interval between game ticks in milliseconds, 0 if not tick based
+     */
+    private long tickInterval = 0;
+    /**
+     * Whether the game tick task is running
+     */
+    private boolean ticking = false;
+    /**
+     * Incremented on every reset so that tick tasks of previous matches stop
+     */
+    private int tickGeneration = 0;
+    /**
+     * Area of interest radius of the players, 0 if movement is broadcast
+     */
+    private float interestRadius = 0;
+    /**
+     * Grid tracking the players for area of interest filtering, or null
+     */
+    private ManagedReference<InterestGrid> interestRef = null;
+    /**
+     * Timer of the respawns, flag returns and robot moves of the game
+     */
+    private ManagedReference<GameTimer> timerRef;
+    /**
+     * Whether the timer is being drained by its task, which schedules the
+     * next task itself once done
      */
-    private final ManagedReference
-            <Map<Integer, ManagedReference<SnowmanFlag>>> flagRefs;
+    private transient boolean runningTimer = false;
     /**
-     * Map of player IDs to players that are part of this game
+     * Interval between two moves of the robots, 0 if the game has no robots
      */
-    private final ManagedReference
-            <Map<Integer, ManagedReference<SnowmanPlayer>>> playerRefs;
-    private final EntityFactory entityFactory;
+    private long robotInterval = 0;
+    /**
+     * Movement collected for each player by the game tick being processed
+     * when movement is filtered by interest, or null
+     */
+    private transient Map<Integer, List<ByteBuffer>> tickBatches = null;
     /**
      * Keeps track of how many players from each team have joined the game
      */
@@ -109,6 +198,12 @@ public class SnowmanGameImpl implements SnowmanGame, Serializable {
      */
     private int[] maxTeamPlayers = new int[ETeamColor.values().length];
 
+    /**
+     * Only used for deserialization.
+     */
+    public SnowmanGameImpl() {
+    }
+
     /**
      * Creates a new instance of a game with the give name and maximum
      * number of players.
@@ -124,22 +219,93 @@ public class SnowmanGameImpl implements SnowmanGame, Serializable {
         this.numPlayers = numPlayers;
         initMaxTeamPlayers();
 
-        Map<Integer, ManagedReference<SnowmanFlag>> f =
-                new ScalableHashMap<Integer, ManagedReference<SnowmanFlag>>(
-                ETeamColor.values().length);
-        this.flagRefs = AppContext.getDataManager().createReference(f);
-        Map<Integer, ManagedReference<SnowmanPlayer>> p =
-                new ScalableHashMap<Integer, ManagedReference<SnowmanPlayer>>(
-                numPlayers);
-        this.playerRefs = AppContext.getDataManager().createReference(p);
-
         this.entityFactory = entityFactory;
         this.channelRef = AppContext.getDataManager().createReference(
                 AppContext.getChannelManager().createChannel(
                 CHANPREFIX + gameName, null, Delivery.RELIABLE));
+        this.movementChannelRef = AppContext.getDataManager().createReference(
+                AppContext.getChannelManager().createChannel(
+                MOVECHANPREFIX + gameName, null, Delivery.UNRELIABLE));
+        this.timerRef = AppContext.getDataManager().createReference(
+                new GameTimer());
         initFlags();
     }
 
+    /** {@inheritDoc} */
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeUTF(gameName);
+        out.writeInt(numPlayers);
+        out.writeInt(realPlayers);
+        out.writeInt(readyPlayers);
+        out.writeInt(nextPlayerId);
+        out.writeByte((ending ? ENDING : 0) |
+                      (compact ? COMPACT : 0) |
+                      (sequenced ? SEQUENCED : 0) |
+                      (ticking ? TICKING : 0));
+        out.writeInt(tickSequence);
+        out.writeLong(tickInterval);
+        out.writeInt(tickGeneration);
+        out.writeFloat(interestRadius);
+        out.writeLong(robotInterval);
+        out.writeByte(teamPlayers.length);
+        for (int i = 0; i < teamPlayers.length; i++) {
+            out.writeShort(teamPlayers[i]);
+            out.writeShort(maxTeamPlayers[i]);
+        }
+        out.writeObject(channelRef);
+        out.writeObject(movementChannelRef);
+        flagRefs.writeTo(out);
+        playerRefs.writeTo(out);
+        out.writeObject(entityFactory);
+        out.writeObject(poolRef);
+        out.writeObject(interestRef);
+        out.writeObject(timerRef);
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    public void readExternal(ObjectInput in)
+            throws IOException, ClassNotFoundException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new InvalidObjectException(
+                    "unsupported version " + version);
+        }
+        gameName = in.readUTF();
+        numPlayers = in.readInt();
+        realPlayers = in.readInt();
+        readyPlayers = in.readInt();
+        nextPlayerId = in.readInt();
+        int flags = in.readByte();
+        ending = (flags & ENDING) != 0;
+        compact = (flags & COMPACT) != 0;
+        sequenced = (flags & SEQUENCED) != 0;
+        ticking = (flags & TICKING) != 0;
+        tickSequence = in.readInt();
+        tickInterval = in.readLong();
+        tickGeneration = in.readInt();
+        interestRadius = in.readFloat();
+        robotInterval = in.readLong();
+        int teams = in.readByte();
+        teamPlayers = new int[teams];
+        maxTeamPlayers = new int[teams];
+        for (int i = 0; i < teams; i++) {
+            teamPlayers[i] = in.readShort();
+            maxTeamPlayers[i] = in.readShort();
+        }
+        channelRef = (ManagedReference<Channel>) in.readObject();
+        movementChannelRef = (ManagedReference<Channel>) in.readObject();
+        flagRefs = new ReferenceTable<SnowmanFlag>();
+        flagRefs.readFrom(in);
+        playerRefs = new ReferenceTable<SnowmanPlayer>();
+        playerRefs.readFrom(in);
+        entityFactory = (EntityFactory) in.readObject();
+        poolRef = (ManagedReference<GamePool>) in.readObject();
+        interestRef = (ManagedReference<InterestGrid>) in.readObject();
+        timerRef = (ManagedReference<GameTimer>) in.readObject();
+    }
+
     /**
      * Initialize the maximum number of players per team
      * The total number of players is divided up evenly among the teams.
@@ -187,7 +353,7 @@ public class SnowmanGameImpl implements SnowmanGame, Serializable {
             flag.setLocation(flagStart.getX(), flagStart.getY());
             ManagedReference<SnowmanFlag> ref =
                     AppContext.getDataManager().createReference(flag);
-            flagRefs.get().put(flag.getID(), ref);
+            flagRefs.put(flag.getID(), ref);
         }
     }
 
@@ -196,6 +362,13 @@ public class SnowmanGameImpl implements SnowmanGame, Serializable {
         channelRef.get().send(null, buff);
     }
 
+    // Send a message written into the scratch buffer to all the players.
+    // The channel copies the message, so the buffer can then be reused
+    private void sendWritten(ByteBuffer buff) {
+        buff.flip();
+        send(buff);
+    }
+
     /** {@inheritDoc} */
     public void addPlayer(SnowmanPlayer player, ETeamColor color) {
         AppContext.getDataManager().markForUpdate(this);
@@ -211,7 +384,7 @@ public class SnowmanGameImpl implements SnowmanGame, Serializable {
         ManagedReference<SnowmanPlayer> playerRef =
                 AppContext.getDataManager().createReference(player);
         Integer playerId = Integer.valueOf(nextPlayerId++);
-        playerRefs.get().put(playerId, playerRef);
+        playerRefs.put(playerId.intValue(), playerRef);
 
         //increment the total team players in this game
         teamPlayers[color.ordinal()]++;
@@ -227,11 +400,22 @@ public class SnowmanGameImpl implements SnowmanGame, Serializable {
         player.setLocation(position.getX(), position.getY());
         player.setTeamColor(color);
         player.setGame(this);
+        if (player instanceof RobotImpl && robotInterval == 0) {
+            // TODO need to find out when the game starts
+            robotInterval = Math.max(((RobotImpl) player).getMoveDelay(),
+                                     GameTimer.RESOLUTIONMS);
+            schedule(TimedEvent.ROBOTMOVE, 0, ROBOTSTARTMS);
+        }
+        if (interestRef != null) {
+            interestRef.get().update(playerId.intValue(),
+                                     position.getX(), position.getY());
+        }
 
         //add the real players session to the channels.
         if (player.getSession() != null) {
             realPlayers++;
             channelRef.get().join(player.getSession());
+            movementChannelRef.get().join(player.getSession());
         }
     }
 
@@ -239,18 +423,23 @@ public class SnowmanGameImpl implements SnowmanGame, Serializable {
     public void removePlayer(SnowmanPlayer player) {
         AppContext.getDataManager().markForUpdate(this);
         player.dropFlag();
-        playerRefs.get().remove(player.getID());
+        playerRefs.remove(player.getID());
+        if (interestRef != null) {
+            interestRef.get().remove(player.getID());
+        }
         Channel channel = channelRef.get();
         if (player.getSession() != null) {
             realPlayers--;
             channel.leave(player.getSession());
+            movementChannelRef.get().leave(player.getSession());
         }
 
         // if all real players have gone, end the game
         if (!channel.hasSessions()) {
             endGame(EEndState.Draw);
         } else {
-            send(ServerMessages.createRemoveMOBPkt(player.getID()));
+            sendWritten(ServerMessages.writeRemoveMOBPkt(
+                    Messages.getScratchBuffer(), player.getID(), compact));
         }
     }
 
@@ -261,71 +450,526 @@ public class SnowmanGameImpl implements SnowmanGame, Serializable {
      * as private session messages, the game channel is not used to send
      * the AddMOB packets.  The AddMOB messages are sent as private session
      * messages instead.  This is done so as to preserve ordering.
+     * The messages of each player are combined into ENVELOPE packets if
+     * the player's client supports them, so that starting a game costs a
+     * single send per player.
+     * <p>
+     * The packets of the game use the compact format from here on if every
+     * client in the game has agreed to the compact protocol, and movement
+     * is sent on the movement channel if every client has agreed to the
+     * sequenced protocol.
      */
     public void sendMapInfo() {
-        for (ManagedReference<SnowmanPlayer> ref : playerRefs.get().values()) {
+        AppContext.getDataManager().markForUpdate(this);
+        compact = true;
+        sequenced = true;
+        for (ManagedReference<SnowmanPlayer> ref : playerRefs.values()) {
             SnowmanPlayer player = ref.get();
-            if (player.getSession() != null) {
-                player.send(ServerMessages.createNewGamePkt(player.getID(),
-                                                            "default_map"));
+            if (player.getSession() != null && player.getProtocolVersion() <
+                    Messages.PROTOCOL_COMPACT) {
+                compact = false;
+            }
+            if (player.getSession() != null && player.getProtocolVersion() <
+                    Messages.PROTOCOL_SEQUENCED) {
+                sequenced = false;
             }
         }
-        for (ManagedReference<SnowmanPlayer> ref : playerRefs.get().values()) {
+        List<SnowmanPlayer> players = new ArrayList<SnowmanPlayer>();
+        for (ManagedReference<SnowmanPlayer> ref : playerRefs.values()) {
             SnowmanPlayer player = ref.get();
-            multiSend(ServerMessages.createAddMOBPkt(
-                      player.getID(), player.getX(), player.getY(),
-                      EMOBType.SNOWMAN, player.getTeamColor(), 
-                      player.getName()));
+            player.setCompact(compact);
+            player.setSequenced(sequenced);
+            players.add(player);
         }
-        for (ManagedReference<SnowmanFlag> flagRef : flagRefs.get().values()) {
+        
+        MessageBatch batch = new MessageBatch();
+        for (SnowmanPlayer player : players) {
+            if (player.getSession() != null) {
+                batch.add(player, ServerMessages.createNewGamePkt(
+                          player.getID(), "default_map"));
+            }
+        }
+        for (SnowmanPlayer player : players) {
+            batch.addAll(players, ServerMessages.createAddMOBPkt(
+                         player.getID(), player.getX(), player.getY(),
+                         EMOBType.SNOWMAN, player.getTeamColor(), 
+                         player.getName(), compact));
+        }
+        for (ManagedReference<SnowmanFlag> flagRef : flagRefs.values()) {
             SnowmanFlag flag = flagRef.get();
-            multiSend(ServerMessages.createAddMOBPkt(
-                      flag.getID(), flag.getX(), flag.getY(), EMOBType.FLAG, 
-                      flag.getTeamColor(), 
-                      flag.getTeamColor().toString() + "Flag"));
+            batch.addAll(players, ServerMessages.createAddMOBPkt(
+                         flag.getID(), flag.getX(), flag.getY(), EMOBType.FLAG, 
+                         flag.getTeamColor(), 
+                         flag.getTeamColor().toString() + "Flag", compact));
 
             //TODO - encode goal color in the flag
             //currently the add mob should swap the goal colors so that
             //it is more intuitive for the players
-            multiSend(ServerMessages.createAddMOBPkt(
-                      flag.getID() + flagRefs.get().size(), 
-                      flag.getGoalX(), flag.getGoalY(), EMOBType.FLAGGOAL,
-                      flag.getTeamColor() == ETeamColor.Red 
-                      ? ETeamColor.Blue : ETeamColor.Red, "Goal"));
+            batch.addAll(players, ServerMessages.createAddMOBPkt(
+                         flag.getID() + flagRefs.size(), 
+                         flag.getGoalX(), flag.getGoalY(), EMOBType.FLAGGOAL,
+                         flag.getTeamColor() == ETeamColor.Red 
+                         ? ETeamColor.Blue : ETeamColor.Red, "Goal", compact));
+        }
+        batch.addAll(players, ServerMessages.createReadyPkt());
+        batch.flush();
+    }
+
+    /** {@inheritDoc} */
+    public void startGameIfReady() {
+        AppContext.getDataManager().markForUpdate(this);
+        readyPlayers++;
+        if (readyPlayers >= realPlayers) {
+            sendWritten(ServerMessages.writeStartGamePkt(
+                    Messages.getScratchBuffer()));
+            if (tickInterval > 0 && !ticking) {
+                ticking = true;
+                GameClock.scheduleTask(
+                        new GameTickTask(
+                        AppContext.getDataManager().createReference(this),
+                        tickGeneration),
+                        tickInterval);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void setTickInterval(long tickInterval) {
+        AppContext.getDataManager().markForUpdate(this);
+        this.tickInterval = tickInterval;
+    }
+
+    /** {@inheritDoc} */
+    public long getTickInterval() {
+        return tickInterval;
+    }
+
+    /** {@inheritDoc} */
+    public void setInterestRadius(float radius) {
+        if (radius == interestRadius) {
+            return;
+        }
+        AppContext.getDataManager().markForUpdate(this);
+        if (interestRef != null) {
+            AppContext.getDataManager().removeObject(interestRef.get());
+            interestRef = null;
+        }
+        interestRadius = radius;
+        if (radius > 0) {
+            interestRef = AppContext.getDataManager().createReference(
+                    new InterestGrid(radius));
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isSequenced() {
+        return sequenced;
+    }
+
+    /** {@inheritDoc} */
+    public float getInterestRadius() {
+        return interestRadius;
+    }
+
+    /** {@inheritDoc} */
+    public void sendMovement(SnowmanPlayer mover, float x, float y,
+                             ByteBuffer buff) {
+        if (interestRef == null) {
+            broadcastMovement(buff);
+            return;
+        }
+        Set<Integer> entered = new HashSet<Integer>();
+        for (Integer id : interestRef.get().move(mover.getID(), x, y,
+                                                 entered)) {
+            deliver(id, buff);
+        }
+        //the players that came into view of each other missed each
+        //other's movement; the newly visible players receive this move,
+        //and the mover receives their current movement
+        Integer moverId = Integer.valueOf(mover.getID());
+        for (Integer id : entered) {
+            ManagedReference<SnowmanPlayer> ref = playerRefs.get(id.intValue());
+            if (ref == null) {
+                continue;
+            }
+            try {
+                deliver(moverId, ref.get().getMovementState(
+                        sequenced && tickBatches == null));
+            } catch (ObjectNotFoundException disconnected) {
+            }
+        }
+    }
+
+    // Send a movement update to a player, or add it to the movement of
+    // the player in the game tick being processed
+    private void deliver(Integer id, ByteBuffer buff) {
+        if (tickBatches != null) {
+            List<ByteBuffer> batch = tickBatches.get(id);
+            if (batch == null) {
+                batch = new ArrayList<ByteBuffer>();
+                tickBatches.put(id, batch);
+            }
+            batch.add(buff);
+        } else {
+            sendTo(id, buff);
+        }
+    }
+
+    // Send a movement update to all players, on the movement channel if
+    // the game is sequenced
+    private void broadcastMovement(ByteBuffer buff) {
+        if (sequenced) {
+            movementChannelRef.get().send(null, buff);
+        } else {
+            send(buff);
+        }
+    }
+
+    // Send a movement update to a single player of the game if it is
+    // connected, unreliably if the game is sequenced
+    private void sendTo(Integer id, ByteBuffer buff) {
+        ManagedReference<SnowmanPlayer> ref = playerRefs.get(id.intValue());
+        if (ref == null) {
+            return;
+        }
+        try {
+            ClientSession session = ref.get().getSession();
+            if (session != null) {
+                sendTo(session, buff);
+            }
+        } catch (ObjectNotFoundException disconnected) {
+        }
+    }
+
+    // Send a movement update to a session, unreliably if the game is
+    // sequenced
+    private void sendTo(ClientSession session, ByteBuffer buff) {
+        // send a wrapped buffer
+        if (sequenced) {
+            session.send(buff.asReadOnlyBuffer(), Delivery.UNRELIABLE);
+        } else {
+            session.send(buff.asReadOnlyBuffer());
+        }
+    }
+
+    /**
+     * Applies the commands queued by all players since the last tick and
+     * sends the resulting movement in one packet, either to all players
+     * or to each player for the movement it is interested in.  Clients
+     * which did not negotiate a protocol, and so do not know GAMESTATE
+     * packets, are sent the movement one update at a time.  When the
+     * game is sequenced, the packets of a tick share a sequence number
+     * with the game as source.
+     */
+    void tick() {
+        List<ByteBuffer> updates = new ArrayList<ByteBuffer>();
+        if (interestRef != null) {
+            tickBatches = new HashMap<Integer, List<ByteBuffer>>();
+        }
+        try {
+            for (ManagedReference<SnowmanPlayer> ref : 
+                    playerRefs.values()) {
+                try {
+                    ref.get().processInputs(updates);
+                } catch (ObjectNotFoundException disconnected) {
+                }
+            }
+            if (sequenced && (!updates.isEmpty() || 
+                    (tickBatches != null && !tickBatches.isEmpty()))) {
+                AppContext.getDataManager().markForUpdate(this);
+                tickSequence++;
+            }
+            if (!updates.isEmpty()) {
+                if (compact) {
+                    //every client negotiated a protocol
+                    broadcastMovement(sequence(
+                            ServerMessages.createGameStatePkt(updates)));
+                } else {
+                    ByteBuffer state = 
+                            ServerMessages.createGameStatePkt(updates);
+                    for (ManagedReference<SnowmanPlayer> ref : 
+                            playerRefs.values()) {
+                        sendTickState(ref, updates, state);
+                    }
+                }
+            }
+            if (tickBatches != null) {
+                for (Map.Entry<Integer, List<ByteBuffer>> batch : 
+                        tickBatches.entrySet()) {
+                    ManagedReference<SnowmanPlayer> ref = 
+                            playerRefs.get(batch.getKey().intValue());
+                    if (ref != null) {
+                        sendTickState(ref, batch.getValue(), sequence(
+                                ServerMessages.createGameStatePkt(
+                                batch.getValue())));
+                    }
+                }
+            }
+        } finally {
+            tickBatches = null;
+        }
+    }
+
+    // Send the movement of a tick to a player as the given GAMESTATE
+    // packet, or one update at a time if its client does not support them.
+    // Such clients are never in a sequenced game
+    private void sendTickState(ManagedReference<SnowmanPlayer> ref,
+                               List<ByteBuffer> updates, ByteBuffer state) {
+        try {
+            SnowmanPlayer player = ref.get();
+            ClientSession session = player.getSession();
+            if (session == null) {
+                return;
+            }
+            if (player.getProtocolVersion() >= Messages.PROTOCOL_COMPACT) {
+                sendTo(session, state);
+            } else {
+                for (ByteBuffer buff : updates) {
+                    sendTo(session, buff);
+                }
+            }
+        } catch (ObjectNotFoundException disconnected) {
+        }
+    }
+
+    // Wrap a game state packet of the current tick in a sequenced packet
+    // if the game is sequenced
+    private ByteBuffer sequence(ByteBuffer buff) {
+        if (!sequenced) {
+            return buff;
         }
-        multiSend(ServerMessages.createReadyPkt());
+        return ServerMessages.createSequencedPkt(0, tickSequence, buff);
     }
 
     /**
-     * Send a message to all players in the game without using the game
-     * {@code Channel}.
-     * @param buff
+     * Self rescheduling task which ticks a game until it ends.
      */
-    private void multiSend(ByteBuffer buff) {
-        for (ManagedReference<SnowmanPlayer> ref : playerRefs.get().values()) {
-            // send a wrapped buffer
-            ref.get().send(buff.asReadOnlyBuffer());
+    private static class GameTickTask implements Task, Serializable {
+        
+        /** The version of the serialized form. */
+        public static final long serialVersionUID = 1L;
+
+        final ManagedReference<SnowmanGameImpl> ref;
+        final int generation;
+
+        GameTickTask(ManagedReference<SnowmanGameImpl> ref, int generation) {
+            this.ref = ref;
+            this.generation = generation;
+        }
+
+        /** {@inheritDoc} */
+        public void run() throws Exception {
+            try {
+                SnowmanGameImpl game = ref.get();
+                if (game.ticking && !game.ending && 
+                        game.tickGeneration == generation) {
+                    game.tick();
+                    GameClock.scheduleTask(
+                            this, game.tickInterval);
+                }
+            } catch (ObjectNotFoundException gameDone) {
+            }
         }
     }
 
     /** {@inheritDoc} */
-    public void startGameIfReady() {
-        AppContext.getDataManager().markForUpdate(this);
-        readyPlayers++;
-        if (readyPlayers >= realPlayers) {
-            send(ServerMessages.createStartGamePkt());
+    public int schedule(TimedEvent event, int targetId, long delay) {
+        long now = GameClock.currentTimeMillis();
+        GameTimer timer = timerRef.get();
+        int handle = timer.add(now + delay, event.ordinal(), targetId);
+        if (!runningTimer) {
+            startTimerTask(timer, now);
+        }
+        return handle;
+    }
+
+    /** {@inheritDoc} */
+    public void cancel(int handle) {
+        timerRef.get().cancel(handle);
+    }
+
+    // Schedule a task draining the timer for its next event, unless one
+    // is already pending in time for it
+    private void startTimerTask(GameTimer timer, long now) {
+        int task = timer.startTask(now);
+        if (task != 0) {
+            GameClock.scheduleTask(
+                    new GameTimerTask(
+                    AppContext.getDataManager().createReference(this), task),
+                    Math.max(timer.getNextTime() - now, 0));
+        }
+    }
+
+    /**
+     * Runs the events of the timer which are due, then schedules the task
+     * for the next event.  Events due shortly after now are run as well,
+     * so that events close to each other share a task, but events
+     * scheduled by the events being run are left to the next task.
+     * 
+     * @param task the number of the running task
+     */
+    void runTimer(int task) {
+        GameTimer timer = timerRef.get();
+        if (!timer.runTask(task)) {
+            return;
+        }
+        long now = GameClock.currentTimeMillis();
+        TimedEvent[] events = TimedEvent.values();
+        runningTimer = true;
+        try {
+            for (int n = timer.size();
+                    n > 0 && timer.isDue(now + GameTimer.RESOLUTIONMS); n--) {
+                TimedEvent event = events[timer.getNextEvent()];
+                int target = timer.getNextTarget();
+                timer.removeNext();
+                runEvent(event, target);
+            }
+        } finally {
+            runningTimer = false;
+        }
+        startTimerTask(timer, now);
+    }
+
+    // Run a single event of the timer
+    private void runEvent(TimedEvent event, int target) {
+        try {
+            switch (event) {
+                case RESPAWN:
+                    SnowmanPlayer player = getPlayer(target);
+                    if (player != null) {
+                        player.respawn();
+                    }
+                    break;
+                case FLAGRETURN:
+                    getFlag(target).returnFlag();
+                    break;
+                case ROBOTMOVE:
+                    if (robotInterval > 0 && !ending) {
+                        moveRobots();
+                        schedule(TimedEvent.ROBOTMOVE, 0, robotInterval);
+                    }
+                    break;
+            }
+        } catch (ObjectNotFoundException gone) {
+        }
+    }
+
+    /**
+     * Moves all of the robots of the game.  The players and flags are
+     * loaded once into a snapshot shared by the robots.  The paths of the
+     * robots which move are trimmed by collision detection in a single
+     * batch, and the throws of the robots which attack are validated in
+     * another one, before the actions are applied.
+     */
+    void moveRobots() {
+        long now = GameClock.currentTimeMillis();
+        List<SnowmanPlayer> players = new ArrayList<SnowmanPlayer>();
+        for (ManagedReference<SnowmanPlayer> ref : playerRefs.values()) {
+            try {
+                players.add(ref.get());
+            } catch (ObjectNotFoundException disconnected) {
+            }
+        }
+        List<SnowmanFlag> flags = new ArrayList<SnowmanFlag>();
+        for (ManagedReference<SnowmanFlag> ref : flagRefs.values()) {
+            flags.add(ref.get());
+        }
+        RobotStrategy.Snapshot snapshot =
+                new RobotStrategy.Snapshot(now, players, flags);
+        
+        List<RobotImpl> movers = new ArrayList<RobotImpl>();
+        List<RobotImpl> attackers = new ArrayList<RobotImpl>();
+        float[] lines = new float[4];
+        int[] targets = new int[1];
+        float[] paths = new float[4 * players.size()];
+        float[] throwPaths = new float[4 * players.size()];
+        int[] throwTargets = new int[players.size()];
+        for (SnowmanPlayer player : players) {
+            if (player instanceof RobotImpl) {
+                RobotImpl robot = (RobotImpl) player;
+                switch (robotStrategy.act(robot, snapshot,
+                                          lines, targets, 0)) {
+                    case RobotStrategy.MOVE:
+                        System.arraycopy(lines, 0, paths,
+                                         4 * movers.size(), 4);
+                        movers.add(robot);
+                        break;
+                    case RobotStrategy.ATTACK:
+                        System.arraycopy(lines, 0, throwPaths,
+                                         4 * attackers.size(), 4);
+                        throwTargets[attackers.size()] = targets[0];
+                        attackers.add(robot);
+                        break;
+                }
+                if (ending) {
+                    return; // a robot scored
+                }
+            }
+        }
+        
+        GameWorldManager world = AppContext.getManager(GameWorldManager.class);
+        if (!attackers.isEmpty()) {
+            boolean[] clear = world.validThrows(
+                    Arrays.copyOf(throwPaths, 4 * attackers.size()));
+            for (int i = 0; i < attackers.size(); i++) {
+                attackers.get(i).attack(now, throwTargets[i],
+                                        throwPaths[4 * i],
+                                        throwPaths[4 * i + 1],
+                                        clear[i]);
+            }
+        }
+        if (!movers.isEmpty()) {
+            float[] trimmed = world.trimPaths(
+                    Arrays.copyOf(paths, 4 * movers.size()));
+            for (int i = 0; i < movers.size(); i++) {
+                movers.get(i).moveTrimmed(now, paths[4 * i], paths[4 * i + 1],
+                                          trimmed[2 * i], trimmed[2 * i + 1]);
+            }
+        }
+    }
+
+    /**
+     * Self rescheduling task which runs the events of the timer of a game.
+     * A task which is no longer the pending task of the timer, because an
+     * earlier one was scheduled after it or because the game was reset,
+     * does nothing.
+     */
+    private static class GameTimerTask implements Task, Serializable {
+        
+        /** The version of the serialized form. */
+        public static final long serialVersionUID = 1L;
+
+        final ManagedReference<SnowmanGameImpl> ref;
+        final int task;
+
+        GameTimerTask(ManagedReference<SnowmanGameImpl> ref, int task) {
+            this.ref = ref;
+            this.task = task;
+        }
+
+        /** {@inheritDoc} */
+        public void run() throws Exception {
+            try {
+                ref.get().runTimer(task);
+            } catch (ObjectNotFoundException gameDone) {
+            }
         }
     }
 
     /** {@inheritDoc} */
     public Set<Integer> getPlayerIds() {
-        return playerRefs.get().keySet();
+        return playerRefs.ids();
     }
 
     /** {@inheritDoc} */
     public SnowmanPlayer getPlayer(int id) {
         ManagedReference<SnowmanPlayer> playerRef =
-                playerRefs.get().get(Integer.valueOf(id));
+                playerRefs.get(id);
         if (playerRef != null) {
             return playerRef.get();
         }
@@ -340,49 +984,119 @@ public class SnowmanGameImpl implements SnowmanGame, Serializable {
         }
         ending = true;
         
-        send(ServerMessages.createEndGamePkt(endState));
+        sendWritten(ServerMessages.writeEndGamePkt(
+                Messages.getScratchBuffer(), endState, compact));
 
-        // Attempt to clean up the game objects, including the channel, later
-        // so that the EndGame message is sent ASAP
-        AppContext.getTaskManager().scheduleTask(
-                new ObjectRemovalTask(
+        // Attempt to recycle or clean up the game objects, including the
+        // channel, later so that the EndGame message is sent ASAP
+        GameClock.scheduleTask(
+                new GameCleanupTask(
                 AppContext.getDataManager().createReference(this)),
                 CLEANUPDELAYMS);
     }
 
     /**
-     * Asyncronously removes an object from the datastore.
+     * Returns this game to its pool if it has one with room left,
+     * otherwise removes it from the datastore.
+     */
+    void cleanup() {
+        if (poolRef != null) {
+            reset();
+            if (poolRef.get().checkIn(this)) {
+                return;
+            }
+        }
+        AppContext.getDataManager().removeObject(this);
+    }
+
+    /**
+     * Asyncronously recycles or removes a game from the datastore.
      */
-    private static class ObjectRemovalTask implements Task, Serializable {
+    private static class GameCleanupTask implements Task, Serializable {
         
         /** The version of the serialized form. */
         public static final long serialVersionUID = 1L;
 
-        final ManagedReference ref;
+        final ManagedReference<SnowmanGameImpl> ref;
 
-        ObjectRemovalTask(ManagedReference ref) {
+        GameCleanupTask(ManagedReference<SnowmanGameImpl> ref) {
             this.ref = ref;
         }
 
         /** {@inheritDoc} */
         public void run() throws Exception {
             try {
-                AppContext.getDataManager().removeObject(ref.get());
+                ref.get().cleanup();
             } catch (ObjectNotFoundException alreadyRemoved) {
             }
         }
     }
 
+    /** {@inheritDoc} */
+    public void setGamePool(GamePool pool) {
+        AppContext.getDataManager().markForUpdate(this);
+        poolRef = pool == null 
+                ? null : AppContext.getDataManager().createReference(pool);
+    }
+
+    /** {@inheritDoc} */
+    public void reset() {
+        AppContext.getDataManager().markForUpdate(this);
+        getGameChannel().leaveAll();
+        getMovementChannel().leaveAll();
+        
+        //remove server side robots and detach client connected players,
+        //which are cleaned up by their player listener
+        for (ManagedReference<SnowmanPlayer> ref : playerRefs.values()) {
+            try {
+                SnowmanPlayer p = ref.get();
+                if (p.isServerSide()) {
+                    AppContext.getDataManager().removeObject(p);
+                } else {
+                    p.leaveGame();
+                }
+            } catch (ObjectNotFoundException alreadyRemoved) {
+            }
+        }
+        playerRefs.clear();
+        if (interestRef != null) {
+            interestRef.get().clear();
+        }
+        timerRef.get().clear();
+        
+        for (ManagedReference<SnowmanFlag> ref : flagRefs.values()) {
+            ref.get().reset();
+        }
+        
+        realPlayers = 0;
+        readyPlayers = 0;
+        nextPlayerId = PLAYERIDSTART;
+        ending = false;
+        compact = false;
+        sequenced = false;
+        ticking = false;
+        tickGeneration++;
+        robotInterval = 0;
+        teamPlayers = new int[ETeamColor.values().length];
+    }
+
     /** {@inheritDoc} */
     public void removingObject() {
         Channel c = getGameChannel();
         c.leaveAll();
         AppContext.getDataManager().removeObject(c);
+        Channel m = getMovementChannel();
+        m.leaveAll();
+        AppContext.getDataManager().removeObject(m);
+        if (interestRef != null) {
+            AppContext.getDataManager().removeObject(interestRef.get());
+        }
+        AppContext.getDataManager().removeObject(timerRef.get());
 
         //only remove server side robots
         //player listener is responsible for cleaning up client
         //connected players
-        for (ManagedReference<SnowmanPlayer> ref : playerRefs.get().values()) {
+        for (ManagedReference<SnowmanPlayer> ref : playerRefs.values()) {
             try {
                 SnowmanPlayer p = ref.get();
                 if (p.isServerSide()) {
@@ -392,19 +1106,21 @@ public class SnowmanGameImpl implements SnowmanGame, Serializable {
             }
         }
 
-        for (ManagedReference<SnowmanFlag> ref : flagRefs.get().values()) {
+        for (ManagedReference<SnowmanFlag> ref : flagRefs.values()) {
             AppContext.getDataManager().removeObject(ref.get());
         }
+        playerRefs.removeMap();
+        flagRefs.removeMap();
     }
 
     /** {@inheritDoc} */
     public Set<Integer> getFlagIds() {
-        return flagRefs.get().keySet();
+        return flagRefs.ids();
     }
 
     /** {@inheritDoc} */
     public SnowmanFlag getFlag(int id) {
-        return flagRefs.get().get(id).get();
+        return flagRefs.get(id).get();
     }
 
     /** {@inheritDoc} */
@@ -416,4 +1132,9 @@ public class SnowmanGameImpl implements SnowmanGame, Serializable {
     public Channel getGameChannel() {
         return channelRef.get();
     }
+
+    /** {@inheritDoc} */
+    public Channel getMovementChannel() {
+        return movementChannelRef.get();
+    }
 }
@@ -35,6 +35,7 @@
 package com.sun.darkstar.example.snowman.server.impl;
 
 import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.darkstar.example.snowman.common.protocol.messages.CompactFormat;
 import com.sun.darkstar.example.snowman.common.util.Coordinate;
 import java.util.Random;
 
@@ -75,7 +76,8 @@ public final class SnowmanMapInfo
     }
     
     /**
-     * Set the overall dimensions of the map.
+     * Set the overall dimensions of the map.  Coordinates of compact
+     * packets are scaled to these dimensions if they are not empty.
      * 
      * @param x the width
      * @param y the height
@@ -83,6 +85,9 @@ public final class SnowmanMapInfo
     public static void setDimensions(float x, float y) {
         defaultXY[0] = x;
         defaultXY[1] = y;
+        if (x > 0 && y > 0) {
+            CompactFormat.setMapDimensions(x, y);
+        }
     }
     
     /**
@@ -149,6 +154,16 @@ public final class SnowmanMapInfo
                                 10);
     }
     
+    /**
+     * Reseed the generator of the respawn positions, so that a simulation
+     * can replay the same positions.
+     * 
+     * @param seed the seed of the generator
+     */
+    public static void setRespawnSeed(long seed) {
+        generator.setSeed(seed);
+    }
+    
     /**
      * Get the start position for the given team's flag on the given map.
      * 
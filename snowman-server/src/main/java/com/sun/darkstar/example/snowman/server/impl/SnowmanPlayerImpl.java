@@ -37,10 +37,13 @@ import com.sun.darkstar.example.snowman.common.physics.enumn.EForce;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanPlayer;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanGame;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanFlag;
+import com.sun.darkstar.example.snowman.common.protocol.handlers.ClockSynchronizer;
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
 import com.sun.darkstar.example.snowman.common.protocol.messages.ServerMessages;
 import com.sun.darkstar.example.snowman.common.protocol.processor.IServerProcessor;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.EEndState;
+import com.sun.darkstar.example.snowman.common.protocol.enumn.EOPCODE;
 import com.sun.darkstar.example.snowman.common.util.HPConverter;
 import com.sun.darkstar.example.snowman.common.util.Coordinate;
 import com.sun.darkstar.example.snowman.common.util.enumn.EStats;
@@ -48,11 +51,16 @@ import com.sun.darkstar.example.snowman.server.service.GameWorldManager;
 import com.sun.sgs.app.AppContext;
 import com.sun.sgs.app.Channel;
 import com.sun.sgs.app.ClientSession;
+import com.sun.sgs.app.ManagedObjectRemoval;
 import com.sun.sgs.app.ManagedReference;
 import com.sun.sgs.app.ObjectNotFoundException;
-import com.sun.sgs.app.Task;
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -62,17 +70,27 @@ import java.util.logging.Logger;
  * it can be the reception point for all client session events.
  * For here, it will call other managed ibjects to respond to thsoe
  * events.
+ * <p>
+ * Players have a compact hand written serialized form, starting with a
+ * version number.  Subclasses with state of their own extend it by
+ * overriding {@link #writeExternal} and {@link #readExternal}.
  * 
  * @author Jeffrey Kesselman
  * @author Owen Kellett
  * @author Yi Wang (Neakor)
  */
 public class SnowmanPlayerImpl implements SnowmanPlayer,
-                                          Serializable,
+                                          ManagedObjectRemoval,
+                                          Externalizable,
                                           IServerProcessor {
 
     /** The version of the serialized form. */
     public static final long serialVersionUID = 1L;
+    private static final byte VERSION = 1;
+    private static final int TICKBASED = 1;
+    private static final int INTERESTFILTERED = 2;
+    private static final int COMPACT = 4;
+    private static final int SEQUENCED = 8;
     private static final Logger logger = 
             Logger.getLogger(SnowmanPlayerImpl.class.getName());
     
@@ -95,45 +113,88 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
      * Hit point value decremented from a player when it is attacked
      */
     static final int ATTACKHP = (int) EStats.SnowballDamage.getValue();    
+    /**
+     * Maximum number of movement segments kept in the history of a player,
+     * which only keeps the segments of the last {@link #MAXLAGMS}
+     */
+    static final int HISTORYSIZE = 8;
+    /**
+     * Maximum time before their reception at which timestamped commands
+     * are checked
+     */
+    static final long MAXLAGMS = 1000;
     
     /**
      * Player information
      */
-    private final String name;
+    private String name;
     /**
      * The player's session
      */
-    private final ManagedReference<ClientSession> sessionRef;
+    private ManagedReference<ClientSession> sessionRef;
+    /**
+     * The time at which the player was created
+     */
+    private long loginTime;
+
+    /**
+     * The frequently written state of the player, kept in its own object
+     */
+    private ManagedReference<PlayerStatus> statusRef;
 
     //Current game information
     private int id;
-    private float startX;
-    private float startY;
-    private float destX;
-    private float destY;
-    private long timestamp;
     private ETeamColor teamColor;
     
     /**
      * Reference to the game channel used for communications
      */
     private ManagedReference<Channel> channelRef = null;
+    /**
+     * Reference to the movement channel of the game
+     */
+    private ManagedReference<Channel> movementChannelRef = null;
     /**
      * Reference to the game that the player is playing in.
      */
     protected ManagedReference<SnowmanGame> gameRef = null;
     /**
-     * Reference to a flag if the player is holding one.
+     * Whether the game the player is in applies commands on its ticks.
+     */
+    private boolean tickBased = false;
+    /**
+     * Whether the game the player is in filters movement by interest.
+     */
+    private boolean interestFiltered = false;
+    /**
+     * Protocol version agreed with the client of the player.
      */
-    protected ManagedReference<SnowmanFlag> holdingFlagRef = null;
+    private int protocolVersion = Messages.PROTOCOL_ORIGINAL;
     /**
-     * State that the player is in in the game.
+     * Whether the messages of the game the player is in use the compact
+     * format.
      */
-    protected PlayerState state = PlayerState.NONE;
+    private boolean compact = false;
     /**
-     * Current health value of the player.
+     * Whether the movement updates of the player are sent as sequenced
+     * packets on the movement channel of the game.
      */
-    protected int hitPoints = RESPAWNHP;
+    private boolean sequenced = false;
+    /**
+     * Queue of commands waiting for the next game tick, created on demand.
+     */
+    private ManagedReference<PlayerInputQueue> inputsRef = null;
+    /**
+     * Movement updates collected by the game tick being processed, or null
+     * if movement is broadcast immediately.
+     */
+    private transient List<ByteBuffer> stateUpdates = null;
+
+    /**
+     * Only used for deserialization.
+     */
+    public SnowmanPlayerImpl() {
+    }
 
     /**
      * Construct a new player with the given name, attached to the given
@@ -146,8 +207,11 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
     public SnowmanPlayerImpl(String name,
                              ClientSession session) {
         this.name = name;
+        this.loginTime = GameClock.currentTimeMillis();
         sessionRef = session == null 
                 ? null : AppContext.getDataManager().createReference(session);
+        statusRef = AppContext.getDataManager().createReference(
+                new PlayerStatus());
     }
 
     /**
@@ -172,18 +236,91 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
         DEAD
     }
 
+    /** {@inheritDoc} */
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeUTF(name);
+        out.writeObject(sessionRef);
+        out.writeLong(loginTime);
+        out.writeObject(statusRef);
+        out.writeInt(id);
+        out.writeByte(teamColor == null ? -1 : teamColor.ordinal());
+        out.writeObject(channelRef);
+        out.writeObject(movementChannelRef);
+        out.writeObject(gameRef);
+        out.writeByte((tickBased ? TICKBASED : 0) |
+                      (interestFiltered ? INTERESTFILTERED : 0) |
+                      (compact ? COMPACT : 0) |
+                      (sequenced ? SEQUENCED : 0));
+        out.writeByte(protocolVersion);
+        out.writeObject(inputsRef);
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    public void readExternal(ObjectInput in)
+            throws IOException, ClassNotFoundException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new InvalidObjectException(
+                    "unsupported version " + version);
+        }
+        name = in.readUTF();
+        sessionRef = (ManagedReference<ClientSession>) in.readObject();
+        loginTime = in.readLong();
+        statusRef = (ManagedReference<PlayerStatus>) in.readObject();
+        id = in.readInt();
+        byte color = in.readByte();
+        teamColor = color < 0 ? null : ETeamColor.values()[color];
+        channelRef = (ManagedReference<Channel>) in.readObject();
+        movementChannelRef = (ManagedReference<Channel>) in.readObject();
+        gameRef = (ManagedReference<SnowmanGame>) in.readObject();
+        int flags = in.readByte();
+        tickBased = (flags & TICKBASED) != 0;
+        interestFiltered = (flags & INTERESTFILTERED) != 0;
+        compact = (flags & COMPACT) != 0;
+        sequenced = (flags & SEQUENCED) != 0;
+        protocolVersion = in.readByte();
+        inputsRef = (ManagedReference<PlayerInputQueue>) in.readObject();
+    }
+
+    /**
+     * Returns the frequently written state of the player for reading.
+     * It must be got for update through its reference before changing it.
+     * 
+     * @return the status of the player
+     */
+    PlayerStatus getStatus() {
+        return statusRef.get();
+    }
+
+    /** {@inheritDoc} */
+    public void removingObject() {
+        AppContext.getDataManager().removeObject(statusRef.get());
+        if (inputsRef != null) {
+            AppContext.getDataManager().removeObject(inputsRef.get());
+        }
+    }
+
     /** {@inheritDoc} */
     public void setID(int id) {
         this.id = id;
     }
 
+    /** {@inheritDoc} */
+    public long getLoginTime() {
+        return loginTime;
+    }
+
     /** {@inheritDoc} */
     public void setLocation(float x, float y) {
-        startX = x;
-        destX = x;
-        startY = y;
-        destY = y;
-        this.state = PlayerState.STOPPED;
+        PlayerStatus status = statusRef.getForUpdate();
+        status.startX = x;
+        status.destX = x;
+        status.startY = y;
+        status.destY = y;
+        status.state = PlayerState.STOPPED;
+        status.history.record(GameClock.currentTimeMillis(), x, y, x, y, 0.0f);
     }
 
     /** {@inheritDoc} */
@@ -199,16 +336,54 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
         gameRef = AppContext.getDataManager().createReference(game);
         channelRef = AppContext.getDataManager().createReference(
                 game.getGameChannel());
+        Channel movementChannel = game.getMovementChannel();
+        movementChannelRef = movementChannel == null ? null :
+                AppContext.getDataManager().createReference(movementChannel);
+        tickBased = game.getTickInterval() > 0;
+        interestFiltered = game.getInterestRadius() > 0;
+    }
+
+    /** {@inheritDoc} */
+    public void leaveGame() {
+        AppContext.getDataManager().markForUpdate(this);
+        gameRef = null;
+        channelRef = null;
+        movementChannelRef = null;
+        tickBased = false;
+        interestFiltered = false;
+        compact = false;
+        sequenced = false;
+        PlayerStatus status = statusRef.getForUpdate();
+        status.holdingFlagRef = null;
+        status.state = PlayerState.NONE;
+        status.history.clear();
+    }
+
+    /** {@inheritDoc} */
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /** {@inheritDoc} */
+    public void setCompact(boolean compact) {
+        AppContext.getDataManager().markForUpdate(this);
+        this.compact = compact;
+    }
+
+    /** {@inheritDoc} */
+    public void setSequenced(boolean sequenced) {
+        AppContext.getDataManager().markForUpdate(this);
+        this.sequenced = sequenced;
     }
 
     /** {@inheritDoc} */
     public float getX() {
-        return startX;
+        return statusRef.get().startX;
     }
 
     /** {@inheritDoc} */
     public float getY() {
-        return startY;
+        return statusRef.get().startY;
     }
 
     /**
@@ -224,53 +399,143 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
      * @return the position of the player at the given time
      */
     public Coordinate getExpectedPositionAtTime(long time) {
-        float currentX = startX;
-        float currentY = startY;
-        if (state == PlayerState.MOVING) {
+        PlayerStatus status = statusRef.get();
+        if (status.state == PlayerState.MOVING) {
             //total time that player has been moving
-            long dt = time - timestamp;
-
-            //calculate speed from HPconverter
-            float ratePerMs = (EForce.Movement.getMagnitude() / 
-                    HPConverter.getInstance().convertMass(hitPoints)) *
-                    0.00001f;
-            float distanceTraveled = ratePerMs * dt;
-
-            //calculate the actual distance traveled based on the speed
-            float dx = destX - startX;
-            float dy = destY - startY;
-            float targetDistance = (float) Math.sqrt((dx * dx) + (dy * dy));
-
-            //if we've travelled beyond target, target is the position
-            if (targetDistance <= distanceTraveled) {
-                currentX = destX;
-                currentY = destY;
-            } else {
-                //otherwise, we need to calculate the new position based on
-                //a system of equations 
-                //(looking for realDX and realDY as variables):
-                //  dx/dy = realDX/realDY
-                //  realDX^2 + realDY^2 = distanceTraveled^2
-                float realDX = dx == 0.0f ? 0.0f : (float) Math.sqrt(
-                        (distanceTraveled * distanceTraveled) /
-                        ((dy * dy) / (dx * dx) + 1));
-                float realDY = dy == 0.0f ? 0.0f : (float) Math.sqrt(
-                        (distanceTraveled * distanceTraveled) /
-                        ((dx * dx) / (dy * dy) + 1));
-
-                //ensure that the signs match for the deltas
-                if (dx < 0) {
-                    realDX *= -1;
-                }
-                if (dy < 0) {
-                    realDY *= -1;
-                }
-                currentX = startX + realDX;
-                currentY = startY + realDY;
-            }
+            return MovementHistory.getPosition(status.startX, status.startY,
+                                               status.destX, status.destY,
+                                               getRatePerMs(status.hitPoints),
+                                               time - status.timestamp);
         }
         
-        return new Coordinate(currentX, currentY);
+        return new Coordinate(status.startX, status.startY);
+    }
+
+    /** {@inheritDoc} */
+    public Coordinate getHistoricalPositionAtTime(long time) {
+        Coordinate position = 
+                statusRef.get().history.getPositionBefore(time);
+        return position != null ? position : getExpectedPositionAtTime(time);
+    }
+
+    /** {@inheritDoc} */
+    public ByteBuffer getMovementState(boolean sequence) {
+        PlayerStatus status = statusRef.get();
+        //a message which is wrapped is copied right away, so it does not
+        //need a buffer of its own
+        ByteBuffer buff = sequence ? Messages.getScratchBuffer() : null;
+        if (status.state == PlayerState.MOVING) {
+            Coordinate position =
+                    getExpectedPositionAtTime(GameClock.currentTimeMillis());
+            buff = buff == null ?
+                    ServerMessages.createMoveMOBPkt(id,
+                                                    position.getX(),
+                                                    position.getY(),
+                                                    status.destX,
+                                                    status.destY,
+                                                    compact) :
+                    flip(ServerMessages.writeMoveMOBPkt(buff, id,
+                                                        position.getX(),
+                                                        position.getY(),
+                                                        status.destX,
+                                                        status.destY,
+                                                        compact));
+        } else {
+            buff = buff == null ?
+                    ServerMessages.createStopMOBPkt(id,
+                                                    status.startX,
+                                                    status.startY,
+                                                    compact) :
+                    flip(ServerMessages.writeStopMOBPkt(buff, id,
+                                                        status.startX,
+                                                        status.startY,
+                                                        compact));
+        }
+        if (sequence) {
+            buff = ServerMessages.createSequencedPkt(id, status.sequence,
+                                                     buff);
+        }
+        return buff;
+    }
+
+    /**
+     * Return the distance moved per millisecond, which is calculated
+     * according to the given hit points.
+     */
+    private static float getRatePerMs(int hitPoints) {
+        return (EForce.Movement.getMagnitude() / 
+                HPConverter.getInstance().convertMass(hitPoints)) * 0.00001f;
+    }
+
+    /**
+     * Estimate the server time at which the client issued a timestamped
+     * command, up to {@link #MAXLAGMS} in the past.  Once the clock of the
+     * client is synchronized, its time is converted with the measured
+     * offset.  Until then, the smallest difference seen between the
+     * reception time and the client time of the commands of the player is
+     * taken as the clock offset of the client plus the shortest transit
+     * time, so that the command is dated back by the time it was delayed
+     * beyond the shortest transit time.
+     * 
+     * @param clientTime the time of the command on the client's clock,
+     *        truncated to an int
+     * @param now the time at which the command was received
+     * @return the estimated server time of the command
+     */
+    protected long getFireTime(int clientTime, long now) {
+        PlayerStatus status = statusRef.get();
+        long fireTime;
+        if (status.clock.isSynchronized()) {
+            fireTime = status.clock.toLocalTime(clientTime, now);
+        } else {
+            int delta = (int) now - clientTime;
+            if (!status.clockSampled || delta - status.minClockDelta < 0) {
+                AppContext.getDataManager().markForUpdate(status);
+                status.clockSampled = true;
+                status.minClockDelta = delta;
+            }
+            fireTime = now - (delta - status.minClockDelta);
+        }
+        return Math.max(now - MAXLAGMS, Math.min(now, fireTime));
+    }
+
+    /**
+     * Estimate the server time at which the client sent a command
+     * received at the given time, which is half of the round trip time
+     * earlier once the clock of the client is synchronized, up to 
+     * {@link #MAXLAGMS} in the past.
+     * 
+     * @param now the time at which the command was received
+     * @return the estimated server time at which the command was sent
+     */
+    protected long getSendTime(long now) {
+        ClockSynchronizer clock = statusRef.get().clock;
+        if (!clock.isSynchronized()) {
+            return now;
+        }
+        return now - Math.min(Math.round(clock.getRoundTripTime() / 2), 
+                              MAXLAGMS);
+    }
+
+    /** {@inheritDoc} */
+    public float getRoundTripTime() {
+        return statusRef.get().clock.getRoundTripTime();
+    }
+
+    /** {@inheritDoc} */
+    public double getClockOffset() {
+        return statusRef.get().clock.getOffset();
+    }
+
+    /**
+     * Return the position of the given player at the given time for a
+     * command received at now, from its movement history if the time is
+     * in the past.
+     */
+    private static Coordinate getPositionAt(SnowmanPlayer player, 
+                                            long time, long now) {
+        return time < now ? player.getHistoricalPositionAtTime(time)
+                          : player.getExpectedPositionAtTime(now);
     }
 
     /**
@@ -293,18 +558,18 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
 
     /** {@inheritDoc} */
     public void setReadyToPlay(boolean readyToPlay) {
-        AppContext.getDataManager().markForUpdate(this);
+        PlayerStatus status = statusRef.getForUpdate();
 
         if (readyToPlay) {
-            this.state = PlayerState.STOPPED;
+            status.state = PlayerState.STOPPED;
         } else {
-            this.state = PlayerState.NONE;
+            status.state = PlayerState.NONE;
         }
     }
 
     /** {@inheritDoc} */
     public boolean getReadyToPlay() {
-        return this.state != PlayerState.NONE;
+        return statusRef.get().state != PlayerState.NONE;
     }
 
     /** {@inheritDoc} */
@@ -312,9 +577,48 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
         sessionRef.get().send(buff);
     }
 
+    // Send a movement update to the players interested in the given
+    // position, to all the players, or add it to the state updates of the
+    // game tick being processed.  Updates sent outside of a tick are
+    // numbered when the game is sequenced
+    private void sendState(ByteBuffer buff, float x, float y) {
+        if (sequenced && stateUpdates == null) {
+            buff = ServerMessages.createSequencedPkt(
+                    id, ++statusRef.getForUpdate().sequence, buff);
+        }
+        if (interestFiltered) {
+            gameRef.get().sendMovement(this, x, y, buff);
+        } else if (stateUpdates != null) {
+            stateUpdates.add(buff);
+        } else if (sequenced && movementChannelRef != null) {
+            movementChannelRef.get().send(null, buff);
+        } else {
+            sendAll(buff);
+        }
+    }
+
+    // Returns the buffer to write a movement update of this player into:
+    // the scratch buffer of the thread if sendState sends or wraps the
+    // update right away, or null if the update is kept for the game tick
+    // or for interest filtering and needs a buffer of its own
+    private ByteBuffer getStateBuffer() {
+        return stateUpdates == null && (sequenced || !interestFiltered) ?
+                Messages.getScratchBuffer() : null;
+    }
+
+    // Flips a packet written into the scratch buffer, ready to be sent.
+    // The channel and the session copy the messages that they send, so
+    // the scratch buffer can be reused once it is sent
+    private static ByteBuffer flip(ByteBuffer buff) {
+        buff.flip();
+        return buff;
+    }
+
     // Send a message to all the players
     private void sendAll(ByteBuffer buff) {
-        channelRef.get().send(null, buff);
+        if (channelRef != null) {
+            channelRef.get().send(null, buff);
+        }
     }
 
     /** {@inheritDoc} */
@@ -345,7 +649,13 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
     public void moveMe(float startx, float starty,
                        float endx, float endy) {
         //verify that the start location is valid
-        Long now = System.currentTimeMillis();
+        Long now = GameClock.currentTimeMillis();
+        pingIfDue(now);
+        if (tickBased) {
+            queueInput(EOPCODE.MOVEME, now, now, 0, 
+                       startx, starty, endx, endy);
+            return;
+        }
         moveMe(now, startx, starty, endx, endy);
     }
 
@@ -364,13 +674,16 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
                           float startx, float starty,
                           float endx, float endy) {
         //no op if player is dead or not in a game
-        if (state == PlayerState.DEAD || state == PlayerState.NONE) {
+        PlayerStatus status = statusRef.get();
+        if (status.state == PlayerState.DEAD || 
+                status.state == PlayerState.NONE) {
             return;
         }
-        AppContext.getDataManager().markForUpdate(this);
+        AppContext.getDataManager().markForUpdate(status);
 
-        //verify that the start location is valid
-        Coordinate expectedPosition = this.getExpectedPositionAtTime(now);
+        //verify that the start location is valid when it was sent
+        Coordinate expectedPosition = getPositionAt(this, getSendTime(now),
+                                                    now);
 
         if (checkTolerance(expectedPosition.getX(), expectedPosition.getY(),
                            startx, starty,
@@ -380,37 +693,160 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
                     AppContext.getManager(GameWorldManager.class).
                     trimPath(new Coordinate(startx, starty),
                              new Coordinate(endx, endy));
-
-            this.timestamp = now;
-            this.startX = startx;
-            this.startY = starty;
-            this.destX = trimPosition.getX();
-            this.destY = trimPosition.getY();
-            this.state = PlayerState.MOVING;
-
-            sendAll(ServerMessages.createMoveMOBPkt(id, 
-                                                    startX, 
-                                                    startY, 
-                                                    destX,
-                                                    destY));
+            startMoving(status, now, startx, starty,
+                        trimPosition.getX(), trimPosition.getY());
         } else {
             logger.log(Level.FINE, 
                        "move from {0} failed start position check", name);
 
-            this.timestamp = now;
+            expectedPosition = this.getExpectedPositionAtTime(now);
+            status.timestamp = now;
             this.setLocation(expectedPosition.getX(), expectedPosition.getY());
-            sendAll(ServerMessages.createStopMOBPkt(id,
-                                                    expectedPosition.getX(),
-                                                    expectedPosition.getY()));
+            ByteBuffer buff = getStateBuffer();
+            sendState(buff == null ?
+                      ServerMessages.createStopMOBPkt(id,
+                                                      expectedPosition.getX(),
+                                                      expectedPosition.getY(),
+                                                      compact) :
+                      flip(ServerMessages.writeStopMOBPkt(
+                              buff, id,
+                              expectedPosition.getX(),
+                              expectedPosition.getY(),
+                              compact)),
+                      expectedPosition.getX(), expectedPosition.getY());
+        }
+    }
+
+    /**
+     * Initiates a player movement along a path which has already been
+     * trimmed by collision detection, without verifying the start
+     * position.  Used for server side players whose paths are trimmed in
+     * batches.
+     * 
+     * @param now time that the player starts moving
+     * @param startx start x coordinate
+     * @param starty start y coordinate
+     * @param destx trimmed destination x coordinate
+     * @param desty trimmed destination y coordinate
+     */
+    void moveTrimmed(long now,
+                     float startx, float starty,
+                     float destx, float desty) {
+        //no op if player is dead or not in a game
+        PlayerStatus status = statusRef.get();
+        if (status.state == PlayerState.DEAD || 
+                status.state == PlayerState.NONE) {
+            return;
         }
+        AppContext.getDataManager().markForUpdate(status);
+        startMoving(status, now, startx, starty, destx, desty);
+    }
+
+    // Start moving along a trimmed path and send the movement
+    private void startMoving(PlayerStatus status, long now,
+                             float startx, float starty,
+                             float destx, float desty) {
+        status.timestamp = now;
+        status.startX = startx;
+        status.startY = starty;
+        status.destX = destx;
+        status.destY = desty;
+        status.state = PlayerState.MOVING;
+        status.history.record(now, startx, starty, destx, desty,
+                              getRatePerMs(status.hitPoints));
+
+        ByteBuffer buff = getStateBuffer();
+        sendState(buff == null ?
+                  ServerMessages.createMoveMOBPkt(id, 
+                                                  startx, 
+                                                  starty, 
+                                                  destx,
+                                                  desty,
+                                                  compact) :
+                  flip(ServerMessages.writeMoveMOBPkt(buff, id,
+                                                      startx,
+                                                      starty,
+                                                      destx,
+                                                      desty,
+                                                      compact)),
+                  destx, desty);
     }
 
     /** {@inheritDoc} */
     public void attack(int targetID, float x, float y) {
-        Long now = System.currentTimeMillis();
+        Long now = GameClock.currentTimeMillis();
+        pingIfDue(now);
+        if (tickBased) {
+            queueInput(EOPCODE.ATTACK, now, now, targetID, x, y);
+            return;
+        }
         attack(now, targetID, x, y);
     }
 
+    /** {@inheritDoc} */
+    public void attackAt(int targetID, float x, float y, int time) {
+        Long now = GameClock.currentTimeMillis();
+        pingIfDue(now);
+        long fireTime = getFireTime(time, now);
+        if (tickBased) {
+            queueInput(EOPCODE.ATTACK, now, fireTime, targetID, x, y);
+            return;
+        }
+        attack(now, fireTime, targetID, x, y);
+    }
+
+    /**
+     * Queues a command to be applied by the next tick of the game.
+     * Only the input queue is modified, so that commands from different
+     * players do not conflict with each other.
+     * 
+     * @param command the opcode of the command
+     * @param now time that the command was received
+     * @param fireTime time that the command was issued by the client
+     * @param target id of the target of the command, if any
+     * @param args coordinates of the command
+     */
+    private void queueInput(EOPCODE command, long now, long fireTime,
+                            int target, float... args) {
+        if (inputsRef == null) {
+            AppContext.getDataManager().markForUpdate(this);
+            inputsRef = AppContext.getDataManager().createReference(
+                    new PlayerInputQueue());
+        }
+        inputsRef.get().add(command, now, fireTime, target, args);
+    }
+
+    /** {@inheritDoc} */
+    public void processInputs(List<ByteBuffer> updates) {
+        if (inputsRef == null) {
+            return;
+        }
+        List<PlayerInputQueue.Input> inputs = inputsRef.get().drain();
+        if (inputs.isEmpty()) {
+            return;
+        }
+        stateUpdates = updates;
+        try {
+            for (PlayerInputQueue.Input input : inputs) {
+                switch (input.command) {
+                    case MOVEME:
+                        moveMe(input.time, input.args[0], input.args[1],
+                               input.args[2], input.args[3]);
+                        break;
+                    case ATTACK:
+                        attack(input.time, input.fireTime, input.target, 
+                               input.args[0], input.args[1]);
+                        break;
+                    default:
+                        logger.log(Level.WARNING, "Unsupported input {0}",
+                                   input.command);
+                }
+            }
+        } finally {
+            stateUpdates = null;
+        }
+    }
+
     /**
      * Initiates an attack from this player to the player with the given
      * targetID at the given time.
@@ -422,14 +858,61 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
      * @see IServerProcessor#attack(int, float, float) 
      */
     protected void attack(long now, int targetID, float x, float y) {
+        attack(now, now, targetID, x, y);
+    }
+
+    /**
+     * Initiates an attack from this player to the player with the given
+     * targetID at the given time, whose throw has already been checked
+     * by collision detection.  This lets the throws of several players
+     * be validated together.
+     * 
+     * @param now time that the player attacks
+     * @param targetID id of the target player
+     * @param x x coordinate of the player
+     * @param y y coordinate of the player
+     * @param clear whether there is no obstacle between the player and
+     *        the position of the target at the given time
+     * @see com.sun.darkstar.example.snowman.server.service.GameWorldManager#validThrows
+     */
+    void attack(long now, int targetID, float x, float y, boolean clear) {
+        attack(now, now, targetID, x, y, Boolean.valueOf(clear));
+    }
+
+    /**
+     * Initiates an attack from this player to the player with the given
+     * targetID, issued by the client at the given fire time.  The
+     * positions of both players are checked as they were at the fire time,
+     * and the target is hit where it is at the given time.
+     * 
+     * @param now time that the attack is applied
+     * @param fireTime time that the attack was issued by the client
+     * @param targetID id of the target player
+     * @param x x coordinate of the player
+     * @param y y coordinate of the player
+     * @see IServerProcessor#attackAt(int, float, float, int) 
+     */
+    protected void attack(long now, long fireTime, 
+                          int targetID, float x, float y) {
+        attack(now, fireTime, targetID, x, y, null);
+    }
+
+    /**
+     * Applies an attack, checking the throw by collision detection
+     * unless its result is given.
+     */
+    private void attack(long now, long fireTime, 
+                        int targetID, float x, float y, Boolean clear) {
         //no op if player is dead or not in a game
-        if (state == PlayerState.DEAD || state == PlayerState.NONE) {
+        PlayerStatus status = statusRef.get();
+        if (status.state == PlayerState.DEAD || 
+                status.state == PlayerState.NONE) {
             return;
         }
-        AppContext.getDataManager().markForUpdate(this);
+        AppContext.getDataManager().markForUpdate(status);
 
         //verify that the start location is valid
-        Coordinate expectedPosition = this.getExpectedPositionAtTime(now);
+        Coordinate expectedPosition = getPositionAt(this, fireTime, now);
 
         if (checkTolerance(expectedPosition.getX(), expectedPosition.getY(),
                            x, y, POSITIONTOLERANCESQD)) {
@@ -439,11 +922,12 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
             if (target == null) {
                 return; // player no longer in game
             }
-            Coordinate targetPosition = target.getExpectedPositionAtTime(now);
+            Coordinate targetPosition = getPositionAt(target, fireTime, now);
 
             boolean success = true;
             //verify that target is in range
-            float range = HPConverter.getInstance().convertRange(hitPoints);
+            float range = HPConverter.getInstance().convertRange(
+                    status.hitPoints);
             if (!checkTolerance(expectedPosition.getX(), 
                                 expectedPosition.getY(),
                                 targetPosition.getX(),
@@ -454,29 +938,37 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
             }
 
             //collision detection
-            if (!AppContext.getManager(GameWorldManager.class).
-                    validThrow(new Coordinate(x, y),
-                               targetPosition)) {
+            if (clear == null) {
+                clear = AppContext.getManager(GameWorldManager.class).
+                        validThrow(new Coordinate(x, y), targetPosition);
+            }
+            if (!clear) {
                 logger.log(Level.FINE, 
                            "attack from {0} detected a collision", name);
                 success = false;
             }
 
             //perform implicit stop
-            this.timestamp = now;
+            status.timestamp = now;
             this.setLocation(x, y);
 
             if (success) {
-                //stop the target
+                //stop the target where it is now
+                if (fireTime < now) {
+                    targetPosition = target.getExpectedPositionAtTime(now);
+                }
                 target.setLocation(targetPosition.getX(),
                                    targetPosition.getY());
-                sendAll(ServerMessages.createAttackedPkt(
-                        id, targetID,
-                        target.hit(ATTACKHP, 
-                                   targetPosition.getX(), 
-                                   targetPosition.getY())));
+                int hp = target.hit(ATTACKHP, 
+                                    targetPosition.getX(), 
+                                    targetPosition.getY());
+                sendAll(flip(ServerMessages.writeAttackedPkt(
+                        Messages.getScratchBuffer(), id, targetID, hp,
+                        compact)));
             } else {
-                sendAll(ServerMessages.createAttackedPkt(id, targetID, 0));
+                sendAll(flip(ServerMessages.writeAttackedPkt(
+                        Messages.getScratchBuffer(), id, targetID, 0,
+                        compact)));
             }
         } else {
             //ignore an invalid attack
@@ -487,10 +979,16 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
 
     /** {@inheritDoc} */
     public void getFlag(int flagID, float x, float y) {
-        Long now = System.currentTimeMillis();
+        Long now = GameClock.currentTimeMillis();
         getFlag(now, flagID, x, y);
     }
 
+    /** {@inheritDoc} */
+    public void getFlagAt(int flagID, float x, float y, int time) {
+        Long now = GameClock.currentTimeMillis();
+        getFlag(now, getFireTime(time, now), flagID, x, y);
+    }
+
     /**
      * Makes an attempt for the player to pick up the flag at the given
      * time and position.
@@ -502,8 +1000,27 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
      * @see IServerProcessor#getFlag(int, float, float) 
      */
     protected void getFlag(long now, int flagID, float x, float y) {
+        getFlag(now, now, flagID, x, y);
+    }
+
+    /**
+     * Makes an attempt for the player to pick up the flag, issued by the
+     * client at the given fire time at which the position of the player
+     * is checked.
+     * 
+     * @param now time that the player attempts to pick up flag
+     * @param fireTime time that the attempt was issued by the client
+     * @param flagID id of the flag to grab
+     * @param x x position of the player
+     * @param y y position of the player
+     * @see IServerProcessor#getFlagAt(int, float, float, int) 
+     */
+    protected void getFlag(long now, long fireTime, 
+                           int flagID, float x, float y) {
         //no op if player is dead or not in a game
-        if (state == PlayerState.DEAD || state == PlayerState.NONE) {
+        PlayerStatus status = statusRef.get();
+        if (status.state == PlayerState.DEAD || 
+                status.state == PlayerState.NONE) {
             return;
         }
         SnowmanFlag flag = gameRef.get().getFlag(flagID);
@@ -512,10 +1029,10 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
         if (flag == null ||
                 flag.getTeamColor() == teamColor ||
                 flag.isHeld() ||
-                holdingFlagRef != null) {
+                status.holdingFlagRef != null) {
             return;        //verify that the start location is valid
         }
-        Coordinate expectedPosition = this.getExpectedPositionAtTime(now);
+        Coordinate expectedPosition = getPositionAt(this, fireTime, now);
         if (checkTolerance(expectedPosition.getX(), expectedPosition.getY(),
                            x, y, POSITIONTOLERANCESQD)) {
 
@@ -523,17 +1040,18 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
             if (checkTolerance(x, y, flag.getX(), flag.getY(),
                                EStats.GrabRange.getValue() * 
                                EStats.GrabRange.getValue())) {
-                AppContext.getDataManager().markForUpdate(this);
+                AppContext.getDataManager().markForUpdate(status);
 
                 //perform implicit stop
-                this.timestamp = now;
+                status.timestamp = now;
                 this.setLocation(x, y);
 
                 //attach the flag
                 flag.setHeldBy(this);
-                holdingFlagRef = 
+                status.holdingFlagRef = 
                         AppContext.getDataManager().createReference(flag);
-                sendAll(ServerMessages.createAttachObjPkt(flagID, id));
+                sendAll(flip(ServerMessages.writeAttachObjPkt(
+                        Messages.getScratchBuffer(), flagID, id, compact)));
             } else {
                 logger.log(Level.FINER, 
                            "get flag from {0} failed radius check", name);
@@ -546,7 +1064,7 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
 
     /** {@inheritDoc} */
     public void score(float x, float y) {
-        Long now = System.currentTimeMillis();
+        Long now = GameClock.currentTimeMillis();
         score(now, x, y);
     }
 
@@ -563,10 +1081,12 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
      */
     protected boolean score(long now, float x, float y) {
         //no op if player is dead or not in a game
-        if (state == PlayerState.DEAD || state == PlayerState.NONE) {
+        PlayerStatus status = statusRef.get();
+        if (status.state == PlayerState.DEAD || 
+                status.state == PlayerState.NONE) {
             return false;        //ignore if we aren't holding the flag
         }
-        if (holdingFlagRef == null) {
+        if (status.holdingFlagRef == null) {
             logger.log(Level.FINE, 
                        "score from {0} failed, not holding flag", name);
             return false;
@@ -576,7 +1096,7 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
         Coordinate expectedPosition = this.getExpectedPositionAtTime(now);
         if (checkTolerance(expectedPosition.getX(), expectedPosition.getY(),
                            x, y, POSITIONTOLERANCESQD)) {
-            SnowmanFlag flag = holdingFlagRef.get();
+            SnowmanFlag flag = status.holdingFlagRef.get();
 
             //verify that the player is in range of the score position
             if (checkTolerance(x, y, flag.getGoalX(), flag.getGoalY(),
@@ -600,39 +1120,38 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
     /** {@inheritDoc} */
     public void respawn() {
         if (gameRef != null) {
-            AppContext.getDataManager().markForUpdate(this);
-            hitPoints = RESPAWNHP;
+            statusRef.getForUpdate().hitPoints = RESPAWNHP;
             Coordinate position = SnowmanMapInfo.getRespawnPosition(
                     SnowmanMapInfo.DEFAULT, this.getTeamColor());
             setLocation(position.getX(), position.getY());
-            sendAll(ServerMessages.createRespawnPkt(id, 
-                                                    position.getX(),
-                                                    position.getY()));
+            sendAll(flip(ServerMessages.writeRespawnPkt(
+                    Messages.getScratchBuffer(), id,
+                    position.getX(), position.getY(), compact)));
         }
     }
 
     /** {@inheritDoc} */
     public int hit(int hp, float attackX, float attackY) {
-        if (hitPoints > 0) { // not already dead
-            AppContext.getDataManager().markForUpdate(this);
+        PlayerStatus status = statusRef.get();
+        if (status.hitPoints > 0) { // not already dead
+            AppContext.getDataManager().markForUpdate(status);
 
-            hitPoints -= hp;
-            if (hitPoints <= 0) { // newly dead
+            status.hitPoints -= hp;
+            if (status.hitPoints <= 0) { // newly dead
                 // drop flag
-                SnowmanFlag flag = holdingFlagRef == null 
-                        ? null : holdingFlagRef.get();
+                SnowmanFlag flag = status.holdingFlagRef == null 
+                        ? null : status.holdingFlagRef.get();
                 if (flag != null) {
                     flag.drop(attackX, attackY);
                 }
-                holdingFlagRef = null;
-                state = PlayerState.DEAD;
+                status.holdingFlagRef = null;
+                status.state = PlayerState.DEAD;
 
                 // schedule respawn
-                AppContext.getTaskManager().scheduleTask(
-                        new RespawnTask(
-                        AppContext.getDataManager().createReference(
-                        (SnowmanPlayer) this)),
-                        DEATHDELAYMS);
+                if (gameRef != null) {
+                    gameRef.get().schedule(SnowmanGame.TimedEvent.RESPAWN,
+                                           id, DEATHDELAYMS);
+                }
             }
         }
         return hp;
@@ -640,43 +1159,21 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
 
     /** {@inheritDoc} */
     public int getHitPoints() {
-        return hitPoints;
+        return statusRef.get().hitPoints;
     }
 
     /** {@inheritDoc} */
     public void dropFlag() {
-        SnowmanFlag flag = holdingFlagRef == null ? null : holdingFlagRef.get();
-        if (flag != null) {
-            Coordinate expectedPosition = 
-                    this.getExpectedPositionAtTime(System.currentTimeMillis());
-            flag.drop(expectedPosition.getX(), expectedPosition.getY());
-        }
-        holdingFlagRef = null;
-    }
-
-    /**
-     * A private task which causes a player to respawn and be reinserted
-     * into the game world.
-     */
-    private static class RespawnTask implements Task, Serializable {
-
-        /**
-         * Serial version.
-         */
-        private static final long serialVersionUID = -6040022484794307971L;
-        final ManagedReference<SnowmanPlayer> playerRef;
-
-        RespawnTask(ManagedReference<SnowmanPlayer> playerRef) {
-            this.playerRef = playerRef;
-        }
-
-        /** {@inheritDoc} */
-        public void run() throws Exception {
-            try {
-                playerRef.get().respawn();
-            } catch (ObjectNotFoundException gameDone) {
-            }
+        PlayerStatus status = statusRef.get();
+        if (status.holdingFlagRef == null) {
+            return;
         }
+        Coordinate expectedPosition = 
+                this.getExpectedPositionAtTime(GameClock.currentTimeMillis());
+        status.holdingFlagRef.get().drop(expectedPosition.getX(),
+                                         expectedPosition.getY());
+        AppContext.getDataManager().markForUpdate(status);
+        status.holdingFlagRef = null;
     }
 
     /** {@inheritDoc} */
@@ -706,6 +1203,53 @@ public class SnowmanPlayerImpl implements SnowmanPlayer,
     /** {@inheritDoc} */
     public void chatMessage(String message) {
         // Create new packet with ID.
-        sendAll(ServerMessages.createChatPkt(id, message));
+        sendAll(flip(ServerMessages.writeChatPkt(Messages.getScratchBuffer(),
+                                                 id, message)));
+    }
+
+    /** {@inheritDoc} */
+    public void protocol(int version) {
+        AppContext.getDataManager().markForUpdate(this);
+        protocolVersion = Math.max(Messages.PROTOCOL_ORIGINAL,
+                                   Math.min(version, 
+                                            Messages.PROTOCOL_VERSION));
+        float[] dimensions = SnowmanMapInfo.getDimensions(
+                SnowmanMapInfo.DEFAULT);
+        send(flip(ServerMessages.writeProtocolPkt(Messages.getScratchBuffer(),
+                                                  protocolVersion,
+                                                  dimensions[0],
+                                                  dimensions[1])));
+        statusRef.getForUpdate().clock.reset();
+        pingIfDue(GameClock.currentTimeMillis());
+    }
+
+    /** {@inheritDoc} */
+    public void ping(int time) {
+        send(flip(Messages.writePongPkt(Messages.getScratchBuffer(), time,
+                                        (int) GameClock.currentTimeMillis())));
+    }
+
+    /** {@inheritDoc} */
+    public void pong(int echo, int time) {
+        ClockSynchronizer clock = statusRef.getForUpdate().clock;
+        clock.pong(echo, time, GameClock.currentTimeMillis());
+        logger.log(Level.FINEST, "{0} round trip {1} ms, clock offset {2} ms",
+                   new Object[] {name, clock.getRoundTripTime(), 
+                                 clock.getOffset()});
+    }
+
+    // Send a PING to the client if it agreed to the synchronized protocol
+    // and the clock was not measured recently.  Pings are sent as commands
+    // are received, so that idle players are not pinged
+    private void pingIfDue(long now) {
+        if (protocolVersion < Messages.PROTOCOL_SYNCHRONIZED) {
+            return;
+        }
+        PlayerStatus status = statusRef.get();
+        if (status.clock.isPingDue(now)) {
+            AppContext.getDataManager().markForUpdate(status);
+            send(flip(Messages.writePingPkt(Messages.getScratchBuffer(),
+                                            status.clock.ping(now))));
+        }
     }
 }
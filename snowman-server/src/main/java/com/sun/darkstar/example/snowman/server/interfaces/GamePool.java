@@ -0,0 +1,76 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.interfaces;
+
+import com.sun.sgs.app.ManagedObject;
+
+/**
+ * A {@code GamePool} keeps a bounded number of reset, ready to use
+ * {@code SnowmanGame} shells, together with their channels and flags,
+ * so that starting a game does not have to create them and ending a
+ * game does not have to remove them.
+ */
+public interface GamePool extends ManagedObject
+{
+    /**
+     * Takes a game shell out of the pool.
+     * 
+     * @return a reset game, or {@code null} if the pool is empty
+     */
+    SnowmanGame checkOut();
+    
+    /**
+     * Returns a reset game shell to the pool.
+     * 
+     * @param game the reset game
+     * @return true if the game was pooled, false if the pool is full and
+     *         the caller is responsible for removing the game
+     */
+    boolean checkIn(SnowmanGame game);
+    
+    /**
+     * Returns the number of game shells currently in the pool.
+     * 
+     * @return the number of available games
+     */
+    int getAvailable();
+    
+    /**
+     * Returns the maximum number of game shells kept in the pool.
+     * 
+     * @return the capacity of the pool
+     */
+    int getCapacity();
+}
@@ -71,6 +71,12 @@ public interface SnowmanFlag extends DynamicEntity
      */
     void drop(float x, float y);
 
+    /**
+     * Puts the flag back to its home position, not held by any player,
+     * and invalidates any pending return of the flag.
+     */
+    void reset();
+    
     /**
      * Checks if the flag is currently being held by a player.
      * 
@@ -51,6 +51,18 @@ import java.util.Set;
  */
 public interface SnowmanGame extends ManagedObject, ManagedObjectRemoval
 {
+    /**
+     * The kinds of events that can be scheduled on the timer of a game.
+     */
+    enum TimedEvent {
+        /** Respawns the player with the target id. */
+        RESPAWN,
+        /** Returns the flag with the target id to its home position. */
+        FLAGRETURN,
+        /** Moves all of the robots of the game, the target is unused. */
+        ROBOTMOVE
+    }
+    
     /**
      * Send a message to all players in the game on the game's Channel.
      * @param buff the message itself
@@ -89,6 +101,112 @@ public interface SnowmanGame extends ManagedObject, ManagedObjectRemoval
      */
     void endGame(EEndState endState);
     
+    /**
+     * Set the pool that this game is returned to once it has ended.
+     * If no pool is set, the game is removed once it has ended.
+     * 
+     * @param pool the pool to return the game to, or null
+     */
+    void setGamePool(GamePool pool);
+    
+    /**
+     * Set the interval between two ticks of the game.  With a positive
+     * interval, movement and attack commands of the players are queued and
+     * applied once per tick by a single game task, which sends all of the
+     * resulting movement in one game state packet.  With an interval of
+     * zero, commands are applied as soon as they are received.
+     * This must be set before players are added to the game.
+     * 
+     * @param tickInterval the tick interval in milliseconds, or 0
+     */
+    void setTickInterval(long tickInterval);
+    
+    /**
+     * Return the interval between two ticks of the game.
+     * 
+     * @return the tick interval in milliseconds, or 0 if the game is not
+     *         tick based
+     */
+    long getTickInterval();
+
+    /**
+     * Set the area of interest of the players of the game.  With a positive
+     * radius, movement of a player is only sent to the players near it
+     * instead of to the whole game channel.  With a radius of zero, all
+     * movement is sent to every player.
+     * This must be set before players are added to the game.
+     *
+     * @param radius the interest radius in map units, or 0
+     */
+    void setInterestRadius(float radius);
+
+    /**
+     * Return the area of interest radius of the players of the game.
+     *
+     * @return the interest radius, or 0 if movement is sent to every player
+     */
+    float getInterestRadius();
+
+    /**
+     * Send a movement update of a player to the players interested in it,
+     * including the player itself.  Only used when the game has an
+     * interest radius.
+     *
+     * @param mover the player that moved
+     * @param x x coordinate of the position the player is moving to
+     * @param y y coordinate of the position the player is moving to
+     * @param buff the movement message
+     */
+    void sendMovement(SnowmanPlayer mover, float x, float y, ByteBuffer buff);
+
+    /**
+     * Return whether the messages of the game use the compact format,
+     * which is decided when the map information is sent.
+     *
+     * @return true if every client in the game agreed to the compact
+     *         protocol
+     */
+    boolean isCompact();
+
+    /**
+     * Return whether the movement of the game is sent as SEQUENCED packets
+     * with unreliable delivery, which is decided when the map information
+     * is sent.
+     *
+     * @return true if every client in the game agreed to the sequenced
+     *         protocol
+     */
+    boolean isSequenced();
+
+    /**
+     * Schedule an event on the timer of the game.  All of the events of a
+     * game are run by a single pending task rather than by a task per
+     * event, and events due within a short time of each other are run
+     * together.  Pending events are dropped when the game is reset.
+     * 
+     * @param event the kind of the event
+     * @param targetId the id of the player or flag the event applies to
+     * @param delay the delay before the event is run in milliseconds
+     * @return the handle of the event, which is never 0
+     */
+    int schedule(TimedEvent event, int targetId, long delay);
+    
+    /**
+     * Cancel an event scheduled on the timer of the game, if it has not
+     * run yet.
+     * 
+     * @param handle the handle returned when scheduling the event
+     */
+    void cancel(int handle);
+
+    /**
+     * Reset the game to the state it was in when it was created so that
+     * it can be reused for a new match.  Server side players are removed
+     * and client players are detached from the game.  The game channel
+     * and the flags are kept.
+     */
+    void reset();
+    
     /**
      * Return the flag from the game with the given id.
      * @param id the id of the flag
@@ -130,4 +248,12 @@ public interface SnowmanGame extends ManagedObject, ManagedObjectRemoval
      * @return the game channel
      */
     Channel getGameChannel();
+    
+    /**
+     * Return the unreliable channel for the movement of this game, which
+     * is used instead of the game channel for movement updates when the
+     * game is sequenced.
+     * @return the movement channel
+     */
+    Channel getMovementChannel();
 }
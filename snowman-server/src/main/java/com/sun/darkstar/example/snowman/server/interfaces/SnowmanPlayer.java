@@ -40,6 +40,7 @@ import com.sun.darkstar.example.snowman.common.util.Coordinate;
 import com.sun.sgs.app.ClientSession;
 import com.sun.sgs.app.ManagedObject;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
  * The {@code SnowmanPlayer} interface defines the basic behavior
@@ -55,6 +56,12 @@ public interface SnowmanPlayer extends DynamicEntity, ManagedObject
      */
     String getName();
 
+    /**
+     * Get the time at which the player was created upon login.
+     * @return the login time in game clock milliseconds
+     */
+    long getLoginTime();
+
     /**
      * Set the location of the player.
      * 
@@ -70,6 +77,49 @@ public interface SnowmanPlayer extends DynamicEntity, ManagedObject
      * @return the position of the player at the given time
      */
     Coordinate getExpectedPositionAtTime(long time);
+    
+    /**
+     * Get the position of the player at the given time, which may be
+     * before its current movement started, from the recent movement of
+     * the player.  Times older than the recorded movement give the oldest
+     * recorded position.
+     * 
+     * @param time the time to check the player's position
+     * @return the position of the player at the given time
+     */
+    Coordinate getHistoricalPositionAtTime(long time);
+
+    /**
+     * Get a movement message describing what the player is currently
+     * doing, for a player which starts receiving its movement: a MOVEMOB
+     * from its current position to its destination if it is moving, or a
+     * STOPMOB at its position otherwise.
+     *
+     * @param sequence whether to wrap the message in a SEQUENCED packet
+     *        repeating the sequence number of the last movement update of
+     *        the player, which clients that already have it drop
+     * @return the movement message
+     */
+    ByteBuffer getMovementState(boolean sequence);
+
+    /**
+     * Get the smoothed round trip time to the client of the player,
+     * measured with PING packets.
+     * 
+     * @return the round trip time in milliseconds, or zero if it has not
+     *         been measured
+     */
+    float getRoundTripTime();
+    
+    /**
+     * Get the smoothed offset of the clock of the client of the player,
+     * which is added to a server time to get the corresponding client
+     * time.
+     * 
+     * @return the clock offset in milliseconds, or zero if it has not
+     *         been measured
+     */
+    double getClockOffset();
 
     /**
      * Set the team of the player.
@@ -99,6 +149,47 @@ public interface SnowmanPlayer extends DynamicEntity, ManagedObject
      */
     SnowmanGame getGame();
     
+    /**
+     * Detach the player from the game that it is in, once that game
+     * has ended and is being reused.
+     */
+    void leaveGame();
+    
+    /**
+     * Apply the commands queued by this player since the last tick of a
+     * tick based game.  Movement updates resulting from the commands are
+     * added to the given list instead of being broadcast individually.
+     * 
+     * @param updates the list to add movement update packets to
+     */
+    void processInputs(List<ByteBuffer> updates);
+    
+    /**
+     * Return the protocol version agreed with the client of this player.
+     * 
+     * @return the protocol version, {@code Messages.PROTOCOL_ORIGINAL} if
+     *         the client never sent a PROTOCOL message
+     */
+    int getProtocolVersion();
+    
+    /**
+     * Set whether the messages sent by this player to its game use the
+     * compact format.  This is only the case when every client in the
+     * game has agreed to the compact protocol.
+     * 
+     * @param compact whether to use the compact format
+     */
+    void setCompact(boolean compact);
+    
+    /**
+     * Set whether the movement updates of this player are sent as
+     * SEQUENCED packets with unreliable delivery.  This is only the case
+     * when every client in the game has agreed to the sequenced protocol.
+     * 
+     * @param sequenced whether to send sequenced movement updates
+     */
+    void setSequenced(boolean sequenced);
+    
     /**
      * Indicate that this player has received all game initialization info
      * on the client side and is ready to begin play.
@@ -0,0 +1,330 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.service;
+
+import java.io.Serializable;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.NameNotBoundException;
+import com.sun.sgs.kernel.ComponentRegistry;
+import com.sun.sgs.kernel.KernelRunnable;
+import com.sun.sgs.kernel.RecurringTaskHandle;
+import com.sun.sgs.kernel.TransactionScheduler;
+import com.sun.sgs.service.DataService;
+import com.sun.sgs.service.TransactionProxy;
+
+
+/**
+ * The {@code GameClockServiceImpl} is an implementation of a Project
+ * Darkstar service that provides the clock used to time the games.
+ * <p>
+ * The clock advances at a configurable rate relative to real time, 1 by
+ * default, from a configurable start time, the current system time by
+ * default.  Running at a rate above 1 makes robot games and benchmarks
+ * play out faster than real time, as delays measured by the game clock
+ * are converted into shorter real delays when tasks are scheduled.
+ * Giving a fixed start time makes the timestamps of a run the same from
+ * one run to the next.  The clock is based on {@link System#nanoTime}
+ * so that it never goes backwards, even if the system clock is changed.
+ * <p>
+ * The game timers, the player timestamps and the movement histories are
+ * stored in game time, so the clock must not go backwards when the server
+ * restarts either.  The service saves the game time in the data store
+ * periodically, and when it starts with an existing data store the clock
+ * continues from the saved time, plus the game time of one save period
+ * which may have passed since it was saved, if it is later than the
+ * configured start.
+ * With the default settings this only happens if the system clock was
+ * set back.  With a fixed start or a rate other than 1, the configured
+ * start only applies to a new data store, and the time during which the
+ * server was down is not counted.
+ */
+public class GameClockServiceImpl implements GameClockService {
+    
+    /** The logger for this class. */
+    private static final Logger logger = 
+            Logger.getLogger(GameClockServiceImpl.class.getName());
+    
+    /** The property specifying the rate of the game clock */
+    public static final String RATE_PROP =
+            GameClockServiceImpl.class.getName() + ".rate";
+    /** The default rate of the game clock, which is real time */
+    public static final float DEFAULT_RATE = 1.0f;
+    /** The property specifying the game time at which the clock starts */
+    public static final String START_PROP =
+            GameClockServiceImpl.class.getName() + ".start";
+    /** The property specifying how often the game time is saved */
+    public static final String SAVE_PERIOD_PROP =
+            GameClockServiceImpl.class.getName() + ".save.period";
+    /** The default number of real milliseconds between saves */
+    public static final long DEFAULT_SAVE_PERIOD = 1000L;
+    
+    /** The name of the service binding of the saved game time */
+    static final String TIME_BINDING =
+            GameClockServiceImpl.class.getName() + ".time";
+    
+    /** Number of game milliseconds per real millisecond **/
+    private final double rate;
+    
+    /**
+     * Game time at which the clock started, moved forward once when the
+     * saved game time is restored
+     */
+    private volatile long start;
+    
+    /** System nano time at which the clock started **/
+    private final long origin;
+    
+    /** Scheduler of the transactions which restore and save the time */
+    private final TransactionScheduler transactionScheduler;
+    private final TransactionProxy txnProxy;
+    private final long savePeriod;
+    private RecurringTaskHandle saveHandle;
+
+    /**
+     * Constructs a {@code GameClockService} configured by the given
+     * properties.
+     * 
+     * @param properties application properties
+     * @param registry registry of darkstar components
+     * @param txnProxy transaction proxy
+     */
+    public GameClockServiceImpl(Properties properties,
+                                ComponentRegistry registry,
+                                TransactionProxy txnProxy) {
+        this(getPropertyAsFloat(properties, RATE_PROP, DEFAULT_RATE),
+             getPropertyAsLong(properties, START_PROP, 
+                               System.currentTimeMillis()),
+             getPropertyAsLong(properties, SAVE_PERIOD_PROP,
+                               DEFAULT_SAVE_PERIOD),
+             registry.getComponent(TransactionScheduler.class),
+             txnProxy);
+    }
+    
+    /**
+     * Constructs a {@code GameClockService} running at the given rate
+     * from the given start time, which does not save the game time.
+     * 
+     * @param rate the number of game milliseconds per real millisecond
+     * @param start the game time at which the clock starts
+     */
+    public GameClockServiceImpl(float rate, long start) {
+        this(rate, start, DEFAULT_SAVE_PERIOD, null, null);
+    }
+    
+    /**
+     * Constructs a {@code GameClockService} running at the given rate
+     * from the given start time, or from the saved game time.
+     * 
+     * @param rate the number of game milliseconds per real millisecond
+     * @param start the game time at which the clock starts
+     * @param savePeriod the number of real milliseconds between saves
+     * @param transactionScheduler the scheduler to restore and save the
+     *        game time with, or {@code null} to not save it
+     * @param txnProxy transaction proxy
+     */
+    private GameClockServiceImpl(float rate, long start, long savePeriod,
+                                 TransactionScheduler transactionScheduler,
+                                 TransactionProxy txnProxy) {
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException(
+                    RATE_PROP + " must be greater than 0: " + rate);
+        }
+        if (savePeriod <= 0) {
+            throw new IllegalArgumentException(
+                    SAVE_PERIOD_PROP + " must be greater than 0: " + 
+                    savePeriod);
+        }
+        this.rate = rate;
+        this.start = start;
+        this.origin = System.nanoTime();
+        this.savePeriod = savePeriod;
+        this.transactionScheduler = transactionScheduler;
+        this.txnProxy = txnProxy;
+        logger.log(Level.CONFIG, "Game clock rate: {0}, starting at {1}",
+                   new Object[]{rate, start});
+    }
+    
+    /**
+     * Retrieves the property with the given key from the given properties
+     * object as a float value.  If the property does not exist, or it is
+     * an invalid number format, the {@code defaultValue} is returned instead.
+     * 
+     * @param props the {@code Properties} object
+     * @param key the key to get the property of
+     * @param defaultValue the default value if the property does not exist
+     * 
+     * @return the value of the property with the given key as a
+     *         {@code float} if it exists and is a valid number format,
+     *         otherwise, returns defaultValue
+     */
+    private static float getPropertyAsFloat(Properties props,
+                                            String key,
+                                            float defaultValue) {
+        String value = props.getProperty(key);
+        try {
+            return value == null ? defaultValue : Float.parseFloat(value);
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Retrieves the property with the given key from the given properties
+     * object as a long value.  If the property does not exist, or it is
+     * an invalid number format, the {@code defaultValue} is returned instead.
+     * 
+     * @param props the {@code Properties} object
+     * @param key the key to get the property of
+     * @param defaultValue the default value if the property does not exist
+     * 
+     * @return the value of the property with the given key as a
+     *         {@code long} if it exists and is a valid number format,
+     *         otherwise, returns defaultValue
+     */
+    private static long getPropertyAsLong(Properties props,
+                                          String key,
+                                          long defaultValue) {
+        String value = props.getProperty(key);
+        try {
+            return value == null ? defaultValue : Long.parseLong(value);
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+
+    /** {@inheritDoc} **/
+    public String getName() {
+        return this.getClass().getName();
+    }
+
+    /** {@inheritDoc} **/
+    public void ready() throws Exception {
+        if (transactionScheduler == null) {
+            return;
+        }
+        transactionScheduler.runTask(new RestoreTimeTask(),
+                                     txnProxy.getCurrentOwner());
+        saveHandle = transactionScheduler.scheduleRecurringTask(
+                new SaveTimeTask(), txnProxy.getCurrentOwner(),
+                System.currentTimeMillis() + savePeriod, savePeriod);
+        saveHandle.start();
+    }
+
+    /** {@inheritDoc} **/
+    public void shutdown() {
+        if (saveHandle != null) {
+            saveHandle.cancel();
+        }
+    }
+    
+    /** {@inheritDoc} */
+    public long currentTimeMillis() {
+        return start + (long) ((System.nanoTime() - origin) * rate / 1000000);
+    }
+    
+    /** {@inheritDoc} */
+    public long toRealDelay(long delay) {
+        return (long) Math.ceil(delay / rate);
+    }
+    
+    /**
+     * Game time saved in the data store.
+     */
+    static class SavedTime implements ManagedObject, Serializable {
+        /** The version of the serialized form. */
+        public static final long serialVersionUID = 1L;
+        
+        private long time;
+        
+        SavedTime(long time) {
+            this.time = time;
+        }
+    }
+    
+    /**
+     * Moves the clock forward to the saved game time, or saves the
+     * current game time if there is none.
+     */
+    private class RestoreTimeTask implements KernelRunnable {
+        /** {@inheritDoc} */
+        public String getBaseTaskType() {
+            return RestoreTimeTask.class.getName();
+        }
+        
+        /** {@inheritDoc} */
+        public void run() {
+            DataService dataService = txnProxy.getService(DataService.class);
+            long now = currentTimeMillis();
+            try {
+                SavedTime saved = 
+                        (SavedTime) dataService.getServiceBinding(TIME_BINDING);
+                //the clock may have run for up to a save period after the
+                //last save
+                long resume = saved.time + (long) Math.ceil(savePeriod * rate);
+                if (resume > now) {
+                    start += resume - now;
+                    logger.log(Level.CONFIG, 
+                               "Game clock continuing from {0}", resume);
+                }
+            } catch (NameNotBoundException unbound) {
+                dataService.setServiceBinding(TIME_BINDING, new SavedTime(now));
+            }
+        }
+    }
+    
+    /**
+     * Saves the current game time.
+     */
+    private class SaveTimeTask implements KernelRunnable {
+        /** {@inheritDoc} */
+        public String getBaseTaskType() {
+            return SaveTimeTask.class.getName();
+        }
+        
+        /** {@inheritDoc} */
+        public void run() {
+            DataService dataService = txnProxy.getService(DataService.class);
+            SavedTime saved = 
+                    (SavedTime) dataService.getServiceBinding(TIME_BINDING);
+            dataService.markForUpdate(saved);
+            saved.time = currentTimeMillis();
+        }
+    }
+
+}
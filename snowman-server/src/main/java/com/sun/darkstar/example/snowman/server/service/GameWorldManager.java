@@ -78,4 +78,37 @@ public interface GameWorldManager {
     boolean validThrow(Coordinate start,
                        Coordinate end);
     
+    /**
+     * <p>
+     * Calculate the actual paths of a batch of snowmen in a single call.
+     * Each path is packed as four consecutive values: the x and y
+     * coordinates of the start position followed by those of the
+     * destination position.  The result is packed as two consecutive
+     * values per path: the x and y coordinates of the actual destination
+     * as it would be returned by {@link #trimPath}.
+     * </p>
+     * 
+     * @param paths packed start and destination coordinates
+     * @return packed actual destination coordinates, two per path
+     * @throws IllegalArgumentException if the length of {@code paths} is
+     *         not a multiple of four
+     */
+    float[] trimPaths(float[] paths);
+    
+    /**
+     * <p>
+     * Validate a batch of snowball throws in a single call.  Each throw
+     * is packed as four consecutive values: the x and y coordinates of
+     * the start position followed by those of the target position.
+     * The throws are traced through the obstacles together, so that
+     * throws crossing the same part of the world share the work.
+     * </p>
+     * 
+     * @param throwPaths packed start and target coordinates
+     * @return for each throw, the result of {@link #validThrow}
+     * @throws IllegalArgumentException if the length of
+     *         {@code throwPaths} is not a multiple of four
+     */
+    boolean[] validThrows(float[] throwPaths);
+    
 }
@@ -57,21 +57,30 @@ public class GameWorldManagerImpl implements GameWorldManager {
         this.backingService = backingService;
     }
     
-    // The following methods are synchronized to avoid problems with the
-    // jme code not being thread-safe. This will single-thread all tasks
-    // that do collision detection... so a more perminant solution needs
-    // to be found.
+    // The backing service answers collision queries against immutable
+    // geometry, so no synchronization is needed here and tasks doing
+    // collision detection can run in parallel.
     
     /** {@inheritDoc} */
-    public synchronized Coordinate trimPath(Coordinate start, 
+    public Coordinate trimPath(Coordinate start, 
                                Coordinate end) {
         return backingService.trimPath(start, end);
     }
 
     /** {@inheritDoc} */
-    public synchronized boolean validThrow(Coordinate start,
+    public boolean validThrow(Coordinate start,
                               Coordinate end) {
         return backingService.validThrow(start, end);
     }
+    
+    /** {@inheritDoc} */
+    public float[] trimPaths(float[] paths) {
+        return backingService.trimPaths(paths);
+    }
+    
+    /** {@inheritDoc} */
+    public boolean[] validThrows(float[] throwPaths) {
+        return backingService.validThrows(throwPaths);
+    }
 
 }
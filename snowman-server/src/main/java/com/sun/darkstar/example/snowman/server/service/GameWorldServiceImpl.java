@@ -35,14 +35,18 @@
 package com.sun.darkstar.example.snowman.server.service;
 
 import java.util.Properties;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.jme.math.Vector3f;
 import com.jme.scene.Spatial;
 import com.jme.system.DisplaySystem;
 import com.jme.system.dummy.DummySystemProvider;
+import com.sun.darkstar.example.snowman.common.util.CollisionGeometry;
 import com.sun.darkstar.example.snowman.common.util.Coordinate;
+import com.sun.darkstar.example.snowman.common.util.ObstacleGrid;
 import com.sun.darkstar.example.snowman.common.util.SingletonRegistry;
+import com.sun.darkstar.example.snowman.common.util.enumn.EStats;
 import com.sun.darkstar.example.snowman.common.util.enumn.EWorld;
 import com.sun.darkstar.example.snowman.server.impl.SnowmanMapInfo;
 import com.sun.sgs.kernel.ComponentRegistry;
@@ -54,6 +58,16 @@ import com.sun.sgs.service.TransactionProxy;
  * Darkstar service that provides utility methods to calculate
  * collision detection and spatial information against the static
  * game world geometry.
+ * <p>
+ * The geometry is flattened into an immutable {@link CollisionGeometry}
+ * when the service is constructed so that collision queries can be
+ * answered concurrently from any number of transaction threads.
+ * Since paths and throws are always horizontal, the geometry is further
+ * sliced at the snowman and snowball heights into {@link ObstacleGrid}s
+ * which answer {@code trimPath} and {@code validThrow} by walking only the
+ * grid cells along the path.  Throw results are additionally kept in a
+ * {@link LineOfSightCache} since players tend to throw repeatedly from
+ * nearly the same positions.
  * 
  * @author Owen Kellett
  */
@@ -63,8 +77,36 @@ public class GameWorldServiceImpl implements GameWorldService {
     private static final Logger logger = 
             Logger.getLogger(GameWorldServiceImpl.class.getName());
     
+    /** The property specifying the edge length of an obstacle grid cell */
+    public static final String CELL_SIZE_PROP =
+            GameWorldServiceImpl.class.getName() + ".cell.size";
+    /** The default edge length of an obstacle grid cell */
+    public static final float DEFAULT_CELL_SIZE = 1.0f;
+    /** The property specifying the number of cached line of sight results */
+    public static final String LOS_CACHE_SIZE_PROP =
+            GameWorldServiceImpl.class.getName() + ".los.cache.size";
+    /** The default number of cached line of sight results */
+    public static final int DEFAULT_LOS_CACHE_SIZE = 4096;
+    /** The property specifying the quantization of cached throw endpoints */
+    public static final String LOS_QUANTUM_PROP =
+            GameWorldServiceImpl.class.getName() + ".los.quantum";
+    /** The default quantization of cached throw endpoints */
+    public static final float DEFAULT_LOS_QUANTUM = 0.25f;
+    
     /** Current game world **/
     private Spatial gameWorld;
+    
+    /** Immutable collision geometry of the game world **/
+    private final CollisionGeometry collisionGeometry;
+    
+    /** Obstacle grid sliced at the height used to trim paths **/
+    private final ObstacleGrid pathGrid;
+    
+    /** Obstacle grid sliced at the height used to validate throws **/
+    private final ObstacleGrid throwGrid;
+    
+    /** Cache of throw results, or null if caching is disabled **/
+    private final LineOfSightCache lineOfSightCache;
 
     /**
      * Constructs a {@code GameWorldService} that is initialized to
@@ -87,6 +129,93 @@ public class GameWorldServiceImpl implements GameWorldService {
         SnowmanMapInfo.setDimensions(
                 gameWorld.getWorldBound().getCenter().getX() * 2.0f,
                 gameWorld.getWorldBound().getCenter().getZ() * 2.0f);
+        this.collisionGeometry = CollisionGeometry.build(gameWorld);
+        logger.log(Level.CONFIG, "Built collision geometry with {0} triangles",
+                   collisionGeometry.getTriangleCount());
+        
+        float cellSize = getPropertyAsFloat(properties, CELL_SIZE_PROP,
+                                            DEFAULT_CELL_SIZE);
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException(
+                    CELL_SIZE_PROP + " must be greater than 0: " + cellSize);
+        }
+        logger.log(Level.CONFIG, "Using obstacle grid cell size of {0}",
+                   cellSize);
+        this.pathGrid = ObstacleGrid.build(collisionGeometry,
+                EStats.SnowmanHeight.getValue() / 2.0f, cellSize);
+        this.throwGrid = ObstacleGrid.build(collisionGeometry,
+                EStats.SnowballHeight.getValue(), cellSize);
+        logger.log(Level.CONFIG,
+                   "Built obstacle grids of {0} cells with {1} path " +
+                   "and {2} throw segments",
+                   new Object[]{pathGrid.getCellCount(),
+                                pathGrid.getSegmentCount(),
+                                throwGrid.getSegmentCount()});
+        
+        int cacheSize = getPropertyAsInteger(properties, LOS_CACHE_SIZE_PROP,
+                                             DEFAULT_LOS_CACHE_SIZE);
+        float quantum = getPropertyAsFloat(properties, LOS_QUANTUM_PROP,
+                                           DEFAULT_LOS_QUANTUM);
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException(
+                    LOS_CACHE_SIZE_PROP + " must not be negative: " + cacheSize);
+        }
+        if (!(quantum > 0)) {
+            throw new IllegalArgumentException(
+                    LOS_QUANTUM_PROP + " must be greater than 0: " + quantum);
+        }
+        this.lineOfSightCache = cacheSize == 0 ? null :
+                new LineOfSightCache(cacheSize, quantum);
+        logger.log(Level.CONFIG,
+                   "Line of sight cache size: {0}, with quantum of {1}",
+                   new Object[]{cacheSize, quantum});
+    }
+    
+    /**
+     * Retrieves the property with the given key from the given properties
+     * object as an Integer value.  If the property does not exist, or it is
+     * an invalid number format, the {@code defaultValue} is returned instead.
+     * 
+     * @param props the {@code Properties} object
+     * @param key the key to get the property of
+     * @param defaultValue the default value if the property does not exist
+     * 
+     * @return the value of the property with the given key as an
+     *         {@code Integer} if it exists and is a valid number format,
+     *         otherwise, returns defaultValue
+     */
+    private static Integer getPropertyAsInteger(Properties props,
+                                                String key,
+                                                Integer defaultValue) {
+        try {
+            return Integer.valueOf(props.getProperty(key));
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Retrieves the property with the given key from the given properties
+     * object as a float value.  If the property does not exist, or it is
+     * an invalid number format, the {@code defaultValue} is returned instead.
+     * 
+     * @param props the {@code Properties} object
+     * @param key the key to get the property of
+     * @param defaultValue the default value if the property does not exist
+     * 
+     * @return the value of the property with the given key as a
+     *         {@code float} if it exists and is a valid number format,
+     *         otherwise, returns defaultValue
+     */
+    private static float getPropertyAsFloat(Properties props,
+                                            String key,
+                                            float defaultValue) {
+        String value = props.getProperty(key);
+        try {
+            return value == null ? defaultValue : Float.parseFloat(value);
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
     }
 
     /** {@inheritDoc} **/
@@ -101,29 +230,103 @@ public class GameWorldServiceImpl implements GameWorldService {
 
     /** {@inheritDoc} **/
     public void shutdown() {
+        if (lineOfSightCache != null) {
+            logger.log(Level.INFO,
+                       "Line of sight cache hits: {0}, misses: {1}",
+                       new Object[]{lineOfSightCache.getHits(),
+                                    lineOfSightCache.getMisses()});
+        }
 
     }
     
     /** {@inheritDoc} */
     public Coordinate trimPath(Coordinate start,
                                Coordinate end) {
-        Vector3f destination = SingletonRegistry.getCollisionManager().
-                getDestination(start.getX(), 
-                               start.getY(),
-                               end.getX(),
-                               end.getY(),
-                               gameWorld);
+        Vector3f destination = pathGrid.getDestination(start.getX(),
+                                                      start.getY(),
+                                                      end.getX(),
+                                                      end.getY(),
+                                                      null);
         return new Coordinate(destination.getX(), destination.getZ());
-
     }
     
     /** {@inheritDoc} */
     public boolean validThrow(Coordinate start,
                               Coordinate end) {
-        return SingletonRegistry.getCollisionManager().validate(start.getX(),
-                                                                start.getY(), 
-                                                                end.getX(), 
-                                                                end.getY(), 
-                                                                gameWorld);
+        return validThrow(start.getX(), start.getY(), end.getX(), end.getY());
+    }
+    
+    /** {@inheritDoc} */
+    public float[] trimPaths(float[] paths) {
+        return pathGrid.getDestinations(paths, null);
+    }
+    
+    /** {@inheritDoc} */
+    public boolean[] validThrows(float[] throwPaths) {
+        if (lineOfSightCache == null) {
+            return throwGrid.validate(throwPaths, null);
+        }
+        if (throwPaths.length % 4 != 0) {
+            throw new IllegalArgumentException(
+                    "Throws must be packed in groups of 4: " + throwPaths.length);
+        }
+        int count = throwPaths.length / 4;
+        boolean[] valid = new boolean[count];
+        long[] keys = new long[count];
+        //only the throws missing from the cache are traced, as one batch
+        int[] misses = new int[count];
+        int missCount = 0;
+        for (int i = 0; i < count; i++) {
+            keys[i] = lineOfSightCache.getKey(throwPaths[i * 4],
+                                              throwPaths[i * 4 + 1],
+                                              throwPaths[i * 4 + 2],
+                                              throwPaths[i * 4 + 3]);
+            Boolean cached = lineOfSightCache.get(keys[i]);
+            if (cached != null) {
+                valid[i] = cached;
+            } else {
+                misses[missCount++] = i;
+            }
+        }
+        if (missCount == 0) {
+            return valid;
+        }
+        float[] batch = new float[missCount * 4];
+        for (int m = 0; m < missCount; m++) {
+            System.arraycopy(throwPaths, misses[m] * 4, batch, m * 4, 4);
+        }
+        boolean[] traced = throwGrid.validate(batch, null);
+        for (int m = 0; m < missCount; m++) {
+            valid[misses[m]] = traced[m];
+            lineOfSightCache.put(keys[misses[m]], traced[m]);
+        }
+        return valid;
+    }
+    
+    /**
+     * Validates a single throw, consulting the line of sight cache first
+     * if it is enabled.
+     */
+    private boolean validThrow(float x1, float y1, float x2, float y2) {
+        if (lineOfSightCache == null) {
+            return throwGrid.validate(x1, y1, x2, y2);
+        }
+        long key = lineOfSightCache.getKey(x1, y1, x2, y2);
+        Boolean cached = lineOfSightCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        boolean valid = throwGrid.validate(x1, y1, x2, y2);
+        lineOfSightCache.put(key, valid);
+        return valid;
+    }
+    
+    /**
+     * Returns the line of sight cache used by this service.
+     * 
+     * @return the line of sight cache, or {@code null} if it is disabled
+     */
+    LineOfSightCache getLineOfSightCache() {
+        return lineOfSightCache;
     }
 }
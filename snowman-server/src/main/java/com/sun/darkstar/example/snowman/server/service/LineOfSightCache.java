@@ -0,0 +1,220 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code LineOfSightCache} is a bounded, thread safe cache of
+ * line of sight results between two points of the static game world.
+ * <p>
+ * Both endpoints are quantized into square cells of a configurable size
+ * and the four cell indices are packed into a single {@code long} key, so
+ * that repeated throws from and to nearly the same positions share a
+ * single entry.  The result cached for a pair of cells is the one computed
+ * for the first pair of points queried in them.
+ * <p>
+ * To keep contention between transaction threads low, the cache is split
+ * into up to 16 independently locked stripes, each evicting its least
+ * recently used entry once full.  The size of the cache is shared out
+ * between the stripes, so the cache never holds more than its size, but
+ * may evict an entry before it is full if the keys crowd one stripe.
+ */
+public class LineOfSightCache {
+    
+    /** The maximum number of independently locked stripes */
+    private static final int STRIPES = 16;
+    
+    /** The mask applied to each quantized cell index */
+    private static final long CELL_MASK = 0xFFFFL;
+    
+    /** The edge length of a quantization cell */
+    private final float quantum;
+    
+    /** The stripes of the cache */
+    private final Stripe[] stripes;
+    
+    /** The number of lookups answered by the cache */
+    private final AtomicLong hits = new AtomicLong();
+    
+    /** The number of lookups not answered by the cache */
+    private final AtomicLong misses = new AtomicLong();
+    
+    /**
+     * Constructs a {@code LineOfSightCache} holding up to
+     * {@code size} entries.
+     * 
+     * @param size the maximum number of cached entries
+     * @param quantum the edge length of a quantization cell
+     * @throws IllegalArgumentException if {@code size} or {@code quantum}
+     *         is not positive
+     */
+    public LineOfSightCache(int size, float quantum) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(
+                    "Cache size must be greater than 0: " + size);
+        }
+        if (!(quantum > 0)) {
+            throw new IllegalArgumentException(
+                    "Quantum must be greater than 0: " + quantum);
+        }
+        this.quantum = quantum;
+        //a power of two no larger than the size, so that every stripe
+        //holds at least one entry
+        int count = Integer.highestOneBit(Math.min(STRIPES, size));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            int capacity = size / count + (i < size % count ? 1 : 0);
+            this.stripes[i] = new Stripe(capacity);
+        }
+    }
+    
+    /**
+     * Computes the cache key of the segment between the given points.
+     * 
+     * @param x1 x coordinate of the start position
+     * @param y1 y coordinate of the start position
+     * @param x2 x coordinate of the end position
+     * @param y2 y coordinate of the end position
+     * @return the packed quantized cells of both endpoints
+     */
+    public long getKey(float x1, float y1, float x2, float y2) {
+        return (quantize(x1) << 48) | (quantize(y1) << 32) |
+               (quantize(x2) << 16) | quantize(y2);
+    }
+    
+    /**
+     * Quantizes the given coordinate to its 16 bit cell index.
+     */
+    private long quantize(float value) {
+        return ((long) Math.floor(value / quantum)) & CELL_MASK;
+    }
+    
+    /**
+     * Retrieves the stripe owning the given key.
+     */
+    private Stripe getStripe(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (h >>> 60) & (stripes.length - 1)];
+    }
+    
+    /**
+     * Retrieves the cached result for the given key.
+     * 
+     * @param key the key as returned by {@link #getKey}
+     * @return the cached result, or {@code null} if there is none
+     */
+    public Boolean get(long key) {
+        Stripe stripe = getStripe(key);
+        Boolean result;
+        synchronized (stripe) {
+            result = stripe.get(key);
+        }
+        if (result == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return result;
+    }
+    
+    /**
+     * Caches the result for the given key, evicting the least recently
+     * used entry of its stripe if it is full.
+     * 
+     * @param key the key as returned by {@link #getKey}
+     * @param result the line of sight result
+     */
+    public void put(long key, boolean result) {
+        Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            stripe.put(key, result);
+        }
+    }
+    
+    /**
+     * Returns the number of lookups answered by the cache.
+     * 
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+    
+    /**
+     * Returns the number of lookups not answered by the cache.
+     * 
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    /**
+     * Returns the number of entries currently cached.
+     * 
+     * @return the number of cached entries
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * A single stripe of the cache, a {@code LinkedHashMap} in access order
+     * which drops its eldest entry when it grows past its capacity.
+     */
+    private static class Stripe extends LinkedHashMap<Long, Boolean> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+        
+        Stripe(int capacity) {
+            super(capacity * 2, 0.75f, true);
+            this.capacity = capacity;
+        }
+        
+        /** {@inheritDoc} */
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -37,10 +37,13 @@ package com.sun.darkstar.example.snowman.server.tasks;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanPlayer;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanGame;
 import com.sun.darkstar.example.snowman.server.interfaces.GameFactory;
+import com.sun.darkstar.example.snowman.server.interfaces.GamePool;
 import com.sun.darkstar.example.snowman.server.interfaces.EntityFactory;
+import com.sun.darkstar.example.snowman.server.impl.GameClock;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
 import com.sun.sgs.app.AppContext;
 import com.sun.sgs.app.Task;
+import com.sun.sgs.app.ManagedObject;
 import com.sun.sgs.app.ManagedReference;
 import com.sun.sgs.app.ObjectNotFoundException;
 import java.io.Serializable;
@@ -48,33 +51,57 @@ import java.util.Deque;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Arrays;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * This task is a self re-scheduling task that polls the front of the
- * login deques and uses the players to start a new game.
+ * This task is a managed, event driven task that pulls players off the
+ * front of the login deques and uses them to start new games.
  * 
  * During each execution of the task, each individual deque will be
  * polled at most once.  The polled players will be added to a local
  * list of waiting players.  If the local list fills up, a game
- * will be started, the local list will be emptied,
- * and the matchmaker will be rescheduled.
- * If local list does not fill up,
- * the task is rescheduled to fill it.
+ * will be started and the local list will be emptied.
+ * As long as players are found, the task reschedules itself immediately.
+ * Once every deque has been found empty, the task goes idle instead of
+ * polling, and is woken up with {@link #wake} as soon as a player is
+ * added to an empty deque.
+ * 
+ * Matchmaking may be sharded across several matchmakers, each owning a
+ * subset of the login deques.  Every shard but the first hands the players
+ * it could not fit into a game to an overflow deque owned by the first
+ * shard when it goes idle, so that players spread over several shards
+ * can still be matched together.  The first shard never hands players off.
+ * 
+ * If the matchmaker is given a {@link GamePool}, games are checked out of
+ * the pool instead of being created while matching, and are returned to it
+ * once they end.  While no players are waiting, the matchmaker tops the pool
+ * up with new games, one per execution, before going idle.
+ * 
+ * The task also keeps a histogram of the time players spent waiting
+ * between logging in and being placed into a game.
  * 
  * @author Owen Kellett
  */
-public class MatchmakerTask implements Task, Serializable {
+public class MatchmakerTask implements ManagedObject, Task, Serializable {
     
     /** The version of the serialized form. */
     public static final long serialVersionUID = 1L;
     private static final Logger logger = 
             Logger.getLogger(MatchmakerTask.class.getName());
     
-    private static final int POLLINGINTERVAL = 2 * 1000;
+    /**
+     * Number of buckets in the wait time histogram.  Bucket {@code i}
+     * counts waits of less than {@code 2^i} milliseconds that did not fit
+     * in the previous bucket, and the last bucket counts all longer waits.
+     */
+    public static final int WAIT_BUCKETS = 20;
     private static final String NAME_PREFIX = "Game";
     
-    private int gameCount = 0;
+    private final int shard;
+    private final int shardCount;
+    private int gameCount;
     private final int numPlayersPerGame;
     private final int numRobotsPerGame;
     private final int robotDelay;
@@ -82,9 +109,18 @@ public class MatchmakerTask implements Task, Serializable {
     private GameFactory gameFactory;
     private EntityFactory entityFactory;
     
+    private boolean idle = false;
+    private final long[] waitHistogram = new long[WAIT_BUCKETS];
+    
     private List<ManagedReference<SnowmanPlayer>> waitingPlayers;
     private ManagedReference<Deque<ManagedReference<SnowmanPlayer>>>[] 
             waitingDeques;
+    private ManagedReference<Deque<ManagedReference<SnowmanPlayer>>> 
+            overflowDequeRef;
+    private ManagedReference<MatchmakerTask> overflowMatchmakerRef;
+    private ManagedReference<GamePool> gamePoolRef;
+    private long gameTickInterval = 0;
+    private float gameInterestRadius = 0;
     
     /**
      * Constructs a {@code MatchmakerTask} with the given attributes
@@ -103,6 +139,34 @@ public class MatchmakerTask implements Task, Serializable {
                           GameFactory gameFactory,
                           EntityFactory entityFactory,
                           ManagedReference<Deque<ManagedReference<SnowmanPlayer>>>[] waitingDeques) {
+        this(0, 1, numPlayersPerGame, numRobotsPerGame, robotDelay,
+             gameFactory, entityFactory, waitingDeques);
+    }
+    
+    /**
+     * Constructs a {@code MatchmakerTask} for one shard of the login
+     * deques with the given attributes and components.
+     * 
+     * @param shard index of this shard
+     * @param shardCount total number of shards
+     * @param numPlayersPerGame number of human players to include in a game
+     * @param numRobotsPerGame number of server controlled robots per game
+     * @param robotDelay configured delay between robot actions
+     * @param gameFactory factory to create game objects
+     * @param entityFactory factory to create in-game artifacts
+     * @param waitingDeques array of queues owned by this shard
+     */
+    public MatchmakerTask(int shard,
+                          int shardCount,
+                          int numPlayersPerGame,
+                          int numRobotsPerGame,
+                          int robotDelay,
+                          GameFactory gameFactory,
+                          EntityFactory entityFactory,
+                          ManagedReference<Deque<ManagedReference<SnowmanPlayer>>>[] waitingDeques) {
+        this.shard = shard;
+        this.shardCount = shardCount;
+        this.gameCount = shard;
         this.numPlayersPerGame = numPlayersPerGame;
         this.numRobotsPerGame = numRobotsPerGame;
         this.robotDelay = robotDelay;
@@ -114,8 +178,104 @@ public class MatchmakerTask implements Task, Serializable {
         this.waitingDeques = waitingDeques;
     }
 
+    /**
+     * Sets the overflow deque and its owning matchmaker that this shard
+     * hands its leftover players to when it goes idle.
+     * 
+     * @param overflowDeque the deque to hand leftover players to
+     * @param overflowMatchmaker the matchmaker owning the overflow deque
+     */
+    public void setOverflow(
+            Deque<ManagedReference<SnowmanPlayer>> overflowDeque,
+            MatchmakerTask overflowMatchmaker) {
+        AppContext.getDataManager().markForUpdate(this);
+        this.overflowDequeRef = 
+                AppContext.getDataManager().createReference(overflowDeque);
+        this.overflowMatchmakerRef = 
+                AppContext.getDataManager().createReference(overflowMatchmaker);
+    }
+    
+    /**
+     * Sets the pool that this matchmaker checks games out of and keeps
+     * filled while no players are waiting.
+     * 
+     * @param gamePool the pool of games
+     */
+    public void setGamePool(GamePool gamePool) {
+        AppContext.getDataManager().markForUpdate(this);
+        this.gamePoolRef = 
+                AppContext.getDataManager().createReference(gamePool);
+    }
+    
+    /**
+     * Sets the tick interval of the games started by this matchmaker.
+     * 
+     * @param gameTickInterval the tick interval in milliseconds, or 0 for
+     *        games which apply commands as soon as they are received
+     * @see SnowmanGame#setTickInterval(long)
+     */
+    public void setGameTickInterval(long gameTickInterval) {
+        AppContext.getDataManager().markForUpdate(this);
+        this.gameTickInterval = gameTickInterval;
+    }
+    
+    /**
+     * Sets the area of interest radius of the players of the games started
+     * by this matchmaker.
+     * 
+     * @param gameInterestRadius the interest radius, or 0 for games which
+     *        send all movement to every player
+     * @see SnowmanGame#setInterestRadius(float)
+     */
+    public void setGameInterestRadius(float gameInterestRadius) {
+        AppContext.getDataManager().markForUpdate(this);
+        this.gameInterestRadius = gameInterestRadius;
+    }
+    
+    /**
+     * Returns the index of the shard handled by this matchmaker.
+     * 
+     * @return the shard index
+     */
+    public int getShard() {
+        return shard;
+    }
+    
+    /**
+     * Wakes up the matchmaker if it is idle.  This should be called
+     * whenever a player is added to an empty waiting deque.
+     */
+    public void wake() {
+        if (idle) {
+            AppContext.getDataManager().markForUpdate(this);
+            idle = false;
+            AppContext.getTaskManager().scheduleTask(this);
+        }
+    }
+    
+    /**
+     * Returns whether the matchmaker is idle, waiting to be woken up by
+     * a player login.
+     * 
+     * @return true if the matchmaker is idle
+     */
+    public boolean isIdle() {
+        return idle;
+    }
+    
+    /**
+     * Returns a copy of the wait time histogram of matched players.
+     * 
+     * @return the number of players in each wait time bucket
+     * @see #WAIT_BUCKETS
+     */
+    public long[] getWaitHistogram() {
+        return waitHistogram.clone();
+    }
+
     /** {@inheritDoc} */
     public void run() throws Exception {
+        AppContext.getDataManager().markForUpdate(this);
         boolean playersFound = false;
         //cycle through the front of each queue, adding players to the waiting
         //list as they are found
@@ -133,13 +293,70 @@ public class MatchmakerTask implements Task, Serializable {
         }
         
         // if no players are found in the queue during this iteration
-        // schedule a delay for the next polling cycle
+        // fill up the game pool and then go idle until a login wakes the
+        // matchmaker up
         // otherwise, schedule the next cycle to occur immediately
         if (playersFound) {
             AppContext.getTaskManager().scheduleTask(this);
         } else {
-            AppContext.getTaskManager().scheduleTask(this, POLLINGINTERVAL);
+            rebalance();
+            if (fillGamePool()) {
+                AppContext.getTaskManager().scheduleTask(this);
+            } else {
+                idle = true;
+            }
+        }
+    }
+    
+    /**
+     * Adds a new game to the game pool if it is not full.
+     * 
+     * @return true if a game was added to the pool
+     */
+    private boolean fillGamePool() {
+        if (gamePoolRef == null) {
+            return false;
+        }
+        GamePool pool = gamePoolRef.get();
+        if (pool.getAvailable() >= pool.getCapacity()) {
+            return false;
         }
+        SnowmanGame game = createGame();
+        game.setGamePool(pool);
+        return pool.checkIn(game);
+    }
+    
+    /**
+     * Creates a new game with a unique name.
+     * 
+     * @return the new game
+     */
+    private SnowmanGame createGame() {
+        String gameName = NAME_PREFIX + gameCount;
+        gameCount += shardCount;
+        return gameFactory.createSnowmanGame(gameName,
+                                             numPlayersPerGame + 
+                                             numRobotsPerGame,
+                                             entityFactory);
+    }
+    
+    /**
+     * Hands the players waiting in this shard over to the overflow deque
+     * and wakes up its matchmaker, if this shard has an overflow.
+     */
+    private void rebalance() {
+        if (overflowDequeRef == null || waitingPlayers.isEmpty()) {
+            return;
+        }
+        Deque<ManagedReference<SnowmanPlayer>> overflow = 
+                overflowDequeRef.get();
+        overflow.addAll(waitingPlayers);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Shard {0} handed {1} players to overflow",
+                       new Object[]{shard, waitingPlayers.size()});
+        }
+        waitingPlayers.clear();
+        overflowMatchmakerRef.get().wake();
     }
     
     private void startGame() {
@@ -159,16 +376,26 @@ public class MatchmakerTask implements Task, Serializable {
         }
         
         //start the game if all waiting players are still connected
-        String gameName = NAME_PREFIX + (gameCount++);
-        SnowmanGame game = 
-                gameFactory.createSnowmanGame(gameName,
-                                              numPlayersPerGame + 
-                                              numRobotsPerGame,
-                                              entityFactory);
+        SnowmanGame game = null;
+        if (gamePoolRef != null) {
+            game = gamePoolRef.get().checkOut();
+        }
+        if (game == null) {
+            game = createGame();
+            if (gamePoolRef != null) {
+                game.setGamePool(gamePoolRef.get());
+            }
+        }
+        String gameName = game.getName();
+        game.setTickInterval(gameTickInterval);
+        game.setInterestRadius(gameInterestRadius);
         ETeamColor color = ETeamColor.values()[0];
+        long now = GameClock.currentTimeMillis();
         for (Iterator<ManagedReference<SnowmanPlayer>> ip = 
                 waitingPlayers.iterator(); ip.hasNext(); ) {
-            game.addPlayer(ip.next().get(), color);
+            SnowmanPlayer player = ip.next().get();
+            recordWait(now - player.getLoginTime());
+            game.addPlayer(player, color);
             color = ETeamColor.values()[(color.ordinal() + 1) % 
                     ETeamColor.values().length];
         }
@@ -184,5 +411,22 @@ public class MatchmakerTask implements Task, Serializable {
         
         //clear out the waiting list
         waitingPlayers.clear();
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Started {0}, wait time histogram: {1}",
+                       new Object[]{gameName, Arrays.toString(waitHistogram)});
+        }
+    }
+    
+    /**
+     * Records the given wait time in the wait time histogram.
+     * 
+     * @param wait the wait time in milliseconds
+     */
+    private void recordWait(long wait) {
+        int bucket = 0;
+        while (bucket < WAIT_BUCKETS - 1 && wait >= (1L << bucket)) {
+            bucket++;
+        }
+        waitHistogram[bucket]++;
     }
 }
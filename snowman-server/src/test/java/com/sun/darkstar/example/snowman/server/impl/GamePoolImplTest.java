@@ -0,0 +1,91 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanGame;
+import net.java.dev.mocksgs.MockSGS;
+import org.junit.Test;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.After;
+import org.easymock.EasyMock;
+
+/**
+ * Test the GamePoolImpl
+ */
+public class GamePoolImplTest 
+{
+    @Before
+    public void initializeContext() {
+        MockSGS.init();
+    }
+    
+    @After
+    public void takeDownContext() {
+        MockSGS.reset();
+    }
+    
+    @Test
+    public void checkOutEmptyTest() {
+        GamePoolImpl pool = new GamePoolImpl(2);
+        Assert.assertNull(pool.checkOut());
+        Assert.assertEquals(0, pool.getAvailable());
+    }
+    
+    @Test
+    public void checkInOutTest() {
+        GamePoolImpl pool = new GamePoolImpl(2);
+        SnowmanGame game = EasyMock.createMock(SnowmanGame.class);
+        
+        Assert.assertTrue(pool.checkIn(game));
+        Assert.assertEquals(1, pool.getAvailable());
+        Assert.assertSame(game, pool.checkOut());
+        Assert.assertEquals(0, pool.getAvailable());
+    }
+    
+    @Test
+    public void checkInFullTest() {
+        GamePoolImpl pool = new GamePoolImpl(1);
+        
+        Assert.assertTrue(pool.checkIn(EasyMock.createMock(SnowmanGame.class)));
+        Assert.assertFalse(pool.checkIn(EasyMock.createMock(SnowmanGame.class)));
+        Assert.assertEquals(1, pool.getAvailable());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidCapacityTest() {
+        new GamePoolImpl(0);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import net.java.dev.mocksgs.MockSGS;
+import org.junit.Test;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.After;
+
+/**
+ * Test the GameTimer
+ */
+public class GameTimerTest 
+{
+    @Before
+    public void initializeContext()
+    {
+        MockSGS.init();
+    }
+    
+    @After
+    public void takeDownContext()
+    {
+        MockSGS.reset();
+    }
+    
+    /**
+     * Verify that events come out in time order, whatever the order they
+     * were added in
+     */
+    @Test
+    public void orderTest() {
+        GameTimer timer = new GameTimer();
+        Assert.assertEquals(Long.MAX_VALUE, timer.getNextTime());
+        Assert.assertFalse(timer.isDue(Long.MAX_VALUE - 1));
+        
+        long[] times = {500, 100, 900, 300, 700, 200, 800, 400, 600, 0};
+        for (int i = 0; i < times.length; i++) {
+            Assert.assertTrue(timer.add(times[i], i % 3, i) != 0);
+        }
+        Assert.assertEquals(times.length, timer.size());
+        Assert.assertFalse(timer.isDue(-1));
+        
+        long last = -1;
+        while (timer.isDue(1000)) {
+            long time = timer.getNextTime();
+            int target = timer.getNextTarget();
+            Assert.assertTrue(time >= last);
+            Assert.assertEquals(times[target], time);
+            Assert.assertEquals(target % 3, timer.getNextEvent());
+            timer.removeNext();
+            last = time;
+        }
+        Assert.assertEquals(0, timer.size());
+    }
+    
+    /**
+     * Verify that cancelled events are no longer run, and that events can
+     * only be cancelled once
+     */
+    @Test
+    public void cancelTest() {
+        GameTimer timer = new GameTimer();
+        int first = timer.add(100, 0, 1);
+        int second = timer.add(200, 0, 2);
+        int third = timer.add(300, 0, 3);
+        
+        Assert.assertTrue(timer.cancel(first));
+        Assert.assertFalse(timer.cancel(first));
+        Assert.assertTrue(timer.cancel(third));
+        Assert.assertEquals(1, timer.size());
+        Assert.assertEquals(2, timer.getNextTarget());
+        Assert.assertEquals(200, timer.getNextTime());
+        
+        timer.removeNext();
+        Assert.assertFalse(timer.cancel(second));
+        
+        timer.add(400, 0, 4);
+        timer.clear();
+        Assert.assertEquals(0, timer.size());
+    }
+    
+    /**
+     * Verify that a new drain task is only needed when there is none
+     * pending early enough for the next event
+     */
+    @Test
+    public void startTaskTest() {
+        GameTimer timer = new GameTimer();
+        Assert.assertEquals(0, timer.startTask(0));
+        
+        timer.add(40000, 1, 100);
+        int late = timer.startTask(0);
+        Assert.assertTrue(late != 0);
+        Assert.assertEquals(0, timer.startTask(0));
+        
+        //an event close to the pending task does not need another one
+        timer.add(40000 - GameTimer.RESOLUTIONMS, 0, 1);
+        Assert.assertEquals(0, timer.startTask(0));
+        
+        //an earlier event supersedes the pending task
+        timer.add(10000, 0, 2);
+        int early = timer.startTask(0);
+        Assert.assertTrue(early != 0 && early != late);
+        Assert.assertFalse(timer.runTask(late));
+        Assert.assertTrue(timer.runTask(early));
+        Assert.assertFalse(timer.runTask(early));
+        
+        //clearing forgets the pending task
+        int next = timer.startTask(10000);
+        timer.clear();
+        Assert.assertFalse(timer.runTask(next));
+    }
+}
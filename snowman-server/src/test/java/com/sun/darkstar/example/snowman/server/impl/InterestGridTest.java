@@ -0,0 +1,174 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+import net.java.dev.mocksgs.MockSGS;
+import org.junit.Test;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.After;
+
+/**
+ * Test the InterestGrid
+ */
+public class InterestGridTest 
+{
+    private InterestGrid grid;
+    
+    @Before
+    public void initializeContext() {
+        MockSGS.init();
+        grid = new InterestGrid(8.0f);
+    }
+    
+    @After
+    public void takeDownContext() {
+        MockSGS.reset();
+    }
+    
+    private Set<Integer> move(int id, float x, float y) {
+        return grid.move(id, x, y, new HashSet<Integer>());
+    }
+    
+    /**
+     * Verify that a mover is interested in its own move as well as in
+     * players within the radius, but not in players far away
+     */
+    @Test
+    public void moveTest() {
+        grid.update(1, 10.0f, 10.0f);
+        grid.update(2, 17.0f, 10.0f);
+        grid.update(3, 60.0f, 60.0f);
+        
+        Set<Integer> interested = move(1, 11.0f, 10.0f);
+        Assert.assertTrue(interested.contains(1));
+        Assert.assertTrue(interested.contains(2));
+        Assert.assertFalse(interested.contains(3));
+        
+        interested = move(3, 61.0f, 60.0f);
+        Assert.assertEquals(1, interested.size());
+        Assert.assertTrue(interested.contains(3));
+    }
+    
+    /**
+     * Verify that players within the radius of each other are always
+     * interested in each other, wherever they are in their cells
+     */
+    @Test
+    public void radiusTest() {
+        for (float x = 0.0f; x < 48.0f; x += 0.7f) {
+            grid.update(1, x, 20.0f);
+            Assert.assertTrue(move(2, x + 7.9f, 20.0f).contains(1));
+            Assert.assertTrue(move(2, x - 7.9f, 20.0f).contains(1));
+        }
+    }
+    
+    /**
+     * Verify that a player moving just over a cell border keeps its cell
+     * until it is further than the margin
+     */
+    @Test
+    public void hysteresisTest() {
+        float size = grid.getCellSize();
+        grid.update(1, size - 0.1f, 1.0f);
+        Long cell = grid.getCell(1);
+        
+        Assert.assertFalse(grid.update(1, size + 0.1f, 1.0f));
+        Assert.assertFalse(grid.update(1, size - 0.1f, 1.0f));
+        Assert.assertEquals(cell, grid.getCell(1));
+        
+        Assert.assertTrue(grid.update(1, size * 1.5f, 1.0f));
+        Assert.assertFalse(cell.equals(grid.getCell(1)));
+    }
+    
+    /**
+     * Verify that players moving between far away cells are seen at both
+     * ends of their move
+     */
+    @Test
+    public void moveAcrossTest() {
+        grid.update(1, 5.0f, 5.0f);
+        grid.update(2, 80.0f, 80.0f);
+        grid.update(3, 6.0f, 5.0f);
+        
+        Set<Integer> interested = move(1, 79.0f, 80.0f);
+        Assert.assertTrue(interested.contains(2));
+        Assert.assertTrue(interested.contains(3));
+        
+        //player 1 is now only near player 2
+        interested = move(3, 7.0f, 5.0f);
+        Assert.assertFalse(interested.contains(1));
+    }
+    
+    /**
+     * Verify that the players coming into view of a mover are reported
+     * once, when the mover changes cell, and never include the mover
+     */
+    @Test
+    public void enteredTest() {
+        grid.update(1, 5.0f, 5.0f);
+        grid.update(2, 80.0f, 80.0f);
+        grid.update(3, 6.0f, 5.0f);
+        
+        Set<Integer> entered = new HashSet<Integer>();
+        grid.move(1, 79.0f, 80.0f, entered);
+        Assert.assertEquals(1, entered.size());
+        Assert.assertTrue(entered.contains(2));
+        
+        //moving within the cell brings nobody new into view
+        entered.clear();
+        grid.move(1, 80.0f, 79.0f, entered);
+        Assert.assertTrue(entered.isEmpty());
+        
+        //moving back brings player 3 back into view
+        grid.move(1, 5.0f, 5.0f, entered);
+        Assert.assertEquals(1, entered.size());
+        Assert.assertTrue(entered.contains(3));
+    }
+    
+    @Test
+    public void removeTest() {
+        grid.update(1, 5.0f, 5.0f);
+        grid.update(2, 6.0f, 5.0f);
+        grid.remove(1);
+        Assert.assertNull(grid.getCell(1));
+        Assert.assertFalse(move(2, 6.0f, 6.0f).contains(1));
+        
+        grid.clear();
+        Assert.assertNull(grid.getCell(2));
+    }
+}
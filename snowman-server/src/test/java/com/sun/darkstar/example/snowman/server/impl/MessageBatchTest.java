@@ -0,0 +1,131 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanPlayer;
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
+import com.sun.darkstar.example.snowman.common.protocol.messages.ServerMessages;
+import org.junit.Test;
+import org.easymock.EasyMock;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test the MessageBatch class
+ */
+public class MessageBatchTest 
+{
+    private SnowmanPlayer createPlayer(int version) {
+        SnowmanPlayer player = EasyMock.createMock(SnowmanPlayer.class);
+        EasyMock.expect(player.getProtocolVersion()).andStubReturn(version);
+        return player;
+    }
+    
+    /**
+     * Verify that the messages of a player which supports envelopes are
+     * sent in a single envelope, while the messages of an older player
+     * are sent one by one in order
+     */
+    @Test
+    public void flushTest() {
+        SnowmanPlayer player = createPlayer(Messages.PROTOCOL_ENVELOPE);
+        SnowmanPlayer oldPlayer = createPlayer(Messages.PROTOCOL_ORIGINAL);
+        ByteBuffer first = ServerMessages.createStartGamePkt();
+        ByteBuffer second = ServerMessages.createRemoveMOBPkt(10);
+        
+        List<ByteBuffer> messages = new ArrayList<ByteBuffer>();
+        messages.add(first);
+        messages.add(second);
+        player.send(ServerMessages.createEnvelopePkt(messages));
+        EasyMock.replay(player);
+        oldPlayer.send(first);
+        oldPlayer.send(second);
+        EasyMock.replay(oldPlayer);
+        
+        MessageBatch batch = new MessageBatch();
+        batch.addAll(Arrays.asList(player, oldPlayer), first);
+        batch.addAll(Arrays.asList(player, oldPlayer), second);
+        batch.flush();
+        
+        EasyMock.verify(player);
+        EasyMock.verify(oldPlayer);
+        
+        //a flushed batch is empty
+        EasyMock.resetToDefault(player);
+        EasyMock.replay(player);
+        batch.flush();
+        EasyMock.verify(player);
+    }
+    
+    /**
+     * Verify that a single message is not wrapped in an envelope
+     */
+    @Test
+    public void singleMessageTest() {
+        SnowmanPlayer player = createPlayer(Messages.PROTOCOL_ENVELOPE);
+        ByteBuffer message = ServerMessages.createStartGamePkt();
+        player.send(message);
+        EasyMock.replay(player);
+        
+        MessageBatch batch = new MessageBatch();
+        batch.add(player, message);
+        batch.flush();
+        
+        EasyMock.verify(player);
+    }
+    
+    /**
+     * Verify that messages which do not fit in one envelope are split
+     * into several envelopes
+     */
+    @Test
+    public void splitTest() {
+        SnowmanPlayer player = createPlayer(Messages.PROTOCOL_ENVELOPE);
+        ByteBuffer message = ByteBuffer.allocate(MessageBatch.MAX_ENVELOPE_SIZE / 2);
+        player.send(ServerMessages.createEnvelopePkt(Arrays.asList(message)));
+        EasyMock.expectLastCall().times(3);
+        EasyMock.replay(player);
+        
+        MessageBatch batch = new MessageBatch();
+        for (int i = 0; i < 3; i++) {
+            batch.add(player, message);
+        }
+        batch.flush();
+        
+        EasyMock.verify(player);
+    }
+}
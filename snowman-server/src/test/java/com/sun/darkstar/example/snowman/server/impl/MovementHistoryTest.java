@@ -0,0 +1,142 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.common.util.Coordinate;
+import org.junit.Test;
+import org.junit.Assert;
+
+/**
+ * Test the MovementHistory
+ */
+public class MovementHistoryTest 
+{
+    /**
+     * Verify that positions before the latest segment are interpolated
+     * along the segment that was current at the time
+     */
+    @Test
+    public void getPositionBeforeTest() {
+        MovementHistory history = new MovementHistory(4, 10000);
+        Assert.assertNull(history.getPositionBefore(100));
+        
+        history.record(100, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f);
+        history.record(200, 0.0f, 0.0f, 10.0f, 0.0f, 0.01f);
+        history.record(2000, 10.0f, 0.0f, 10.0f, 10.0f, 0.01f);
+        
+        Assert.assertNull(history.getPositionBefore(2000));
+        Assert.assertEquals(new Coordinate(0.0f, 0.0f), 
+                            history.getPositionBefore(150));
+        Assert.assertEquals(new Coordinate(5.0f, 0.0f), 
+                            history.getPositionBefore(700));
+        Assert.assertEquals(new Coordinate(10.0f, 0.0f), 
+                            history.getPositionBefore(1500));
+        Assert.assertEquals(new Coordinate(0.0f, 0.0f), 
+                            history.getPositionBefore(50));
+    }
+    
+    /**
+     * Verify that the oldest segments are replaced once the history is
+     * full, and that times before the history give the oldest position
+     */
+    @Test
+    public void wrapTest() {
+        MovementHistory history = new MovementHistory(2, 10000);
+        history.record(100, 1.0f, 1.0f, 1.0f, 1.0f, 0.0f);
+        history.record(200, 2.0f, 2.0f, 2.0f, 2.0f, 0.0f);
+        history.record(300, 3.0f, 3.0f, 3.0f, 3.0f, 0.0f);
+        
+        Assert.assertEquals(new Coordinate(2.0f, 2.0f), 
+                            history.getPositionBefore(250));
+        Assert.assertEquals(new Coordinate(2.0f, 2.0f), 
+                            history.getPositionBefore(150));
+        
+        history.clear();
+        Assert.assertNull(history.getPositionBefore(150));
+    }
+    
+    /**
+     * Verify that the segments which ended more than the maximum age
+     * before the latest one are dropped, and that the segment current at
+     * the maximum age is kept
+     */
+    @Test
+    public void maxAgeTest() {
+        MovementHistory history = new MovementHistory(8, 1000);
+        history.record(0, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f);
+        history.record(500, 1.0f, 0.0f, 5.0f, 0.0f, 0.01f);
+        history.record(1200, 2.0f, 2.0f, 2.0f, 2.0f, 0.0f);
+        history.record(1600, 3.0f, 3.0f, 3.0f, 3.0f, 0.0f);
+        
+        Assert.assertEquals(new Coordinate(2.0f, 0.0f), 
+                            history.getPositionBefore(600));
+        Assert.assertEquals(new Coordinate(1.0f, 0.0f), 
+                            history.getPositionBefore(100));
+        Assert.assertEquals(new Coordinate(2.0f, 2.0f), 
+                            history.getPositionBefore(1500));
+    }
+    
+    /**
+     * Verify that a segment recorded out of order starts at the time of
+     * the latest segment
+     */
+    @Test
+    public void recordOutOfOrderTest() {
+        MovementHistory history = new MovementHistory(4, 10000);
+        history.record(200, 1.0f, 1.0f, 1.0f, 1.0f, 0.0f);
+        history.record(100, 2.0f, 2.0f, 2.0f, 2.0f, 0.0f);
+        history.record(300, 3.0f, 3.0f, 3.0f, 3.0f, 0.0f);
+        
+        Assert.assertEquals(new Coordinate(2.0f, 2.0f), 
+                            history.getPositionBefore(250));
+        Assert.assertEquals(new Coordinate(1.0f, 1.0f), 
+                            history.getPositionBefore(150));
+    }
+    
+    /**
+     * Verify that the interpolated position never passes the destination
+     */
+    @Test
+    public void getPositionTest() {
+        Coordinate position = MovementHistory.getPosition(0.0f, 0.0f, 
+                                                          6.0f, 8.0f,
+                                                          0.01f, 500);
+        Assert.assertEquals(3.0f, position.getX(), 0.0001f);
+        Assert.assertEquals(4.0f, position.getY(), 0.0001f);
+        Assert.assertEquals(new Coordinate(6.0f, 8.0f),
+                            MovementHistory.getPosition(0.0f, 0.0f, 6.0f, 8.0f,
+                                                        0.01f, 5000));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanFlag;
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.ManagedReference;
+import net.java.dev.mocksgs.MockSGS;
+import org.junit.Test;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.After;
+import org.easymock.EasyMock;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test the ReferenceTable
+ */
+public class ReferenceTableTest 
+{
+    @Before
+    public void initializeContext()
+    {
+        MockSGS.init();
+    }
+    
+    @After
+    public void takeDownContext()
+    {
+        MockSGS.reset();
+    }
+    
+    private ManagedReference<SnowmanFlag> createRef() {
+        SnowmanFlag flag = EasyMock.createNiceMock(SnowmanFlag.class);
+        EasyMock.replay(flag);
+        return AppContext.getDataManager().createReference(flag);
+    }
+    
+    /**
+     * Verify that entries are found, replaced and removed while the table
+     * is inline, and listed in the order they were added
+     */
+    @Test
+    public void inlineTest() {
+        ReferenceTable<SnowmanFlag> table = new ReferenceTable<SnowmanFlag>();
+        ManagedReference<SnowmanFlag> a = createRef();
+        ManagedReference<SnowmanFlag> b = createRef();
+        ManagedReference<SnowmanFlag> c = createRef();
+        table.put(3, a);
+        table.put(1, b);
+        table.put(2, c);
+        Assert.assertEquals(3, table.size());
+        Assert.assertSame(b, table.get(1));
+        Assert.assertNull(table.get(4));
+        Assert.assertEquals(Arrays.asList(3, 1, 2), 
+                            new ArrayList<Integer>(table.ids()));
+        Assert.assertEquals(Arrays.asList(a, b, c), 
+                            new ArrayList<ManagedReference<SnowmanFlag>>(
+                            table.values()));
+        
+        table.put(1, a);
+        Assert.assertEquals(3, table.size());
+        Assert.assertSame(a, table.get(1));
+        
+        Assert.assertSame(a, table.remove(3));
+        Assert.assertNull(table.remove(3));
+        Assert.assertNull(table.get(3));
+        Assert.assertEquals(Arrays.asList(1, 2), 
+                            new ArrayList<Integer>(table.ids()));
+        
+        table.clear();
+        Assert.assertEquals(0, table.size());
+        Assert.assertNull(table.get(1));
+    }
+    
+    /**
+     * Verify that the entries are kept when the table grows past the
+     * inline limit
+     */
+    @Test
+    public void scalableTest() {
+        ReferenceTable<SnowmanFlag> table = new ReferenceTable<SnowmanFlag>();
+        List<ManagedReference<SnowmanFlag>> refs = 
+                new ArrayList<ManagedReference<SnowmanFlag>>();
+        for (int i = 0; i < 2 * ReferenceTable.INLINELIMIT; i++) {
+            refs.add(createRef());
+            table.put(i, refs.get(i));
+        }
+        Assert.assertEquals(refs.size(), table.size());
+        for (int i = 0; i < refs.size(); i++) {
+            Assert.assertSame(refs.get(i), table.get(i));
+        }
+        Assert.assertEquals(refs.size(), table.ids().size());
+        Assert.assertTrue(table.values().containsAll(refs));
+        
+        Assert.assertSame(refs.get(0), table.remove(0));
+        Assert.assertNull(table.get(0));
+        table.clear();
+        Assert.assertEquals(0, table.size());
+        table.removeMap();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.darkstar.example.snowman.common.util.Coordinate;
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanFlag;
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanPlayer;
+import net.java.dev.mocksgs.MockSGS;
+import org.junit.Test;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.After;
+import org.easymock.EasyMock;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Test the RobotStrategy
+ */
+public class RobotStrategyTest 
+{
+    @Before
+    public void initializeContext()
+    {
+        MockSGS.init();
+    }
+    
+    @After
+    public void takeDownContext()
+    {
+        MockSGS.reset();
+    }
+    
+    private SnowmanPlayer createPlayer(int id, ETeamColor color,
+                                       float x, float y) {
+        SnowmanPlayer player = EasyMock.createNiceMock(SnowmanPlayer.class);
+        EasyMock.expect(player.getID()).andStubReturn(id);
+        EasyMock.expect(player.getTeamColor()).andStubReturn(color);
+        EasyMock.expect(player.getExpectedPositionAtTime(EasyMock.anyLong())).
+                andStubReturn(new Coordinate(x, y));
+        EasyMock.replay(player);
+        return player;
+    }
+    
+    /**
+     * Verify that the snapshot records the players and flags, and finds
+     * the opponents and the flag to go after for a team
+     */
+    @Test
+    public void snapshotTest() {
+        SnowmanFlag redFlag = EasyMock.createNiceMock(SnowmanFlag.class);
+        EasyMock.expect(redFlag.getID()).andStubReturn(100);
+        EasyMock.expect(redFlag.getTeamColor()).andStubReturn(ETeamColor.Red);
+        EasyMock.expect(redFlag.getX()).andStubReturn(1.0f);
+        EasyMock.expect(redFlag.getY()).andStubReturn(2.0f);
+        EasyMock.replay(redFlag);
+        SnowmanFlag blueFlag = EasyMock.createNiceMock(SnowmanFlag.class);
+        EasyMock.expect(blueFlag.getID()).andStubReturn(101);
+        EasyMock.expect(blueFlag.getTeamColor()).andStubReturn(ETeamColor.Blue);
+        EasyMock.expect(blueFlag.isHeld()).andStubReturn(true);
+        EasyMock.replay(blueFlag);
+        
+        RobotStrategy.Snapshot snapshot = new RobotStrategy.Snapshot(
+                10L,
+                Arrays.asList(createPlayer(1, ETeamColor.Red, 5.0f, 6.0f),
+                              createPlayer(2, ETeamColor.Blue, 7.0f, 8.0f),
+                              createPlayer(3, ETeamColor.Blue, 9.0f, 0.0f)),
+                Arrays.asList(redFlag, blueFlag));
+        
+        Assert.assertEquals(2, snapshot.countOpponents(ETeamColor.Red));
+        Assert.assertEquals(1, snapshot.countOpponents(ETeamColor.Blue));
+        int opponent = snapshot.getOpponent(ETeamColor.Red, 1);
+        Assert.assertEquals(3, snapshot.playerIds[opponent]);
+        Assert.assertEquals(9.0f, snapshot.playerX[opponent], 0.0f);
+        
+        int flag = snapshot.getTargetFlag(ETeamColor.Blue);
+        Assert.assertEquals(100, snapshot.flagIds[flag]);
+        Assert.assertFalse(snapshot.flagHeld[flag]);
+        Assert.assertEquals(2.0f, snapshot.flagY[flag], 0.0f);
+        Assert.assertTrue(
+                snapshot.flagHeld[snapshot.getTargetFlag(ETeamColor.Red)]);
+    }
+    
+    /**
+     * Verify that a robot which is not playing yet does not act
+     */
+    @Test
+    public void idleRobotTest() {
+        RobotImpl robot = new RobotImpl("robot", 1000);
+        RobotStrategy.Snapshot snapshot = new RobotStrategy.Snapshot(
+                10L, Collections.<SnowmanPlayer>emptyList(),
+                Collections.<SnowmanFlag>emptyList());
+        float[] lines = new float[4];
+        int[] targets = new int[1];
+        
+        Assert.assertEquals(RobotStrategy.IDLE,
+                new RobotStrategy().act(robot, snapshot, lines, targets, 0));
+        Assert.assertEquals(0.0f, lines[2], 0.0f);
+    }
+}
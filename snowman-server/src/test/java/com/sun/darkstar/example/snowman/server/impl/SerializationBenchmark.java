@@ -0,0 +1,158 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.darkstar.example.snowman.common.util.Coordinate;
+import com.sun.sgs.app.ClientSession;
+import net.java.dev.mocksgs.MockSGS;
+import org.easymock.EasyMock;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the size of the serialized form of the managed objects of the
+ * server, and the time taken to encode and decode them.  This is not run
+ * as part of the tests.  Run it with the test classpath:
+ * <pre>
+ * java -cp ... com.sun.darkstar.example.snowman.server.impl.SerializationBenchmark [millis]
+ * </pre>
+ * Each object is encoded and decoded for a warm up period, then for the
+ * measurement period given in milliseconds (1000 by default).  Managed
+ * references are written as small index objects, as the data store only
+ * writes the id of the referenced object.
+ */
+public class SerializationBenchmark
+{
+    public static void main(String[] args) throws Exception {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        MockSGS.init();
+        
+        SnowmanGameImpl game = SerializationTest.createGame("game");
+        
+        // the status written by every move of a player which has been
+        // moving for a while, four moves per second, with a synchronized
+        // clock
+        PlayerStatus status = new PlayerStatus();
+        status.state = SnowmanPlayerImpl.PlayerState.MOVING;
+        for (int i = 0; i < 40; i++) {
+            status.history.record(i * 250, i, 0.0f, i + 1, 0.0f, 0.001f);
+        }
+        for (int i = 0; i < 4; i++) {
+            status.clock.pong(status.clock.ping(i * 1000), i * 1000 + 50,
+                              i * 1000 + 100);
+        }
+        GameTimer timer = new GameTimer();
+        for (int i = 0; i < 16; i++) {
+            timer.add(i * 100, i % 3, i);
+        }
+        ClientSession session = EasyMock.createNiceMock(ClientSession.class);
+        EasyMock.replay(session);
+        SnowmanPlayerImpl player = new SnowmanPlayerImpl("player", session);
+        player.setGame(game);
+        player.setID(1);
+        player.setTeamColor(ETeamColor.Red);
+        RobotImpl robot = new RobotImpl("robot", 1000);
+        robot.setGame(game);
+        robot.setID(2);
+        robot.setTeamColor(ETeamColor.Blue);
+        SnowmanFlagImpl flag = new SnowmanFlagImpl(game, ETeamColor.Blue,
+                                                   new Coordinate(1.0f, 2.0f),
+                                                   new Coordinate(3.0f, 4.0f));
+        
+        Map<String, Object> objects = new LinkedHashMap<String, Object>();
+        objects.put("PlayerStatus", status);
+        objects.put("GameTimer 16", timer);
+        objects.put("SnowmanPlayerImpl", player);
+        objects.put("RobotImpl", robot);
+        objects.put("SnowmanFlagImpl", flag);
+        objects.put("SnowmanGameImpl", game);
+        
+        System.out.printf("  %-20s %8s %14s %14s%n", "", "bytes",
+                          "encodes/s", "decodes/s");
+        for (Map.Entry<String, Object> entry : objects.entrySet()) {
+            Object object = entry.getValue();
+            List<Object> refs = new ArrayList<Object>();
+            byte[] bytes = SerializationTest.serialize(object, refs);
+            encode(millis / 2, object);
+            double encodes = encode(millis, object);
+            decode(millis / 2, bytes, refs);
+            double decodes = decode(millis, bytes, refs);
+            System.out.printf("  %-20s %8d %,14.0f %,14.0f%n", entry.getKey(),
+                              bytes.length, encodes, decodes);
+        }
+        MockSGS.reset();
+    }
+    
+    // Encode the object repeatedly for the given time and return the
+    // number of objects encoded per second
+    private static double encode(long millis, Object object) 
+            throws Exception {
+        List<Object> refs = new ArrayList<Object>();
+        long count = 0;
+        long start = System.nanoTime();
+        long end = start + millis * 1000000L;
+        long now;
+        do {
+            for (int i = 0; i < 100; i++) {
+                refs.clear();
+                SerializationTest.serialize(object, refs);
+            }
+            count += 100;
+            now = System.nanoTime();
+        } while (now < end);
+        return count * 1e9 / (now - start);
+    }
+    
+    // Decode the bytes repeatedly for the given time and return the
+    // number of objects decoded per second
+    private static double decode(long millis, byte[] bytes, List<Object> refs) 
+            throws Exception {
+        long count = 0;
+        long start = System.nanoTime();
+        long end = start + millis * 1000000L;
+        long now;
+        do {
+            for (int i = 0; i < 100; i++) {
+                SerializationTest.deserialize(bytes, refs);
+            }
+            count += 100;
+            now = System.nanoTime();
+        } while (now < end);
+        return count * 1e9 / (now - start);
+    }
+}
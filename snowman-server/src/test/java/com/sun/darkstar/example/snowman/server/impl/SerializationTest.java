@@ -0,0 +1,315 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.impl;
+
+import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.darkstar.example.snowman.common.util.Coordinate;
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanFlag;
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanGame;
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.Channel;
+import com.sun.sgs.app.ChannelManager;
+import com.sun.sgs.app.Delivery;
+import com.sun.sgs.app.ManagedReference;
+import net.java.dev.mocksgs.MockSGS;
+import net.java.dev.mocksgs.MockManagerLocator;
+import com.sun.sgs.internal.InternalContext;
+import org.junit.Test;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.After;
+import org.easymock.EasyMock;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test the hand written serialized forms of the managed objects of the
+ * server
+ */
+public class SerializationTest 
+{
+    private SnowmanGame game;
+    
+    /**
+     * Stands for a managed reference in a serialized object, as the data
+     * store only writes the id of referenced objects
+     */
+    private static class ReferenceIndex implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final int index;
+        
+        ReferenceIndex(int index) {
+            this.index = index;
+        }
+    }
+    
+    /**
+     * Serialize an object, replacing the managed references it holds by
+     * their index in the given list
+     */
+    static byte[] serialize(Object object, final List<Object> refs)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes) {
+            {
+                enableReplaceObject(true);
+            }
+            
+            @Override
+            protected Object replaceObject(Object obj) {
+                if (obj instanceof ManagedReference) {
+                    refs.add(obj);
+                    return new ReferenceIndex(refs.size() - 1);
+                }
+                return obj;
+            }
+        };
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Deserialize an object written by {@link #serialize}
+     */
+    static Object deserialize(byte[] bytes, final List<Object> refs)
+            throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes)) {
+            {
+                enableResolveObject(true);
+            }
+            
+            @Override
+            protected Object resolveObject(Object obj) {
+                if (obj instanceof ReferenceIndex) {
+                    return refs.get(((ReferenceIndex) obj).index);
+                }
+                return obj;
+            }
+        };
+        return in.readObject();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private <T> T copy(T object) throws Exception {
+        List<Object> refs = new ArrayList<Object>();
+        return (T) deserialize(serialize(object, refs), refs);
+    }
+    
+    @Before
+    public void initializeContext()
+    {
+        MockSGS.init();
+        game = EasyMock.createNiceMock(SnowmanGame.class);
+        EasyMock.expect(game.getGameChannel()).andStubReturn(
+                EasyMock.createNiceMock(Channel.class));
+        EasyMock.replay(game);
+    }
+    
+    @After
+    public void takeDownContext()
+    {
+        MockSGS.reset();
+    }
+    
+    /**
+     * Verify that the status of a player keeps its movement, history and
+     * clock measurements
+     */
+    @Test
+    public void playerStatusTest() throws Exception {
+        SnowmanFlag flag = EasyMock.createNiceMock(SnowmanFlag.class);
+        EasyMock.replay(flag);
+        PlayerStatus status = new PlayerStatus();
+        status.state = SnowmanPlayerImpl.PlayerState.MOVING;
+        status.hitPoints = 42;
+        status.startX = 1.0f;
+        status.startY = 2.0f;
+        status.destX = 3.0f;
+        status.destY = 4.0f;
+        status.timestamp = 1234L;
+        status.holdingFlagRef = 
+                AppContext.getDataManager().createReference(flag);
+        status.history.record(100, 0.0f, 0.0f, 10.0f, 0.0f, 0.01f);
+        status.history.record(1100, 10.0f, 0.0f, 10.0f, 10.0f, 0.01f);
+        status.clock.ping(1000);
+        status.clock.pong(1000, 5000, 1100);
+        status.sequence = 7;
+        status.seed = 42L;
+        
+        PlayerStatus copy = copy(status);
+        
+        Assert.assertEquals(SnowmanPlayerImpl.PlayerState.MOVING, copy.state);
+        Assert.assertEquals(42, copy.hitPoints);
+        Assert.assertEquals(1.0f, copy.startX, 0.0f);
+        Assert.assertEquals(4.0f, copy.destY, 0.0f);
+        Assert.assertEquals(1234L, copy.timestamp);
+        Assert.assertSame(flag, copy.holdingFlagRef.get());
+        Assert.assertEquals(new Coordinate(5.0f, 0.0f),
+                            copy.history.getPositionBefore(600));
+        Assert.assertTrue(copy.clock.isSynchronized());
+        Assert.assertEquals(status.clock.getRoundTripTime(),
+                            copy.clock.getRoundTripTime(), 0.0f);
+        Assert.assertEquals(status.clock.getOffset(),
+                            copy.clock.getOffset(), 0.0);
+        Assert.assertEquals(7, copy.sequence);
+        Assert.assertEquals(42L, copy.seed);
+    }
+    
+    /**
+     * Verify that a timer keeps its pending events in order, and the
+     * pending drain task
+     */
+    @Test
+    public void gameTimerTest() throws Exception {
+        GameTimer timer = new GameTimer();
+        for (int i = 0; i < 20; i++) {
+            timer.add(1000 - i * 10, i % 3, i);
+        }
+        int task = timer.startTask(0);
+        
+        GameTimer copy = copy(timer);
+        
+        Assert.assertEquals(20, copy.size());
+        Assert.assertTrue(copy.runTask(task));
+        for (int i = 19; i >= 0; i--) {
+            Assert.assertEquals(1000 - i * 10, copy.getNextTime());
+            Assert.assertEquals(i, copy.getNextTarget());
+            Assert.assertEquals(i % 3, copy.getNextEvent());
+            copy.removeNext();
+        }
+        Assert.assertEquals(timer.add(0, 0, 0), copy.add(0, 0, 0));
+    }
+    
+    /**
+     * Verify that a flag keeps its position, home and goal
+     */
+    @Test
+    public void flagTest() throws Exception {
+        SnowmanFlagImpl flag = new SnowmanFlagImpl(game, ETeamColor.Blue,
+                                                   new Coordinate(1.0f, 2.0f),
+                                                   new Coordinate(3.0f, 4.0f));
+        flag.setLocation(5.0f, 6.0f);
+        
+        SnowmanFlagImpl copy = copy(flag);
+        
+        Assert.assertEquals(flag.getID(), copy.getID());
+        Assert.assertEquals(ETeamColor.Blue, copy.getTeamColor());
+        Assert.assertFalse(copy.isHeld());
+        Assert.assertEquals(5.0f, copy.getX(), 0.0f);
+        Assert.assertEquals(6.0f, copy.getY(), 0.0f);
+        Assert.assertEquals(3.0f, copy.getGoalX(), 0.0f);
+        Assert.assertEquals(4.0f, copy.getGoalY(), 0.0f);
+        
+        copy.reset();
+        Assert.assertEquals(1.0f, copy.getX(), 0.0f);
+        Assert.assertEquals(2.0f, copy.getY(), 0.0f);
+    }
+    
+    /**
+     * Verify that a game keeps its settings and the references to its
+     * channels, players and flags
+     */
+    @Test
+    public void gameTest() throws Exception {
+        SnowmanGameImpl game = createGame("game");
+        game.setTickInterval(100);
+        game.setInterestRadius(8.0f);
+        
+        SnowmanGameImpl copy = copy(game);
+        
+        Assert.assertEquals("game", copy.getName());
+        Assert.assertEquals(100, copy.getTickInterval());
+        Assert.assertEquals(8.0f, copy.getInterestRadius(), 0.0f);
+        Assert.assertEquals(game.isCompact(), copy.isCompact());
+        Assert.assertSame(game.getGameChannel(), copy.getGameChannel());
+        Assert.assertSame(game.getMovementChannel(), 
+                          copy.getMovementChannel());
+        Assert.assertEquals(game.getFlagIds(), copy.getFlagIds());
+        for (Integer id : game.getFlagIds()) {
+            Assert.assertSame(game.getFlag(id), copy.getFlag(id));
+        }
+        Assert.assertEquals(game.getPlayerIds(), copy.getPlayerIds());
+    }
+    
+    /**
+     * Create a game whose channels are nice mocks
+     */
+    static SnowmanGameImpl createGame(String name) {
+        ChannelManager channelManager = 
+                EasyMock.createNiceMock(ChannelManager.class);
+        ((MockManagerLocator) InternalContext.getManagerLocator())
+                .setChannelManager(channelManager);
+        EasyMock.expect(channelManager.createChannel(
+                SnowmanGameImpl.CHANPREFIX + name, null, Delivery.RELIABLE))
+                .andStubReturn(EasyMock.createNiceMock(Channel.class));
+        EasyMock.expect(channelManager.createChannel(
+                SnowmanGameImpl.MOVECHANPREFIX + name, null, 
+                Delivery.UNRELIABLE))
+                .andStubReturn(EasyMock.createNiceMock(Channel.class));
+        EasyMock.replay(channelManager);
+        return new SnowmanGameImpl(name, 4, new EntityFactoryImpl());
+    }
+    
+    /**
+     * Verify that a robot keeps the player information and its move delay
+     */
+    @Test
+    public void robotTest() throws Exception {
+        RobotImpl robot = new RobotImpl("robot", 1500);
+        robot.setGame(game);
+        robot.setID(3);
+        robot.setTeamColor(ETeamColor.Red);
+        robot.setCompact(true);
+        
+        RobotImpl copy = copy(robot);
+        
+        Assert.assertEquals("robot", copy.getName());
+        Assert.assertEquals(3, copy.getID());
+        Assert.assertEquals(ETeamColor.Red, copy.getTeamColor());
+        Assert.assertSame(game, copy.getGame());
+        Assert.assertSame(robot.getStatus(), copy.getStatus());
+        Assert.assertEquals(robot.getLoginTime(), copy.getLoginTime());
+        Assert.assertEquals(1500, copy.getMoveDelay());
+        Assert.assertTrue(copy.isServerSide());
+    }
+}
@@ -38,20 +38,32 @@ import com.sun.darkstar.example.snowman.server.interfaces.SnowmanGame;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanFlag;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanPlayer;
 import com.sun.darkstar.example.snowman.server.interfaces.EntityFactory;
+import com.sun.darkstar.example.snowman.server.interfaces.GamePool;
+import com.sun.darkstar.example.snowman.server.service.GameClockServiceImpl;
 import com.sun.darkstar.example.snowman.server.exceptions.SnowmanFullException;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
+import com.sun.darkstar.example.snowman.common.protocol.messages.ServerMessages;
 import com.sun.darkstar.example.snowman.common.util.Coordinate;
 import com.sun.sgs.app.Channel;
 import com.sun.sgs.app.ChannelManager;
 import com.sun.sgs.app.Delivery;
 import com.sun.sgs.app.ClientSession;
+import com.sun.sgs.app.Task;
+import com.sun.sgs.app.TaskManager;
 import com.sun.sgs.internal.InternalContext;
 import net.java.dev.mocksgs.MockSGS;
 import net.java.dev.mocksgs.MockManagerLocator;
 import org.junit.Test;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.After;
 import org.easymock.EasyMock;
+import org.easymock.Capture;
+import org.easymock.IAnswer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  *
@@ -60,6 +72,7 @@ import org.easymock.EasyMock;
 public class SnowmanGameImplTest 
 {
     private Channel gameChannel;
+    private Channel movementChannel;
     private String gameName = "GAME";
 
     @Before
@@ -72,9 +85,12 @@ public class SnowmanGameImplTest
         ChannelManager channelManager = EasyMock.createMock(ChannelManager.class);
         ((MockManagerLocator)InternalContext.getManagerLocator()).setChannelManager(channelManager);
         gameChannel = EasyMock.createNiceMock(Channel.class);
+        movementChannel = EasyMock.createNiceMock(Channel.class);
         EasyMock.expect(channelManager.createChannel(SnowmanGameImpl.CHANPREFIX+gameName, null, Delivery.RELIABLE)).andStubReturn(gameChannel);
+        EasyMock.expect(channelManager.createChannel(SnowmanGameImpl.MOVECHANPREFIX+gameName, null, Delivery.UNRELIABLE)).andStubReturn(movementChannel);
         EasyMock.replay(channelManager);
         EasyMock.replay(gameChannel);
+        EasyMock.replay(movementChannel);
     }
     
     @After
@@ -225,5 +241,401 @@ public class SnowmanGameImplTest
         game.addPlayer(dummyPlayer3, color);
     }
     
+    /**
+     * Create a dummy entity factory returning the given flag
+     */
+    private EntityFactory createEntityFactory(SnowmanFlag flag) {
+        EntityFactory dummyEntityFactory = EasyMock.createMock(EntityFactory.class);
+        EasyMock.expect(dummyEntityFactory.createSnowmanFlag(EasyMock.isA(SnowmanGame.class),
+                                                             EasyMock.isA(ETeamColor.class),
+                                                             EasyMock.isA(Coordinate.class),
+                                                             EasyMock.isA(Coordinate.class))).andStubReturn(flag);
+        EasyMock.replay(dummyEntityFactory);
+        return dummyEntityFactory;
+    }
+    
+    /**
+     * Verify that resetting a game detaches client players, resets the
+     * flags and lets the game be filled up again from scratch
+     */
+    @Test
+    public void resetTest() {
+        SnowmanFlag dummyFlag = EasyMock.createNiceMock(SnowmanFlag.class);
+        EasyMock.expect(dummyFlag.getID()).andStubReturn(new Integer(0));
+        dummyFlag.reset();
+        EasyMock.replay(dummyFlag);
+        SnowmanGame game = new SnowmanGameImpl(gameName, 2, createEntityFactory(dummyFlag));
+        
+        //fill up the game
+        ClientSession session = EasyMock.createNiceMock(ClientSession.class);
+        SnowmanPlayer dummyPlayer = EasyMock.createNiceMock(SnowmanPlayer.class);
+        EasyMock.expect(dummyPlayer.getSession()).andStubReturn(session);
+        dummyPlayer.leaveGame();
+        EasyMock.replay(dummyPlayer);
+        SnowmanPlayer dummyRobot = EasyMock.createNiceMock(SnowmanPlayer.class);
+        EasyMock.expect(dummyRobot.isServerSide()).andStubReturn(true);
+        EasyMock.replay(dummyRobot);
+        game.addPlayer(dummyPlayer, ETeamColor.Red);
+        game.addPlayer(dummyRobot, ETeamColor.Blue);
+        
+        game.reset();
+        
+        EasyMock.verify(dummyPlayer);
+        EasyMock.verify(dummyFlag);
+        Assert.assertTrue(game.getPlayerIds().isEmpty());
+        
+        //the game accepts a full team again, starting from the first id
+        SnowmanPlayer newPlayer = EasyMock.createNiceMock(SnowmanPlayer.class);
+        newPlayer.setID(1);
+        EasyMock.replay(newPlayer);
+        game.addPlayer(newPlayer, ETeamColor.Red);
+        EasyMock.verify(newPlayer);
+    }
+    
+    /**
+     * Verify that an ended game is returned to its pool
+     */
+    @Test
+    public void cleanupToPoolTest() {
+        SnowmanFlag dummyFlag = EasyMock.createNiceMock(SnowmanFlag.class);
+        EasyMock.expect(dummyFlag.getID()).andStubReturn(new Integer(0));
+        EasyMock.replay(dummyFlag);
+        SnowmanGameImpl game = new SnowmanGameImpl(gameName, 2, createEntityFactory(dummyFlag));
+        
+        GamePool pool = EasyMock.createMock(GamePool.class);
+        EasyMock.expect(pool.checkIn(game)).andReturn(true);
+        EasyMock.replay(pool);
+        game.setGamePool(pool);
+        
+        game.cleanup();
+        
+        EasyMock.verify(pool);
+    }
     
+    /**
+     * Verify that with an interest radius, movement is only sent to the
+     * players near the mover, including the mover itself
+     */
+    @Test
+    public void sendMovementTest() {
+        SnowmanFlag dummyFlag = EasyMock.createNiceMock(SnowmanFlag.class);
+        EasyMock.expect(dummyFlag.getID()).andStubReturn(new Integer(0));
+        EasyMock.replay(dummyFlag);
+        SnowmanGame game = new SnowmanGameImpl(gameName, 4, createEntityFactory(dummyFlag));
+        game.setInterestRadius(8.0f);
+        
+        ClientSession[] sessions = new ClientSession[3];
+        SnowmanPlayer[] players = new SnowmanPlayer[3];
+        for (int i = 0; i < players.length; i++) {
+            sessions[i] = EasyMock.createNiceMock(ClientSession.class);
+            EasyMock.replay(sessions[i]);
+            players[i] = EasyMock.createNiceMock(SnowmanPlayer.class);
+            EasyMock.expect(players[i].getID()).andStubReturn(i + 1);
+            EasyMock.expect(players[i].getSession()).andStubReturn(sessions[i]);
+            EasyMock.expect(players[i].getMovementState(false)).
+                    andStubReturn(ByteBuffer.allocate(0));
+            EasyMock.replay(players[i]);
+            game.addPlayer(players[i], i < 2 ? ETeamColor.Red : ETeamColor.Blue);
+        }
+        
+        //place the players, the first two near each other
+        game.sendMovement(players[0], 10.0f, 10.0f, ByteBuffer.allocate(0));
+        game.sendMovement(players[1], 12.0f, 10.0f, ByteBuffer.allocate(0));
+        game.sendMovement(players[2], 80.0f, 80.0f, ByteBuffer.allocate(0));
+        
+        ByteBuffer buff = ByteBuffer.wrap(new byte[] {1, 2, 3});
+        for (int i = 0; i < sessions.length; i++) {
+            EasyMock.resetToDefault(sessions[i]);
+            if (i < 2) {
+                EasyMock.expect(sessions[i].send(buff)).andReturn(sessions[i]);
+            }
+            EasyMock.replay(sessions[i]);
+        }
+        
+        game.sendMovement(players[0], 11.0f, 10.0f, buff);
+        
+        for (ClientSession session : sessions) {
+            EasyMock.verify(session);
+        }
+    }
+    
+    /**
+     * Verify that when a player moves up to a stationary player, the
+     * stationary player receives the move and the mover receives the
+     * current movement of the stationary player, which it missed while
+     * they were apart
+     */
+    @Test
+    public void sendMovementCatchUpTest() {
+        SnowmanFlag dummyFlag = EasyMock.createNiceMock(SnowmanFlag.class);
+        EasyMock.expect(dummyFlag.getID()).andStubReturn(new Integer(0));
+        EasyMock.replay(dummyFlag);
+        SnowmanGame game = new SnowmanGameImpl(gameName, 2, createEntityFactory(dummyFlag));
+        game.setInterestRadius(8.0f);
+        
+        ByteBuffer state = ByteBuffer.wrap(new byte[] {4, 5, 6});
+        ClientSession[] sessions = new ClientSession[2];
+        SnowmanPlayer[] players = new SnowmanPlayer[2];
+        for (int i = 0; i < players.length; i++) {
+            sessions[i] = EasyMock.createNiceMock(ClientSession.class);
+            EasyMock.replay(sessions[i]);
+            players[i] = EasyMock.createNiceMock(SnowmanPlayer.class);
+            EasyMock.expect(players[i].getID()).andStubReturn(i + 1);
+            EasyMock.expect(players[i].getSession()).andStubReturn(sessions[i]);
+            EasyMock.expect(players[i].getMovementState(false)).
+                    andStubReturn(i == 0 ? ByteBuffer.allocate(0) : state);
+            EasyMock.replay(players[i]);
+            game.addPlayer(players[i], i == 0 ? ETeamColor.Red : ETeamColor.Blue);
+        }
+        
+        //place the players far from each other
+        game.sendMovement(players[0], 10.0f, 10.0f, ByteBuffer.allocate(0));
+        game.sendMovement(players[1], 80.0f, 80.0f, ByteBuffer.allocate(0));
+        
+        ByteBuffer buff = ByteBuffer.wrap(new byte[] {1, 2, 3});
+        for (ClientSession session : sessions) {
+            EasyMock.resetToDefault(session);
+        }
+        EasyMock.expect(sessions[0].send(buff)).andReturn(sessions[0]);
+        EasyMock.expect(sessions[0].send(state)).andReturn(sessions[0]);
+        EasyMock.expect(sessions[1].send(buff)).andReturn(sessions[1]);
+        for (ClientSession session : sessions) {
+            EasyMock.replay(session);
+        }
+        
+        game.sendMovement(players[0], 78.0f, 80.0f, buff);
+        
+        for (ClientSession session : sessions) {
+            EasyMock.verify(session);
+        }
+        
+        //once near each other, moves are not caught up again
+        for (ClientSession session : sessions) {
+            EasyMock.resetToDefault(session);
+        }
+        EasyMock.expect(sessions[0].send(buff)).andReturn(sessions[0]);
+        EasyMock.expect(sessions[1].send(buff)).andReturn(sessions[1]);
+        for (ClientSession session : sessions) {
+            EasyMock.replay(session);
+        }
+        
+        game.sendMovement(players[0], 79.0f, 80.0f, buff);
+        
+        for (ClientSession session : sessions) {
+            EasyMock.verify(session);
+        }
+    }
+    
+    /**
+     * Verify that a game only uses the compact format when every client
+     * player in the game negotiated it
+     */
+    @Test
+    public void sendMapInfoCompactTest() {
+        int[][] versions = {{1, 0}, {1, 1}};
+        for (int[] version : versions) {
+            SnowmanFlag dummyFlag = EasyMock.createNiceMock(SnowmanFlag.class);
+            EasyMock.expect(dummyFlag.getID()).andStubReturn(new Integer(0));
+            EasyMock.expect(dummyFlag.getTeamColor()).andStubReturn(ETeamColor.Red);
+            EasyMock.replay(dummyFlag);
+            SnowmanGame game = new SnowmanGameImpl(gameName, 2, createEntityFactory(dummyFlag));
+            boolean expected = version[0] > 0 && version[1] > 0;
+            
+            SnowmanPlayer[] players = new SnowmanPlayer[version.length];
+            for (int i = 0; i < players.length; i++) {
+                ClientSession session = EasyMock.createNiceMock(ClientSession.class);
+                EasyMock.replay(session);
+                players[i] = EasyMock.createNiceMock(SnowmanPlayer.class);
+                EasyMock.expect(players[i].getID()).andStubReturn(i + 1);
+                EasyMock.expect(players[i].getSession()).andStubReturn(session);
+                EasyMock.expect(players[i].getTeamColor()).andStubReturn(ETeamColor.Red);
+                EasyMock.expect(players[i].getName()).andStubReturn("name");
+                EasyMock.expect(players[i].getProtocolVersion()).andStubReturn(version[i]);
+                players[i].setCompact(expected);
+                EasyMock.replay(players[i]);
+                game.addPlayer(players[i], i == 0 ? ETeamColor.Red : ETeamColor.Blue);
+            }
+            
+            game.sendMapInfo();
+            
+            Assert.assertEquals(expected, game.isCompact());
+            for (SnowmanPlayer player : players) {
+                EasyMock.verify(player);
+            }
+        }
+    }
+    
+    /**
+     * Verify that a game only sends movement on the unreliable movement
+     * channel when every client player in the game negotiated the
+     * sequenced protocol
+     */
+    @Test
+    public void sendMapInfoSequencedTest() {
+        int[][] versions = {{3, 2}, {3, 3}};
+        for (int[] version : versions) {
+            SnowmanFlag dummyFlag = EasyMock.createNiceMock(SnowmanFlag.class);
+            EasyMock.expect(dummyFlag.getID()).andStubReturn(new Integer(0));
+            EasyMock.expect(dummyFlag.getTeamColor()).andStubReturn(ETeamColor.Red);
+            EasyMock.replay(dummyFlag);
+            SnowmanGame game = new SnowmanGameImpl(gameName, 2, createEntityFactory(dummyFlag));
+            boolean expected = version[0] > 2 && version[1] > 2;
+            
+            SnowmanPlayer[] players = new SnowmanPlayer[version.length];
+            for (int i = 0; i < players.length; i++) {
+                ClientSession session = EasyMock.createNiceMock(ClientSession.class);
+                EasyMock.replay(session);
+                players[i] = EasyMock.createNiceMock(SnowmanPlayer.class);
+                EasyMock.expect(players[i].getID()).andStubReturn(i + 1);
+                EasyMock.expect(players[i].getSession()).andStubReturn(session);
+                EasyMock.expect(players[i].getTeamColor()).andStubReturn(ETeamColor.Red);
+                EasyMock.expect(players[i].getName()).andStubReturn("name");
+                EasyMock.expect(players[i].getProtocolVersion()).andStubReturn(version[i]);
+                players[i].setSequenced(expected);
+                EasyMock.replay(players[i]);
+                game.addPlayer(players[i], i == 0 ? ETeamColor.Red : ETeamColor.Blue);
+            }
+            
+            game.sendMapInfo();
+            
+            Assert.assertEquals(expected, game.isSequenced());
+            for (SnowmanPlayer player : players) {
+                EasyMock.verify(player);
+            }
+            
+            //movement goes on the channel chosen for the game
+            ByteBuffer buff = ByteBuffer.wrap(new byte[] {1, 2, 3});
+            EasyMock.resetToDefault(gameChannel);
+            EasyMock.resetToDefault(movementChannel);
+            Channel used = expected ? movementChannel : gameChannel;
+            EasyMock.expect(used.send(null, buff)).andReturn(used);
+            EasyMock.replay(gameChannel);
+            EasyMock.replay(movementChannel);
+            
+            game.sendMovement(players[0], 1.0f, 1.0f, buff);
+            
+            EasyMock.verify(gameChannel);
+            EasyMock.verify(movementChannel);
+            EasyMock.resetToNice(gameChannel);
+            EasyMock.resetToNice(movementChannel);
+            EasyMock.replay(gameChannel);
+            EasyMock.replay(movementChannel);
+        }
+    }
+    
+    /**
+     * Verify that the events of a game are run by a single task, which
+     * reschedules itself for the events left
+     */
+    @Test
+    public void scheduleTest() {
+        SnowmanFlag dummyFlag = EasyMock.createNiceMock(SnowmanFlag.class);
+        EasyMock.expect(dummyFlag.getID()).andStubReturn(new Integer(0));
+        EasyMock.replay(dummyFlag);
+        SnowmanGame game = new SnowmanGameImpl(gameName, 2, createEntityFactory(dummyFlag));
+        SnowmanPlayer dummyPlayer = EasyMock.createNiceMock(SnowmanPlayer.class);
+        dummyPlayer.respawn();
+        EasyMock.replay(dummyPlayer);
+        game.addPlayer(dummyPlayer, ETeamColor.Red);
+        
+        //an earlier event needs its own task, a close one does not
+        TaskManager taskManager = EasyMock.createMock(TaskManager.class);
+        ((MockManagerLocator)InternalContext.getManagerLocator()).setTaskManager(taskManager);
+        Capture<Task> first = new Capture<Task>();
+        taskManager.scheduleTask(EasyMock.isA(Task.class), EasyMock.eq(40000L));
+        taskManager.scheduleTask(EasyMock.capture(first), EasyMock.eq(0L));
+        EasyMock.replay(taskManager);
+        
+        game.schedule(SnowmanGame.TimedEvent.FLAGRETURN, 0, 40000);
+        game.schedule(SnowmanGame.TimedEvent.RESPAWN, 1, 0);
+        int cancelled = game.schedule(SnowmanGame.TimedEvent.RESPAWN, 1, 50);
+        game.cancel(cancelled);
+        EasyMock.verify(taskManager);
+        
+        //running the task respawns the player and waits for the flag
+        EasyMock.resetToDefault(taskManager);
+        taskManager.scheduleTask(EasyMock.isA(Task.class), EasyMock.gt(39000L));
+        EasyMock.replay(taskManager);
+        try {
+            first.getValue().run();
+        } catch (Exception e) {
+            Assert.fail(e.toString());
+        }
+        EasyMock.verify(taskManager);
+        EasyMock.verify(dummyPlayer);
+    }
+    
+    /**
+     * Verify that the events of a game are timed by the game clock when
+     * there is one, and scheduled after the corresponding real delay
+     */
+    @Test
+    public void gameClockTest() {
+        SnowmanFlag dummyFlag = EasyMock.createNiceMock(SnowmanFlag.class);
+        EasyMock.replay(dummyFlag);
+        SnowmanGame game = new SnowmanGameImpl(gameName, 2, createEntityFactory(dummyFlag));
+        ((MockManagerLocator)InternalContext.getManagerLocator()).addMockManager(
+                new GameClockServiceImpl(20.0f, 0));
+        
+        TaskManager taskManager = EasyMock.createMock(TaskManager.class);
+        ((MockManagerLocator)InternalContext.getManagerLocator()).setTaskManager(taskManager);
+        taskManager.scheduleTask(EasyMock.isA(Task.class), EasyMock.eq(2000L));
+        EasyMock.replay(taskManager);
+        
+        game.schedule(SnowmanGame.TimedEvent.FLAGRETURN, 0, 40000);
+        EasyMock.verify(taskManager);
+    }
+    
+    /**
+     * Verify that the movement of a game tick is sent as one GAMESTATE
+     * packet to clients which negotiated a protocol, and one update at a
+     * time to clients which did not
+     */
+    @Test
+    public void tickProtocolTest() {
+        SnowmanFlag dummyFlag = EasyMock.createNiceMock(SnowmanFlag.class);
+        EasyMock.expect(dummyFlag.getID()).andStubReturn(new Integer(0));
+        EasyMock.replay(dummyFlag);
+        SnowmanGameImpl game = new SnowmanGameImpl(gameName, 2, createEntityFactory(dummyFlag));
+        
+        final ByteBuffer update = ByteBuffer.wrap(new byte[] {1, 2, 3});
+        int[] versions = {Messages.PROTOCOL_ORIGINAL, Messages.PROTOCOL_COMPACT};
+        ClientSession[] sessions = new ClientSession[versions.length];
+        for (int i = 0; i < versions.length; i++) {
+            sessions[i] = EasyMock.createNiceMock(ClientSession.class);
+            EasyMock.replay(sessions[i]);
+            SnowmanPlayer player = EasyMock.createNiceMock(SnowmanPlayer.class);
+            EasyMock.expect(player.getID()).andStubReturn(i + 1);
+            EasyMock.expect(player.getSession()).andStubReturn(sessions[i]);
+            EasyMock.expect(player.getProtocolVersion()).andStubReturn(versions[i]);
+            if (i == 0) {
+                player.processInputs(EasyMock.<List<ByteBuffer>>notNull());
+                EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+                    @SuppressWarnings("unchecked")
+                    public Object answer() {
+                        ((List<ByteBuffer>) EasyMock.getCurrentArguments()[0]).add(update);
+                        return null;
+                    }
+                });
+            }
+            EasyMock.replay(player);
+            game.addPlayer(player, i == 0 ? ETeamColor.Red : ETeamColor.Blue);
+        }
+        
+        for (ClientSession session : sessions) {
+            EasyMock.resetToDefault(session);
+        }
+        EasyMock.expect(sessions[0].send(update)).andReturn(sessions[0]);
+        EasyMock.expect(sessions[1].send(ServerMessages.createGameStatePkt(
+                Arrays.asList(update)))).andReturn(sessions[1]);
+        for (ClientSession session : sessions) {
+            EasyMock.replay(session);
+        }
+        
+        game.tick();
+        
+        for (ClientSession session : sessions) {
+            EasyMock.verify(session);
+        }
+    }
 }
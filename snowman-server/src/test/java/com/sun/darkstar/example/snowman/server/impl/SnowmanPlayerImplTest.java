@@ -38,8 +38,10 @@ import com.sun.darkstar.example.snowman.server.interfaces.SnowmanGame;
 import com.sun.darkstar.example.snowman.server.interfaces.SnowmanFlag;
 import com.sun.darkstar.example.snowman.server.service.GameWorldManager;
 import com.sun.darkstar.example.snowman.common.protocol.messages.ServerMessages;
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
 import com.sun.darkstar.example.snowman.common.protocol.enumn.EEndState;
+import com.sun.darkstar.example.snowman.common.protocol.enumn.EOPCODE;
 import com.sun.darkstar.example.snowman.common.physics.enumn.EForce;
 import com.sun.darkstar.example.snowman.common.util.HPConverter;
 import com.sun.darkstar.example.snowman.common.util.Coordinate;
@@ -54,8 +56,11 @@ import org.junit.Test;
 import org.junit.Before;
 import org.junit.After;
 import org.junit.Assert;
+import org.easymock.Capture;
 import org.easymock.EasyMock;
-import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Test the SnowmanPlayerImpl
@@ -159,8 +164,112 @@ public class SnowmanPlayerImplTest
         //verify message has been sent
         EasyMock.verify(currentGame);
     }
-    
+
+    /**
+     * Test the processing of a MOVEME packet when the game is tick based.
+     * The command should be queued until the next tick and its resulting
+     * MOVEMOB packet collected into the tick's update list
+     */
+    @Test
+    public void testMoveMeTickBased()
+            throws Exception
+    {
+        //put the player into a tick based game
+        SnowmanGame tickGame = EasyMock.createNiceMock(SnowmanGame.class);
+        Channel tickChannel = EasyMock.createStrictMock(Channel.class);
+        EasyMock.expect(tickGame.getGameChannel()).andStubReturn(tickChannel);
+        EasyMock.expect(tickGame.getTickInterval()).andStubReturn(100L);
+        EasyMock.replay(tickGame);
+        EasyMock.replay(tickChannel);
+        testPlayer.setGame(tickGame);
+
+        float startX = 5.0f;
+        float startY = 10.0f;
+        testPlayer.setReadyToPlay(true);
+        testPlayer.setLocation(startX, startY);
+
+        float destX = 20.0f;
+        float destY = 15.0f;
+        Coordinate start = new Coordinate(startX, startY);
+        Coordinate destination = new Coordinate(destX, destY);
+        EasyMock.resetToDefault(gameWorldManager);
+        EasyMock.expect(gameWorldManager.trimPath(start,
+                                                  destination)).andStubReturn(destination);
+        EasyMock.replay(gameWorldManager);
+
+        //the move is only queued
+        testPlayer.moveMe(startX, startY, destX, destY);
+        verifyState(testPlayer, SnowmanPlayerImpl.PlayerState.STOPPED);
+
+        //the tick applies it and collects the update
+        List<ByteBuffer> updates = new ArrayList<ByteBuffer>();
+        testPlayer.processInputs(updates);
+        verifyState(testPlayer, SnowmanPlayerImpl.PlayerState.MOVING);
+        verifyLocation(testPlayer, startX, startY);
+        verifyDestination(testPlayer, destX, destY);
+        Assert.assertEquals(1, updates.size());
+        Assert.assertEquals(ServerMessages.createMoveMOBPkt(
+                testPlayerId, startX, startY, destX, destY), updates.get(0));
+
+        //nothing is queued for the next tick and nothing was sent directly
+        updates.clear();
+        testPlayer.processInputs(updates);
+        Assert.assertTrue(updates.isEmpty());
+        EasyMock.verify(tickChannel);
+    }
+
     
+    /**
+     * Test the processing of a MOVEME packet when the game is sequenced.
+     * The MOVEMOB packet should be numbered and sent on the movement
+     * channel instead of the game channel
+     */
+    @Test
+    public void testMoveMeSequenced()
+            throws Exception
+    {
+        //put the player into a sequenced game
+        SnowmanGame sequencedGame = EasyMock.createNiceMock(SnowmanGame.class);
+        Channel reliableChannel = EasyMock.createStrictMock(Channel.class);
+        Channel movementChannel = EasyMock.createStrictMock(Channel.class);
+        EasyMock.expect(sequencedGame.getGameChannel()).andStubReturn(reliableChannel);
+        EasyMock.expect(sequencedGame.getMovementChannel()).andStubReturn(movementChannel);
+        EasyMock.replay(sequencedGame);
+        testPlayer.setGame(sequencedGame);
+        testPlayer.setSequenced(true);
+
+        float startX = 5.0f;
+        float startY = 10.0f;
+        testPlayer.setReadyToPlay(true);
+        testPlayer.setLocation(startX, startY);
+
+        float destX = 20.0f;
+        float destY = 15.0f;
+        Coordinate start = new Coordinate(startX, startY);
+        Coordinate destination = new Coordinate(destX, destY);
+        EasyMock.resetToDefault(gameWorldManager);
+        EasyMock.expect(gameWorldManager.trimPath(start,
+                                                  destination)).andStubReturn(destination);
+        EasyMock.replay(gameWorldManager);
+
+        //the moves are numbered in order
+        for (int sequence = 1; sequence <= 2; sequence++) {
+            EasyMock.expect(movementChannel.send(null, ServerMessages.createSequencedPkt(
+                    testPlayerId, sequence, ServerMessages.createMoveMOBPkt(
+                    testPlayerId, startX, startY, destX, destY)))).andReturn(movementChannel);
+        }
+        EasyMock.replay(reliableChannel);
+        EasyMock.replay(movementChannel);
+
+        testPlayer.moveMe(startX, startY, destX, destY);
+        testPlayer.setLocation(startX, startY);
+        testPlayer.moveMe(startX, startY, destX, destY);
+
+        verifyState(testPlayer, SnowmanPlayerImpl.PlayerState.MOVING);
+        EasyMock.verify(reliableChannel);
+        EasyMock.verify(movementChannel);
+    }
+
     /**
      * Test the processing of a MOVEME packet when the player is in
      * the stopped position and the client sends a start position that is
@@ -899,6 +1008,93 @@ public class SnowmanPlayerImplTest
     }
     
     
+    /**
+     * Verify that a timestamped attack is checked against the position
+     * the attackee had at the fire time, which is in range even though
+     * the attackee has moved out of range since, and that the attackee
+     * is hit where it is when the attack is received
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testAttackAtFireTime()
+            throws Exception
+    {
+        this.initializeAttackee(attackeeId);
+        
+        //setup the test players current state
+        float startX = 5.0f;
+        float startY = 10.0f;
+        this.setupStoppedPlayer(testPlayer, startX, startY);
+        
+        //the attackee starts within range and runs away in two moves
+        float range = HPConverter.getInstance().convertRange(SnowmanPlayerImpl.RESPAWNHP);
+        float attackeeX = startX + range / 2.0f;
+        this.setupStoppedPlayer(attackee, attackeeX, startY);
+        EasyMock.resetToDefault(gameWorldManager);
+        EasyMock.expect(gameWorldManager.trimPath((Coordinate) EasyMock.anyObject(),
+                                                  (Coordinate) EasyMock.anyObject())).
+                andStubReturn(new Coordinate(attackeeX + 1000.0f, startY));
+        EasyMock.expect(gameWorldManager.validThrow((Coordinate) EasyMock.anyObject(),
+                                                    (Coordinate) EasyMock.anyObject())).
+                andStubReturn(true);
+        EasyMock.replay(gameWorldManager);
+        
+        long moveTime = System.currentTimeMillis() + 1000;
+        long turnTime = moveTime + 5000;
+        attackee.moveMe(moveTime, attackeeX, startY, attackeeX + 1000.0f, startY);
+        Coordinate turn = attackee.getExpectedPositionAtTime(turnTime);
+        attackee.moveMe(turnTime, turn.getX(), turn.getY(), attackeeX + 1000.0f, startY);
+        
+        long fireTime = moveTime + 10;
+        long nowTime = turnTime + 10;
+        Coordinate then = attackee.getHistoricalPositionAtTime(fireTime);
+        Coordinate now = attackee.getExpectedPositionAtTime(nowTime);
+        Assert.assertTrue(then.getX() - startX < range);
+        Assert.assertTrue(now.getX() - startX > range);
+        
+        //setup expected broadcast messages to the game and behavior of game
+        EasyMock.resetToDefault(currentGame);
+        EasyMock.expect(currentGame.getPlayer(attackeeId)).andStubReturn(attackee);
+        gameChannel.send(null, ServerMessages.createAttackedPkt(testPlayerId, attackeeId, SnowmanPlayerImpl.ATTACKHP));
+        EasyMock.replay(currentGame);
+        
+        //do the attack
+        testPlayer.attack(nowTime, fireTime, attackeeId, startX, startY);
+        
+        //verify player state
+        this.verifyAttackStop(testPlayer, startX, startY);
+        this.verifyAttackHit(attackee, now.getX(), now.getY(), SnowmanPlayerImpl.RESPAWNHP - SnowmanPlayerImpl.ATTACKHP);
+        
+        //validate messages
+        EasyMock.verify(currentGame);
+    }
+    
+    /**
+     * Verify that the fire time of a timestamped command is dated back by
+     * its delay beyond the shortest one seen, up to the maximum lag
+     */
+    @Test
+    public void testGetFireTime()
+    {
+        long now = 1000000;
+        int clientTime = 5000;
+        Assert.assertEquals(now, testPlayer.getFireTime(clientTime, now));
+        
+        now += 1000;
+        clientTime += 950;
+        Assert.assertEquals(now - 50, testPlayer.getFireTime(clientTime, now));
+        
+        now += 1000;
+        clientTime -= 10000;
+        Assert.assertEquals(now - SnowmanPlayerImpl.MAXLAGMS, 
+                            testPlayer.getFireTime(clientTime, now));
+        
+        now += 1000;
+        clientTime += 13000;
+        Assert.assertEquals(now, testPlayer.getFireTime(clientTime, now));
+        Assert.assertEquals(now, testPlayer.getFireTime(clientTime + 5, now));
+    }
+    
     /**
      * Setup the dummy currentGame to return a SnowmanPlayer with the given
      * id intended to be used as the attackee in the attack tests
@@ -927,9 +1123,8 @@ public class SnowmanPlayerImplTest
      */
     private void setupFlag(SnowmanPlayerImpl player, SnowmanFlag flag)
             throws Exception {
-        Field flagField = SnowmanPlayerImpl.class.getDeclaredField("holdingFlagRef");
-        flagField.setAccessible(true);
-        flagField.set(player, AppContext.getDataManager().createReference(flag));
+        player.getStatus().holdingFlagRef = 
+                AppContext.getDataManager().createReference(flag);
     }
     
     /**
@@ -960,67 +1155,51 @@ public class SnowmanPlayerImplTest
     
     
     /**
-     * Verify that the give player has its private state field
+     * Verify that the give player has its state
      * set to the given state
      */
     private void verifyState(SnowmanPlayerImpl player, SnowmanPlayerImpl.PlayerState state) 
             throws Exception
     {
-        Field stateField = SnowmanPlayerImpl.class.getDeclaredField("state");
-        stateField.setAccessible(true);
-        SnowmanPlayerImpl.PlayerState value = (SnowmanPlayerImpl.PlayerState)stateField.get(player);
-        
-        Assert.assertEquals(value, state);
+        Assert.assertEquals(player.getStatus().state, state);
     }
     
     /**
-     * Verify that the given player has its private timestamp 
+     * Verify that the given player has its timestamp 
      * set to the given value (within 20ms)
      */
     private void verifyTimestamp(SnowmanPlayerImpl player, long timestamp) 
             throws Exception
     {
-        Field field = SnowmanPlayerImpl.class.getDeclaredField("timestamp");
-        field.setAccessible(true);
-        long value = field.getLong(player);
+        long value = player.getStatus().timestamp;
         
         Assert.assertTrue(value - timestamp < 20);
     }
     
     /**
-     * Verify that the given player has its private x and y coordinates
+     * Verify that the given player has its x and y coordinates
      * set to the given coordinates
      */
     private void verifyLocation(SnowmanPlayerImpl player, float x, float y)
             throws Exception
     {
-        Field xField = SnowmanPlayerImpl.class.getDeclaredField("startX");
-        Field yField = SnowmanPlayerImpl.class.getDeclaredField("startY");
-        xField.setAccessible(true);
-        yField.setAccessible(true);
-        float xValue = xField.getFloat(player);
-        float yValue = yField.getFloat(player);
-        
-        Assert.assertEquals(xValue, x, 0);
-        Assert.assertEquals(yValue, y, 0);
+        PlayerStatus status = player.getStatus();
+        
+        Assert.assertEquals(status.startX, x, 0);
+        Assert.assertEquals(status.startY, y, 0);
     }
     
     /**
-     * Verify that the given player has its private destination x and y coordinates
+     * Verify that the given player has its destination x and y coordinates
      * set to the given coordinates
      */
     private void verifyDestination(SnowmanPlayerImpl player, float x, float y)
             throws Exception
     {
-        Field xField = SnowmanPlayerImpl.class.getDeclaredField("destX");
-        Field yField = SnowmanPlayerImpl.class.getDeclaredField("destY");
-        xField.setAccessible(true);
-        yField.setAccessible(true);
-        float xValue = xField.getFloat(player);
-        float yValue = yField.getFloat(player);
-        
-        Assert.assertEquals(xValue, x, 0);
-        Assert.assertEquals(yValue, y, 0);
+        PlayerStatus status = player.getStatus();
+        
+        Assert.assertEquals(status.destX, x, 0);
+        Assert.assertEquals(status.destY, y, 0);
     }
     
     private void setup(SnowmanPlayerImpl player,
@@ -1031,23 +1210,78 @@ public class SnowmanPlayerImplTest
                        int hp)
             throws Exception
     {
-        Field stateField = SnowmanPlayerImpl.class.getDeclaredField("state");
-        Field timeField = SnowmanPlayerImpl.class.getDeclaredField("timestamp");
-        Field xField = SnowmanPlayerImpl.class.getDeclaredField("destX");
-        Field yField = SnowmanPlayerImpl.class.getDeclaredField("destY");
-        Field hpField = SnowmanPlayerImpl.class.getDeclaredField("hitPoints");
-        
-        stateField.setAccessible(true);
-        timeField.setAccessible(true);
-        xField.setAccessible(true);
-        yField.setAccessible(true);
-        hpField.setAccessible(true);
-        
-        stateField.set(player, state);
-        timeField.setLong(player, timestamp);
-        xField.setFloat(player, destX);
-        yField.setFloat(player, destY);
-        hpField.setInt(player, hp);
+        PlayerStatus status = player.getStatus();
+        status.state = state;
+        status.timestamp = timestamp;
+        status.destX = destX;
+        status.destY = destY;
+        status.hitPoints = hp;
     }
 
+    
+    /**
+     * Test that a PROTOCOL request is answered with the highest version
+     * supported by both sides and the dimensions of the map
+     */
+    @Test
+    public void testProtocol()
+    {
+        float[] dimensions = SnowmanMapInfo.getDimensions(SnowmanMapInfo.DEFAULT);
+        EasyMock.resetToDefault(session);
+        EasyMock.expect(session.send(ServerMessages.createProtocolPkt(
+                Messages.PROTOCOL_VERSION, dimensions[0], dimensions[1]))).andReturn(session);
+        //the clock of the client is measured right away
+        EasyMock.expect(session.send((ByteBuffer) EasyMock.anyObject())).andReturn(session);
+        EasyMock.replay(session);
+        
+        testPlayer.protocol(Messages.PROTOCOL_VERSION + 1);
+        
+        EasyMock.verify(session);
+        Assert.assertEquals(Messages.PROTOCOL_VERSION, testPlayer.getProtocolVersion());
+    }
+    
+    /**
+     * Test that a PING is answered with a PONG echoing its time
+     */
+    @Test
+    public void testPing()
+    {
+        EasyMock.resetToDefault(session);
+        Capture<ByteBuffer> pong = new Capture<ByteBuffer>();
+        EasyMock.expect(session.send(EasyMock.capture(pong))).andReturn(session);
+        EasyMock.replay(session);
+        
+        long before = System.currentTimeMillis();
+        testPlayer.ping(1234);
+        long after = System.currentTimeMillis();
+        
+        EasyMock.verify(session);
+        ByteBuffer packet = pong.getValue();
+        Assert.assertEquals(EOPCODE.PONG.ordinal(), packet.get());
+        Assert.assertEquals(1234, packet.getInt());
+        int time = packet.getInt();
+        Assert.assertTrue(time - (int) before >= 0 && (int) after - time >= 0);
+    }
+    
+    /**
+     * Test that once the clock of the client is measured, the fire time of
+     * timestamped commands uses its offset and the start position of moves
+     * is checked half a round trip earlier
+     */
+    @Test
+    public void testSynchronizedClock()
+    {
+        //client clock 5000ms ahead, 100ms round trip
+        long now = System.currentTimeMillis();
+        testPlayer.pong((int) now - 100, (int) now + 4950);
+        Assert.assertEquals(100.0f, testPlayer.getRoundTripTime(), 5.0f);
+        Assert.assertEquals(5000.0f, testPlayer.getClockOffset(), 5.0f);
+        
+        long later = now + 10000;
+        Assert.assertEquals(later - 40, 
+                            testPlayer.getFireTime((int) later + 4960, later), 5);
+        Assert.assertEquals(later - SnowmanPlayerImpl.MAXLAGMS,
+                            testPlayer.getFireTime((int) later, later));
+        Assert.assertEquals(later - 50, testPlayer.getSendTime(later), 5);
+    }
 }
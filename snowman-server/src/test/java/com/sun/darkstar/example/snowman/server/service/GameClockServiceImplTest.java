@@ -0,0 +1,191 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.service;
+
+import com.sun.sgs.app.NameNotBoundException;
+import com.sun.sgs.auth.Identity;
+import com.sun.sgs.kernel.ComponentRegistry;
+import com.sun.sgs.kernel.KernelRunnable;
+import com.sun.sgs.kernel.RecurringTaskHandle;
+import com.sun.sgs.kernel.TransactionScheduler;
+import com.sun.sgs.service.DataService;
+import com.sun.sgs.service.TransactionProxy;
+import org.junit.Test;
+import org.junit.Assert;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import java.util.Properties;
+
+/**
+ * Verify behavior of the <code>GameClockServiceImpl</code>
+ */
+public class GameClockServiceImplTest
+{
+    private GameClockService createService(Properties properties) {
+        return new GameClockServiceImpl(
+                properties,
+                EasyMock.createMock(ComponentRegistry.class),
+                EasyMock.createMock(TransactionProxy.class));
+    }
+    
+    /**
+     * Verify that the clock starts at the configured time and runs
+     * faster than real time at the configured rate
+     */
+    @Test
+    public void rateTest() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(GameClockServiceImpl.RATE_PROP, "50");
+        properties.setProperty(GameClockServiceImpl.START_PROP, "1000");
+        GameClockService service = createService(properties);
+        
+        long first = service.currentTimeMillis();
+        Assert.assertTrue(first >= 1000);
+        long realStart = System.nanoTime();
+        Thread.sleep(20);
+        long realElapsed = (System.nanoTime() - realStart) / 1000000;
+        long gameElapsed = service.currentTimeMillis() - first;
+        Assert.assertTrue(gameElapsed >= 50 * 20);
+        Assert.assertTrue(gameElapsed <= 50 * (realElapsed + 1));
+        
+        Assert.assertEquals(100, service.toRealDelay(5000));
+        Assert.assertEquals(1, service.toRealDelay(10));
+        Assert.assertEquals(0, service.toRealDelay(0));
+    }
+    
+    /**
+     * Verify that the clock runs in real time by default
+     */
+    @Test
+    public void defaultTest() {
+        GameClockService service = createService(new Properties());
+        Assert.assertTrue(Math.abs(service.currentTimeMillis() - 
+                                   System.currentTimeMillis()) < 1000);
+        Assert.assertEquals(5000, service.toRealDelay(5000));
+    }
+    
+    /**
+     * Create a service backed by a data service holding the given saved
+     * time, and start it.  The transactions of the service run right away.
+     */
+    private GameClockService startService(Properties properties,
+                                          DataService dataService)
+            throws Exception {
+        TransactionScheduler scheduler = 
+                EasyMock.createMock(TransactionScheduler.class);
+        scheduler.runTask((KernelRunnable) EasyMock.anyObject(),
+                          (Identity) EasyMock.anyObject());
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                ((KernelRunnable) EasyMock.getCurrentArguments()[0]).run();
+                return null;
+            }
+        });
+        RecurringTaskHandle handle = 
+                EasyMock.createNiceMock(RecurringTaskHandle.class);
+        EasyMock.expect(scheduler.scheduleRecurringTask(
+                (KernelRunnable) EasyMock.anyObject(),
+                (Identity) EasyMock.anyObject(),
+                EasyMock.anyLong(),
+                EasyMock.eq(GameClockServiceImpl.DEFAULT_SAVE_PERIOD))).
+                andReturn(handle);
+        ComponentRegistry registry = 
+                EasyMock.createMock(ComponentRegistry.class);
+        EasyMock.expect(registry.getComponent(TransactionScheduler.class)).
+                andReturn(scheduler);
+        TransactionProxy txnProxy = 
+                EasyMock.createNiceMock(TransactionProxy.class);
+        EasyMock.expect(txnProxy.getService(DataService.class)).
+                andStubReturn(dataService);
+        EasyMock.replay(scheduler, handle, registry, txnProxy, dataService);
+        
+        GameClockServiceImpl service = 
+                new GameClockServiceImpl(properties, registry, txnProxy);
+        service.ready();
+        EasyMock.verify(scheduler, dataService);
+        return service;
+    }
+    
+    /**
+     * Verify that a restarted clock continues from the saved game time
+     * instead of going back to its configured start
+     */
+    @Test
+    public void restoreTest() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(GameClockServiceImpl.RATE_PROP, "20");
+        properties.setProperty(GameClockServiceImpl.START_PROP, "1000");
+        DataService dataService = EasyMock.createMock(DataService.class);
+        EasyMock.expect(dataService.getServiceBinding(
+                GameClockServiceImpl.TIME_BINDING)).
+                andReturn(new GameClockServiceImpl.SavedTime(500000L));
+        
+        GameClockService service = startService(properties, dataService);
+        Assert.assertTrue(service.currentTimeMillis() >= 
+                          500000L + 20 * GameClockServiceImpl.DEFAULT_SAVE_PERIOD);
+        Assert.assertTrue(service.currentTimeMillis() < 
+                          510000L + 20 * GameClockServiceImpl.DEFAULT_SAVE_PERIOD);
+    }
+    
+    /**
+     * Verify that a clock started with a new data store keeps its
+     * configured start and saves it
+     */
+    @Test
+    public void firstStartTest() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(GameClockServiceImpl.START_PROP, "1000");
+        DataService dataService = EasyMock.createMock(DataService.class);
+        EasyMock.expect(dataService.getServiceBinding(
+                GameClockServiceImpl.TIME_BINDING)).
+                andThrow(new NameNotBoundException("unbound"));
+        dataService.setServiceBinding(
+                EasyMock.eq(GameClockServiceImpl.TIME_BINDING),
+                EasyMock.anyObject());
+        
+        GameClockService service = startService(properties, dataService);
+        Assert.assertTrue(service.currentTimeMillis() < 100000L);
+    }
+    
+    /**
+     * Verify that the clock can not stand still or run backwards
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidRateTest() {
+        Properties properties = new Properties();
+        properties.setProperty(GameClockServiceImpl.RATE_PROP, "0");
+        createService(properties);
+    }
+}
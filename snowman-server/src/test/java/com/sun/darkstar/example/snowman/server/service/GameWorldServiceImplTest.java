@@ -35,12 +35,13 @@
 package com.sun.darkstar.example.snowman.server.service;
 
 import com.sun.darkstar.example.snowman.common.util.SingletonRegistry;
-import com.sun.darkstar.example.snowman.common.util.CollisionManager;
 import com.sun.darkstar.example.snowman.common.util.DataImporter;
+import com.sun.darkstar.example.snowman.common.util.enumn.EStats;
 import com.sun.darkstar.example.snowman.common.util.enumn.EWorld;
 import com.sun.darkstar.example.snowman.common.util.Coordinate;
 import com.sun.sgs.kernel.ComponentRegistry;
 import com.sun.sgs.service.TransactionProxy;
+import com.jme.scene.Node;
 import com.jme.scene.Spatial;
 import com.jme.scene.shape.Box;
 import com.jme.bounding.BoundingBox;
@@ -60,15 +61,17 @@ import java.util.Properties;
  */
 public class GameWorldServiceImplTest
 {
+    /** Acceptable delta for float comparisons */
+    private static final float DELTA = 0.01f;
+    
     /** mock darkstar kernel interfaces */
     private ComponentRegistry mockRegistry;
     private TransactionProxy mockTxnProxy;
     
     /** mock singletons */
     private DataImporter mockDataImporter;
-    private CollisionManager mockCollisionManager;
     
-    /** dummy spatial object representing dummy game world */
+    /** dummy game world with a single wall in front of the origin */
     private static Spatial dummyWorld;
     
     @Before
@@ -77,14 +80,20 @@ public class GameWorldServiceImplTest
         this.mockRegistry = EasyMock.createMock(ComponentRegistry.class);
         this.mockTxnProxy = EasyMock.createMock(TransactionProxy.class);
         
-        //create the dummy world
-        dummyWorld = new Box();
-        dummyWorld.setModelBound(new BoundingBox());
-        dummyWorld.updateModelBound();
+        //create the dummy world with a wall spanning z = 4 to z = 6
+        Box wall = new Box("TestWall", 
+                           new Vector3f(-1f, -5f, 4f),
+                           new Vector3f(1f, 5f, 6f));
+        wall.setModelBound(new BoundingBox());
+        wall.updateModelBound();
+        Node world = new Node("TestWorld");
+        world.attachChild(wall);
+        world.setModelBound(new BoundingBox());
+        world.updateModelBound();
+        dummyWorld = world;
 
         //create the mock singletons
         this.mockDataImporter = EasyMock.createMock(DataImporter.class);
-        this.mockCollisionManager = EasyMock.createMock(CollisionManager.class);
         
         //configure behavior of the data importer to return a dummy world
         EasyMock.expect(mockDataImporter.getWorld(EWorld.Battle)).andReturn(dummyWorld);
@@ -92,102 +101,184 @@ public class GameWorldServiceImplTest
         
         //load the singletons into the registry
         SingletonRegistry.setDataImporter(mockDataImporter);
-        SingletonRegistry.setCollisionManager(mockCollisionManager);
     }
     
     /**
-     * Verify that the trimPath method returns a Coordinate with the
-     * the X and Z coordinates of the resulting Vector3f from the
-     * CollisionManager
+     * Create the GameWorldService with the mock environment
+     */
+    private GameWorldServiceImpl createService() {
+        return new GameWorldServiceImpl(new Properties(),
+                                        mockRegistry,
+                                        mockTxnProxy);
+    }
+    
+    /**
+     * Verify that the trimPath method stops a path that runs into the
+     * wall at the backoff distance in front of it
      */
     @Test
-    public void testTrimPath() throws Exception {
-        //prepare test data
-        float startx = 1.0f;
-        float starty = 2.0f;
-        float endx = 10.0f;
-        float endy = 11.0f;
-        float realEndx = 5.0f;
-        float realEndy = 6.0f;
-        Vector3f dummyDestination = new Vector3f(realEndx, 100.0f, realEndy);
-        
-        //prepare the mock CollisionManager
-        EasyMock.expect(mockCollisionManager.getDestination(startx, starty, endx, endy, dummyWorld)).andReturn(dummyDestination);
-        EasyMock.replay(mockCollisionManager);
-        
-        //create the GameWorldService with the mock environment
-        GameWorldServiceImpl service = new GameWorldServiceImpl(new Properties(),
-                                                                mockRegistry,
-                                                                mockTxnProxy);
+    public void testTrimPathBlocked() throws Exception {
+        GameWorldServiceImpl service = createService();
+        
+        //call the service
+        Coordinate realDestination = service.trimPath(new Coordinate(0.0f, 0.0f),
+                                                      new Coordinate(0.0f, 10.0f));
+        
+        Assert.assertEquals(0.0f, realDestination.getX(), DELTA);
+        Assert.assertEquals(4.0f - EStats.BackoffDistance.getValue(), 
+                            realDestination.getY(), DELTA);
+    }
+    
+    /**
+     * Verify that the trimPath method returns the exact destination
+     * when nothing is in the way
+     */
+    @Test
+    public void testTrimPathClear() throws Exception {
+        GameWorldServiceImpl service = createService();
         
         //call the service
-        Coordinate realDestination = service.trimPath(new Coordinate(startx, starty),
-                                                      new Coordinate(endx, endy));
+        Coordinate realDestination = service.trimPath(new Coordinate(1.0f, 2.0f),
+                                                      new Coordinate(10.0f, -11.0f));
         
-        Assert.assertEquals(realDestination.getX(), realEndx, 0);
-        Assert.assertEquals(realDestination.getY(), realEndy, 0);
+        Assert.assertEquals(10.0f, realDestination.getX(), 0);
+        Assert.assertEquals(-11.0f, realDestination.getY(), 0);
     }
     
     /**
      * Verify that the validThrow method returns true
-     * when there is no collision returned by the
-     * CollisionManager
+     * when the target is in front of the wall
      */
     @Test
     public void testValidThrowTrue()
     {
-        //prepare test data
-        float startx = 1.0f;
-        float starty = 2.0f;
-        float endx = 10.0f;
-        float endy = 11.0f;
-
-        //prepare the mock CollisionManager
-        EasyMock.expect(mockCollisionManager.validate(startx, starty, endx, endy, dummyWorld)).andReturn(true);
-        EasyMock.replay(mockCollisionManager);
-        
-        //create the GameWorldService with the mock environment
-        GameWorldServiceImpl service = new GameWorldServiceImpl(new Properties(),
-                                                                mockRegistry,
-                                                                mockTxnProxy);
+        GameWorldServiceImpl service = createService();
         
         //call the service
-        boolean valid = service.validThrow(new Coordinate(startx, starty),
-                                           new Coordinate(endx, endy));
+        boolean valid = service.validThrow(new Coordinate(0.0f, 0.0f),
+                                           new Coordinate(0.0f, 3.0f));
         
         Assert.assertTrue(valid);
     }
     
     /**
      * Verify that the validThrow method returns false
-     * when there is no collision returned by the
-     * CollisionManager
+     * when the target is behind the wall
      */
     @Test
     public void testValidThrowFalse()
     {
-        //prepare test data
-        float startx = 1.0f;
-        float starty = 2.0f;
-        float endx = 10.0f;
-        float endy = 11.0f;
-
-        //prepare the mock CollisionManager
-        EasyMock.expect(mockCollisionManager.validate(startx, starty, endx, endy, dummyWorld)).andReturn(false);
-        EasyMock.replay(mockCollisionManager);
-        
-        //create the GameWorldService with the mock environment
-        GameWorldServiceImpl service = new GameWorldServiceImpl(new Properties(),
-                                                                mockRegistry,
-                                                                mockTxnProxy);
+        GameWorldServiceImpl service = createService();
         
         //call the service
-        boolean valid = service.validThrow(new Coordinate(startx, starty),
-                                           new Coordinate(endx, endy));
+        boolean valid = service.validThrow(new Coordinate(0.0f, 0.0f),
+                                           new Coordinate(0.0f, 10.0f));
         
         Assert.assertFalse(valid);
     }
     
+    /**
+     * Verify that the trimPaths method returns the same destinations
+     * as individual calls to trimPath
+     */
+    @Test
+    public void testTrimPaths() {
+        GameWorldServiceImpl service = createService();
+        
+        //call the service
+        float[] destinations = service.trimPaths(new float[] {
+            0.0f, 0.0f, 0.0f, 10.0f,
+            1.0f, 2.0f, 10.0f, -11.0f});
+        
+        Assert.assertEquals(4, destinations.length);
+        Assert.assertEquals(0.0f, destinations[0], DELTA);
+        Assert.assertEquals(4.0f - EStats.BackoffDistance.getValue(), 
+                            destinations[1], DELTA);
+        Assert.assertEquals(10.0f, destinations[2], 0);
+        Assert.assertEquals(-11.0f, destinations[3], 0);
+    }
+    
+    /**
+     * Verify that the validThrows method returns the same results
+     * as individual calls to validThrow
+     */
+    @Test
+    public void testValidThrows() {
+        GameWorldServiceImpl service = createService();
+        
+        //call the service
+        boolean[] valid = service.validThrows(new float[] {
+            0.0f, 0.0f, 0.0f, 3.0f,
+            0.0f, 0.0f, 0.0f, 10.0f});
+        
+        Assert.assertEquals(2, valid.length);
+        Assert.assertTrue(valid[0]);
+        Assert.assertFalse(valid[1]);
+    }
+    
+    /**
+     * Verify that repeated throws from nearly the same positions
+     * are answered by the line of sight cache
+     */
+    @Test
+    public void testValidThrowCached() {
+        GameWorldServiceImpl service = createService();
+        
+        Assert.assertFalse(service.validThrow(new Coordinate(0.0f, 0.0f),
+                                              new Coordinate(0.0f, 10.0f)));
+        Assert.assertFalse(service.validThrow(new Coordinate(0.01f, 0.01f),
+                                              new Coordinate(0.01f, 10.01f)));
+        Assert.assertEquals(1, service.getLineOfSightCache().getHits());
+        Assert.assertEquals(1, service.getLineOfSightCache().getMisses());
+    }
+    
+    /**
+     * Verify that a batch of throws answers the cached throws from the
+     * line of sight cache and caches the others
+     */
+    @Test
+    public void testValidThrowsCached() {
+        GameWorldServiceImpl service = createService();
+        
+        Assert.assertFalse(service.validThrow(new Coordinate(0.0f, 0.0f),
+                                              new Coordinate(0.0f, 10.0f)));
+        boolean[] valid = service.validThrows(new float[] {
+            0.0f, 0.0f, 0.0f, 3.0f,
+            0.01f, 0.01f, 0.01f, 10.01f});
+        Assert.assertTrue(valid[0]);
+        Assert.assertFalse(valid[1]);
+        Assert.assertEquals(1, service.getLineOfSightCache().getHits());
+        Assert.assertEquals(2, service.getLineOfSightCache().getMisses());
+        Assert.assertTrue(service.validThrow(new Coordinate(0.0f, 0.0f),
+                                             new Coordinate(0.0f, 3.0f)));
+        Assert.assertEquals(2, service.getLineOfSightCache().getHits());
+    }
+    
+    /**
+     * Verify that setting the cache size to zero disables the cache
+     */
+    @Test
+    public void testValidThrowCacheDisabled() {
+        Properties props = new Properties();
+        props.setProperty(GameWorldServiceImpl.LOS_CACHE_SIZE_PROP, "0");
+        GameWorldServiceImpl service = new GameWorldServiceImpl(props,
+                                                                mockRegistry,
+                                                                mockTxnProxy);
+        
+        Assert.assertNull(service.getLineOfSightCache());
+        Assert.assertFalse(service.validThrow(new Coordinate(0.0f, 0.0f),
+                                              new Coordinate(0.0f, 10.0f)));
+    }
+    
+    /**
+     * Verify that a batch which is not packed in groups of four
+     * is rejected
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testTrimPathsMalformed() {
+        createService().trimPaths(new float[] {0.0f, 0.0f, 1.0f});
+    }
+    
     
     @After 
     public void cleanupMocks() {
@@ -199,7 +290,6 @@ public class GameWorldServiceImplTest
     @After
     public void cleanupSingletons() {
         SingletonRegistry.setDataImporter(null);
-        SingletonRegistry.setCollisionManager(null);
     }
     
     @After
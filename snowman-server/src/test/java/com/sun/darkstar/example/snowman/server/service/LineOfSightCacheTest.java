@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.service;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+/**
+ * Verify behavior of the <code>LineOfSightCache</code>
+ */
+public class LineOfSightCacheTest
+{
+    @Test
+    public void testMissThenHit() {
+        LineOfSightCache cache = new LineOfSightCache(16, 0.25f);
+        long key = cache.getKey(1.0f, 2.0f, 3.0f, 4.0f);
+        
+        Assert.assertNull(cache.get(key));
+        cache.put(key, true);
+        Assert.assertEquals(Boolean.TRUE, cache.get(key));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+    
+    @Test
+    public void testQuantization() {
+        LineOfSightCache cache = new LineOfSightCache(16, 0.25f);
+        
+        Assert.assertEquals(cache.getKey(1.0f, 2.0f, 3.0f, 4.0f),
+                            cache.getKey(1.1f, 2.2f, 3.05f, 4.24f));
+        Assert.assertFalse(cache.getKey(1.0f, 2.0f, 3.0f, 4.0f) ==
+                           cache.getKey(1.0f, 2.0f, 3.0f, 4.25f));
+        Assert.assertFalse(cache.getKey(1.0f, 2.0f, 3.0f, 4.0f) ==
+                           cache.getKey(3.0f, 4.0f, 1.0f, 2.0f));
+        Assert.assertFalse(cache.getKey(-0.1f, 0.0f, 0.0f, 0.0f) ==
+                           cache.getKey(0.1f, 0.0f, 0.0f, 0.0f));
+    }
+    
+    @Test
+    public void testBounded() {
+        LineOfSightCache cache = new LineOfSightCache(64, 1.0f);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(cache.getKey(i, 0, 0, i), i % 2 == 0);
+        }
+        Assert.assertTrue(cache.size() <= 64);
+        Assert.assertTrue(cache.size() > 0);
+        
+        //the most recent entry is always retained
+        Assert.assertEquals(Boolean.FALSE, cache.get(cache.getKey(999, 0, 0, 999)));
+    }
+    
+    @Test
+    public void testSizeNotRounded() {
+        int[] sizes = {1, 3, 15, 17, 100};
+        for (int size : sizes) {
+            LineOfSightCache cache = new LineOfSightCache(size, 1.0f);
+            for (int i = 0; i < 1000; i++) {
+                cache.put(cache.getKey(i, 0, 0, i), true);
+            }
+            Assert.assertTrue(cache.size() <= size);
+            Assert.assertTrue(cache.size() > 0);
+        }
+    }
+    
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final LineOfSightCache cache = new LineOfSightCache(128, 1.0f);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        long key = cache.getKey(j % 200, 0, 0, 0);
+                        if (cache.get(key) == null) {
+                            cache.put(key, true);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(8000, cache.getHits() + cache.getMisses());
+        Assert.assertTrue(cache.size() <= 128);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new LineOfSightCache(0, 1.0f);
+    }
+}
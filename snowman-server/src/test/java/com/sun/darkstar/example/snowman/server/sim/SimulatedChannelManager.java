@@ -0,0 +1,175 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.sim;
+
+import com.sun.sgs.app.Channel;
+import com.sun.sgs.app.ChannelListener;
+import com.sun.sgs.app.ChannelManager;
+import com.sun.sgs.app.ClientSession;
+import com.sun.sgs.app.Delivery;
+import com.sun.sgs.app.ManagedObjectRemoval;
+import com.sun.sgs.app.NameExistsException;
+import com.sun.sgs.app.NameNotBoundException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In memory {@code ChannelManager} of a {@link SimulationHarness}.  A
+ * message sent on a channel is handed directly to each of its sessions.
+ */
+class SimulatedChannelManager implements ChannelManager {
+    
+    private final Map<String, SimulatedChannel> channels =
+            new HashMap<String, SimulatedChannel>();
+    private long messages = 0;
+    
+    /**
+     * Channel handing its messages to the sessions which joined it.  The
+     * channel is removed from its manager when it is removed from the
+     * data store.
+     */
+    private class SimulatedChannel implements Channel, ManagedObjectRemoval,
+                                              Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String name;
+        private final Delivery delivery;
+        private final Set<ClientSession> sessions =
+                new LinkedHashSet<ClientSession>();
+        
+        SimulatedChannel(String name, Delivery delivery) {
+            this.name = name;
+            this.delivery = delivery;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public Delivery getDelivery() {
+            return delivery;
+        }
+        
+        public boolean hasSessions() {
+            return !sessions.isEmpty();
+        }
+        
+        public Iterator<ClientSession> getSessions() {
+            return new ArrayList<ClientSession>(sessions).iterator();
+        }
+        
+        public Channel join(ClientSession session) {
+            sessions.add(session);
+            return this;
+        }
+        
+        public Channel join(Set<? extends ClientSession> joining) {
+            sessions.addAll(joining);
+            return this;
+        }
+        
+        public Channel leave(ClientSession session) {
+            sessions.remove(session);
+            return this;
+        }
+        
+        public Channel leave(Set<? extends ClientSession> leaving) {
+            sessions.removeAll(leaving);
+            return this;
+        }
+        
+        public Channel leaveAll() {
+            sessions.clear();
+            return this;
+        }
+        
+        public Channel send(ClientSession sender, ByteBuffer message) {
+            messages++;
+            for (ClientSession session : new ArrayList<ClientSession>(sessions)) {
+                if (session.isConnected()) {
+                    session.send(message.asReadOnlyBuffer(), delivery);
+                }
+            }
+            return this;
+        }
+        
+        public void removingObject() {
+            channels.remove(name);
+        }
+    }
+    
+    /** {@inheritDoc} */
+    public Channel createChannel(String name, ChannelListener listener,
+                                 Delivery delivery) {
+        if (channels.containsKey(name)) {
+            throw new NameExistsException(name);
+        }
+        SimulatedChannel channel = new SimulatedChannel(name, delivery);
+        channels.put(name, channel);
+        return channel;
+    }
+    
+    /** {@inheritDoc} */
+    public Channel getChannel(String name) {
+        Channel channel = channels.get(name);
+        if (channel == null) {
+            throw new NameNotBoundException(name);
+        }
+        return channel;
+    }
+    
+    /**
+     * Returns the number of messages sent on channels so far.
+     * 
+     * @return the number of channel messages
+     */
+    long getMessages() {
+        return messages;
+    }
+    
+    /**
+     * Returns the number of channels which have not been removed.
+     * 
+     * @return the number of channels
+     */
+    int getChannelCount() {
+        return channels.size();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.sim;
+
+import com.sun.darkstar.example.snowman.common.protocol.enumn.EEndState;
+import com.sun.darkstar.example.snowman.common.protocol.enumn.EMOBType;
+import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
+import com.sun.darkstar.example.snowman.common.protocol.processor.IClientProcessor;
+import com.sun.darkstar.example.snowman.common.util.SingletonRegistry;
+import com.sun.sgs.app.ClientSession;
+import com.sun.sgs.app.ClientSessionListener;
+import com.sun.sgs.app.Delivery;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Session of a simulated client of a {@link SimulationHarness}.  The
+ * client decodes the packets sent to it and only answers what the
+ * server needs to go on: it reports ready once it has the map of its
+ * game, answers PING packets, and leaves once its game ends.  Its
+ * snowman otherwise stands still, leaving the playing to the robots.
+ */
+class SimulatedClient implements ClientSession, IClientProcessor,
+                                 Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final SimulationHarness harness;
+    private final String name;
+    private ClientSessionListener listener = null;
+    private boolean connected = true;
+    
+    /**
+     * Creates a connected client session.
+     * 
+     * @param harness the harness running the client
+     * @param name the name of the client
+     */
+    SimulatedClient(SimulationHarness harness, String name) {
+        this.harness = harness;
+        this.name = name;
+    }
+    
+    /**
+     * Sets the listener that messages from the client are delivered to.
+     * 
+     * @param listener the listener returned by the server on login
+     */
+    void setListener(ClientSessionListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Returns the listener that messages from the client are delivered to.
+     * 
+     * @return the listener, or null if the client has not logged in yet
+     */
+    ClientSessionListener getListener() {
+        return listener;
+    }
+    
+    /**
+     * Marks the client as disconnected.
+     */
+    void disconnect() {
+        connected = false;
+    }
+    
+    /** {@inheritDoc} */
+    public String getName() {
+        return name;
+    }
+    
+    /** {@inheritDoc} */
+    public boolean isConnected() {
+        return connected;
+    }
+    
+    /** {@inheritDoc} */
+    public ClientSession send(ByteBuffer message) {
+        return send(message, Delivery.RELIABLE);
+    }
+    
+    /** {@inheritDoc} */
+    public ClientSession send(ByteBuffer message, Delivery delivery) {
+        if (!connected) {
+            throw new IllegalStateException("session disconnected");
+        }
+        harness.received(message.remaining());
+        SingletonRegistry.getMessageHandler().parseClientPacket(
+                message.duplicate(), this);
+        return this;
+    }
+    
+    /** {@inheritDoc} */
+    public int getMaxMessageLength() {
+        return Messages.MAX_PACKET_SIZE;
+    }
+    
+    /** {@inheritDoc} */
+    public Set<Delivery> supportedDeliveries() {
+        return EnumSet.allOf(Delivery.class);
+    }
+    
+    /** {@inheritDoc} */
+    public void ready() {
+        harness.deliver(this, Messages.createReadyPkt());
+    }
+    
+    /** {@inheritDoc} */
+    public void ping(int time) {
+        harness.deliver(this, Messages.createPongPkt(
+                time, (int) harness.getTime()));
+    }
+    
+    /** {@inheritDoc} */
+    public void newGame(int myID, String mapname) {
+        harness.gameJoined();
+    }
+    
+    /** {@inheritDoc} */
+    public void endGame(EEndState endState) {
+        harness.gameFinished(this);
+    }
+    
+    /** {@inheritDoc} */
+    public boolean sequenced(int sourceID, int sequence) {
+        return true;
+    }
+    
+    public void pong(int echo, int time) {}
+    public void startGame() {}
+    public void addMOB(int objectID, float x, float y, EMOBType objType, ETeamColor team, String mobName) {}
+    public void moveMOB(int objectID, float startx, float starty, float endx, float endy) {}
+    public void removeMOB(int objectID) {}
+    public void stopMOB(int objectID, float x, float y) {}
+    public void attachObject(int sourceID, int targetID) {}
+    public void attacked(int sourceID, int targetID, int hp) {}
+    public void respawn(int objectID, float x, float y) {}
+    public void chatMessage(int sourceID, String message) {}
+    public void protocol(int version, float mapWidth, float mapHeight) {}
+}
@@ -0,0 +1,222 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.sim;
+
+import com.sun.sgs.app.DataManager;
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.ManagedObjectRemoval;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.NameNotBoundException;
+import com.sun.sgs.app.ObjectNotFoundException;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In memory {@code DataManager} of a {@link SimulationHarness}.  Objects
+ * are kept as they are rather than serialized, so that the cost of the
+ * data store is left out of a simulation.  The number of references
+ * dereferenced and of objects marked for update are counted instead, as
+ * an indication of the work the data store would do.
+ */
+class SimulatedDataManager implements DataManager {
+    
+    private final TreeMap<String, ManagedObject> bindings =
+            new TreeMap<String, ManagedObject>();
+    private final Map<Object, Reference<?>> references =
+            new IdentityHashMap<Object, Reference<?>>();
+    private long nextId = 1;
+    private long loads = 0;
+    private long updates = 0;
+    
+    /**
+     * Reference to an object of the simulated data store, which fails
+     * once the object has been removed.
+     */
+    private static class Reference<T> implements ManagedReference<T>,
+                                                 Serializable {
+        private static final long serialVersionUID = 1L;
+        private final SimulatedDataManager manager;
+        private final T object;
+        private final BigInteger id;
+        private boolean removed = false;
+        
+        Reference(SimulatedDataManager manager, T object, BigInteger id) {
+            this.manager = manager;
+            this.object = object;
+            this.id = id;
+        }
+        
+        public T get() {
+            if (removed) {
+                throw new ObjectNotFoundException("removed object " + id);
+            }
+            manager.loads++;
+            return object;
+        }
+        
+        public T getForUpdate() {
+            T o = get();
+            manager.updates++;
+            return o;
+        }
+        
+        public BigInteger getId() {
+            return id;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Reference && ((Reference<?>) o).id.equals(id);
+        }
+        
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+    
+    /** {@inheritDoc} */
+    public ManagedObject getBinding(String name) {
+        ManagedObject object = bindings.get(name);
+        if (object == null) {
+            throw new NameNotBoundException(name);
+        }
+        loads++;
+        return object;
+    }
+    
+    /** {@inheritDoc} */
+    public ManagedObject getBindingForUpdate(String name) {
+        ManagedObject object = getBinding(name);
+        updates++;
+        return object;
+    }
+    
+    /** {@inheritDoc} */
+    public void setBinding(String name, Object object) {
+        bindings.put(name, checkManaged(object));
+    }
+    
+    /** {@inheritDoc} */
+    public void removeBinding(String name) {
+        if (bindings.remove(name) == null) {
+            throw new NameNotBoundException(name);
+        }
+    }
+    
+    /** {@inheritDoc} */
+    public String nextBoundName(String name) {
+        return name == null ? 
+                (bindings.isEmpty() ? null : bindings.firstKey()) : 
+                bindings.higherKey(name);
+    }
+    
+    /** {@inheritDoc} */
+    public void removeObject(Object object) {
+        checkManaged(object);
+        if (object instanceof ManagedObjectRemoval) {
+            ((ManagedObjectRemoval) object).removingObject();
+        }
+        Reference<?> ref = references.remove(object);
+        if (ref != null) {
+            ref.removed = true;
+        }
+    }
+    
+    /** {@inheritDoc} */
+    public void markForUpdate(Object object) {
+        checkManaged(object);
+        updates++;
+    }
+    
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    public <T> ManagedReference<T> createReference(T object) {
+        checkManaged(object);
+        Reference<T> ref = (Reference<T>) references.get(object);
+        if (ref == null) {
+            ref = new Reference<T>(this, object, 
+                                   BigInteger.valueOf(nextId++));
+            references.put(object, ref);
+        }
+        return ref;
+    }
+    
+    /** {@inheritDoc} */
+    public BigInteger getObjectId(Object object) {
+        return createReference(object).getId();
+    }
+    
+    /**
+     * Returns the number of objects loaded through references and
+     * bindings so far.
+     * 
+     * @return the number of loads
+     */
+    long getLoads() {
+        return loads;
+    }
+    
+    /**
+     * Returns the number of objects marked for update so far.
+     * 
+     * @return the number of updates
+     */
+    long getUpdates() {
+        return updates;
+    }
+    
+    /**
+     * Returns the number of objects which have references and have not
+     * been removed.
+     * 
+     * @return the number of live referenced objects
+     */
+    int getObjectCount() {
+        return references.size();
+    }
+    
+    // Verify that an object can be stored by the data manager
+    private static ManagedObject checkManaged(Object object) {
+        if (!(object instanceof ManagedObject)) {
+            throw new IllegalArgumentException(
+                    "not a managed object: " + object);
+        }
+        return (ManagedObject) object;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.sim;
+
+import com.sun.darkstar.example.snowman.server.service.GameClockManager;
+import com.sun.sgs.app.PeriodicTaskHandle;
+import com.sun.sgs.app.Task;
+import com.sun.sgs.app.TaskManager;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deterministic {@code TaskManager} of a {@link SimulationHarness}, which
+ * is also the game clock of the simulation.
+ * <p>
+ * Tasks run one at a time on the calling thread, in the order of the
+ * simulated time they are due at, and in the order they were scheduled
+ * for the same time.  The simulated time jumps to the time of each task
+ * as it runs, so a simulation runs as fast as its tasks do and always
+ * runs the same tasks in the same order.  Unlike Darkstar, a task which
+ * throws an exception is neither rolled back nor retried; the failure is
+ * logged and counted.
+ */
+class SimulatedTaskManager implements TaskManager, GameClockManager {
+    
+    private static final Logger logger = 
+            Logger.getLogger(SimulatedTaskManager.class.getName());
+    
+    private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+    private long now;
+    private long sequence = 0;
+    private long tasksRun = 0;
+    private long failures = 0;
+    
+    /**
+     * A scheduled run of a task
+     */
+    private static class Entry implements Comparable<Entry>, 
+                                          PeriodicTaskHandle {
+        final Task task;
+        final long time;
+        final long sequence;
+        final long period;
+        boolean cancelled = false;
+        
+        Entry(Task task, long time, long sequence, long period) {
+            this.task = task;
+            this.time = time;
+            this.sequence = sequence;
+            this.period = period;
+        }
+        
+        public int compareTo(Entry other) {
+            if (time != other.time) {
+                return time < other.time ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : 
+                    (sequence == other.sequence ? 0 : 1);
+        }
+        
+        public void cancel() {
+            if (cancelled) {
+                throw new IllegalStateException("task already cancelled");
+            }
+            cancelled = true;
+        }
+    }
+    
+    /**
+     * Creates a task manager whose simulated time starts at the given
+     * time.
+     * 
+     * @param start the simulated time in milliseconds to start at
+     */
+    SimulatedTaskManager(long start) {
+        this.now = start;
+    }
+    
+    /** {@inheritDoc} */
+    public void scheduleTask(Task task) {
+        scheduleTask(task, 0);
+    }
+    
+    /** {@inheritDoc} */
+    public void scheduleTask(Task task, long delay) {
+        schedule(task, delay, 0);
+    }
+    
+    /** {@inheritDoc} */
+    public PeriodicTaskHandle schedulePeriodicTask(Task task, long delay,
+                                                   long period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be > 0");
+        }
+        return schedule(task, delay, period);
+    }
+    
+    /** {@inheritDoc} */
+    public boolean shouldContinue() {
+        return true;
+    }
+    
+    /** {@inheritDoc} */
+    public long currentTimeMillis() {
+        return now;
+    }
+    
+    /** 
+     * {@inheritDoc}
+     * 
+     * Delays are already measured in simulated time.
+     */
+    public long toRealDelay(long delay) {
+        return delay;
+    }
+    
+    /**
+     * Runs the next task if it is due at or before the given time.
+     * 
+     * @param limit the simulated time to run tasks up to
+     * @return true if a task was due
+     */
+    boolean runNext(long limit) {
+        Entry entry = queue.peek();
+        if (entry == null || entry.time > limit) {
+            return false;
+        }
+        queue.poll();
+        if (entry.cancelled) {
+            return true;
+        }
+        now = Math.max(now, entry.time);
+        tasksRun++;
+        try {
+            entry.task.run();
+        } catch (Exception e) {
+            failures++;
+            logger.log(Level.WARNING, "Task " + entry.task + " failed", e);
+        }
+        if (entry.period > 0 && !entry.cancelled) {
+            queue.add(new Entry(entry.task, entry.time + entry.period,
+                                sequence++, entry.period));
+        }
+        return true;
+    }
+    
+    /**
+     * Runs all of the tasks due up to the given time, including those
+     * they schedule, then advances the simulated time to it.
+     * 
+     * @param limit the simulated time to run up to
+     */
+    void runUntil(long limit) {
+        while (runNext(limit)) {
+        }
+        now = Math.max(now, limit);
+    }
+    
+    /**
+     * Returns the number of tasks run so far.
+     * 
+     * @return the number of tasks run
+     */
+    long getTasksRun() {
+        return tasksRun;
+    }
+    
+    /**
+     * Returns the number of tasks which threw an exception so far.
+     * 
+     * @return the number of failed tasks
+     */
+    long getFailures() {
+        return failures;
+    }
+    
+    /**
+     * Returns the number of task runs scheduled and not run yet.
+     * 
+     * @return the number of pending tasks
+     */
+    int getPending() {
+        return queue.size();
+    }
+    
+    // Add a task to the queue
+    private Entry schedule(Task task, long delay, long period) {
+        if (task == null) {
+            throw new NullPointerException("null task");
+        }
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay must be >= 0");
+        }
+        Entry entry = new Entry(task, now + delay, sequence++, period);
+        queue.add(entry);
+        return entry;
+    }
+}
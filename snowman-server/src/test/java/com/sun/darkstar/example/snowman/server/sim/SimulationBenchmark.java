@@ -0,0 +1,100 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.sim;
+
+import com.sun.darkstar.example.snowman.server.service.GameWorldServiceImpl;
+import java.util.Properties;
+
+/**
+ * Plays many games at once in a {@link SimulationHarness} and reports how
+ * much faster than real time they run, as a target for profiling the game
+ * logic.  This is not run as part of the tests.  Run it with the test
+ * classpath, which must include the game world data of the client:
+ * <pre>
+ * java -cp ... com.sun.darkstar.example.snowman.server.sim.SimulationBenchmark [games] [minutes]
+ * </pre>
+ * Each game has one simulated client and three robots.  The given number
+ * of games (1000 by default) are played for the given simulated time in
+ * minutes (10 by default), after one simulated minute of warm up.
+ */
+public class SimulationBenchmark
+{
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        long minutes = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        
+        Properties properties = new Properties();
+        properties.setProperty("numPlayersPerGame", "1");
+        properties.setProperty("numRobotsPerGame", "3");
+        properties.setProperty("robotDelay", "1000");
+        properties.setProperty("gamePoolSize", "0");
+        SimulationHarness harness = new SimulationHarness(
+                properties, 
+                new GameWorldServiceImpl(properties, null, null));
+        try {
+            harness.login(games);
+            harness.run(60 * 1000);
+            
+            long tasks = harness.getTasksRun();
+            long finished = harness.getGamesFinished();
+            long packets = harness.getPackets();
+            long loads = harness.getObjectLoads();
+            long updates = harness.getObjectUpdates();
+            long start = System.nanoTime();
+            harness.run(minutes * 60 * 1000);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            
+            tasks = harness.getTasksRun() - tasks;
+            System.out.printf("%d games for %d simulated minutes in %.1f seconds%n",
+                              games, minutes, seconds);
+            System.out.printf("  %-22s %,14.1f%n", "speed up",
+                              minutes * 60 / seconds);
+            System.out.printf("  %-22s %,14.0f%n", "tasks per second",
+                              tasks / seconds);
+            System.out.printf("  %-22s %,14d%n", "games finished",
+                              harness.getGamesFinished() - finished);
+            System.out.printf("  %-22s %,14.2f%n", "packets per task",
+                              (double) (harness.getPackets() - packets) / tasks);
+            System.out.printf("  %-22s %,14.2f%n", "loads per task",
+                              (double) (harness.getObjectLoads() - loads) / tasks);
+            System.out.printf("  %-22s %,14.2f%n", "updates per task",
+                              (double) (harness.getObjectUpdates() - updates) / tasks);
+            System.out.printf("  %-22s %,14d%n", "failed tasks",
+                              harness.getTaskFailures());
+        } finally {
+            harness.shutdown();
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.sim;
+
+import com.sun.darkstar.example.snowman.common.protocol.messages.ClientMessages;
+import com.sun.darkstar.example.snowman.common.protocol.messages.Messages;
+import com.sun.darkstar.example.snowman.server.SnowmanServer;
+import com.sun.darkstar.example.snowman.server.impl.SnowmanMapInfo;
+import com.sun.darkstar.example.snowman.server.service.GameClockManager;
+import com.sun.darkstar.example.snowman.server.service.GameWorldManager;
+import com.sun.sgs.app.ChannelManager;
+import com.sun.sgs.app.ClientSessionListener;
+import com.sun.sgs.app.DataManager;
+import com.sun.sgs.app.ManagerNotFoundException;
+import com.sun.sgs.app.Task;
+import com.sun.sgs.app.TaskManager;
+import com.sun.sgs.internal.InternalContext;
+import com.sun.sgs.internal.ManagerLocator;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Runs a complete Project Snowman server in a single thread without a
+ * Darkstar stack, for profiling the game logic on its own.
+ * <p>
+ * The harness stands in for the Darkstar managers with an in memory data
+ * manager, a channel manager handing messages straight to simulated
+ * clients, and a deterministic task manager running on simulated time,
+ * which is also the {@link GameClockManager} of the games.  The
+ * {@link SnowmanServer} is initialized with the given properties and
+ * simulated clients log into it, so that the matchmakers, the games and
+ * their robots all run as they would on a server.  Each client leaves
+ * as soon as its game ends and is replaced by a new one, keeping the
+ * number of games in play steady.  Given the same properties and
+ * logins, a simulation runs the same tasks in the same order every time.
+ * <p>
+ * The harness installs itself as the manager locator of the
+ * {@code AppContext} when created, so only one harness can be used at a
+ * time, and {@link #shutdown} must be called once it is done.
+ */
+public class SimulationHarness implements ManagerLocator {
+    
+    private final SimulatedDataManager dataManager;
+    private final SimulatedTaskManager taskManager;
+    private final SimulatedChannelManager channelManager;
+    private final Map<Class<?>, Object> managers = 
+            new HashMap<Class<?>, Object>();
+    private final SnowmanServer server;
+    private int logins = 0;
+    private boolean relogin = true;
+    private long gamesJoined = 0;
+    private long gamesFinished = 0;
+    private long packets = 0;
+    private long bytes = 0;
+    
+    /**
+     * Creates a harness running a server configured by the given
+     * properties, whose collision detection is done by the given game
+     * world.  The simulated time starts at 0.
+     * 
+     * @param properties the properties of the {@link SnowmanServer}
+     * @param gameWorld the game world of the games, such as a
+     *        {@code GameWorldServiceImpl}
+     */
+    public SimulationHarness(Properties properties,
+                             GameWorldManager gameWorld) {
+        this.dataManager = new SimulatedDataManager();
+        this.taskManager = new SimulatedTaskManager(0);
+        this.channelManager = new SimulatedChannelManager();
+        managers.put(GameWorldManager.class, gameWorld);
+        managers.put(GameClockManager.class, taskManager);
+        InternalContext.setManagerLocator(this);
+        SnowmanMapInfo.setRespawnSeed(0);
+        
+        this.server = new SnowmanServer();
+        dataManager.setBinding("snowman.server", server);
+        server.initialize(properties);
+    }
+    
+    /**
+     * Logs the given number of new clients in.
+     * 
+     * @param count the number of clients
+     */
+    public void login(int count) {
+        for (int i = 0; i < count; i++) {
+            final SimulatedClient client = 
+                    new SimulatedClient(this, "player" + logins++);
+            taskManager.scheduleTask(new SimulationTask() {
+                public void run() {
+                    client.setListener(server.loggedIn(client));
+                    deliver(client, ClientMessages.createProtocolPkt(
+                            Messages.PROTOCOL_VERSION));
+                }
+            });
+        }
+    }
+    
+    /**
+     * Sets whether a client whose game has ended is replaced by a new
+     * client, which is the default.
+     * 
+     * @param relogin true to replace the clients
+     */
+    public void setRelogin(boolean relogin) {
+        this.relogin = relogin;
+    }
+    
+    /**
+     * Runs the tasks of the simulation for the given simulated time.
+     * 
+     * @param millis the simulated time to run for in milliseconds
+     */
+    public void run(long millis) {
+        taskManager.runUntil(taskManager.currentTimeMillis() + millis);
+    }
+    
+    /**
+     * Removes the harness from the {@code AppContext}.
+     */
+    public void shutdown() {
+        if (InternalContext.getManagerLocator() == this) {
+            InternalContext.setManagerLocator(null);
+        }
+    }
+    
+    /**
+     * Returns the simulated time.
+     * 
+     * @return the simulated time in milliseconds
+     */
+    public long getTime() {
+        return taskManager.currentTimeMillis();
+    }
+    
+    /**
+     * Returns the number of tasks run so far.
+     * 
+     * @return the number of tasks
+     */
+    public long getTasksRun() {
+        return taskManager.getTasksRun();
+    }
+    
+    /**
+     * Returns the number of tasks which failed with an exception so far.
+     * 
+     * @return the number of failed tasks
+     */
+    public long getTaskFailures() {
+        return taskManager.getFailures();
+    }
+    
+    /**
+     * Returns the number of times a client was placed into a game.
+     * 
+     * @return the number of games joined by clients
+     */
+    public long getGamesJoined() {
+        return gamesJoined;
+    }
+    
+    /**
+     * Returns the number of times a client saw its game end.
+     * 
+     * @return the number of games finished by clients
+     */
+    public long getGamesFinished() {
+        return gamesFinished;
+    }
+    
+    /**
+     * Returns the number of packets sent to clients so far, directly or
+     * on channels.
+     * 
+     * @return the number of packets received by clients
+     */
+    public long getPackets() {
+        return packets;
+    }
+    
+    /**
+     * Returns the number of bytes sent to clients so far.
+     * 
+     * @return the number of bytes received by clients
+     */
+    public long getBytes() {
+        return bytes;
+    }
+    
+    /**
+     * Returns the number of objects loaded from the data manager so far.
+     * 
+     * @return the number of object loads
+     */
+    public long getObjectLoads() {
+        return dataManager.getLoads();
+    }
+    
+    /**
+     * Returns the number of objects marked for update so far.
+     * 
+     * @return the number of object updates
+     */
+    public long getObjectUpdates() {
+        return dataManager.getUpdates();
+    }
+    
+    /**
+     * Returns the number of objects of the data manager which can be
+     * referenced.
+     * 
+     * @return the number of live objects
+     */
+    public int getObjectCount() {
+        return dataManager.getObjectCount();
+    }
+    
+    /** {@inheritDoc} */
+    public DataManager getDataManager() {
+        return dataManager;
+    }
+    
+    /** {@inheritDoc} */
+    public TaskManager getTaskManager() {
+        return taskManager;
+    }
+    
+    /** {@inheritDoc} */
+    public ChannelManager getChannelManager() {
+        return channelManager;
+    }
+    
+    /** {@inheritDoc} */
+    public <T> T getManager(Class<T> type) {
+        Object manager = managers.get(type);
+        if (manager == null) {
+            throw new ManagerNotFoundException("no manager for " + type);
+        }
+        return type.cast(manager);
+    }
+    
+    /**
+     * Delivers a message from a client to the server in a new task.
+     * 
+     * @param client the sending client
+     * @param message the message
+     */
+    void deliver(final SimulatedClient client, final ByteBuffer message) {
+        taskManager.scheduleTask(new SimulationTask() {
+            public void run() {
+                ClientSessionListener listener = client.getListener();
+                if (client.isConnected() && listener != null) {
+                    listener.receivedMessage(message);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Counts a packet received by a client.
+     * 
+     * @param length the length of the packet in bytes
+     */
+    void received(int length) {
+        packets++;
+        bytes += length;
+    }
+    
+    /**
+     * Counts a client placed into a game.
+     */
+    void gameJoined() {
+        gamesJoined++;
+    }
+    
+    /**
+     * Disconnects a client whose game ended in a new task, and logs a new
+     * client in to replace it if clients are replaced.
+     * 
+     * @param client the client
+     */
+    void gameFinished(final SimulatedClient client) {
+        gamesFinished++;
+        taskManager.scheduleTask(new SimulationTask() {
+            public void run() {
+                if (client.isConnected()) {
+                    client.disconnect();
+                    client.getListener().disconnected(true);
+                    if (relogin) {
+                        login(1);
+                    }
+                }
+            }
+        });
+    }
+    
+    /**
+     * Task standing for the work Darkstar does on behalf of clients
+     */
+    private abstract static class SimulationTask implements Task,
+                                                            Serializable {
+        private static final long serialVersionUID = 1L;
+    }
+}
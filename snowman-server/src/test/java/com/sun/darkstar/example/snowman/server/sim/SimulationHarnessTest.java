@@ -0,0 +1,146 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.sim;
+
+import com.sun.darkstar.example.snowman.common.util.DataImporter;
+import com.sun.darkstar.example.snowman.common.util.SingletonRegistry;
+import com.sun.darkstar.example.snowman.common.util.enumn.EWorld;
+import com.sun.darkstar.example.snowman.server.service.GameWorldServiceImpl;
+import com.sun.sgs.kernel.ComponentRegistry;
+import com.sun.sgs.service.TransactionProxy;
+import com.jme.bounding.BoundingBox;
+import com.jme.math.Vector3f;
+import com.jme.scene.Node;
+import com.jme.scene.shape.Box;
+import org.junit.Test;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.After;
+import org.easymock.EasyMock;
+import java.util.Properties;
+
+/**
+ * Verify that the <code>SimulationHarness</code> plays whole games
+ */
+public class SimulationHarnessTest
+{
+    private SimulationHarness harness;
+    
+    @Before
+    public void createWorld() {
+        //a square world with a single wall in the middle
+        Box ground = new Box("TestGround",
+                             new Vector3f(0f, -1f, 0f),
+                             new Vector3f(96f, 0f, 96f));
+        Box wall = new Box("TestWall", 
+                           new Vector3f(47f, 0f, 40f),
+                           new Vector3f(49f, 5f, 56f));
+        wall.setModelBound(new BoundingBox());
+        wall.updateModelBound();
+        Node world = new Node("TestWorld");
+        world.attachChild(wall);
+        world.setModelBound(new BoundingBox());
+        world.updateModelBound();
+        ground.setModelBound(new BoundingBox());
+        ground.updateModelBound();
+        world.attachChild(ground);
+        world.updateModelBound();
+        
+        DataImporter importer = EasyMock.createMock(DataImporter.class);
+        EasyMock.expect(importer.getWorld(EWorld.Battle)).andStubReturn(world);
+        EasyMock.replay(importer);
+        SingletonRegistry.setDataImporter(importer);
+    }
+    
+    @After
+    public void shutdownHarness() {
+        if (harness != null) {
+            harness.shutdown();
+        }
+    }
+    
+    private SimulationHarness createHarness() {
+        Properties properties = new Properties();
+        properties.setProperty("numPlayersPerGame", "1");
+        properties.setProperty("numRobotsPerGame", "3");
+        properties.setProperty("robotDelay", "500");
+        GameWorldServiceImpl gameWorld = new GameWorldServiceImpl(
+                new Properties(),
+                EasyMock.createMock(ComponentRegistry.class),
+                EasyMock.createMock(TransactionProxy.class));
+        return new SimulationHarness(properties, gameWorld);
+    }
+    
+    /**
+     * Verify that logged in clients are matched into games which the
+     * robots play to the end, and that the clients are replaced
+     */
+    @Test
+    public void gamesTest() {
+        harness = createHarness();
+        harness.login(4);
+        harness.run(30 * 60 * 1000);
+        
+        Assert.assertEquals(0, harness.getTaskFailures());
+        Assert.assertEquals(30 * 60 * 1000, harness.getTime());
+        Assert.assertTrue(harness.getGamesFinished() > 4);
+        Assert.assertTrue(harness.getGamesJoined() >= 
+                          harness.getGamesFinished());
+        Assert.assertTrue(harness.getGamesJoined() <= 
+                          harness.getGamesFinished() + 4);
+        Assert.assertTrue(harness.getPackets() > 0);
+    }
+    
+    /**
+     * Verify that a simulation runs the same way every time
+     */
+    @Test
+    public void deterministicTest() {
+        long[][] results = new long[2][];
+        for (int i = 0; i < results.length; i++) {
+            harness = createHarness();
+            harness.login(4);
+            harness.run(10 * 60 * 1000);
+            results[i] = new long[]{harness.getTasksRun(),
+                                    harness.getGamesFinished(),
+                                    harness.getPackets(),
+                                    harness.getBytes(),
+                                    harness.getObjectLoads(),
+                                    harness.getObjectUpdates()};
+            harness.shutdown();
+        }
+        Assert.assertArrayEquals(results[0], results[1]);
+    }
+}
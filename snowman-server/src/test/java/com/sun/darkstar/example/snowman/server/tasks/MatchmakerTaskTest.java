@@ -0,0 +1,285 @@
+/*
+ *
+ * Copyright (c) 2007-2010, Oracle and/or its affiliates.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in
+ *       the documentation and/or other materials provided with the
+ *       distribution.
+ *     * Neither the name of Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.sun.darkstar.example.snowman.server.tasks;
+
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanPlayer;
+import com.sun.darkstar.example.snowman.server.interfaces.SnowmanGame;
+import com.sun.darkstar.example.snowman.server.interfaces.GameFactory;
+import com.sun.darkstar.example.snowman.server.interfaces.EntityFactory;
+import com.sun.darkstar.example.snowman.server.interfaces.GamePool;
+import com.sun.darkstar.example.snowman.server.impl.GamePoolImpl;
+import com.sun.darkstar.example.snowman.common.protocol.enumn.ETeamColor;
+import com.sun.sgs.app.AppContext;
+import com.sun.sgs.app.ManagedObject;
+import com.sun.sgs.app.ManagedReference;
+import com.sun.sgs.app.TaskManager;
+import com.sun.sgs.internal.InternalContext;
+import net.java.dev.mocksgs.MockSGS;
+import net.java.dev.mocksgs.MockManagerLocator;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.junit.Test;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.After;
+import org.easymock.EasyMock;
+
+/**
+ * Test the event driven behavior of the MatchmakerTask
+ */
+public class MatchmakerTaskTest
+{
+    private TaskManager taskManager;
+    private GameFactory gameFactory;
+    private EntityFactory entityFactory;
+    private ManagedReference<Deque<ManagedReference<SnowmanPlayer>>>[] waitingDeques;
+    private MatchmakerTask matchmaker;
+    
+    @Before
+    public void initializeContextAndMatchmaker() {
+        MockSGS.init();
+        taskManager = EasyMock.createMock(TaskManager.class);
+        ((MockManagerLocator)InternalContext.getManagerLocator()).setTaskManager(taskManager);
+        
+        gameFactory = EasyMock.createMock(GameFactory.class);
+        entityFactory = EasyMock.createMock(EntityFactory.class);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ManagedReference<Deque<ManagedReference<SnowmanPlayer>>>[] deques =
+                new ManagedReference[2];
+        waitingDeques = deques;
+        for (int i = 0; i < waitingDeques.length; i++) {
+            Deque<ManagedReference<SnowmanPlayer>> deque = new TestDeque();
+            waitingDeques[i] = AppContext.getDataManager().createReference(deque);
+        }
+        matchmaker = new MatchmakerTask(1, 0, 0, gameFactory, entityFactory, waitingDeques);
+    }
+    
+    @After
+    public void resetContext() {
+        MockSGS.reset();
+    }
+    
+    /**
+     * Verify that the matchmaker goes idle without rescheduling itself
+     * when no players are waiting
+     */
+    @Test
+    public void testIdleWhenEmpty() throws Exception {
+        EasyMock.replay(taskManager);
+        
+        matchmaker.run();
+        
+        Assert.assertTrue(matchmaker.isIdle());
+        EasyMock.verify(taskManager);
+    }
+    
+    /**
+     * Verify that waking an idle matchmaker schedules it exactly once
+     */
+    @Test
+    public void testWake() throws Exception {
+        taskManager.scheduleTask(matchmaker);
+        EasyMock.expectLastCall().once();
+        EasyMock.replay(taskManager);
+        
+        matchmaker.wake();
+        matchmaker.run();
+        matchmaker.wake();
+        matchmaker.wake();
+        
+        Assert.assertFalse(matchmaker.isIdle());
+        EasyMock.verify(taskManager);
+    }
+    
+    /**
+     * Verify that a waiting player is matched into a game, that the
+     * matchmaker reschedules itself immediately, and that the player's
+     * wait time is recorded
+     */
+    @Test
+    public void testMatchPlayer() throws Exception {
+        SnowmanPlayer player = EasyMock.createNiceMock(SnowmanPlayer.class);
+        EasyMock.expect(player.getLoginTime()).andStubReturn(System.currentTimeMillis());
+        EasyMock.replay(player);
+        waitingDeques[1].get().add(AppContext.getDataManager().createReference(player));
+        
+        SnowmanGame game = EasyMock.createMock(SnowmanGame.class);
+        EasyMock.expect(game.getName()).andStubReturn("Game0");
+        game.setTickInterval(0);
+        game.setInterestRadius(0);
+        game.addPlayer(player, ETeamColor.values()[0]);
+        game.sendMapInfo();
+        EasyMock.replay(game);
+        EasyMock.expect(gameFactory.createSnowmanGame("Game0", 1, entityFactory)).andReturn(game);
+        EasyMock.replay(gameFactory);
+        taskManager.scheduleTask(matchmaker);
+        EasyMock.replay(taskManager);
+        
+        matchmaker.run();
+        
+        Assert.assertFalse(matchmaker.isIdle());
+        long matched = 0;
+        for (long count : matchmaker.getWaitHistogram()) {
+            matched += count;
+        }
+        Assert.assertEquals(1, matched);
+        EasyMock.verify(game, gameFactory, taskManager);
+    }
+    
+    /**
+     * Verify that a shard which goes idle with a partially filled game
+     * hands its waiting players to the overflow deque and wakes up the
+     * overflow matchmaker
+     */
+    @Test
+    public void testRebalance() throws Exception {
+        Deque<ManagedReference<SnowmanPlayer>> overflow = new TestDeque();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ManagedReference<Deque<ManagedReference<SnowmanPlayer>>>[] overflowDeques =
+                new ManagedReference[] {AppContext.getDataManager().createReference(overflow)};
+        MatchmakerTask first = new MatchmakerTask(0, 2, 2, 0, 0, gameFactory, entityFactory,
+                                                  overflowDeques);
+        MatchmakerTask second = new MatchmakerTask(1, 2, 2, 0, 0, gameFactory, entityFactory,
+                                                   waitingDeques);
+        second.setOverflow(overflow, first);
+        
+        SnowmanPlayer player = EasyMock.createNiceMock(SnowmanPlayer.class);
+        EasyMock.replay(player);
+        ManagedReference<SnowmanPlayer> playerRef = 
+                AppContext.getDataManager().createReference(player);
+        waitingDeques[0].get().add(playerRef);
+        
+        //the first shard goes idle, then the second one finds the player,
+        //goes idle and wakes the first one up
+        taskManager.scheduleTask(second);
+        taskManager.scheduleTask(first);
+        EasyMock.replay(taskManager);
+        first.run();
+        second.run();
+        second.run();
+        
+        Assert.assertTrue(second.isIdle());
+        Assert.assertFalse(first.isIdle());
+        Assert.assertEquals(1, overflow.size());
+        Assert.assertSame(playerRef, overflow.peek());
+        EasyMock.verify(taskManager);
+    }
+    
+    /**
+     * Verify that the first shard keeps its leftover players
+     */
+    @Test
+    public void testNoRebalanceWithoutOverflow() throws Exception {
+        matchmaker = new MatchmakerTask(2, 0, 0, gameFactory, entityFactory, waitingDeques);
+        SnowmanPlayer player = EasyMock.createNiceMock(SnowmanPlayer.class);
+        EasyMock.replay(player);
+        waitingDeques[0].get().add(AppContext.getDataManager().createReference(player));
+        
+        taskManager.scheduleTask(matchmaker);
+        EasyMock.replay(taskManager);
+        matchmaker.run();
+        matchmaker.run();
+        
+        Assert.assertTrue(matchmaker.isIdle());
+        Assert.assertTrue(waitingDeques[0].get().isEmpty());
+        EasyMock.verify(taskManager);
+    }
+    
+    /**
+     * Verify that game names stay unique across shards
+     */
+    @Test
+    public void testShardGameNames() throws Exception {
+        matchmaker = new MatchmakerTask(1, 3, 1, 0, 0, gameFactory, entityFactory, waitingDeques);
+        SnowmanGame game = EasyMock.createNiceMock(SnowmanGame.class);
+        EasyMock.replay(game);
+        EasyMock.expect(gameFactory.createSnowmanGame("Game1", 1, entityFactory)).andReturn(game);
+        EasyMock.expect(gameFactory.createSnowmanGame("Game4", 1, entityFactory)).andReturn(game);
+        EasyMock.replay(gameFactory);
+        taskManager.scheduleTask(matchmaker);
+        EasyMock.expectLastCall().times(2);
+        EasyMock.replay(taskManager);
+        
+        for (int i = 0; i < 2; i++) {
+            SnowmanPlayer player = EasyMock.createNiceMock(SnowmanPlayer.class);
+            EasyMock.replay(player);
+            waitingDeques[0].get().add(AppContext.getDataManager().createReference(player));
+            matchmaker.run();
+        }
+        
+        EasyMock.verify(gameFactory, taskManager);
+    }
+    
+    /**
+     * Verify that an idle matchmaker fills up its game pool one game
+     * per run before going idle, and then matches players into pooled games
+     */
+    @Test
+    public void testGamePool() throws Exception {
+        GamePool pool = new GamePoolImpl(1);
+        matchmaker.setGamePool(pool);
+        SnowmanGame game = EasyMock.createNiceMock(SnowmanGame.class);
+        EasyMock.expect(game.getName()).andStubReturn("Game0");
+        game.setGamePool(pool);
+        EasyMock.replay(game);
+        EasyMock.expect(gameFactory.createSnowmanGame("Game0", 1, entityFactory)).andReturn(game);
+        EasyMock.replay(gameFactory);
+        taskManager.scheduleTask(matchmaker);
+        EasyMock.expectLastCall().times(2);
+        EasyMock.replay(taskManager);
+        
+        matchmaker.run();
+        Assert.assertEquals(1, pool.getAvailable());
+        Assert.assertFalse(matchmaker.isIdle());
+        matchmaker.run();
+        Assert.assertTrue(matchmaker.isIdle());
+        
+        SnowmanPlayer player = EasyMock.createNiceMock(SnowmanPlayer.class);
+        EasyMock.replay(player);
+        waitingDeques[0].get().add(AppContext.getDataManager().createReference(player));
+        matchmaker.run();
+        
+        Assert.assertEquals(0, pool.getAvailable());
+        EasyMock.verify(game, gameFactory, taskManager);
+    }
+    
+    /**
+     * A serializable managed deque for testing
+     */
+    private static class TestDeque extends ArrayDeque<ManagedReference<SnowmanPlayer>>
+            implements ManagedObject {
+        private static final long serialVersionUID = 1L;
+    }
+}